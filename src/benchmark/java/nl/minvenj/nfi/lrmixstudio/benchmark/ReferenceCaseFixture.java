@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.io.PopulationStatisticsReader;
+import nl.minvenj.nfi.lrmixstudio.io.SampleReader;
+
+/**
+ * The input of the benchmarks, read from reference case 5 of the test data.
+ * This case has three replicates and a single suspect, who is a contributor
+ * under the prosecution hypothesis and a non-contributor under the defense
+ * hypothesis.
+ *
+ * @author dejong
+ */
+public final class ReferenceCaseFixture {
+
+    public static final String SAMPLE_FILENAME = "/testfiles/case-05/sample.txt";
+    public static final String SUSPECT_FILENAME = "/testfiles/case-05/suspect.txt";
+    public static final String STATISTICS_FILENAME = "/testfiles/frequencies_NFI.csv";
+
+    private final Collection<Sample> _replicates;
+    private final Collection<Sample> _profiles;
+    private final PopulationStatistics _statistics;
+
+    /**
+     * Reads the reference case.
+     *
+     * @throws IOException if the test data could not be read
+     */
+    public ReferenceCaseFixture() throws IOException {
+        _replicates = new SampleReader(SAMPLE_FILENAME, true).getSamples();
+        _profiles = new SampleReader(SUSPECT_FILENAME, false).getSamples();
+        _statistics = new PopulationStatisticsReader(STATISTICS_FILENAME).getStatistics();
+    }
+
+    public Collection<Sample> getReplicates() {
+        return _replicates;
+    }
+
+    public Collection<Sample> getProfiles() {
+        return _profiles;
+    }
+
+    public PopulationStatistics getStatistics() {
+        return _statistics;
+    }
+
+    /**
+     * @return The name of the locus with the most distinct alleles in the
+     * replicates, which has the largest number of genotype combinations for the
+     * unknowns
+     */
+    public String getLargestLocusName() {
+        String largest = null;
+        int largestCount = -1;
+        for (final Locus locus : _replicates.iterator().next().getLoci()) {
+            final HashSet<String> alleles = new HashSet<>();
+            for (final Sample replicate : _replicates) {
+                final Locus replicateLocus = replicate.getLocus(locus.getName());
+                if (replicateLocus != null) {
+                    for (final Allele allele : replicateLocus.getAlleles()) {
+                        alleles.add(allele.getAllele());
+                    }
+                }
+            }
+            if (alleles.size() > largestCount) {
+                largest = locus.getName();
+                largestCount = alleles.size();
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Creates the defense hypothesis, under which the suspect is a
+     * non-contributor.
+     *
+     * @param unknownCount The number of unknown contributors
+     * @param theta The theta correction
+     * @param relation The relation of the first unknown to the suspect
+     * @return The hypothesis
+     */
+    public Hypothesis createDefense(final int unknownCount, final double theta, final Relation relation) {
+        final Hypothesis defense = new Hypothesis("Defense", unknownCount, _statistics, 0.05, 0.1, theta);
+        for (final Sample profile : _profiles) {
+            defense.addNonContributor(profile, 0.1);
+            if (relation != Relation.NONE) {
+                defense.getRelatedness().setRelative(profile);
+            }
+        }
+        defense.getRelatedness().setRelation(relation);
+        return defense;
+    }
+
+    /**
+     * Creates every genotype of the alleles in the population statistics of a
+     * locus.
+     *
+     * @param locusName The name of the locus
+     * @return The genotypes
+     */
+    public Collection<Locus> createGenotypes(final String locusName) {
+        final ArrayList<String> alleles = new ArrayList<>(_statistics.getAlleles(locusName));
+        final ArrayList<Locus> genotypes = new ArrayList<>();
+        for (int first = 0; first < alleles.size(); first++) {
+            for (int second = first; second < alleles.size(); second++) {
+                final Locus genotype = new Locus(locusName);
+                genotype.addAllele(new Allele(alleles.get(first)));
+                genotype.addAllele(new Allele(alleles.get(second)));
+                genotypes.add(genotype);
+            }
+        }
+        return genotypes;
+    }
+
+    /**
+     * @return All alleles of the replicates and the profiles
+     */
+    public Collection<Allele> getAlleles() {
+        final ArrayList<Allele> alleles = new ArrayList<>();
+        final ArrayList<Sample> samples = new ArrayList<>(_replicates);
+        samples.addAll(_profiles);
+        for (final Sample sample : samples) {
+            for (final Locus locus : sample.getLoci()) {
+                alleles.addAll(locus.getAlleles());
+            }
+        }
+        return alleles;
+    }
+}
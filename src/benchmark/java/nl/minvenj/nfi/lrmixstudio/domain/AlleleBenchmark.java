@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.domain;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.minvenj.nfi.lrmixstudio.benchmark.ReferenceCaseFixture;
+
+/**
+ * Measures the lookup of the identifier of a registered allele name, as
+ * performed for every allele that is created while reading files or building
+ * genotypes. The registry is shared by all threads, so the lookup is also
+ * measured under contention.
+ *
+ * @author dejong
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlleleBenchmark {
+
+    private String[] _names;
+    private int _next;
+
+    @Setup
+    public void setUp() throws Exception {
+        final ArrayList<String> names = new ArrayList<>();
+        for (final Allele allele : new ReferenceCaseFixture().getAlleles()) {
+            names.add(allele.getAllele());
+        }
+        _names = names.toArray(new String[names.size()]);
+    }
+
+    private String next() {
+        if (++_next == _names.length) {
+            _next = 0;
+        }
+        return _names[_next];
+    }
+
+    @Benchmark
+    public int getId() {
+        return Allele.getId(next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int getIdContended() {
+        return Allele.getId(next());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.domain;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.minvenj.nfi.lrmixstudio.benchmark.ReferenceCaseFixture;
+
+/**
+ * Measures the lookup of allele frequencies for the alleles of the reference
+ * case, by locus and allele object and by name.
+ *
+ * @author dejong
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PopulationStatisticsBenchmark {
+
+    private PopulationStatistics _statistics;
+    private Allele[] _alleles;
+    private String[] _locusNames;
+    private String[] _alleleNames;
+    private int _next;
+
+    @Setup
+    public void setUp() throws Exception {
+        final ReferenceCaseFixture fixture = new ReferenceCaseFixture();
+        _statistics = fixture.getStatistics();
+        final ArrayList<Allele> alleles = new ArrayList<>(fixture.getAlleles());
+        _alleles = alleles.toArray(new Allele[alleles.size()]);
+        _locusNames = new String[_alleles.length];
+        _alleleNames = new String[_alleles.length];
+        for (int idx = 0; idx < _alleles.length; idx++) {
+            _locusNames[idx] = _alleles[idx].getLocus().getName();
+            _alleleNames[idx] = _alleles[idx].getAllele();
+        }
+    }
+
+    private int next() {
+        if (++_next == _alleles.length) {
+            _next = 0;
+        }
+        return _next;
+    }
+
+    @Benchmark
+    public Double getProbability() {
+        final Allele allele = _alleles[next()];
+        return _statistics.getProbability(allele.getLocus(), allele);
+    }
+
+    @Benchmark
+    public Double getProbabilityByName() {
+        final int idx = next();
+        return _statistics.getProbability(_locusNames[idx], _alleleNames[idx]);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.minvenj.nfi.lrmixstudio.benchmark.ReferenceCaseFixture;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+
+/**
+ * Measures the parsing of the replicate and reference profile files of the
+ * reference case. The files are read into memory beforehand, so that only the
+ * parsing is measured.
+ *
+ * @author dejong
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleReaderBenchmark {
+
+    @Param({ReferenceCaseFixture.SAMPLE_FILENAME, ReferenceCaseFixture.SUSPECT_FILENAME})
+    public String _fileName;
+
+    private byte[] _content;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = SampleReaderBenchmark.class.getResourceAsStream(_fileName)) {
+            if (in == null) {
+                throw new IOException("Test file " + _fileName + " not found");
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            _content = out.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public Collection<Sample> read() throws IOException {
+        return new SampleReader(_fileName, new ByteArrayInputStream(_content), _fileName.equals(ReferenceCaseFixture.SAMPLE_FILENAME)).getSamples();
+    }
+}
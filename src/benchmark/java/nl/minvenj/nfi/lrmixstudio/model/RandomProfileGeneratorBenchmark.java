@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.minvenj.nfi.lrmixstudio.benchmark.ReferenceCaseFixture;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+
+/**
+ * Measures the generation of random profiles at all loci of the population
+ * statistics, as samples and as genotype indices.
+ *
+ * @author dejong
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomProfileGeneratorBenchmark {
+
+    private RandomProfileGenerator _generator;
+    private String[] _locusNames;
+    private int[] _genotypes;
+
+    @Setup
+    public void setUp() throws Exception {
+        final ReferenceCaseFixture fixture = new ReferenceCaseFixture();
+        final ArrayList<String> loci = new ArrayList<>(fixture.getStatistics().getLoci());
+        _locusNames = loci.toArray(new String[loci.size()]);
+        _genotypes = new int[_locusNames.length];
+        _generator = new RandomProfileGenerator(loci, fixture.getStatistics(), new Random(1));
+        // Build the samplers outside of the measurement
+        _generator.getRandomSample();
+    }
+
+    @Benchmark
+    public Sample getRandomSample() throws Exception {
+        return _generator.getRandomSample();
+    }
+
+    @Benchmark
+    public int[] getRandomGenotypes() {
+        for (int idx = 0; idx < _locusNames.length; idx++) {
+            _genotypes[idx] = _generator.getRandomGenotype(_locusNames[idx]);
+        }
+        return _genotypes;
+    }
+}
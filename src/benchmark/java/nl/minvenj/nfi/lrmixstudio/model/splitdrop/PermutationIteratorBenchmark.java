@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nl.minvenj.nfi.lrmixstudio.benchmark.ReferenceCaseFixture;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+
+/**
+ * Measures the enumeration of all genotype combinations of the unknowns, with
+ * the genotypes of the locus of the reference case with the most alleles in
+ * the replicates. The combinations are enumerated both through the
+ * allocation-free {@link PermutationCursor} interface and through the
+ * {@link PermutationIterator} interface, which creates a {@link Permutation}
+ * for every combination.
+ *
+ * @author dejong
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationIteratorBenchmark {
+
+    @Param({"2", "3"})
+    public int _unknownCount;
+
+    @Param({"false", "true"})
+    public boolean _related;
+
+    private Collection<Locus> _genotypes;
+    private long _size;
+    private int[] _indices;
+
+    @Setup
+    public void setUp() throws Exception {
+        final ReferenceCaseFixture fixture = new ReferenceCaseFixture();
+        final String locusName = fixture.getLargestLocusName();
+        _genotypes = fixture.createGenotypes(locusName);
+        _size = new PermutationRanker(_unknownCount, _genotypes.size(), _related).size();
+        _indices = new int[_unknownCount];
+    }
+
+    private PermutationCursor createIterator() {
+        if (_related) {
+            return new PermutationIteratorRelatedness(_unknownCount, _genotypes, 0, _size);
+        }
+        return new PermutationIteratorPlain(_unknownCount, _genotypes, 0, _size);
+    }
+
+    @Benchmark
+    public long cursor() {
+        final PermutationCursor cursor = createIterator();
+        long permutations = 0;
+        int factor;
+        while ((factor = cursor.next(_indices)) != 0) {
+            permutations += factor + _indices[0];
+        }
+        return permutations;
+    }
+
+    @Benchmark
+    public void iterator(final Blackhole blackhole) {
+        final PermutationIterator iterator = (PermutationIterator) createIterator();
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.minvenj.nfi.lrmixstudio.benchmark.ReferenceCaseFixture;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.Permutation;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationIterator;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationIteratorFactory;
+
+/**
+ * Measures the allele-by-allele evaluation of a single permutation of the
+ * unknowns, as performed by {@link LocusProbabilityJob} when no replicate
+ * kernel or genotype probability table is available, such as in validation
+ * mode. Each invocation evaluates the next permutation of the locus of the
+ * reference case with the most alleles.
+ *
+ * @author dejong
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocusProbabilityJobBenchmark {
+
+    @Param({"2", "3"})
+    public int _unknownCount;
+
+    @Param({"0", "0.01"})
+    public double _theta;
+
+    private LocusProbabilityJob _job;
+    private Locus[][] _permutations;
+    private int _next;
+
+    @Setup
+    public void setUp() throws Exception {
+        final ReferenceCaseFixture fixture = new ReferenceCaseFixture();
+        final String locusName = fixture.getLargestLocusName();
+        final Hypothesis hypothesis = fixture.createDefense(_unknownCount, _theta, Relation.NONE);
+        final Collection<Locus> genotypes = LocusProbabilityJobGenerator.getPossibleAlleleCombinations(locusName, fixture.getReplicates(), hypothesis);
+        final ArrayList<Locus[]> permutations = new ArrayList<>();
+        for (int idx = 0; idx < genotypes.size(); idx++) {
+            final PermutationIterator iterator = PermutationIteratorFactory.getPermutationIterator(hypothesis, genotypes, idx);
+            while (iterator.hasNext()) {
+                permutations.add(((Permutation) iterator.next()).getLoci());
+            }
+        }
+        _permutations = permutations.toArray(new Locus[permutations.size()][]);
+        _job = new LocusProbabilityJob(locusName, null, fixture.getReplicates(), hypothesis);
+    }
+
+    private Locus[] nextPermutation() {
+        if (++_next == _permutations.length) {
+            _next = 0;
+        }
+        return _permutations[_next];
+    }
+
+    @Benchmark
+    public double calculateReplicateProbability() {
+        return _job.calculateReplicateProbability(nextPermutation());
+    }
+
+    @Benchmark
+    public double calculateGenotypeProbability() {
+        return _job.calculateGenotypeProbability(nextPermutation());
+    }
+}
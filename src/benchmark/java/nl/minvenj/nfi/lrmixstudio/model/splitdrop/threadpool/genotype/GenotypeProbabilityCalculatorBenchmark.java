@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.minvenj.nfi.lrmixstudio.benchmark.ReferenceCaseFixture;
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+
+/**
+ * Measures the genotype probability of a single unknown. The relation and
+ * theta select each of the {@link GenotypeProbabilityCalculator}
+ * implementations: Hardy-Weinberg and the split drop calculator for unrelated
+ * unknowns, and the calculators for each relation with and without theta. Each
+ * invocation calculates the probability of the next genotype of the locus of
+ * the reference case with the most alleles, starting from the allele counts of
+ * the non-contributor, just like a job does for every permutation.
+ *
+ * @author dejong
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenotypeProbabilityCalculatorBenchmark {
+
+    @Param({"NONE", "PARENT_CHILD", "SIBLING", "COUSIN", "GRANDPARENT_GRANDCHILD"})
+    public Relation _relation;
+
+    @Param({"0", "0.01"})
+    public double _theta;
+
+    private GenotypeProbabilityCalculator _calculator;
+    private Locus[] _genotypes;
+    private int[] _initialCounts;
+    private int[] _counts;
+    private int _next;
+
+    @Setup
+    public void setUp() throws Exception {
+        final ReferenceCaseFixture fixture = new ReferenceCaseFixture();
+        final String locusName = fixture.getLargestLocusName();
+        final Hypothesis hypothesis = fixture.createDefense(1, _theta, _relation);
+        _calculator = GenotypeProbabilityCalculatorFactory.getRelatedGenotypeProbabilityCalculator(hypothesis);
+
+        final Collection<Locus> genotypes = fixture.createGenotypes(locusName);
+        _genotypes = genotypes.toArray(new Locus[genotypes.size()]);
+
+        _initialCounts = new int[Allele.getRegisteredAlleleCount()];
+        for (final Contributor nonContributor : hypothesis.getNonContributors()) {
+            for (final Allele allele : nonContributor.getSample().getLocus(locusName).getAlleles()) {
+                _initialCounts[allele.getId()]++;
+            }
+        }
+        _counts = new int[_initialCounts.length];
+    }
+
+    @Benchmark
+    public double calculate() {
+        if (++_next == _genotypes.length) {
+            _next = 0;
+        }
+        System.arraycopy(_initialCounts, 0, _counts, 0, _counts.length);
+        return _calculator.calculate(_counts, _genotypes[_next]);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.cli;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
+import nl.minvenj.nfi.lrmixstudio.model.NonContributorTestResults;
+
+/**
+ * A single case in a batch run. A case is described by the command line
+ * arguments of the single case runner. While the case passes through the
+ * stages of the {@link BatchPipeline}, it collects the session, the results and
+ * the timing of each stage.
+ */
+public class BatchCase {
+
+    private final String _name;
+    private final List<String> _arguments;
+    private CommandLineOptions _options;
+    private SessionData _session;
+    private List<NonContributorTestResults> _nonContributorTestResults = Collections.emptyList();
+    private Throwable _error;
+    private long _queuedTime;
+    private long _startTime;
+    private long _finishTime;
+
+    /**
+     * Creates a new case.
+     *
+     * @param name The name of the case. This is used as the name of the report
+     * file.
+     * @param arguments The command line arguments describing the case
+     */
+    public BatchCase(final String name, final List<String> arguments) {
+        _name = name;
+        _arguments = new ArrayList<>(arguments);
+    }
+
+    /**
+     * @return The name of the case
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * @return The command line arguments describing the case
+     */
+    public List<String> getArguments() {
+        return Collections.unmodifiableList(_arguments);
+    }
+
+    /**
+     * @return The parsed options of the case, or null if the case was not yet
+     * loaded
+     */
+    public CommandLineOptions getOptions() {
+        return _options;
+    }
+
+    void setOptions(final CommandLineOptions options) {
+        _options = options;
+    }
+
+    /**
+     * @return The session of the case, or null if the case was not yet loaded
+     * or could not be loaded
+     */
+    public SessionData getSession() {
+        return _session;
+    }
+
+    void setSession(final SessionData session) {
+        _session = session;
+    }
+
+    /**
+     * @return The results of the non-contributor test for each person of
+     * interest
+     */
+    public List<NonContributorTestResults> getNonContributorTestResults() {
+        return _nonContributorTestResults;
+    }
+
+    void setNonContributorTestResults(final List<NonContributorTestResults> results) {
+        _nonContributorTestResults = results;
+    }
+
+    /**
+     * @return The error that caused the case to fail, or null if the case
+     * succeeded
+     */
+    public Throwable getError() {
+        return _error;
+    }
+
+    void setError(final Throwable error) {
+        if (_error == null) {
+            _error = error;
+        }
+    }
+
+    /**
+     * @return true if the case was completed without errors
+     */
+    public boolean isSucceeded() {
+        return _error == null && _finishTime != 0;
+    }
+
+    /**
+     * @return The time in milliseconds the case waited for a compute slot
+     * after it was loaded
+     */
+    public long getWaitTime() {
+        return _startTime == 0 ? 0 : _startTime - _queuedTime;
+    }
+
+    /**
+     * @return The time in milliseconds taken by the compute stage
+     */
+    public long getComputeTime() {
+        return _finishTime == 0 ? 0 : _finishTime - _startTime;
+    }
+
+    void queued() {
+        _queuedTime = System.currentTimeMillis();
+    }
+
+    void started() {
+        _startTime = System.currentTimeMillis();
+    }
+
+    void finished() {
+        _finishTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return _name;
+    }
+}
@@ -0,0 +1,376 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
+
+/**
+ * Analyses a batch of cases as a staged pipeline. A loader thread parses and
+ * validates the cases, a number of compute workers perform the analyses and a
+ * writer thread writes the reports. The stages are connected by bounded
+ * queues, so reading and writing files overlaps with the calculations without
+ * loading the whole batch into memory.
+ *
+ * Several cases are analysed at the same time, each using an equal share of the
+ * threads of the {@link ComputeService}. A case that takes a long time
+ * therefore only occupies its own share, and the other cases continue to flow
+ * through the remaining workers.
+ */
+public class BatchPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchPipeline.class);
+    /**
+     * The name of the summary file written to the output directory.
+     */
+    public static final String SUMMARY_FILENAME = "batch-summary.csv";
+    private static final BatchCase END_OF_BATCH = new BatchCase("", Collections.<String>emptyList());
+
+    private final List<BatchCase> _cases;
+    private final File _outputDirectory;
+    private final CommandLineOptions.Format _format;
+    private final int _concurrentCases;
+    private final int _threadsPerCase;
+    private final BlockingQueue<BatchCase> _loaded;
+    private final BlockingQueue<BatchCase> _computed;
+    private long _elapsedTime;
+
+    /**
+     * Creates a new pipeline.
+     *
+     * @param cases The cases to analyse
+     * @param outputDirectory The directory to write the reports to
+     * @param format The format of the reports
+     * @param concurrentCases The number of cases that are analysed at the same
+     * time
+     */
+    public BatchPipeline(final List<BatchCase> cases, final File outputDirectory, final CommandLineOptions.Format format, final int concurrentCases) {
+        if (concurrentCases < 1) {
+            throw new IllegalArgumentException("At least one case must be analysed at a time!");
+        }
+        if (outputDirectory == null) {
+            throw new IllegalArgumentException("No output directory specified!");
+        }
+        _cases = new ArrayList<>(cases);
+        _outputDirectory = outputDirectory;
+        _format = format;
+        _concurrentCases = concurrentCases;
+        _threadsPerCase = Math.max(1, ComputeService.getInstance().getThreadCount() / concurrentCases);
+        _loaded = new ArrayBlockingQueue<>(concurrentCases);
+        _computed = new ArrayBlockingQueue<>(concurrentCases);
+    }
+
+    /**
+     * Reads the cases of a batch. If the source is a directory, every file in
+     * it is restored as a session. Otherwise the source is read as a manifest
+     * in which every line holds the command line options of one case. Empty
+     * lines and lines starting with # are ignored, and values containing spaces
+     * can be enclosed in double quotes.
+     *
+     * @param source A directory or manifest file
+     * @param commonArguments Arguments that are prepended to the arguments of
+     * every case
+     * @return The cases, in the order of the directory listing or manifest
+     * @throws IOException if the manifest could not be read
+     */
+    public static List<BatchCase> readCases(final File source, final List<String> commonArguments) throws IOException {
+        final ArrayList<BatchCase> cases = new ArrayList<>();
+        final Set<String> names = new HashSet<>();
+        if (source.isDirectory()) {
+            final File[] files = source.listFiles();
+            if (files == null) {
+                throw new IOException("Cannot list the files in " + source);
+            }
+            Arrays.sort(files);
+            for (final File file : files) {
+                if (file.isFile() && !file.isHidden()) {
+                    final ArrayList<String> arguments = new ArrayList<>(commonArguments);
+                    arguments.add("--session");
+                    arguments.add(file.getAbsolutePath());
+                    cases.add(new BatchCase(uniqueName(names, stripExtension(file.getName())), arguments));
+                }
+            }
+        } else {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source), StandardCharsets.UTF_8))) {
+                int lineNumber = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                        continue;
+                    }
+                    final List<String> tokens = tokenize(line, lineNumber);
+                    String name = "case-" + lineNumber;
+                    final int caseNumberIndex = tokens.indexOf("--case-number");
+                    if (caseNumberIndex >= 0 && caseNumberIndex + 1 < tokens.size()) {
+                        name = tokens.get(caseNumberIndex + 1);
+                    }
+                    final ArrayList<String> arguments = new ArrayList<>(commonArguments);
+                    arguments.addAll(tokens);
+                    cases.add(new BatchCase(uniqueName(names, name), arguments));
+                }
+            }
+        }
+        return cases;
+    }
+
+    private static String stripExtension(final String fileName) {
+        final int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    private static String uniqueName(final Set<String> names, final String name) {
+        final String base = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        String unique = base;
+        int suffix = 2;
+        while (!names.add(unique.toLowerCase())) {
+            unique = base + "-" + suffix++;
+        }
+        return unique;
+    }
+
+    private static List<String> tokenize(final String line, final int lineNumber) throws IOException {
+        final ArrayList<String> tokens = new ArrayList<>();
+        final StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        boolean inToken = false;
+        for (final char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+                inToken = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+        if (quoted) {
+            throw new IOException("Unterminated quote on line " + lineNumber + " of the manifest");
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Runs all cases through the pipeline and writes the reports and the batch
+     * summary. Errors in a single case are recorded in that case and do not
+     * stop the batch.
+     *
+     * @return The cases of the batch
+     * @throws InterruptedException if the batch was interrupted
+     * @throws IOException if the output directory or summary could not be
+     * written
+     */
+    public List<BatchCase> run() throws InterruptedException, IOException {
+        if (!_outputDirectory.isDirectory() && !_outputDirectory.mkdirs()) {
+            throw new IOException("Cannot create output directory " + _outputDirectory);
+        }
+        final long start = System.currentTimeMillis();
+
+        final Thread loader = new Thread("LRmixStudio-batch-loader") {
+            @Override
+            public void run() {
+                try {
+                    for (final BatchCase batchCase : _cases) {
+                        load(batchCase);
+                        // Cases that cannot be loaded bypass the compute stage so that their failure is reported
+                        (batchCase.getError() == null ? _loaded : _computed).put(batchCase);
+                    }
+                    for (int idx = 0; idx < _concurrentCases; idx++) {
+                        _loaded.put(END_OF_BATCH);
+                    }
+                } catch (final InterruptedException e) {
+                    LOG.info("Batch loader interrupted");
+                }
+            }
+        };
+
+        final ArrayList<Thread> workers = new ArrayList<>();
+        for (int idx = 0; idx < _concurrentCases; idx++) {
+            workers.add(new Thread("LRmixStudio-batch-worker-" + idx) {
+                @Override
+                public void run() {
+                    try {
+                        BatchCase batchCase = _loaded.take();
+                        while (batchCase != END_OF_BATCH) {
+                            compute(batchCase);
+                            _computed.put(batchCase);
+                            batchCase = _loaded.take();
+                        }
+                        _computed.put(END_OF_BATCH);
+                    } catch (final InterruptedException e) {
+                        LOG.info("Batch worker interrupted");
+                    }
+                }
+            });
+        }
+
+        loader.start();
+        for (final Thread worker : workers) {
+            worker.start();
+        }
+        try {
+            int finishedWorkers = 0;
+            while (finishedWorkers < _concurrentCases) {
+                final BatchCase batchCase = _computed.take();
+                if (batchCase == END_OF_BATCH) {
+                    finishedWorkers++;
+                } else {
+                    write(batchCase);
+                }
+            }
+        } finally {
+            loader.interrupt();
+            for (final Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+        _elapsedTime = System.currentTimeMillis() - start;
+        writeSummary();
+        return Collections.unmodifiableList(_cases);
+    }
+
+    private void load(final BatchCase batchCase) {
+        try {
+            final CommandLineOptions options = CommandLineOptions.parse(batchCase.getArguments().toArray(new String[0]));
+            if (options.getBatchSource() != null) {
+                throw new IllegalArgumentException("A case in a batch cannot start another batch");
+            }
+            batchCase.setOptions(options);
+            final SessionData session = LRmixStudioCli.createSession(options);
+            LRmixStudioCli.validate(session);
+            if (options.getThreadCount() == null) {
+                session.setThreadCount(_threadsPerCase);
+            }
+            batchCase.setSession(session);
+            batchCase.queued();
+        } catch (final Exception e) {
+            LOG.error("Error loading case {}", batchCase.getName(), e);
+            batchCase.setError(e);
+        }
+    }
+
+    private void compute(final BatchCase batchCase) {
+        batchCase.started();
+        LOG.info("Analysing case {}", batchCase.getName());
+        try {
+            batchCase.setNonContributorTestResults(LRmixStudioCli.analyse(batchCase.getSession(), batchCase.getOptions()));
+        } catch (final InterruptedException e) {
+            LOG.info("Analysis of case {} interrupted", batchCase.getName());
+            batchCase.setError(e);
+        } catch (final Exception e) {
+            LOG.error("Error analysing case {}", batchCase.getName(), e);
+            batchCase.setError(e);
+        } finally {
+            batchCase.finished();
+        }
+    }
+
+    private void write(final BatchCase batchCase) {
+        if (batchCase.getError() != null) {
+            return;
+        }
+        final File reportFile = new File(_outputDirectory, batchCase.getName() + "." + _format.name().toLowerCase());
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8)) {
+            new ResultWriter(batchCase.getSession(), batchCase.getSession().getCurrentReport(), batchCase.getNonContributorTestResults()).write(_format, writer);
+        } catch (final IOException | RuntimeException e) {
+            LOG.error("Error writing report for case {}", batchCase.getName(), e);
+            batchCase.setError(e);
+        }
+    }
+
+    private void writeSummary() throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(_outputDirectory, SUMMARY_FILENAME)), StandardCharsets.UTF_8)) {
+            writer.write("Case,Status,Log10(LR),Wait time (ms),Compute time (ms),Error\n");
+            for (final BatchCase batchCase : _cases) {
+                final StringBuilder line = new StringBuilder(batchCase.getName());
+                line.append(',').append(batchCase.isSucceeded() ? "OK" : "FAILED");
+                line.append(',');
+                if (batchCase.isSucceeded()) {
+                    line.append(batchCase.getSession().getCurrentReport().getLikelihoodRatio().getOverallRatio().getLog10Ratio());
+                }
+                line.append(',').append(batchCase.getWaitTime());
+                line.append(',').append(batchCase.getComputeTime());
+                line.append(',');
+                if (batchCase.getError() != null) {
+                    final String message = batchCase.getError().getMessage() == null ? batchCase.getError().getClass().getName() : batchCase.getError().getMessage();
+                    line.append('"').append(message.replaceAll("\"", "\"\"").replaceAll("[\r\n]+", " ")).append('"');
+                }
+                writer.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * @return The number of cases that failed
+     */
+    public int getFailedCount() {
+        int failed = 0;
+        for (final BatchCase batchCase : _cases) {
+            if (!batchCase.isSucceeded()) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return The time in milliseconds taken by the last run
+     */
+    public long getElapsedTime() {
+        return _elapsedTime;
+    }
+
+    /**
+     * @return The number of cases processed per hour in the last run, or 0 if
+     * the batch has not been run
+     */
+    public double getCasesPerHour() {
+        if (_elapsedTime == 0) {
+            return 0;
+        }
+        return _cases.size() * 3600000.0 / _elapsedTime;
+    }
+}
@@ -0,0 +1,653 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.cli;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The options of the command line runner. See {@link #getUsage()} for a
+ * description of all options.
+ */
+public class CommandLineOptions {
+
+    /**
+     * The supported output formats.
+     */
+    public static enum Format {
+
+        JSON, CSV
+    }
+
+    private String _sessionFile;
+    private final ArrayList<String> _replicateFiles = new ArrayList<>();
+    private final ArrayList<String> _profileFiles = new ArrayList<>();
+    private String _statisticsFile;
+    private Double _rareAlleleFrequency;
+    private String _caseNumber = "";
+    private List<String> _prosecutionContributors = Collections.emptyList();
+    private List<String> _defenseContributors = Collections.emptyList();
+    private int _prosecutionUnknowns = 0;
+    private int _defenseUnknowns = 1;
+    private double _dropout = 0.1;
+    private double _dropin = 0.05;
+    private double _theta = 0.01;
+    private String _modelName;
+    private Integer _threadCount;
+    private BigDecimal _sensitivityFrom;
+    private BigDecimal _sensitivityTo;
+    private BigDecimal _sensitivitySteps;
+    private boolean _varyUnknowns;
+    private int _dropoutEstimationIterations;
+    private int _nonContributorIterations;
+    private List<String> _personsOfInterest;
+    private Format _format = Format.JSON;
+    private String _outputFile;
+    private String _batchSource;
+    private String _outputDirectory;
+    private int _concurrentCases = 2;
+    private final ArrayList<InetSocketAddress> _workers = new ArrayList<>();
+    private Integer _workerPort;
+    private String _workerAddress;
+    private String _secret;
+    private String _checkpointDirectory;
+    private String _validationTraceFile;
+    private final ArrayList<String> _caseArguments = new ArrayList<>();
+    private boolean _help;
+
+    private static final List<String> BATCH_OPTIONS = Arrays.asList("--batch", "--output-dir", "--concurrent-cases", "--output");
+
+    private CommandLineOptions() {
+    }
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args The command line arguments
+     * @return The parsed options
+     * @throws IllegalArgumentException if an argument is unknown, lacks a value
+     * or has an invalid value, or if the combination of arguments is incomplete
+     */
+    public static CommandLineOptions parse(final String[] args) {
+        final CommandLineOptions options = new CommandLineOptions();
+        for (int idx = 0; idx < args.length; idx++) {
+            final String arg = args[idx];
+            if ("--help".equals(arg) || "-h".equals(arg)) {
+                options._help = true;
+                return options;
+            }
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument '" + arg + "'");
+            }
+            if ("--vary-unknowns".equals(arg)) {
+                options._varyUnknowns = true;
+                options._caseArguments.add(arg);
+                continue;
+            }
+            if (idx + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            final String value = args[++idx];
+            if (!BATCH_OPTIONS.contains(arg)) {
+                options._caseArguments.add(arg);
+                options._caseArguments.add(value);
+            }
+            switch (arg) {
+                case "--session":
+                    options._sessionFile = value;
+                    break;
+                case "--replicates":
+                    options._replicateFiles.add(value);
+                    break;
+                case "--profiles":
+                    options._profileFiles.add(value);
+                    break;
+                case "--statistics":
+                    options._statisticsFile = value;
+                    break;
+                case "--rare-allele-frequency":
+                    options._rareAlleleFrequency = parseProbability(arg, value);
+                    break;
+                case "--case-number":
+                    options._caseNumber = value;
+                    break;
+                case "--hp-contributors":
+                    options._prosecutionContributors = parseList(value);
+                    break;
+                case "--hd-contributors":
+                    options._defenseContributors = parseList(value);
+                    break;
+                case "--hp-unknowns":
+                    options._prosecutionUnknowns = parseCount(arg, value);
+                    break;
+                case "--hd-unknowns":
+                    options._defenseUnknowns = parseCount(arg, value);
+                    break;
+                case "--dropout":
+                    options._dropout = parseProbability(arg, value);
+                    break;
+                case "--dropin":
+                    options._dropin = parseProbability(arg, value);
+                    break;
+                case "--theta":
+                    options._theta = parseProbability(arg, value);
+                    break;
+                case "--model":
+                    options._modelName = value;
+                    break;
+                case "--threads":
+                    options._threadCount = parseCount(arg, value);
+                    if (options._threadCount < 1) {
+                        throw new IllegalArgumentException("The value of " + arg + " must be at least 1");
+                    }
+                    break;
+                case "--sensitivity":
+                    options.parseSensitivity(arg, value);
+                    break;
+                case "--dropout-estimation":
+                    options._dropoutEstimationIterations = parseCount(arg, value);
+                    break;
+                case "--non-contributor-test":
+                    options._nonContributorIterations = parseCount(arg, value);
+                    break;
+                case "--poi":
+                    options._personsOfInterest = parseList(value);
+                    break;
+                case "--format":
+                    try {
+                        options._format = Format.valueOf(value.toUpperCase());
+                    } catch (final IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unsupported format '" + value + "'. Use json or csv.");
+                    }
+                    break;
+                case "--output":
+                    options._outputFile = value;
+                    break;
+                case "--batch":
+                    options._batchSource = value;
+                    break;
+                case "--output-dir":
+                    options._outputDirectory = value;
+                    break;
+                case "--concurrent-cases":
+                    options._concurrentCases = parseCount(arg, value);
+                    if (options._concurrentCases < 1) {
+                        throw new IllegalArgumentException("The value of " + arg + " must be at least 1");
+                    }
+                    break;
+                case "--workers":
+                    options.parseWorkers(arg, value);
+                    break;
+                case "--checkpoint-dir":
+                    options._checkpointDirectory = value;
+                    break;
+                case "--validation-trace":
+                    options._validationTraceFile = value;
+                    break;
+                case "--worker":
+                    options._workerPort = parseCount(arg, value);
+                    if (options._workerPort > 65535) {
+                        throw new IllegalArgumentException("The value of " + arg + " is not a valid port number");
+                    }
+                    break;
+                case "--bind":
+                    options._workerAddress = value;
+                    break;
+                case "--secret":
+                    if (value.isEmpty()) {
+                        throw new IllegalArgumentException("The value of " + arg + " cannot be empty");
+                    }
+                    options._secret = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option '" + arg + "'");
+            }
+        }
+
+        if (options._workerPort != null) {
+            return options;
+        }
+        if (options._workerAddress != null) {
+            throw new IllegalArgumentException("--bind can only be used in worker mode");
+        }
+
+        if (options._batchSource != null) {
+            if (options._outputDirectory == null) {
+                throw new IllegalArgumentException("No output directory specified for the batch. Use --output-dir");
+            }
+            if (options._outputFile != null) {
+                throw new IllegalArgumentException("--output cannot be used in batch mode. Use --output-dir");
+            }
+            return options;
+        }
+        if (options._outputDirectory != null) {
+            throw new IllegalArgumentException("--output-dir can only be used in batch mode");
+        }
+        if (options._sessionFile == null) {
+            if (options._replicateFiles.isEmpty()) {
+                throw new IllegalArgumentException("Specify either --session or at least one --replicates file");
+            }
+            if (options._statisticsFile == null) {
+                throw new IllegalArgumentException("No population statistics specified. Use --statistics");
+            }
+        } else if (!options._replicateFiles.isEmpty() || !options._profileFiles.isEmpty() || options._statisticsFile != null) {
+            throw new IllegalArgumentException("--session cannot be combined with --replicates, --profiles or --statistics");
+        }
+        return options;
+    }
+
+    private void parseSensitivity(final String arg, final String value) {
+        final String[] parts = value.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("The value of " + arg + " must be formatted as from:to:steps");
+        }
+        try {
+            _sensitivityFrom = new BigDecimal(parts[0]);
+            _sensitivityTo = new BigDecimal(parts[1]);
+            _sensitivitySteps = new BigDecimal(parts[2]);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + arg + " must be formatted as from:to:steps");
+        }
+        if (_sensitivityFrom.signum() < 0 || _sensitivityTo.compareTo(BigDecimal.ONE) >= 0 || _sensitivityFrom.compareTo(_sensitivityTo) >= 0 || _sensitivitySteps.signum() <= 0) {
+            throw new IllegalArgumentException("Invalid sensitivity range '" + value + "'");
+        }
+    }
+
+    private void parseWorkers(final String arg, final String value) {
+        for (final String worker : parseList(value)) {
+            final int colon = worker.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("The workers of " + arg + " must be formatted as host:port, not '" + worker + "'");
+            }
+            final int port = parseCount(arg, worker.substring(colon + 1));
+            if (port < 1 || port > 65535) {
+                throw new IllegalArgumentException("Invalid port in worker '" + worker + "'");
+            }
+            _workers.add(new InetSocketAddress(worker.substring(0, colon), port));
+        }
+        if (_workers.isEmpty()) {
+            throw new IllegalArgumentException("No workers specified for " + arg);
+        }
+    }
+
+    private static List<String> parseList(final String value) {
+        final ArrayList<String> list = new ArrayList<>();
+        for (final String item : Arrays.asList(value.split(","))) {
+            if (!item.trim().isEmpty()) {
+                list.add(item.trim());
+            }
+        }
+        return list;
+    }
+
+    private static int parseCount(final String arg, final String value) {
+        try {
+            final int count = Integer.parseInt(value);
+            if (count < 0) {
+                throw new IllegalArgumentException("The value of " + arg + " cannot be negative");
+            }
+            return count;
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + arg + " must be a whole number, not '" + value + "'");
+        }
+    }
+
+    private static double parseProbability(final String arg, final String value) {
+        try {
+            final double probability = Double.parseDouble(value);
+            if (probability < 0 || probability > 1) {
+                throw new IllegalArgumentException("The value of " + arg + " must be within [0, 1]");
+            }
+            return probability;
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + arg + " must be a number, not '" + value + "'");
+        }
+    }
+
+    /**
+     * @return A description of all options
+     */
+    public static String getUsage() {
+        return "Usage: java -cp LRmixStudio.jar nl.minvenj.nfi.lrmixstudio.cli.LRmixStudioCli [options]\n"
+                + "\n"
+                + "Input (either a session or case files):\n"
+                + "  --session <file>                 Restore a session from a saved session or log file\n"
+                + "  --replicates <file>              A file with replicates (may be repeated)\n"
+                + "  --profiles <file>                A file with reference profiles (may be repeated)\n"
+                + "  --statistics <file>              The population statistics file\n"
+                + "  --rare-allele-frequency <value>  The frequency of alleles not in the population statistics\n"
+                + "  --case-number <value>            The case number\n"
+                + "\n"
+                + "Hypotheses (case files only):\n"
+                + "  --hp-contributors <id,...>       Profiles that are contributors under Hp\n"
+                + "  --hd-contributors <id,...>       Profiles that are contributors under Hd\n"
+                + "  --hp-unknowns <count>            The number of unknowns under Hp (default 0)\n"
+                + "  --hd-unknowns <count>            The number of unknowns under Hd (default 1)\n"
+                + "  --dropout <value>                The dropout probability of all contributors (default 0.1)\n"
+                + "  --dropin <value>                 The drop-in probability (default 0.05)\n"
+                + "  --theta <value>                  The theta correction (default 0.01)\n"
+                + "\n"
+                + "Analysis:\n"
+                + "  --model <name>                   The mathematical model\n"
+                + "  --threads <count>                The number of threads to use\n"
+                + "  --sensitivity <from:to:steps>    Perform a sensitivity analysis over the dropout of the persons of interest\n"
+                + "  --vary-unknowns                  Also vary the dropout of the unknowns in the sensitivity analysis and dropout estimation\n"
+                + "  --dropout-estimation <count>     Perform a dropout estimation with the given number of iterations\n"
+                + "  --non-contributor-test <count>   Perform a non-contributor test with the given number of iterations\n"
+                + "  --poi <id,...>                   The persons of interest (default: contributors under Hp that are not contributors under Hd)\n"
+                + "  --workers <host:port,...>        Evaluate the likelihood ratio on workers started with --worker\n"
+                + "  --secret <value>                 The secret shared with the workers (default: the distributedSecret\n"
+                + "                                   setting)\n"
+                + "  --checkpoint-dir <directory>     Save the progress of the analysis in this directory, and resume an\n"
+                + "                                   interrupted analysis of the same case from it\n"
+                + "  --validation-trace <file>        Append a binary trace of every evaluated permutation to this file,\n"
+                + "                                   to be rendered by ValidationTraceRenderer\n"
+                + "\n"
+                + "Output:\n"
+                + "  --format <json|csv>              The output format (default json)\n"
+                + "  --output <file>                  The output file (default standard output)\n"
+                + "  --help                           Show this message\n"
+                + "\n"
+                + "Batch mode:\n"
+                + "  --batch <directory|manifest>     Analyse every session file in a directory, or every case in a manifest\n"
+                + "                                   file that holds the options of one case per line. All other options\n"
+                + "                                   on the command line apply to every case.\n"
+                + "  --output-dir <directory>         The directory to write the reports and the batch summary to\n"
+                + "  --concurrent-cases <count>       The number of cases that are analysed at the same time (default 2)\n"
+                + "\n"
+                + "Worker mode:\n"
+                + "  --worker <port>                  Evaluate permutation ranges for coordinators started with --workers,\n"
+                + "                                   listening on the given port (0 for any free port). The number of\n"
+                + "                                   threads is set with --threads.\n"
+                + "  --bind <address>                 The address to listen on (default: the loopback interface only)\n"
+                + "  --secret <value>                 The secret that coordinators must know (default: the\n"
+                + "                                   distributedSecret setting)\n";
+    }
+
+    /**
+     * @return true if the usage message was requested
+     */
+    public boolean isHelp() {
+        return _help;
+    }
+
+    /**
+     * @return The name of the session file to restore, or null if the case is
+     * read from case files
+     */
+    public String getSessionFile() {
+        return _sessionFile;
+    }
+
+    /**
+     * @return The names of the replicate files
+     */
+    public Collection<String> getReplicateFiles() {
+        return Collections.unmodifiableList(_replicateFiles);
+    }
+
+    /**
+     * @return The names of the reference profile files
+     */
+    public Collection<String> getProfileFiles() {
+        return Collections.unmodifiableList(_profileFiles);
+    }
+
+    /**
+     * @return The name of the population statistics file
+     */
+    public String getStatisticsFile() {
+        return _statisticsFile;
+    }
+
+    /**
+     * @return The rare allele frequency, or null to use the default
+     */
+    public Double getRareAlleleFrequency() {
+        return _rareAlleleFrequency;
+    }
+
+    /**
+     * @return The case number
+     */
+    public String getCaseNumber() {
+        return _caseNumber;
+    }
+
+    /**
+     * @return The ids of the contributors under the prosecution hypothesis
+     */
+    public List<String> getProsecutionContributors() {
+        return _prosecutionContributors;
+    }
+
+    /**
+     * @return The ids of the contributors under the defense hypothesis
+     */
+    public List<String> getDefenseContributors() {
+        return _defenseContributors;
+    }
+
+    /**
+     * @return The number of unknowns under the prosecution hypothesis
+     */
+    public int getProsecutionUnknowns() {
+        return _prosecutionUnknowns;
+    }
+
+    /**
+     * @return The number of unknowns under the defense hypothesis
+     */
+    public int getDefenseUnknowns() {
+        return _defenseUnknowns;
+    }
+
+    /**
+     * @return The dropout probability of all contributors and unknowns
+     */
+    public double getDropout() {
+        return _dropout;
+    }
+
+    /**
+     * @return The drop-in probability
+     */
+    public double getDropin() {
+        return _dropin;
+    }
+
+    /**
+     * @return The theta correction
+     */
+    public double getTheta() {
+        return _theta;
+    }
+
+    /**
+     * @return The name of the mathematical model, or null to use the model of
+     * the session or the default model
+     */
+    public String getModelName() {
+        return _modelName;
+    }
+
+    /**
+     * @return The number of threads, or null to use the default
+     */
+    public Integer getThreadCount() {
+        return _threadCount;
+    }
+
+    /**
+     * @return true if a sensitivity analysis was requested
+     */
+    public boolean isSensitivityAnalysis() {
+        return _sensitivitySteps != null;
+    }
+
+    /**
+     * @return The lowest dropout probability of the sensitivity analysis
+     */
+    public BigDecimal getSensitivityFrom() {
+        return _sensitivityFrom;
+    }
+
+    /**
+     * @return The highest dropout probability of the sensitivity analysis
+     */
+    public BigDecimal getSensitivityTo() {
+        return _sensitivityTo;
+    }
+
+    /**
+     * @return The number of steps of the sensitivity analysis
+     */
+    public BigDecimal getSensitivitySteps() {
+        return _sensitivitySteps;
+    }
+
+    /**
+     * @return true if the dropout of the unknowns is varied in the sensitivity
+     * analysis and dropout estimation
+     */
+    public boolean isVaryUnknowns() {
+        return _varyUnknowns;
+    }
+
+    /**
+     * @return The number of iterations of the dropout estimation, or 0 if no
+     * dropout estimation was requested
+     */
+    public int getDropoutEstimationIterations() {
+        return _dropoutEstimationIterations;
+    }
+
+    /**
+     * @return The number of iterations of the non-contributor test, or 0 if no
+     * non-contributor test was requested
+     */
+    public int getNonContributorIterations() {
+        return _nonContributorIterations;
+    }
+
+    /**
+     * @return The ids of the persons of interest, or null to use the
+     * contributors under the prosecution hypothesis that are not contributors
+     * under the defense hypothesis
+     */
+    public List<String> getPersonsOfInterest() {
+        return _personsOfInterest;
+    }
+
+    /**
+     * @return The directory or manifest file of a batch run, or null if a
+     * single case is analysed
+     */
+    public String getBatchSource() {
+        return _batchSource;
+    }
+
+    /**
+     * @return The directory to write the reports of a batch run to
+     */
+    public String getOutputDirectory() {
+        return _outputDirectory;
+    }
+
+    /**
+     * @return The number of cases of a batch run that are analysed at the same
+     * time
+     */
+    public int getConcurrentCases() {
+        return _concurrentCases;
+    }
+
+    /**
+     * @return The addresses of the workers to evaluate the likelihood ratio
+     * on, or an empty list to evaluate it in this process
+     */
+    public List<InetSocketAddress> getWorkers() {
+        return Collections.unmodifiableList(_workers);
+    }
+
+    /**
+     * @return The directory in which the progress of the analysis is saved,
+     * or null to use the directory in the application settings
+     */
+    public String getCheckpointDirectory() {
+        return _checkpointDirectory;
+    }
+
+    /**
+     * @return The file to append the validation trace of the analysis to, or
+     * null to use the file in the application settings
+     */
+    public String getValidationTraceFile() {
+        return _validationTraceFile;
+    }
+
+    /**
+     * @return The port to listen on in worker mode, or null if not running as
+     * a worker
+     */
+    public Integer getWorkerPort() {
+        return _workerPort;
+    }
+
+    /**
+     * @return The address to listen on in worker mode, or null to listen on
+     * the loopback interface
+     */
+    public String getWorkerAddress() {
+        return _workerAddress;
+    }
+
+    /**
+     * @return The secret shared by coordinator and workers, or null to use
+     * the secret in the application settings
+     */
+    public String getSecret() {
+        return _secret;
+    }
+
+    /**
+     * @return All arguments except those that control the batch run. In batch
+     * mode, these arguments are prepended to the arguments of every case.
+     */
+    public List<String> getCaseArguments() {
+        return Collections.unmodifiableList(_caseArguments);
+    }
+
+    /**
+     * @return The output format
+     */
+    public Format getFormat() {
+        return _format;
+    }
+
+    /**
+     * @return The name of the output file, or null to write to standard output
+     */
+    public String getOutputFile() {
+        return _outputFile;
+    }
+}
@@ -0,0 +1,403 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.cli;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.ConsoleAppender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.gui.ApplicationSettings;
+import nl.minvenj.nfi.lrmixstudio.gui.PathResolver;
+import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
+import nl.minvenj.nfi.lrmixstudio.gui.tabs.noncontributor.NonContributorTest;
+import nl.minvenj.nfi.lrmixstudio.gui.tabs.sensitivity.DropoutEstimator;
+import nl.minvenj.nfi.lrmixstudio.gui.tabs.sensitivity.SensitivityAnalysis;
+import nl.minvenj.nfi.lrmixstudio.io.PopulationStatisticsReader;
+import nl.minvenj.nfi.lrmixstudio.io.SampleReader;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisReport;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
+import nl.minvenj.nfi.lrmixstudio.model.DropoutEstimation;
+import nl.minvenj.nfi.lrmixstudio.model.LRMathModel;
+import nl.minvenj.nfi.lrmixstudio.model.LRMathModelFactory;
+import nl.minvenj.nfi.lrmixstudio.model.NonContributorTestResults;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropDistributed;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropThreadPool;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropWorker;
+
+/**
+ * Runs an analysis without a user interface. The case is either restored from
+ * a session file or read from replicate, profile and population statistics
+ * files. After the likelihood ratio is calculated, a sensitivity analysis, a
+ * dropout estimation and a non-contributor test can be performed, using the
+ * same classes as the user interface. The results are written as JSON or CSV
+ * by a {@link ResultWriter}. In batch mode, a directory or manifest of cases is
+ * analysed by a {@link BatchPipeline}. In worker mode, the runner evaluates
+ * permutation ranges for other runners, see {@link SplitDropWorker}.
+ */
+public final class LRmixStudioCli {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LRmixStudioCli.class);
+    private static final BigDecimal DROPOUT_ESTIMATION_FROM = new BigDecimal("0.00");
+    private static final BigDecimal DROPOUT_ESTIMATION_TO = new BigDecimal("0.99");
+    private static final BigDecimal DROPOUT_ESTIMATION_STEPS = new BigDecimal("99");
+
+    /**
+     * The exit code for a successful run.
+     */
+    public static final int EXIT_OK = 0;
+    /**
+     * The exit code if the analysis failed.
+     */
+    public static final int EXIT_FAILED = 1;
+    /**
+     * The exit code if the command line arguments were invalid.
+     */
+    public static final int EXIT_USAGE = 2;
+
+    private LRmixStudioCli() {
+    }
+
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        // The results may be written to standard output, so log messages go to standard error
+        final Appender console = org.apache.log4j.Logger.getRootLogger().getAppender("ConsoleAppender");
+        if (console instanceof ConsoleAppender) {
+            ((ConsoleAppender) console).setTarget(ConsoleAppender.SYSTEM_ERR);
+            ((ConsoleAppender) console).activateOptions();
+        }
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Parses the arguments, performs the requested analyses and writes the
+     * results.
+     *
+     * @param args The command line arguments
+     * @param out The stream to write the results to if no output file is
+     * specified
+     * @param err The stream to write error messages to
+     * @return One of {@link #EXIT_OK}, {@link #EXIT_FAILED} or
+     * {@link #EXIT_USAGE}
+     */
+    public static int run(final String[] args, final PrintStream out, final PrintStream err) {
+        final CommandLineOptions options;
+        try {
+            options = CommandLineOptions.parse(args);
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println();
+            err.print(CommandLineOptions.getUsage());
+            return EXIT_USAGE;
+        }
+        if (options.isHelp()) {
+            out.print(CommandLineOptions.getUsage());
+            return EXIT_OK;
+        }
+
+        if ((options.getWorkerPort() != null || !options.getWorkers().isEmpty()) && getSecret(options).isEmpty()) {
+            err.println("No shared secret specified for the workers. Use --secret or the distributedSecret setting");
+            return EXIT_USAGE;
+        }
+        if (options.getWorkerPort() != null) {
+            return runWorker(options, out, err);
+        }
+        if (options.getBatchSource() != null) {
+            return runBatch(options, out, err);
+        }
+
+        try {
+            final SessionData session = createSession(options);
+            final List<NonContributorTestResults> nonContributorTestResults = analyse(session, options);
+            final ResultWriter writer = new ResultWriter(session, session.getCurrentReport(), nonContributorTestResults);
+            if (options.getOutputFile() == null) {
+                final Writer outputWriter = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                writer.write(options.getFormat(), outputWriter);
+                outputWriter.flush();
+            } else {
+                try (Writer outputWriter = new OutputStreamWriter(new FileOutputStream(options.getOutputFile()), StandardCharsets.UTF_8)) {
+                    writer.write(options.getFormat(), outputWriter);
+                }
+            }
+            return EXIT_OK;
+        } catch (final InterruptedException e) {
+            err.println("Analysis interrupted");
+            return EXIT_FAILED;
+        } catch (final Exception e) {
+            LOG.error("Error running analysis", e);
+            err.println("Error: " + (e.getMessage() == null ? e.getClass().getName() : e.getMessage()));
+            return EXIT_FAILED;
+        }
+    }
+
+    private static int runWorker(final CommandLineOptions options, final PrintStream out, final PrintStream err) {
+        final int threadCount = options.getThreadCount() == null ? ComputeService.getInstance().getThreadCount() : options.getThreadCount();
+        try {
+            final InetAddress address = options.getWorkerAddress() == null ? null : InetAddress.getByName(options.getWorkerAddress());
+            final SplitDropWorker worker = new SplitDropWorker(address, options.getWorkerPort(), threadCount, getSecret(options));
+            worker.start();
+            out.println("Listening on port " + worker.getPort());
+            out.flush();
+            worker.join();
+            return EXIT_OK;
+        } catch (final InterruptedException e) {
+            err.println("Worker interrupted");
+            return EXIT_FAILED;
+        } catch (final IOException e) {
+            LOG.error("Error starting worker", e);
+            err.println("Error: " + e.getMessage());
+            return EXIT_FAILED;
+        }
+    }
+
+    private static String getSecret(final CommandLineOptions options) {
+        return options.getSecret() == null ? ApplicationSettings.getDistributedSecret() : options.getSecret();
+    }
+
+    private static int runBatch(final CommandLineOptions options, final PrintStream out, final PrintStream err) {
+        try {
+            final List<BatchCase> cases = BatchPipeline.readCases(new File(options.getBatchSource()), options.getCaseArguments());
+            final BatchPipeline pipeline = new BatchPipeline(cases, new File(options.getOutputDirectory()), options.getFormat(), options.getConcurrentCases());
+            pipeline.run();
+            out.println(String.format("Processed %d cases (%d failed) in %.1f seconds: %.1f cases per hour", cases.size(), pipeline.getFailedCount(), pipeline.getElapsedTime() / 1000.0, pipeline.getCasesPerHour()));
+            for (final BatchCase batchCase : cases) {
+                if (batchCase.getError() != null) {
+                    err.println(batchCase.getName() + ": " + (batchCase.getError().getMessage() == null ? batchCase.getError().getClass().getName() : batchCase.getError().getMessage()));
+                }
+            }
+            return pipeline.getFailedCount() == 0 ? EXIT_OK : EXIT_FAILED;
+        } catch (final InterruptedException e) {
+            err.println("Batch interrupted");
+            return EXIT_FAILED;
+        } catch (final IOException e) {
+            LOG.error("Error running batch", e);
+            err.println("Error: " + e.getMessage());
+            return EXIT_FAILED;
+        }
+    }
+
+    /**
+     * Creates a session from a session file or from case files.
+     *
+     * @param options The command line options
+     * @return A session that is ready for analysis
+     * @throws IOException if one of the input files could not be read
+     * @throws IllegalArgumentException if the session could not be restored or
+     * a contributor was not found in the profiles
+     */
+    static SessionData createSession(final CommandLineOptions options) throws IOException {
+        final SessionData session = new SessionData();
+        if (options.getSessionFile() != null) {
+            if (!session.restore(new PathResolver(null), new File(options.getSessionFile()))) {
+                throw new IllegalArgumentException("Could not restore session from " + options.getSessionFile() + ": " + session.getErrorMessage());
+            }
+        } else {
+            session.setCaseNumber(options.getCaseNumber());
+            final PopulationStatistics statistics = new PopulationStatisticsReader(options.getStatisticsFile()).getStatistics();
+            session.setStatistics(statistics);
+            // Setting the statistics applies the rare allele frequency from the application settings
+            if (options.getRareAlleleFrequency() != null) {
+                session.setRareAlleleFrequency(options.getRareAlleleFrequency());
+            }
+            for (final String fileName : options.getReplicateFiles()) {
+                session.addReplicates(new SampleReader(new File(fileName), true).getSamples());
+            }
+            for (final String fileName : options.getProfileFiles()) {
+                session.addProfiles(new SampleReader(new File(fileName), false).getSamples());
+            }
+            session.setProsecution(createHypothesis(session, "Prosecution", options.getProsecutionContributors(), options.getProsecutionUnknowns(), options));
+            session.setDefense(createHypothesis(session, "Defense", options.getDefenseContributors(), options.getDefenseUnknowns(), options));
+        }
+
+        if (options.getModelName() != null) {
+            session.setMathematicalModelName(options.getModelName());
+        } else if (session.getMathematicalModelName() == null) {
+            session.setMathematicalModelName(LRMathModelFactory.getDefaultModelName());
+        }
+        if (options.getThreadCount() != null) {
+            session.setThreadCount(options.getThreadCount());
+        }
+        return session;
+    }
+
+    private static Hypothesis createHypothesis(final SessionData session, final String id, final Collection<String> contributors, final int unknowns, final CommandLineOptions options) {
+        final Hypothesis hypothesis = new Hypothesis(id, unknowns, session.getStatistics(), options.getDropin(), options.getDropout(), options.getTheta());
+        for (final String contributorId : contributors) {
+            findProfile(session, contributorId);
+        }
+        for (final Sample profile : session.getAllProfiles()) {
+            if (contains(contributors, profile.getId())) {
+                hypothesis.addContributor(profile, options.getDropout());
+            } else {
+                hypothesis.addNonContributor(profile, 0);
+            }
+        }
+        return hypothesis;
+    }
+
+    private static boolean contains(final Collection<String> ids, final String id) {
+        for (final String candidate : ids) {
+            if (candidate.equalsIgnoreCase(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Sample findProfile(final SessionData session, final String id) {
+        for (final Sample profile : session.getAllProfiles()) {
+            if (profile.getId().equalsIgnoreCase(id)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Profile '" + id + "' was not found in the profile files");
+    }
+
+    /**
+     * Checks that a session holds everything needed for an analysis.
+     *
+     * @param session The session to check
+     * @throws IllegalArgumentException if the session lacks a hypothesis,
+     * replicates, population statistics or enabled loci
+     */
+    static void validate(final SessionData session) {
+        if (session.getProsecution() == null || session.getDefense() == null) {
+            throw new IllegalArgumentException("The session does not define both hypotheses");
+        }
+        if (session.getActiveReplicates().isEmpty()) {
+            throw new IllegalArgumentException("The session does not contain any replicates");
+        }
+        if (session.getStatistics() == null) {
+            throw new IllegalArgumentException("The session does not contain population statistics");
+        }
+        if (session.getEnabledLoci().isEmpty()) {
+            throw new IllegalArgumentException("The session does not contain any enabled loci");
+        }
+    }
+
+    /**
+     * Performs the analysis and all requested additional analyses. The results
+     * are stored in the current report of the session.
+     *
+     * @return The results of the non-contributor test for each person of
+     * interest, or an empty list if no test was requested
+     */
+    static List<NonContributorTestResults> analyse(final SessionData session, final CommandLineOptions options) throws InstantiationException, IllegalAccessException, InterruptedException {
+        validate(session);
+        if (options.getWorkers().isEmpty()) {
+            final LRMathModel model = LRMathModelFactory.getMathematicalModel(session.getMathematicalModelName());
+            if (options.getCheckpointDirectory() != null && model instanceof SplitDropThreadPool) {
+                ((SplitDropThreadPool) model).setCheckpointDirectory(new File(options.getCheckpointDirectory()));
+            }
+            if (options.getValidationTraceFile() != null && model instanceof SplitDropThreadPool) {
+                ((SplitDropThreadPool) model).setValidationTraceFile(new File(options.getValidationTraceFile()));
+            }
+            model.doAnalysis(session);
+        } else {
+            final SplitDropDistributed model = new SplitDropDistributed(options.getWorkers(), getSecret(options));
+            if (options.getCheckpointDirectory() != null) {
+                model.setCheckpointDirectory(new File(options.getCheckpointDirectory()));
+            }
+            if (options.getValidationTraceFile() != null) {
+                model.setValidationTraceFile(new File(options.getValidationTraceFile()));
+            }
+            try {
+                model.doAnalysis(session);
+            } finally {
+                model.close();
+            }
+        }
+        final AnalysisReport report = session.getCurrentReport();
+        if (report.getException() != null) {
+            throw new IllegalArgumentException("Analysis failed: " + report.getException().getMessage(), report.getException());
+        }
+
+        final ArrayList<Sample> personsOfInterest = getPersonsOfInterest(session, options);
+        final ArrayList<NonContributorTestResults> nonContributorTestResults = new ArrayList<>();
+        if (options.isSensitivityAnalysis() || options.getDropoutEstimationIterations() > 0 || options.getNonContributorIterations() > 0) {
+            if (personsOfInterest.isEmpty()) {
+                throw new IllegalArgumentException("No persons of interest. Use --poi to specify them.");
+            }
+        }
+
+        if (options.isSensitivityAnalysis()) {
+            final SensitivityAnalysis sensitivityAnalysis = new SensitivityAnalysis(session, null, personsOfInterest, options.getSensitivityFrom(), options.getSensitivityTo(), options.getSensitivitySteps(), BigDecimal.valueOf(session.getProsecution().getDropInProbability()), BigDecimal.valueOf(session.getProsecution().getThetaCorrection()), null, options.isVaryUnknowns(), options.isVaryUnknowns());
+            sensitivityAnalysis.start();
+            sensitivityAnalysis.join();
+            if (report.getSensitivityAnalysisResults().getRanges().isEmpty()) {
+                throw new IllegalArgumentException("The sensitivity analysis produced no results. See the log file for details.");
+            }
+        }
+
+        if (options.getDropoutEstimationIterations() > 0) {
+            final DropoutEstimator estimator = new DropoutEstimator(session, personsOfInterest, DROPOUT_ESTIMATION_FROM, DROPOUT_ESTIMATION_TO, DROPOUT_ESTIMATION_STEPS, BigDecimal.valueOf(session.getProsecution().getDropInProbability()), null, options.getDropoutEstimationIterations(), options.isVaryUnknowns(), options.isVaryUnknowns());
+            final DropoutEstimation estimation = estimator.estimate();
+            report.getSensitivityAnalysisResults().setDropoutEstimation(estimation);
+        }
+
+        if (options.getNonContributorIterations() > 0) {
+            for (final Sample personOfInterest : personsOfInterest) {
+                final NonContributorTest test = new NonContributorTest(session, personOfInterest, options.getNonContributorIterations(), null);
+                test.start();
+                test.join();
+                final NonContributorTestResults results = report.getNonContributorTestResults();
+                if (results == null || results.getIterations() < options.getNonContributorIterations()) {
+                    throw new IllegalArgumentException("The non-contributor test for " + personOfInterest.getId() + " did not complete. See the log file for details.");
+                }
+                nonContributorTestResults.add(results);
+            }
+        }
+        return nonContributorTestResults;
+    }
+
+    private static ArrayList<Sample> getPersonsOfInterest(final SessionData session, final CommandLineOptions options) {
+        final ArrayList<Sample> personsOfInterest = new ArrayList<>();
+        if (options.getPersonsOfInterest() != null) {
+            for (final String id : options.getPersonsOfInterest()) {
+                final Sample profile = findProfile(session, id);
+                if (!session.getProsecution().isContributor(profile) && !session.getDefense().isContributor(profile)) {
+                    throw new IllegalArgumentException("Person of interest '" + id + "' is not a contributor under either hypothesis");
+                }
+                personsOfInterest.add(profile);
+            }
+        } else {
+            for (final Contributor contributor : session.getProsecution().getContributors()) {
+                if (!session.getDefense().isContributor(contributor.getSample())) {
+                    personsOfInterest.add(contributor.getSample());
+                }
+            }
+        }
+        return personsOfInterest;
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.cli;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.Ratio;
+import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisReport;
+import nl.minvenj.nfi.lrmixstudio.model.DropoutEstimation;
+import nl.minvenj.nfi.lrmixstudio.model.NonContributorTestResults;
+import nl.minvenj.nfi.lrmixstudio.model.SensitivityAnalysisResults.Point;
+import nl.minvenj.nfi.lrmixstudio.model.SensitivityAnalysisResults.Range;
+import nl.minvenj.nfi.lrmixstudio.model.SensitivityAnalysisResults.RangeType;
+
+/**
+ * Writes the results of an analysis as JSON or CSV. The output contains the
+ * probabilities of the evidence and the likelihood ratio for every locus and
+ * overall, followed by the results of the sensitivity analysis, dropout
+ * estimation and non-contributor test if these were performed.
+ *
+ * In JSON, values that cannot be represented (NaN and infinity) are written as
+ * null. The CSV output consists of a block with a header line for each type of
+ * result, separated by empty lines.
+ */
+public class ResultWriter {
+
+    private static final String CSV_SEPARATOR = ",";
+    private final SessionData _session;
+    private final AnalysisReport _report;
+    private final Collection<NonContributorTestResults> _nonContributorTestResults;
+
+    /**
+     * Creates a new writer.
+     *
+     * @param session The session that was analysed
+     * @param report The report containing the results of the analysis
+     * @param nonContributorTestResults The results of the non-contributor test
+     * for each person of interest
+     */
+    public ResultWriter(final SessionData session, final AnalysisReport report, final Collection<NonContributorTestResults> nonContributorTestResults) {
+        if (report == null || report.getLikelihoodRatio() == null) {
+            throw new IllegalArgumentException("No analysis results to write!");
+        }
+        _session = session;
+        _report = report;
+        _nonContributorTestResults = new ArrayList<>(nonContributorTestResults);
+    }
+
+    /**
+     * Writes the results in the requested format.
+     *
+     * @param format The output format
+     * @param writer The writer to write to
+     * @throws IOException if writing failed
+     */
+    public void write(final CommandLineOptions.Format format, final Writer writer) throws IOException {
+        if (format == CommandLineOptions.Format.CSV) {
+            writeCsv(writer);
+        } else {
+            writeJson(writer);
+        }
+    }
+
+    /**
+     * Writes the results as a single JSON object.
+     *
+     * @param writer The writer to write to
+     * @throws IOException if writing failed
+     */
+    public void writeJson(final Writer writer) throws IOException {
+        final LikelihoodRatio lr = _report.getLikelihoodRatio();
+        writer.write("{\n");
+        writer.write("  \"caseNumber\": " + jsonString(_session.getCaseNumber()) + ",\n");
+        writer.write("  \"model\": " + jsonString(_session.getMathematicalModelName()) + ",\n");
+        writer.write("  \"processingTime\": " + _report.getProcessingTime() + ",\n");
+        writer.write("  \"loci\": [");
+        String separator = "\n";
+        for (final Ratio ratio : lr.getRatios()) {
+            writer.write(separator + "    {\"locus\": " + jsonString(ratio.getLocusName()) + ", " + jsonRatio(ratio) + "}");
+            separator = ",\n";
+        }
+        writer.write("\n  ],\n");
+        writer.write("  \"overall\": {" + jsonRatio(lr.getOverallRatio()) + "}");
+
+        final Map<BigDecimal, Double[]> sensitivity = getSensitivityPoints();
+        if (!sensitivity.isEmpty()) {
+            writer.write(",\n  \"sensitivity\": [");
+            separator = "\n";
+            for (final Map.Entry<BigDecimal, Double[]> entry : sensitivity.entrySet()) {
+                final Double[] values = entry.getValue();
+                writer.write(separator + "    {\"dropout\": " + jsonNumber(entry.getKey()) + ", \"log10LR\": " + jsonNumber(values[0]) + ", \"log10Prosecution\": " + jsonNumber(values[1]) + ", \"log10Defense\": " + jsonNumber(values[2]) + "}");
+                separator = ",\n";
+            }
+            writer.write("\n  ]");
+        }
+
+        final DropoutEstimation estimation = _report.getSensitivityAnalysisResults().getDropoutEstimation();
+        if (estimation != null) {
+            writer.write(",\n  \"dropoutEstimation\": {\"iterations\": " + estimation.getIterations()
+                    + ", \"prosecutionMinimum\": " + jsonNumber(estimation.getProsecutionMinimum())
+                    + ", \"prosecutionMaximum\": " + jsonNumber(estimation.getProsecutionMaximum())
+                    + ", \"defenseMinimum\": " + jsonNumber(estimation.getDefenseMinimum())
+                    + ", \"defenseMaximum\": " + jsonNumber(estimation.getDefenseMaximum()) + "}");
+        }
+
+        if (!_nonContributorTestResults.isEmpty()) {
+            writer.write(",\n  \"nonContributorTest\": [");
+            separator = "\n";
+            for (final NonContributorTestResults results : _nonContributorTestResults) {
+                writer.write(separator + "    {\"personOfInterest\": " + jsonString(results.getDescription())
+                        + ", \"iterations\": " + results.getIterations()
+                        + ", \"originalLR\": " + jsonNumber(results.getOriginalLR())
+                        + ", \"minimum\": " + jsonNumber(results.getMinimum())
+                        + ", \"onePercent\": " + jsonNumber(results.getOnePercent())
+                        + ", \"median\": " + jsonNumber(results.getFiftyPercent())
+                        + ", \"ninetyNinePercent\": " + jsonNumber(results.getNinetyninePercent())
+                        + ", \"maximum\": " + jsonNumber(results.getMaximum())
+                        + ", \"percentageOverOriginalLR\": " + results.getPercentageOverOriginalLR()
+                        + ", \"percentageOver1\": " + results.getPercentageOver1() + "}");
+                separator = ",\n";
+            }
+            writer.write("\n  ]");
+        }
+        writer.write("\n}\n");
+    }
+
+    /**
+     * Writes the results as CSV.
+     *
+     * @param writer The writer to write to
+     * @throws IOException if writing failed
+     */
+    public void writeCsv(final Writer writer) throws IOException {
+        final LikelihoodRatio lr = _report.getLikelihoodRatio();
+        writeCsvLine(writer, "Locus", "Pr(E|Hp)", "Pr(E|Hd)", "LR", "Log10(LR)");
+        for (final Ratio ratio : lr.getRatios()) {
+            writeCsvRatio(writer, ratio);
+        }
+        writeCsvRatio(writer, lr.getOverallRatio());
+
+        final Map<BigDecimal, Double[]> sensitivity = getSensitivityPoints();
+        if (!sensitivity.isEmpty()) {
+            writer.write("\n");
+            writeCsvLine(writer, "Dropout", "Log10(LR)", "Log10(Pr(E|Hp))", "Log10(Pr(E|Hd))");
+            for (final Map.Entry<BigDecimal, Double[]> entry : sensitivity.entrySet()) {
+                final Double[] values = entry.getValue();
+                writeCsvLine(writer, csvValue(entry.getKey()), csvValue(values[0]), csvValue(values[1]), csvValue(values[2]));
+            }
+        }
+
+        final DropoutEstimation estimation = _report.getSensitivityAnalysisResults().getDropoutEstimation();
+        if (estimation != null) {
+            writer.write("\n");
+            writeCsvLine(writer, "Dropout estimation", "Iterations", "Minimum", "Maximum");
+            writeCsvLine(writer, "Prosecution", "" + estimation.getIterations(), csvValue(estimation.getProsecutionMinimum()), csvValue(estimation.getProsecutionMaximum()));
+            writeCsvLine(writer, "Defense", "" + estimation.getIterations(), csvValue(estimation.getDefenseMinimum()), csvValue(estimation.getDefenseMaximum()));
+        }
+
+        if (!_nonContributorTestResults.isEmpty()) {
+            writer.write("\n");
+            writeCsvLine(writer, "Person of interest", "Iterations", "Original LR", "Minimum", "1%", "50%", "99%", "Maximum", "% over original LR", "% over 1");
+            for (final NonContributorTestResults results : _nonContributorTestResults) {
+                writeCsvLine(writer, csvString(results.getDescription()), "" + results.getIterations(), csvValue(results.getOriginalLR()), csvValue(results.getMinimum()), csvValue(results.getOnePercent()), csvValue(results.getFiftyPercent()), csvValue(results.getNinetyninePercent()), csvValue(results.getMaximum()), "" + results.getPercentageOverOriginalLR(), "" + results.getPercentageOver1());
+            }
+        }
+    }
+
+    /**
+     * Collects the points of the sensitivity analysis ranges by dropout
+     * probability. The values are the log10 of the LR and of the probabilities
+     * under the prosecution and defense hypotheses, or null if a range has no
+     * point for a dropout probability.
+     */
+    private Map<BigDecimal, Double[]> getSensitivityPoints() {
+        final TreeMap<BigDecimal, Double[]> points = new TreeMap<>();
+        for (final Range range : _report.getSensitivityAnalysisResults().getRanges()) {
+            final int index = range.getRangeType() == RangeType.LR ? 0 : range.getRangeType() == RangeType.P_PROSECUTION ? 1 : 2;
+            for (final Point point : range.getPoints()) {
+                Double[] values = points.get(point.getX());
+                if (values == null) {
+                    values = new Double[3];
+                    points.put(point.getX(), values);
+                }
+                values[index] = point.getY() == null ? null : point.getY().doubleValue();
+            }
+        }
+        return points;
+    }
+
+    private static String jsonRatio(final Ratio ratio) {
+        return "\"prosecution\": " + jsonNumber(ratio.getProsecutionProbability())
+                + ", \"defense\": " + jsonNumber(ratio.getDefenseProbability())
+                + ", \"lr\": " + jsonNumber(ratio.getRatio())
+                + ", \"log10LR\": " + jsonNumber(ratio.getLog10Ratio());
+    }
+
+    private static String jsonNumber(final Number number) {
+        if (number == null || Double.isNaN(number.doubleValue()) || Double.isInfinite(number.doubleValue())) {
+            return "null";
+        }
+        return number.toString();
+    }
+
+    private static String jsonString(final String value) {
+        if (value == null) {
+            return "null";
+        }
+        final StringBuilder builder = new StringBuilder("\"");
+        for (final char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static void writeCsvRatio(final Writer writer, final Ratio ratio) throws IOException {
+        writeCsvLine(writer, csvString(ratio.getLocusName()), csvValue(ratio.getProsecutionProbability()), csvValue(ratio.getDefenseProbability()), csvValue(ratio.getRatio()), csvValue(ratio.getLog10Ratio()));
+    }
+
+    private static void writeCsvLine(final Writer writer, final String... fields) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        for (final String field : fields) {
+            if (line.length() > 0) {
+                line.append(CSV_SEPARATOR);
+            }
+            line.append(field);
+        }
+        writer.write(line.append("\n").toString());
+    }
+
+    private static String csvValue(final Number number) {
+        return number == null ? "" : number.toString();
+    }
+
+    private static String csvString(final String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(CSV_SEPARATOR) || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replaceAll("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
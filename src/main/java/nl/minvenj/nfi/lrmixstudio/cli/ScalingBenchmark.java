@@ -0,0 +1,461 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.cli;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.ConsoleAppender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
+import nl.minvenj.nfi.lrmixstudio.io.PopulationStatisticsReader;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisReport;
+import nl.minvenj.nfi.lrmixstudio.model.DefaultAnalysisProgressListenerImpl;
+import nl.minvenj.nfi.lrmixstudio.model.LRMathModel;
+import nl.minvenj.nfi.lrmixstudio.model.LRMathModelFactory;
+import nl.minvenj.nfi.lrmixstudio.model.SyntheticCaseGenerator;
+import nl.minvenj.nfi.lrmixstudio.model.SyntheticCaseGenerator.SyntheticCase;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.LocusProbabilityCache;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropThreadPool;
+
+/**
+ * Measures how the calculation time scales with the size of a case. A grid of
+ * synthetic cases is generated by a {@link SyntheticCaseGenerator}, written to
+ * files and analysed by every requested model through the same code path as
+ * the command line runner. For every run, the wall clock time, the number of
+ * evaluated permutations (the sum of the job sizes reported to the progress
+ * listeners), the permutations per second and the peak heap usage are written
+ * as a line of CSV.
+ *
+ * Under the prosecution hypothesis, Contributor1 is a contributor and the
+ * other contributors are unknowns. Under the defense hypothesis, all
+ * contributors are unknowns.
+ */
+public final class ScalingBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScalingBenchmark.class);
+    private static final String CSV_SEPARATOR = ",";
+    static final String CSV_HEADER = "model,contributors,replicates,loci,alleles_per_locus,repetition,status,time_ms,permutations,permutations_per_second,peak_heap_bytes,log10_lr";
+
+    private String _statisticsFile;
+    private List<String> _models = new ArrayList<>();
+    private List<Integer> _contributors = Arrays.asList(1, 2, 3);
+    private List<Integer> _replicates = Arrays.asList(1, 2, 3);
+    private List<Integer> _loci = new ArrayList<>();
+    private List<Integer> _allelesPerLocus = Arrays.asList(0);
+    private double _dropout = 0.1;
+    private double _dropin = 0.05;
+    private double _theta = 0.01;
+    private long _seed = 1;
+    private int _repetitions = 1;
+    private Integer _threadCount;
+    private long _timeout;
+    private String _casesDirectory;
+    private String _outputFile;
+    private boolean _help;
+
+    private ScalingBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        // The measurements may be written to standard output, so log messages go to standard error
+        final Appender console = org.apache.log4j.Logger.getRootLogger().getAppender("ConsoleAppender");
+        if (console instanceof ConsoleAppender) {
+            ((ConsoleAppender) console).setTarget(ConsoleAppender.SYSTEM_ERR);
+            ((ConsoleAppender) console).activateOptions();
+        }
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Parses the arguments, runs the grid of cases and writes the
+     * measurements.
+     *
+     * @param args The command line arguments
+     * @param out The stream to write the measurements to if no output file is
+     * specified
+     * @param err The stream to write error messages to
+     * @return One of {@link LRmixStudioCli#EXIT_OK},
+     * {@link LRmixStudioCli#EXIT_FAILED} or {@link LRmixStudioCli#EXIT_USAGE}
+     */
+    public static int run(final String[] args, final PrintStream out, final PrintStream err) {
+        final ScalingBenchmark benchmark;
+        try {
+            benchmark = parse(args);
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println();
+            err.print(getUsage());
+            return LRmixStudioCli.EXIT_USAGE;
+        }
+        if (benchmark._help) {
+            out.print(getUsage());
+            return LRmixStudioCli.EXIT_OK;
+        }
+
+        try {
+            if (benchmark._outputFile == null) {
+                final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                benchmark.run(writer);
+                writer.flush();
+            } else {
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(benchmark._outputFile), StandardCharsets.UTF_8)) {
+                    benchmark.run(writer);
+                }
+            }
+            return LRmixStudioCli.EXIT_OK;
+        } catch (final InterruptedException e) {
+            err.println("Benchmark interrupted");
+            return LRmixStudioCli.EXIT_FAILED;
+        } catch (final Exception e) {
+            LOG.error("Error running benchmark", e);
+            err.println("Error: " + (e.getMessage() == null ? e.getClass().getName() : e.getMessage()));
+            return LRmixStudioCli.EXIT_FAILED;
+        }
+    }
+
+    static ScalingBenchmark parse(final String[] args) {
+        final ScalingBenchmark benchmark = new ScalingBenchmark();
+        for (int idx = 0; idx < args.length; idx++) {
+            final String arg = args[idx];
+            if ("--help".equals(arg) || "-h".equals(arg)) {
+                benchmark._help = true;
+                return benchmark;
+            }
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument '" + arg + "'");
+            }
+            if (idx + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            final String value = args[++idx];
+            switch (arg) {
+                case "--statistics":
+                    benchmark._statisticsFile = value;
+                    break;
+                case "--models":
+                    benchmark._models = parseModels(value);
+                    break;
+                case "--contributors":
+                    benchmark._contributors = parseCounts(arg, value, 1);
+                    break;
+                case "--replicates":
+                    benchmark._replicates = parseCounts(arg, value, 1);
+                    break;
+                case "--loci":
+                    benchmark._loci = parseCounts(arg, value, 1);
+                    break;
+                case "--alleles-per-locus":
+                    benchmark._allelesPerLocus = parseCounts(arg, value, 0);
+                    break;
+                case "--dropout":
+                    benchmark._dropout = parseProbability(arg, value);
+                    break;
+                case "--dropin":
+                    benchmark._dropin = parseProbability(arg, value);
+                    break;
+                case "--theta":
+                    benchmark._theta = parseProbability(arg, value);
+                    break;
+                case "--seed":
+                    try {
+                        benchmark._seed = Long.parseLong(value);
+                    } catch (final NumberFormatException e) {
+                        throw new IllegalArgumentException("The value of " + arg + " must be a whole number, not '" + value + "'");
+                    }
+                    break;
+                case "--repetitions":
+                    benchmark._repetitions = parseCount(arg, value, 1);
+                    break;
+                case "--threads":
+                    benchmark._threadCount = parseCount(arg, value, 1);
+                    break;
+                case "--timeout":
+                    benchmark._timeout = parseCount(arg, value, 0);
+                    break;
+                case "--cases-dir":
+                    benchmark._casesDirectory = value;
+                    break;
+                case "--output":
+                    benchmark._outputFile = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option '" + arg + "'");
+            }
+        }
+        if (benchmark._statisticsFile == null) {
+            throw new IllegalArgumentException("No population statistics specified. Use --statistics");
+        }
+        if (benchmark._models.isEmpty()) {
+            benchmark._models.add(LRMathModelFactory.getDefaultModelName());
+        }
+        return benchmark;
+    }
+
+    private static List<String> parseModels(final String value) {
+        final ArrayList<String> models = new ArrayList<>();
+        for (final String item : value.split(",")) {
+            if (item.trim().equalsIgnoreCase("all")) {
+                for (final String name : LRMathModelFactory.getAllModelNames()) {
+                    models.add(name);
+                }
+            } else if (!item.trim().isEmpty()) {
+                models.add(findModel(item.trim()));
+            }
+        }
+        return models;
+    }
+
+    private static String findModel(final String name) {
+        for (final String candidate : LRMathModelFactory.getAllModelNames()) {
+            if (candidate.equalsIgnoreCase(name)) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("Unknown model '" + name + "'");
+    }
+
+    private static List<Integer> parseCounts(final String arg, final String value, final int minimum) {
+        final ArrayList<Integer> counts = new ArrayList<>();
+        for (final String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                counts.add(parseCount(arg, item.trim(), minimum));
+            }
+        }
+        if (counts.isEmpty()) {
+            throw new IllegalArgumentException("No values specified for " + arg);
+        }
+        return counts;
+    }
+
+    private static int parseCount(final String arg, final String value, final int minimum) {
+        try {
+            final int count = Integer.parseInt(value);
+            if (count < minimum) {
+                throw new IllegalArgumentException("The values of " + arg + " must be at least " + minimum);
+            }
+            return count;
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + arg + " must be a whole number, not '" + value + "'");
+        }
+    }
+
+    private static double parseProbability(final String arg, final String value) {
+        try {
+            final double probability = Double.parseDouble(value);
+            if (probability < 0 || probability > 1) {
+                throw new IllegalArgumentException("The value of " + arg + " must be within [0, 1]");
+            }
+            return probability;
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + arg + " must be a number, not '" + value + "'");
+        }
+    }
+
+    /**
+     * @return A description of all options
+     */
+    public static String getUsage() {
+        return "Usage: java -cp LRmixStudio.jar nl.minvenj.nfi.lrmixstudio.cli.ScalingBenchmark [options]\n"
+                + "\n"
+                + "Cases:\n"
+                + "  --statistics <file>              The population statistics file to draw alleles from\n"
+                + "  --contributors <count,...>       The numbers of contributors (default 1,2,3)\n"
+                + "  --replicates <count,...>         The numbers of replicates (default 1,2,3)\n"
+                + "  --loci <count,...>               The numbers of loci (default all loci in the statistics)\n"
+                + "  --alleles-per-locus <count,...>  The minimum numbers of distinct alleles per locus, reached by adding\n"
+                + "                                   drop-in alleles (default 0: only the alleles of the contributors)\n"
+                + "  --dropout <value>                The dropout probability (default 0.1)\n"
+                + "  --dropin <value>                 The drop-in probability of the analysis (default 0.05)\n"
+                + "  --theta <value>                  The theta correction of the analysis (default 0.01)\n"
+                + "  --seed <value>                   The seed of the case generator (default 1)\n"
+                + "  --cases-dir <directory>          Keep the generated cases in this directory\n"
+                + "\n"
+                + "Runs:\n"
+                + "  --models <name,...|all>          The mathematical models (default: the default model)\n"
+                + "  --threads <count>                The number of threads to use\n"
+                + "  --repetitions <count>            The number of runs of every case and model (default 1)\n"
+                + "  --timeout <seconds>              Interrupt runs that take longer than this (default 0: no limit)\n"
+                + "  --output <file>                  The CSV output file (default standard output)\n"
+                + "  --help                           Show this message\n";
+    }
+
+    private void run(final Writer writer) throws IOException, InterruptedException {
+        final PopulationStatistics statistics = new PopulationStatisticsReader(_statisticsFile).getStatistics();
+        final List<Integer> loci = _loci.isEmpty() ? Arrays.asList(statistics.getLoci().size()) : _loci;
+        final SyntheticCaseGenerator generator = new SyntheticCaseGenerator(statistics, _seed);
+        final File casesDirectory = _casesDirectory == null ? Files.createTempDirectory("lrmixstudio-scaling").toFile() : new File(_casesDirectory);
+
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        writer.flush();
+        try {
+            for (final int contributors : _contributors) {
+                for (final int replicates : _replicates) {
+                    for (final int locusCount : loci) {
+                        for (final int allelesPerLocus : _allelesPerLocus) {
+                            final File caseDirectory = new File(casesDirectory, "c" + contributors + "-r" + replicates + "-l" + locusCount + "-a" + allelesPerLocus);
+                            final SyntheticCase syntheticCase = generator.generate(contributors, replicates, locusCount, allelesPerLocus, _dropout);
+                            syntheticCase.write(caseDirectory);
+                            for (final String model : _models) {
+                                for (int repetition = 1; repetition <= _repetitions; repetition++) {
+                                    LOG.info("Running {} on {}, repetition {}", model, caseDirectory.getName(), repetition);
+                                    final String measurement = measure(model, caseDirectory, contributors);
+                                    writer.write(model + CSV_SEPARATOR + contributors + CSV_SEPARATOR + replicates + CSV_SEPARATOR + locusCount + CSV_SEPARATOR + allelesPerLocus + CSV_SEPARATOR + repetition + CSV_SEPARATOR + measurement);
+                                    writer.write('\n');
+                                    writer.flush();
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (_casesDirectory == null) {
+                delete(casesDirectory);
+            }
+        }
+    }
+
+    private String measure(final String modelName, final File caseDirectory, final int contributors) throws IOException, InterruptedException {
+        final ArrayList<String> args = new ArrayList<>(Arrays.asList(
+                "--statistics", _statisticsFile,
+                "--replicates", SyntheticCase.getReplicatesFile(caseDirectory).getPath(),
+                "--profiles", SyntheticCase.getReferencesFile(caseDirectory).getPath(),
+                "--hp-contributors", "Contributor1",
+                "--hp-unknowns", Integer.toString(contributors - 1),
+                "--hd-unknowns", Integer.toString(contributors),
+                "--dropout", Double.toString(_dropout),
+                "--dropin", Double.toString(_dropin),
+                "--theta", Double.toString(_theta),
+                "--model", modelName));
+        if (_threadCount != null) {
+            args.add("--threads");
+            args.add(_threadCount.toString());
+        }
+        final SessionData session = LRmixStudioCli.createSession(CommandLineOptions.parse(args.toArray(new String[args.size()])));
+        LRmixStudioCli.validate(session);
+
+        final LRMathModel model;
+        try {
+            model = LRMathModelFactory.getMathematicalModel(modelName);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Could not create model " + modelName, e);
+        }
+        if (model instanceof SplitDropThreadPool) {
+            // A cache of its own, so that no results are reused from earlier runs
+            ((SplitDropThreadPool) model).setLocusProbabilityCache(new LocusProbabilityCache(1, null));
+        }
+        final AtomicLong permutations = new AtomicLong();
+        model.addProgressListener(new DefaultAnalysisProgressListenerImpl() {
+            @Override
+            public void locusStarted(final Hypothesis hypothesis, final String locusName, final long jobsize) {
+                permutations.addAndGet(jobsize);
+            }
+        });
+
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final Timer timer = new Timer("ScalingBenchmarkTimeout", true);
+        if (_timeout > 0) {
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    timedOut.set(true);
+                    model.interrupt();
+                }
+            }, _timeout * 1000);
+        }
+
+        final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        for (final MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+
+        String status = "ok";
+        final long start = System.nanoTime();
+        try {
+            model.doAnalysis(session);
+        } catch (final InterruptedException e) {
+            if (!timedOut.get()) {
+                throw e;
+            }
+            status = "timeout";
+        } finally {
+            timer.cancel();
+        }
+        final long nanos = System.nanoTime() - start;
+
+        long peakHeap = 0;
+        for (final MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        String log10Ratio = "";
+        final AnalysisReport report = session.getCurrentReport();
+        if ("ok".equals(status)) {
+            if (report.getException() != null) {
+                LOG.warn("Run of {} on {} failed", modelName, caseDirectory, report.getException());
+                status = "failed";
+            } else if (report.getLikelihoodRatio() != null) {
+                log10Ratio = Double.toString(report.getLikelihoodRatio().getOverallRatio().getLog10Ratio());
+            }
+        }
+        final double seconds = nanos / 1e9;
+        return status + CSV_SEPARATOR + (nanos / 1000000) + CSV_SEPARATOR + permutations.get() + CSV_SEPARATOR + String.format(Locale.ROOT, "%.1f", permutations.get() / seconds) + CSV_SEPARATOR + peakHeap + CSV_SEPARATOR + log10Ratio;
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete()) {
+            LOG.debug("Could not delete {}", file);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.cli;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.ValidationTrace;
+
+/**
+ * Renders a binary validation trace, as written by an analysis with a
+ * validation trace file configured, to the human readable lines of the
+ * validation log.
+ */
+public final class ValidationTraceRenderer {
+
+    private ValidationTraceRenderer() {
+    }
+
+    public static void main(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Renders the trace file named in the arguments.
+     *
+     * @param args The trace file, optionally followed by the file to write
+     * the rendered log to
+     * @param out The stream to write the rendered log to if no output file is
+     * specified
+     * @param err The stream to write error messages to
+     * @return One of {@link LRmixStudioCli#EXIT_OK},
+     * {@link LRmixStudioCli#EXIT_FAILED} or {@link LRmixStudioCli#EXIT_USAGE}
+     */
+    public static int run(final String[] args, final PrintStream out, final PrintStream err) {
+        if (args.length == 1 && ("--help".equals(args[0]) || "-h".equals(args[0]))) {
+            out.print(getUsage());
+            return LRmixStudioCli.EXIT_OK;
+        }
+        if (args.length < 1 || args.length > 2) {
+            err.print(getUsage());
+            return LRmixStudioCli.EXIT_USAGE;
+        }
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(args[0]))) {
+            if (args.length == 1) {
+                final PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                ValidationTrace.render(in, writer);
+                writer.flush();
+            } else {
+                try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(args[1]), StandardCharsets.UTF_8))) {
+                    ValidationTrace.render(in, writer);
+                }
+            }
+            return LRmixStudioCli.EXIT_OK;
+        } catch (final IOException e) {
+            err.println("Error: " + e.getMessage());
+            return LRmixStudioCli.EXIT_FAILED;
+        }
+    }
+
+    public static String getUsage() {
+        return "Usage: java -cp LRmixStudio.jar nl.minvenj.nfi.lrmixstudio.cli.ValidationTraceRenderer <trace file> [output file]\n"
+                + "\n"
+                + "Writes the validation log recorded in the trace file to the output file, or to standard output.\n";
+    }
+}
@@ -16,7 +16,6 @@
  */
 package nl.minvenj.nfi.lrmixstudio.domain;
 
-import java.util.ArrayList;
 import java.util.Objects;
 
 /**
@@ -29,25 +28,18 @@ public class Allele {
     private Locus locus;
     private final int hashCode;
     private final int id;
-    private static final ArrayList<String> registeredAlleles = new ArrayList<>();
+    private static final IdRegistry REGISTRY = new IdRegistry();
 
-    public static synchronized int getId(String allele) {
-        String normalizedAllele = normalize(allele);
-        int index = registeredAlleles.indexOf(normalizedAllele);
-        if (index >= 0) {
-            return index;
-        }
-
-        registeredAlleles.add(normalizedAllele);
-        return registeredAlleles.indexOf(normalizedAllele);
+    public static int getId(String allele) {
+        return REGISTRY.getId(normalize(allele));
     }
 
     public static int getRegisteredAlleleCount() {
-        return registeredAlleles.size();
+        return REGISTRY.size();
     }
 
     public static String normalize(String allele) {
-        return allele.replaceAll("\\.0$", "");
+        return allele.endsWith(".0") ? allele.substring(0, allele.length() - 2) : allele;
     }
 
     /**
@@ -66,9 +58,9 @@ public class Allele {
      * @param peak The peak value of this allele
      */
     public Allele(String allele, float peak) {
-        this.allele = allele.replaceAll("\\.0$", "");
+        this.allele = normalize(allele);
         this.hashCode = 23 * 7 + Objects.hashCode(this.allele);
-        id = getId(allele);
+        id = REGISTRY.getId(this.allele);
         this.peak = peak;
     }
 
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns consecutive integer ids to names, such as allele values and locus
+ * names. Looking up the id of a registered name does not take a lock, so the
+ * readers and calculation threads of concurrent analyses do not contend for
+ * it. Only the registration of a new name is serialized, which keeps the ids
+ * consecutive so that they can be used to index arrays.
+ */
+final class IdRegistry {
+
+    private final ConcurrentHashMap<String, Integer> _ids = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the id of a name, registering the name if it has no id yet.
+     *
+     * @param name The name
+     * @return The id of the name
+     */
+    int getId(final String name) {
+        final Integer id = _ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        return register(name);
+    }
+
+    private synchronized int register(final String name) {
+        final Integer id = _ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        final int newId = _ids.size();
+        _ids.put(name, newId);
+        return newId;
+    }
+
+    /**
+     * @return The number of registered names. All ids are smaller than this
+     * number.
+     */
+    int size() {
+        return _ids.size();
+    }
+}
@@ -51,7 +51,9 @@ public class LikelihoodRatio {
             throw new IllegalArgumentException("Defense locus probabilities are null!");
         }
         for (String locus : prosecution.getLoci()) {
-            ratios.put(locus, new Ratio(locus, prosecution.getLocusProbability(locus), defense.getLocusProbability(locus)));
+            final Double log10Prosecution = prosecution.getLocusLog10Probability(locus);
+            final Double log10Defense = defense.getLocusLog10Probability(locus);
+            ratios.put(locus, new Ratio(locus, prosecution.getLocusProbability(locus), defense.getLocusProbability(locus), null, log10Prosecution == null ? Double.NaN : log10Prosecution, log10Defense == null ? Double.NaN : log10Defense));
         }
     }
 
@@ -81,18 +83,22 @@ public class LikelihoodRatio {
         Double prD = 1.0;
         Double prP = 1.0;
         Double r = 1.0;
+        double log10PrD = 0;
+        double log10PrP = 0;
         for (Ratio ratio : ratios.values()) {
             if (ratio.getRatio() != null) {
                 r *= ratio.getRatio();
             }
             if (ratio.getDefenseProbability() != null) {
                 prD *= ratio.getDefenseProbability();
+                log10PrD += ratio.getLog10DefenseProbability();
             }
             if (ratio.getProsecutionProbability() != null) {
                 prP *= ratio.getProsecutionProbability();
+                log10PrP += ratio.getLog10ProsecutionProbability();
             }
         }
-        return new Ratio("Overall", prP, prD, r);
+        return new Ratio("Overall", prP, prD, r, log10PrP, log10PrD);
     }
 
     /**
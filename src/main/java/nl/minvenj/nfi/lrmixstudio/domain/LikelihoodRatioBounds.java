@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.domain;
+
+/**
+ * Contains the intermediate results of a running analysis. For every locus,
+ * the probability of the evidence under each hypothesis lies between a lower
+ * and an upper bound. The lower bound is the partial sum of the genotype
+ * combinations evaluated so far. The upper bound adds the probability mass of
+ * the genotype combinations that have not yet been evaluated, as the
+ * probability of the evidence given a genotype combination is at most one.
+ * When a locus is finished, both bounds are equal to its probability.
+ */
+public class LikelihoodRatioBounds {
+
+    private final LocusProbabilities _prosecutionLower;
+    private final LocusProbabilities _prosecutionUpper;
+    private final LocusProbabilities _defenseLower;
+    private final LocusProbabilities _defenseUpper;
+
+    /**
+     * Creates a new set of bounds.
+     *
+     * @param prosecutionLower The lower bounds of the locus probabilities
+     * under the prosecution hypothesis
+     * @param prosecutionUpper The upper bounds of the locus probabilities
+     * under the prosecution hypothesis
+     * @param defenseLower The lower bounds of the locus probabilities under
+     * the defense hypothesis
+     * @param defenseUpper The upper bounds of the locus probabilities under
+     * the defense hypothesis
+     */
+    public LikelihoodRatioBounds(LocusProbabilities prosecutionLower, LocusProbabilities prosecutionUpper, LocusProbabilities defenseLower, LocusProbabilities defenseUpper) {
+        if (prosecutionLower == null || prosecutionUpper == null) {
+            throw new IllegalArgumentException("Prosecution locus probabilities are null!");
+        }
+        if (defenseLower == null || defenseUpper == null) {
+            throw new IllegalArgumentException("Defense locus probabilities are null!");
+        }
+        _prosecutionLower = prosecutionLower;
+        _prosecutionUpper = prosecutionUpper;
+        _defenseLower = defenseLower;
+        _defenseUpper = defenseUpper;
+    }
+
+    /**
+     * @return The names of all loci for which bounds are known
+     */
+    public Iterable<String> getLoci() {
+        return _prosecutionLower.getLoci();
+    }
+
+    /**
+     * @return The partial sums of the locus probabilities under the
+     * prosecution hypothesis. These are lower bounds on the final
+     * probabilities.
+     */
+    public LocusProbabilities getProsecutionLowerBounds() {
+        return _prosecutionLower;
+    }
+
+    /**
+     * @return The upper bounds of the locus probabilities under the
+     * prosecution hypothesis
+     */
+    public LocusProbabilities getProsecutionUpperBounds() {
+        return _prosecutionUpper;
+    }
+
+    /**
+     * @return The partial sums of the locus probabilities under the defense
+     * hypothesis. These are lower bounds on the final probabilities.
+     */
+    public LocusProbabilities getDefenseLowerBounds() {
+        return _defenseLower;
+    }
+
+    /**
+     * @return The upper bounds of the locus probabilities under the defense
+     * hypothesis
+     */
+    public LocusProbabilities getDefenseUpperBounds() {
+        return _defenseUpper;
+    }
+
+    /**
+     * @param locus The name of a locus
+     * @return A lower bound on the base 10 logarithm of the likelihood ratio
+     * at the locus, or NaN if the locus is not known
+     */
+    public double getLog10LowerBound(String locus) {
+        return difference(_prosecutionLower.getLocusLog10Probability(locus), _defenseUpper.getLocusLog10Probability(locus));
+    }
+
+    /**
+     * @param locus The name of a locus
+     * @return An upper bound on the base 10 logarithm of the likelihood ratio
+     * at the locus, or NaN if the locus is not known
+     */
+    public double getLog10UpperBound(String locus) {
+        return difference(_prosecutionUpper.getLocusLog10Probability(locus), _defenseLower.getLocusLog10Probability(locus));
+    }
+
+    /**
+     * @return A lower bound on the base 10 logarithm of the overall likelihood
+     * ratio
+     */
+    public double getLog10LowerBound() {
+        return _prosecutionLower.getGlobalLog10Probability() - _defenseUpper.getGlobalLog10Probability();
+    }
+
+    /**
+     * @return An upper bound on the base 10 logarithm of the overall likelihood
+     * ratio
+     */
+    public double getLog10UpperBound() {
+        return _prosecutionUpper.getGlobalLog10Probability() - _defenseLower.getGlobalLog10Probability();
+    }
+
+    private static double difference(Double log10Prosecution, Double log10Defense) {
+        if (log10Prosecution == null || log10Defense == null) {
+            return Double.NaN;
+        }
+        return log10Prosecution - log10Defense;
+    }
+
+    @Override
+    public String toString() {
+        return "log10(LR) in [" + getLog10LowerBound() + ", " + getLog10UpperBound() + "]";
+    }
+}
@@ -29,16 +29,10 @@ public class Locus {
     private int hashCode;
     private final int id;
     private boolean _treatedAsHomozygote;
-    private static final ArrayList<String> registeredLoci = new ArrayList<>();
+    private static final IdRegistry REGISTRY = new IdRegistry();
 
-    public static synchronized int getId(final String name) {
-        final int index = registeredLoci.indexOf(name);
-        if (index >= 0) {
-            return index;
-        }
-
-        registeredLoci.add(name);
-        return registeredLoci.indexOf(name);
+    public static int getId(final String name) {
+        return REGISTRY.getId(name);
     }
 
     public Locus(final String name) {
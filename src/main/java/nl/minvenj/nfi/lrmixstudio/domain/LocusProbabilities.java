@@ -23,10 +23,29 @@ import java.util.HashMap;
 public final class LocusProbabilities {
 
     private final HashMap<String, Double> probabilities = new HashMap<>();
+    private final HashMap<String, Double> log10Probabilities = new HashMap<>();
 
     public void addLocusProbability(final String locus, final Double probability) {
         synchronized (probabilities) {
             probabilities.put(locus, probability);
+            log10Probabilities.remove(locus);
+        }
+    }
+
+    /**
+     * Adds the probability for a locus together with its base 10 logarithm.
+     * The logarithm is used for calculations in the log domain, and remains
+     * accurate if the probability itself is too small to be represented as a
+     * double.
+     *
+     * @param locus The name of the locus
+     * @param probability The probability
+     * @param log10Probability The base 10 logarithm of the probability
+     */
+    public void addLocusProbability(final String locus, final Double probability, final double log10Probability) {
+        synchronized (probabilities) {
+            probabilities.put(locus, probability);
+            log10Probabilities.put(locus, log10Probability);
         }
     }
 
@@ -52,6 +71,26 @@ public final class LocusProbabilities {
         return probabilities.get(locus);
     }
 
+    /**
+     * Get the base 10 logarithm of the calculated probability for the named
+     * locus.
+     *
+     * @param locus The name of the locus for which the probability is to be
+     * retrieved
+     * @return A Double containing the logarithm of the probability, or null if
+     * the probability is not present.
+     */
+    public Double getLocusLog10Probability(final String locus) {
+        synchronized (probabilities) {
+            final Double log10Probability = log10Probabilities.get(locus);
+            if (log10Probability != null) {
+                return log10Probability;
+            }
+            final Double probability = probabilities.get(locus);
+            return probability == null ? null : Math.log10(probability);
+        }
+    }
+
     /**
      * Get the overall probability based on the the locus probabilities
      * contained in this object.
@@ -66,6 +105,22 @@ public final class LocusProbabilities {
         return retval;
     }
 
+    /**
+     * Get the base 10 logarithm of the overall probability based on the locus
+     * probabilities contained in this object. This is calculated as a sum of
+     * logarithms, so it does not underflow if the product of the locus
+     * probabilities is too small to be represented as a double.
+     *
+     * @return The sum of the logarithms of all locus probabilities
+     */
+    public double getGlobalLog10Probability() {
+        double retval = 0;
+        for (final String locus : getLoci()) {
+            retval += getLocusLog10Probability(locus);
+        }
+        return retval;
+    }
+
     @Override
     public String toString() {
         return probabilities.toString();
@@ -21,34 +21,40 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The allele frequencies of a population. The frequencies of each locus are
+ * stored in a dense table in the order in which the alleles were added, so
+ * the storage grows with the loci and alleles in the statistics rather than
+ * with the number of loci and alleles registered by all cases and statistics
+ * files, and panels with thousands of loci are supported. The statistics are
+ * filled when they are read and are not modified during an analysis, except
+ * for the compound alleles that are added before the jobs of a locus are
+ * created. As this can happen while other analyses read the same statistics,
+ * the table of a locus is never modified: every addition publishes a new
+ * table.
+ */
 public class PopulationStatistics {
 
     private static final Logger LOG = LoggerFactory.getLogger(PopulationStatistics.class);
     public static final double DEFAULT_FREQUENCY = 0.001;
 
-    private final ArrayList<String> _loci;
-    private final ArrayList<String> _allelesForLocus;
-    private final ArrayList<String> _compoundAlleles;
+    private final List<String> _loci;
     private final String _fileName;
-    private final double[][] _probs = new double[100][1024];
-    private final boolean[][] _rare = new boolean[100][1024];
-    private final boolean[] _locusInitialized = new boolean[100];
+    // The frequency tables indexed by locus id. Loci without statistics have no table.
+    private volatile LocusFrequencies[] _frequencies = new LocusFrequencies[0];
 
     private String _fileHash;
     private double _rareAlleleFrequency;
 
     public PopulationStatistics(final String fileNamez) {
-        _loci = new ArrayList<>();
-        _allelesForLocus = new ArrayList<>();
-        _compoundAlleles = new ArrayList<>();
-        for (int idx = 0; idx < _rare.length; idx++) {
-            Arrays.fill(_rare[idx], true);
-        }
+        _loci = new CopyOnWriteArrayList<>();
         _fileName = fileNamez;
         _rareAlleleFrequency = DEFAULT_FREQUENCY;
     }
@@ -71,23 +77,38 @@ public class PopulationStatistics {
      * locus
      */
     public void addStatistic(final String locusName, final String alleleName, final BigDecimal probability) {
+        addStatistic(locusName, alleleName, probability, false);
+    }
+
+    private synchronized void addStatistic(final String locusName, final String alleleName, final BigDecimal probability, final boolean compound) {
         final String normalizedAllele = Allele.normalize(alleleName);
-        if (!_loci.contains(locusName)) {
+        final int locusId = Locus.getId(locusName);
+        LocusFrequencies[] frequencies = _frequencies;
+        if (locusId >= frequencies.length) {
+            frequencies = Arrays.copyOf(frequencies, Math.max(locusId + 1, frequencies.length * 2));
+        }
+        if (frequencies[locusId] == null) {
+            frequencies[locusId] = LocusFrequencies.EMPTY;
             _loci.add(locusName);
         }
-        final int locusId = Locus.getId(locusName);
-        final int alleleId = Allele.getId(normalizedAllele);
-        _probs[locusId][alleleId] = probability.doubleValue();
-        _rare[locusId][alleleId] = false;
-        _locusInitialized[locusId] = true;
-        _allelesForLocus.add(locusName + normalizedAllele);
+        frequencies[locusId] = frequencies[locusId].with(Allele.getId(normalizedAllele), normalizedAllele, probability.doubleValue(), compound);
+        _frequencies = frequencies;
+    }
+
+    private LocusFrequencies getFrequencies(final int locusId) {
+        final LocusFrequencies[] frequencies = _frequencies;
+        return locusId < frequencies.length ? frequencies[locusId] : null;
     }
 
     private Double getProbability(final int locusId, final int alleleId) {
-        if (_rare[locusId][alleleId]) {
-            return _rareAlleleFrequency;
+        final LocusFrequencies frequencies = getFrequencies(locusId);
+        if (frequencies != null) {
+            final int index = frequencies.indexOf(alleleId);
+            if (index >= 0) {
+                return frequencies.getFrequency(index);
+            }
         }
-        return _probs[locusId][alleleId];
+        return _rareAlleleFrequency;
     }
 
     public Double getProbability(final Locus locus, final Allele allele) {
@@ -98,17 +119,20 @@ public class PopulationStatistics {
         return getProbability(Locus.getId(locusId), Allele.getId(allele));
     }
 
+    /**
+     * Gets the alleles with a recorded frequency at a locus, in the order in
+     * which they were added. Compound alleles are not included.
+     *
+     * @param id The name of the locus
+     * @return An unmodifiable snapshot of the alleles of the locus, or an
+     * empty collection if the locus is not present in the statistics
+     */
     public Collection<String> getAlleles(final String id) {
-        final ArrayList<String> alleles = new ArrayList<>();
-        for (final String locus : _allelesForLocus) {
-            if (locus.startsWith(id)) {
-                final String alleleName = locus.substring(id.length());
-                if (!_compoundAlleles.contains(alleleName)) {
-                    alleles.add(alleleName);
-                }
-            }
+        final LocusFrequencies frequencies = getFrequencies(Locus.getId(id));
+        if (frequencies == null) {
+            return Collections.emptyList();
         }
-        return alleles;
+        return frequencies.getAlleles();
     }
 
     public String getFileName() {
@@ -175,7 +199,8 @@ public class PopulationStatistics {
      * @return true if the supplied allele is rare
      */
     public boolean isRareAllele(final Allele allele) {
-        return _rare[allele.getLocus().getId()][allele.getId()];
+        final LocusFrequencies frequencies = getFrequencies(allele.getLocus().getId());
+        return frequencies == null || frequencies.indexOf(allele.getId()) < 0;
     }
 
     /**
@@ -197,8 +222,7 @@ public class PopulationStatistics {
      * @return true if the locus is present in the population statistics
      */
     public boolean isPresent(final String locusName) {
-        final int id = Locus.getId(locusName);
-        return id < _locusInitialized.length && _locusInitialized[id];
+        return getFrequencies(Locus.getId(locusName)) != null;
     }
 
     /**
@@ -211,9 +235,115 @@ public class PopulationStatistics {
      * @param probability the frequency of the compound allele
      */
     public void addCompoundStatistic(final String locusName, final String alleleName, final BigDecimal probability) {
-        addStatistic(locusName, alleleName, probability);
-        if (!_compoundAlleles.contains(alleleName)) {
-            _compoundAlleles.add(alleleName);
+        addStatistic(locusName, alleleName, probability, true);
+    }
+
+    /**
+     * The frequencies of the alleles at a single locus, stored densely in the
+     * order in which the alleles were added. An open addressing hash table
+     * maps the id of an allele to its position. Instances are immutable, so
+     * they can be read without locking.
+     */
+    private static final class LocusFrequencies {
+
+        static final LocusFrequencies EMPTY = new LocusFrequencies(new int[16], new int[0], new double[0], Collections.<String>emptyList());
+        // The position plus one of the allele in each slot of the hash table, or 0 for an empty slot
+        private final int[] _slots;
+        private final int[] _alleleIds;
+        private final double[] _values;
+        private final List<String> _alleles;
+
+        private LocusFrequencies(final int[] slots, final int[] alleleIds, final double[] values, final List<String> alleles) {
+            _slots = slots;
+            _alleleIds = alleleIds;
+            _values = values;
+            _alleles = alleles;
+        }
+
+        private static int hash(final int alleleId) {
+            final int hash = alleleId * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+        /**
+         * @param alleleId The id of an allele
+         * @return The position of the allele, or -1 if it has no frequency at
+         * this locus
+         */
+        int indexOf(final int alleleId) {
+            final int mask = _slots.length - 1;
+            for (int slot = hash(alleleId) & mask;; slot = (slot + 1) & mask) {
+                final int position = _slots[slot];
+                if (position == 0) {
+                    return -1;
+                }
+                if (_alleleIds[position - 1] == alleleId) {
+                    return position - 1;
+                }
+            }
+        }
+
+        double getFrequency(final int index) {
+            return _values[index];
+        }
+
+        Collection<String> getAlleles() {
+            return _alleles;
+        }
+
+        /**
+         * Creates a copy of these frequencies with the frequency of an allele
+         * added or replaced.
+         *
+         * @return The new frequencies
+         */
+        LocusFrequencies with(final int alleleId, final String alleleName, final double frequency, final boolean compound) {
+            final int index = indexOf(alleleId);
+            if (index >= 0) {
+                final double[] values = _values.clone();
+                values[index] = frequency;
+                List<String> alleles = _alleles;
+                if (compound && alleles.contains(alleleName)) {
+                    final ArrayList<String> remaining = new ArrayList<>(alleles);
+                    remaining.remove(alleleName);
+                    alleles = Collections.unmodifiableList(remaining);
+                }
+                return new LocusFrequencies(_slots, _alleleIds, values, alleles);
+            }
+
+            final int size = _alleleIds.length + 1;
+            final int[] alleleIds = Arrays.copyOf(_alleleIds, size);
+            final double[] values = Arrays.copyOf(_values, size);
+            alleleIds[size - 1] = alleleId;
+            values[size - 1] = frequency;
+            final int[] slots;
+            // Keep the hash table at most half full
+            if (size * 2 > _slots.length) {
+                slots = new int[_slots.length * 2];
+                for (int position = 0; position < size; position++) {
+                    insert(slots, alleleIds[position], position);
+                }
+            } else {
+                slots = _slots.clone();
+                insert(slots, alleleId, size - 1);
+            }
+            List<String> alleles = _alleles;
+            if (!compound) {
+                final ArrayList<String> added = new ArrayList<>(alleles.size() + 1);
+                added.addAll(alleles);
+                added.add(alleleName);
+                alleles = Collections.unmodifiableList(added);
+            }
+            return new LocusFrequencies(slots, alleleIds, values, alleles);
+        }
+
+        private static void insert(final int[] slots, final int alleleId, final int position) {
+            final int mask = slots.length - 1;
+            int slot = hash(alleleId) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = position + 1;
         }
     }
 }
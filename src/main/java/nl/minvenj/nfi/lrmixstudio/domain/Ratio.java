@@ -26,6 +26,8 @@ public class Ratio {
     private final Double _defenseProbability;
     private final Double _prosecutionProbability;
     private final Double _ratio;
+    private final double _log10ProsecutionProbability;
+    private final double _log10DefenseProbability;
 
     /**
      * Constructor
@@ -49,7 +51,26 @@ public class Ratio {
      * calculate a ratio
      */
     public Ratio(String locusName, Double prosecutionProbability, Double defenseProbability, Double ratio) {
+        this(locusName, prosecutionProbability, defenseProbability, ratio, log10(prosecutionProbability), log10(defenseProbability));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param locusName the name of the locus for which this ratio applies
+     * @param prosecutionProbability The probability for the prosecution
+     * @param defenseProbability The probability for the defense
+     * @param ratio The ratio calculation over prosecution and defense
+     * probabilities, or null to calculate it from the probabilities
+     * @param log10ProsecutionProbability The base 10 logarithm of the
+     * probability for the prosecution
+     * @param log10DefenseProbability The base 10 logarithm of the probability
+     * for the defense
+     */
+    public Ratio(String locusName, Double prosecutionProbability, Double defenseProbability, Double ratio, double log10ProsecutionProbability, double log10DefenseProbability) {
         _locusName = locusName;
+        _log10ProsecutionProbability = log10ProsecutionProbability;
+        _log10DefenseProbability = log10DefenseProbability;
         _defenseProbability = defenseProbability;
         _prosecutionProbability = prosecutionProbability;
         if ((prosecutionProbability == null || defenseProbability == null)) {
@@ -63,6 +84,10 @@ public class Ratio {
         }
     }
 
+    private static double log10(Double probability) {
+        return probability == null ? Double.NaN : Math.log10(probability);
+    }
+
     /**
      * @return the _locusName
      */
@@ -85,6 +110,32 @@ public class Ratio {
         return _ratio;
     }
 
+    /**
+     * @return The base 10 logarithm of the probability for the prosecution
+     */
+    public double getLog10ProsecutionProbability() {
+        return _log10ProsecutionProbability;
+    }
+
+    /**
+     * @return The base 10 logarithm of the probability for the defense
+     */
+    public double getLog10DefenseProbability() {
+        return _log10DefenseProbability;
+    }
+
+    /**
+     * Gets the base 10 logarithm of the ratio. This is calculated from the
+     * logarithms of the probabilities, and is finite whenever both
+     * probabilities are non-zero, even if the probabilities or the ratio
+     * cannot be represented as a double.
+     *
+     * @return The base 10 logarithm of the ratio
+     */
+    public double getLog10Ratio() {
+        return _log10ProsecutionProbability - _log10DefenseProbability;
+    }
+
     @Override
     public String toString() {
         return _locusName + ": " + _prosecutionProbability + " / " + _defenseProbability + " = " + ((_ratio.isInfinite() || _ratio.isNaN()) ? _ratio : BigDecimal.valueOf(_ratio).round(new MathContext(7, RoundingMode.HALF_UP)).stripTrailingZeros());
@@ -50,6 +50,7 @@ public class ApplicationSettings {
     private static final String ALLELEFREQUENCIES_PATH = "alleleFrequenciesPath";
     private static final String RARE_ALLELE_FREQUENCY = "rareAlleleFrequency";
     private static final String THREADCOUNT = "threadCount";
+    private static final String MATHEMATICAL_MODEL = "mathematicalModel";
     private static final String VALIDATION_MODE = "validationMode";
     private static final String HIGHLIGHT_COLOR = "highlightColor";
     private static final String HIGHLIGHT_BACKGROUND_COLOR = "highlightBackgroundColor";
@@ -71,6 +72,20 @@ public class ApplicationSettings {
     private static final String FONT_SIZE = "fontSize";
     private static final String DEFAULT_FONT_SIZE = "11";
 
+    private static final String LOCUS_CACHE_SIZE = "locusCacheSize";
+    private static final int DEFAULT_LOCUS_CACHE_SIZE = 1000;
+    private static final String LOCUS_CACHE_DIRECTORY = "locusCacheDirectory";
+    private static final String LOCUS_CACHE_MAX_FILES = "locusCacheMaxFiles";
+    private static final int DEFAULT_LOCUS_CACHE_MAX_FILES = 10000;
+    private static final String LOCUS_CACHE_MAX_AGE = "locusCacheMaxAgeDays";
+    private static final int DEFAULT_LOCUS_CACHE_MAX_AGE = 30;
+    private static final String CHECKPOINT_DIRECTORY = "checkpointDirectory";
+    private static final String VALIDATION_TRACE_FILE = "validationTraceFile";
+    private static final String JOB_COST = "jobCostNanosPerUnit";
+    private static final String DISTRIBUTED_SECRET = "distributedSecret";
+    private static final String LONG_ANALYSIS_THRESHOLD = "longAnalysisWarningThreshold";
+    private static final long DEFAULT_LONG_ANALYSIS_THRESHOLD = 3600000;
+
     private static final String REPORT_TEMPLATE_FILENAME = "reportTemplateFilename";
     private static final String DEFAULT_REPORT_TEMPLATE_FILENAME = "report/LRmixStudio.jrxml";
 
@@ -94,7 +109,7 @@ public class ApplicationSettings {
     private static final AtomicBoolean IS_STORE_ERROR_LOGGED = new AtomicBoolean();
     private static final AtomicBoolean IS_LOAD_SOURCE_LOGGED = new AtomicBoolean();
 
-    private static void load() {
+    private static synchronized void load() {
         if (_settingsFileName == null) {
             if(new File(DEFAULT_SETTINGS_FILENAME).canWrite()) {
                 load(DEFAULT_SETTINGS_FILENAME);
@@ -130,7 +145,7 @@ public class ApplicationSettings {
         return false;
     }
 
-    private static void store() {
+    private static synchronized void store() {
         if(_settingsFileName==null) {
             IS_LOAD_SOURCE_LOGGED.set(false);
             if (!store(DEFAULT_SETTINGS_FILENAME)) {
@@ -182,6 +197,10 @@ public class ApplicationSettings {
     }
 
     private static void set(final String key, final String value) {
+        // Settings with an empty default are set on every read, so unchanged values are not written again
+        if (value == null ? !SETTINGS.containsKey(key) : value.equals(SETTINGS.getProperty(key))) {
+            return;
+        }
         if (value != null) {
             SETTINGS.put(key, value);
         }
@@ -393,6 +412,20 @@ public class ApplicationSettings {
         }
     }
 
+    /**
+     * Gets the name of the mathematical model to use for new analyses.
+     *
+     * @return The configured model name, or an empty string if the default
+     * model should be used
+     */
+    public static String getMathematicalModelName() {
+        return get(MATHEMATICAL_MODEL, "");
+    }
+
+    public static void setMathematicalModelName(final String modelName) {
+        set(MATHEMATICAL_MODEL, modelName);
+    }
+
     public static void setLostTimeThreshold(final long threshold) {
         set(LOSTTIMETHRESHOLD, "" + threshold);
     }
@@ -421,6 +454,147 @@ public class ApplicationSettings {
         }
     }
 
+    /**
+     * @return The maximum number of locus probabilities to keep in memory for
+     * reuse in later analyses. A value of 0 disables the cache.
+     */
+    public static int getLocusCacheSize() {
+        final String size = get(LOCUS_CACHE_SIZE, "" + DEFAULT_LOCUS_CACHE_SIZE);
+        try {
+            return Integer.parseInt(size);
+        }
+        catch (final NumberFormatException nfe) {
+            return DEFAULT_LOCUS_CACHE_SIZE;
+        }
+    }
+
+    public static void setLocusCacheSize(final int size) {
+        set(LOCUS_CACHE_SIZE, "" + size);
+    }
+
+    /**
+     * @return The directory in which locus probabilities are stored for reuse
+     * after a restart, or an empty string if locus probabilities are only
+     * cached in memory
+     */
+    public static String getLocusCacheDirectory() {
+        return get(LOCUS_CACHE_DIRECTORY, "");
+    }
+
+    public static void setLocusCacheDirectory(final String directory) {
+        set(LOCUS_CACHE_DIRECTORY, directory);
+    }
+
+    /**
+     * @return The maximum number of locus probabilities kept in the locus
+     * cache directory. The least recently used files are removed first.
+     */
+    public static int getLocusCacheMaxFiles() {
+        final String maxFiles = get(LOCUS_CACHE_MAX_FILES, "" + DEFAULT_LOCUS_CACHE_MAX_FILES);
+        try {
+            return Integer.parseInt(maxFiles);
+        }
+        catch (final NumberFormatException nfe) {
+            return DEFAULT_LOCUS_CACHE_MAX_FILES;
+        }
+    }
+
+    public static void setLocusCacheMaxFiles(final int maxFiles) {
+        set(LOCUS_CACHE_MAX_FILES, "" + maxFiles);
+    }
+
+    /**
+     * @return The number of days after which a locus probability that was not
+     * used is removed from the locus cache directory
+     */
+    public static int getLocusCacheMaxAgeDays() {
+        final String maxAge = get(LOCUS_CACHE_MAX_AGE, "" + DEFAULT_LOCUS_CACHE_MAX_AGE);
+        try {
+            return Integer.parseInt(maxAge);
+        }
+        catch (final NumberFormatException nfe) {
+            return DEFAULT_LOCUS_CACHE_MAX_AGE;
+        }
+    }
+
+    public static void setLocusCacheMaxAgeDays(final int days) {
+        set(LOCUS_CACHE_MAX_AGE, "" + days);
+    }
+
+    /**
+     * @return The directory in which the progress of running analyses is
+     * saved, so that an interrupted analysis can be resumed, or an empty string
+     * if the progress is not saved
+     */
+    public static String getCheckpointDirectory() {
+        return get(CHECKPOINT_DIRECTORY, "");
+    }
+
+    public static void setCheckpointDirectory(final String directory) {
+        set(CHECKPOINT_DIRECTORY, directory);
+    }
+
+    /**
+     * @return The file to which analyses append a binary validation trace, or
+     * an empty string if no trace is written
+     */
+    public static String getValidationTraceFile() {
+        return get(VALIDATION_TRACE_FILE, "");
+    }
+
+    public static void setValidationTraceFile(final String fileName) {
+        set(VALIDATION_TRACE_FILE, fileName);
+    }
+
+    /**
+     * @return The secret shared by distributed coordinators and their
+     * workers, or an empty string if none was configured
+     */
+    public static String getDistributedSecret() {
+        return get(DISTRIBUTED_SECRET, "");
+    }
+
+    public static void setDistributedSecret(final String secret) {
+        set(DISTRIBUTED_SECRET, secret);
+    }
+
+    /**
+     * @return The calibrated time in nanoseconds to evaluate one permutation
+     * for one replicate and one unknown, or 0 if the cost model was not
+     * calibrated yet
+     */
+    public static double getJobCost() {
+        final String cost = get(JOB_COST, "0");
+        try {
+            return Double.parseDouble(cost);
+        }
+        catch (final NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
+    public static void setJobCost(final double nanosPerUnit) {
+        set(JOB_COST, "" + nanosPerUnit);
+    }
+
+    /**
+     * @return The predicted duration in milliseconds above which the user is
+     * asked to confirm the start of an analysis
+     */
+    public static long getLongAnalysisThreshold() {
+        final String threshold = get(LONG_ANALYSIS_THRESHOLD, "" + DEFAULT_LONG_ANALYSIS_THRESHOLD);
+        try {
+            return Long.parseLong(threshold);
+        }
+        catch (final NumberFormatException nfe) {
+            return DEFAULT_LONG_ANALYSIS_THRESHOLD;
+        }
+    }
+
+    public static void setLongAnalysisThreshold(final long threshold) {
+        set(LONG_ANALYSIS_THRESHOLD, "" + threshold);
+    }
+
     private static void staticInit() {
         if (STATIC_SETTINGS.isEmpty()) {
             try {
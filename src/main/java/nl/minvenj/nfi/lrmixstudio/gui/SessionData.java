@@ -17,6 +17,7 @@
 package nl.minvenj.nfi.lrmixstudio.gui;
 
 import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -91,7 +92,7 @@ public class SessionData extends ConfigurationData {
         LOG.debug("Setting state to {}", newState);
         delegate.state = newState;
 
-        EventQueue.invokeLater(new Runnable() {
+        final Runnable notifier = new Runnable() {
             @Override
             public void run() {
                 if (delegate.notifying) {
@@ -104,7 +105,13 @@ public class SessionData extends ConfigurationData {
                 }
                 delegate.notifying = false;
             }
-        });
+        };
+        // Without a display there is no event dispatch thread to notify the listeners on
+        if (GraphicsEnvironment.isHeadless()) {
+            notifier.run();
+        } else {
+            EventQueue.invokeLater(notifier);
+        }
     }
 
     public ApplicationStateChangeListener.APP_STATE getApplicationState() {
@@ -876,7 +876,26 @@ public class AnalysisPanel extends javax.swing.JPanel implements ProgressGui, Co
             }
 
             _mathematicalModel = LRMathModelFactory.getMathematicalModel(_session.getMathematicalModelName());
-            _mathematicalModel.addProgressListener(new AnalysisProgressListenerImpl(_session, this));
+
+            // Warn the user if the analysis is expected to take a long time
+            final long predictedDuration = _mathematicalModel.predictDuration(_session);
+            if (predictedDuration > ApplicationSettings.getLongAnalysisThreshold()) {
+                final long minutes = predictedDuration / 60000;
+                if (JOptionPane.OK_OPTION != JOptionPane.showConfirmDialog(
+                                                                           this,
+                                                                           String.format("<html>The analysis is predicted to take about <b>%d hour%s and %d minute%s</b>.<br>Are you sure you want to start it?",
+                                                                                         minutes / 60,
+                                                                                         minutes / 60 == 1 ? "" : "s",
+                                                                                         minutes % 60,
+                                                                                         minutes % 60 == 1 ? "" : "s"),
+                                                                           "LRmixStudio Sanity check", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE)) {
+                    return;
+                }
+            }
+
+            final AnalysisProgressListenerImpl progressListener = new AnalysisProgressListenerImpl(_session, this);
+            progressListener.setPredictedDuration(predictedDuration);
+            _mathematicalModel.addProgressListener(progressListener);
             ApplicationSettings.setLatestDropIn(_session.getProsecution().getDropInProbability());
             ApplicationSettings.setLatestTheta(_session.getProsecution().getThetaCorrection());
             _mathematicalModel.startAnalysis(_session);
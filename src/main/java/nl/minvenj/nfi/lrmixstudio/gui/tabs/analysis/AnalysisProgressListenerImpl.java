@@ -44,6 +44,7 @@ import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
 import nl.minvenj.nfi.lrmixstudio.domain.DisabledLocus;
 import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
 import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
 import nl.minvenj.nfi.lrmixstudio.domain.Locus;
 import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
 import nl.minvenj.nfi.lrmixstudio.domain.Ratio;
@@ -54,6 +55,7 @@ import nl.minvenj.nfi.lrmixstudio.gui.ApplicationStateChangeListener;
 import nl.minvenj.nfi.lrmixstudio.gui.LRmixStudio;
 import nl.minvenj.nfi.lrmixstudio.gui.ProgressGui;
 import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisPerformance;
 import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
 
 /**
@@ -88,12 +90,14 @@ public class AnalysisProgressListenerImpl implements AnalysisProgressListener {
     private final Map<String, LocusProbabilities> probabilities = new HashMap<>();
     private long start;
     private long estimatedEndTime;
+    private long predictedDuration;
     private long totalSize = 0;
     private long expectedSize = 0;
     private final MyLong currentSize = new MyLong(0);
     private final HashMap<String, AtomicLong> locusCounts = new HashMap<>();
     private final HashMap<String, ArrayList<Long>> locusSizes = new HashMap<>();
     private final ArrayList<String> _intermediateResults = new ArrayList<>();
+    private volatile LikelihoodRatioBounds _bounds;
     private final Thread guiUpdater = new Thread() {
         private String formatTime(final long ms) {
             final int hours = Math.abs((int) ms / 3600000);
@@ -132,6 +136,15 @@ public class AnalysisProgressListenerImpl implements AnalysisProgressListener {
                                 gui.setLocusResult(locus, "<html>" + decoration + _session.formatNumber(pp / pd));
                             }
                         }
+
+                        final LikelihoodRatioBounds bounds = _bounds;
+                        if (bounds != null) {
+                            final double lower = bounds.getLog10LowerBound();
+                            final double upper = bounds.getLog10UpperBound();
+                            if (!Double.isInfinite(lower) && !Double.isNaN(lower) && !Double.isInfinite(upper) && !Double.isNaN(upper)) {
+                                gui.setOverallLikelyhoodRatio("<html><font color=blue>Intermediate result: Log10(LR) between " + _session.formatNumber(lower) + " and " + _session.formatNumber(upper));
+                            }
+                        }
                     }
                     sleep(10);
                 }
@@ -155,6 +168,17 @@ public class AnalysisProgressListenerImpl implements AnalysisProgressListener {
 
     }
 
+    /**
+     * Sets the duration of the analysis predicted before it started. This is
+     * shown as the estimated time remaining until the measured progress gives
+     * a better estimate.
+     *
+     * @param duration The predicted duration in milliseconds
+     */
+    public void setPredictedDuration(final long duration) {
+        predictedDuration = duration;
+    }
+
     private String getHostName() {
         try {
             return InetAddress.getLocalHost().getCanonicalHostName();
@@ -166,7 +190,7 @@ public class AnalysisProgressListenerImpl implements AnalysisProgressListener {
     @Override
     public void analysisStarted() {
         start = System.currentTimeMillis();
-        estimatedEndTime = 0;
+        estimatedEndTime = predictedDuration;
         _session.setApplicationState(ApplicationStateChangeListener.APP_STATE.ANALYSIS_RUNNING);
         initLogger();
         guiUpdater.start();
@@ -197,6 +221,9 @@ public class AnalysisProgressListenerImpl implements AnalysisProgressListener {
         LOG.info("  Analysis type: Likelihood Ratio Calculation");
         LOG.info("  Analysis started by {} on {}", System.getProperty("user.name"), getHostName());
         LOG.info("  Number of threads: {}", _session.getThreadCount());
+        if (predictedDuration > 0) {
+            LOG.info("  Predicted duration: {} ms", predictedDuration);
+        }
         LOG.info("  Max memory: {} bytes, {} MB", Runtime.getRuntime().maxMemory(), Runtime.getRuntime().maxMemory() / 1048576);
         LOG.info("  Java version: {}", System.getProperty("java.version"));
         LOG.info("  Java home: {}", System.getProperty("java.home"));
@@ -312,6 +339,13 @@ public class AnalysisProgressListenerImpl implements AnalysisProgressListener {
         LOG.info("  Running time: {} ms", runningTime);
         LOG.info("  Total number of calculations: {}", totalSize);
         LOG.info("  Average processing speed: {} operations per ms", replicatePerMs);
+        final AnalysisPerformance performance = _session.getCurrentReport().getPerformance();
+        if (performance != null) {
+            LOG.info("=========== Performance ===========");
+            for (final String line : performance.toLines()) {
+                LOG.info("  {}", line);
+            }
+        }
         _session.setStatusMessage("Analysis completed.");
         resetLogger();
         _session.setApplicationState(ApplicationStateChangeListener.APP_STATE.READY_FOR_ANALYSIS);
@@ -393,6 +427,11 @@ public class AnalysisProgressListenerImpl implements AnalysisProgressListener {
         }
     }
 
+    @Override
+    public void intermediateResult(final LikelihoodRatioBounds bounds) {
+        _bounds = bounds;
+    }
+
     @Override
     public void analysisFinished(final Throwable e) {
         final boolean logged = summaryLogged.getAndSet(true);
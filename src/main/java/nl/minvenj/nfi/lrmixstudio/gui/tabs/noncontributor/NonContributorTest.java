@@ -31,16 +31,18 @@ import nl.minvenj.nfi.lrmixstudio.domain.Ratio;
 import nl.minvenj.nfi.lrmixstudio.domain.Sample;
 import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
 import nl.minvenj.nfi.lrmixstudio.model.AnalysisReportImpl;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
 import nl.minvenj.nfi.lrmixstudio.model.LRMathModel;
 import nl.minvenj.nfi.lrmixstudio.model.LRMathModelFactory;
 import nl.minvenj.nfi.lrmixstudio.model.NonContributorTestResults;
 import nl.minvenj.nfi.lrmixstudio.model.RandomProfileGenerator;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropThreadPool;
 
 /**
  *
  * @author dejong
  */
-class NonContributorTest extends Thread {
+public class NonContributorTest extends Thread {
 
     private static final Logger LOG = LoggerFactory.getLogger(NonContributorTest.class);
     private final SessionData _session;
@@ -50,6 +52,16 @@ class NonContributorTest extends Thread {
     private LRMathModel _model = null;
     private final HashMap<Integer, Double> _cachedProbabilities;
 
+    /**
+     * Creates a new non-contributor test. The results are stored in the
+     * current report of the session.
+     *
+     * @param session The session containing the hypotheses
+     * @param personOfInterest The profile that is replaced by random profiles
+     * @param iterations The number of random profiles to evaluate
+     * @param performanceTestProgressListener A listener for progress events, or
+     * null when the test is performed without a user interface
+     */
     public NonContributorTest(SessionData session, Sample personOfInterest, Integer iterations, NonContributorTestProgressListener performanceTestProgressListener) {
         _session = session;
         _progress = performanceTestProgressListener;
@@ -74,12 +86,15 @@ class NonContributorTest extends Thread {
         ArrayList<Double> results = new ArrayList<>();
         long iteration = 0;
         try {
-            _progress.analysisStarted(_iterations);
+            if (_progress != null) {
+                _progress.analysisStarted(_iterations);
+            }
             if (originalLR == null) {
-                _model = LRMathModelFactory.getMathematicalModel(_session.getMathematicalModelName());
+                _model = createModel(_session.getMathematicalModelName());
                 originalLR = _model.doAnalysis(_session);
             }
 
+            LRMathModel randomModel = null;
             RandomProfileGenerator randomProfileGenerator = new RandomProfileGenerator(_session.getEnabledLoci(), _session.getStatistics());
             for (iteration = 0; iteration < _iterations; iteration++) {
                 SessionData randomSession = new SessionData(_session);
@@ -120,11 +135,16 @@ class NonContributorTest extends Thread {
                 }
 
                 if (cacheMisses != 0) {
-                    _model = LRMathModelFactory.getMathematicalModel(randomSession.getMathematicalModelName());
-                    _model.addProgressListener(_progress);
+                    if (randomModel == null) {
+                        randomModel = createModel(randomSession.getMathematicalModelName());
+                        randomModel.addProgressListener(_progress);
+                    }
+                    _model = randomModel;
                     LikelihoodRatio randomLR = _model.doAnalysis(randomSession);
                     if (randomLR == null) {
-                        _progress.iterationDone(0.0);
+                        if (_progress != null) {
+                            _progress.iterationDone(0.0);
+                        }
                         continue;
                     }
                     // Add results to the cache
@@ -141,21 +161,47 @@ class NonContributorTest extends Thread {
                     }
                 }
                 results.add(prosecutionProbability);
-                _progress.iterationDone(prosecutionProbability);
+                if (_progress != null) {
+                    _progress.iterationDone(prosecutionProbability);
+                }
             }
-            _progress.analysisFinished(storeResults(description, iteration, originalLR, results, start));
+            finished(null, storeResults(description, iteration, originalLR, results, start));
         } catch (InterruptedException ex) {
             if (_model != null) {
                 _model.interrupt();
             }
-            _progress.analysisFinished(storeResults(description, iteration, originalLR, results, start));
+            finished(null, storeResults(description, iteration, originalLR, results, start));
         } catch (RejectedExecutionException ex) {
             LOG.debug("Performance test interrupted!");
-            _progress.analysisFinished(storeResults(description, iteration, originalLR, results, start));
+            finished(null, storeResults(description, iteration, originalLR, results, start));
         } catch (InstantiationException | IllegalAccessException | NoSuchAlgorithmException | IllegalArgumentException ex) {
             storeResults(description, iteration, originalLR, results, start);
-            _progress.analysisFinished(ex, storeResults(description, iteration, originalLR, results, start));
+            finished(ex, storeResults(description, iteration, originalLR, results, start));
+        }
+    }
+
+    private void finished(Exception ex, NonContributorTestResults testResults) {
+        if (_progress == null) {
+            if (ex != null) {
+                LOG.error("Error running the non-contributor test", ex);
+            }
+        } else if (ex == null) {
+            _progress.analysisFinished(testResults);
+        } else {
+            _progress.analysisFinished(ex, testResults);
+        }
+    }
+
+    /**
+     * Creates a model that runs with background priority, so that the test
+     * does not delay an interactive analysis.
+     */
+    private LRMathModel createModel(String modelName) throws InstantiationException, IllegalAccessException {
+        LRMathModel model = LRMathModelFactory.getMathematicalModel(modelName);
+        if (model instanceof SplitDropThreadPool) {
+            ((SplitDropThreadPool) model).setPriority(ComputeService.Priority.BACKGROUND);
         }
+        return model;
     }
 
     private NonContributorTestResults storeResults(String description, long iteration, LikelihoodRatio originalLR, ArrayList<Double> results, long start) {
@@ -39,6 +39,7 @@ import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
 import nl.minvenj.nfi.lrmixstudio.domain.DisabledLocus;
 import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
 import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
 import nl.minvenj.nfi.lrmixstudio.domain.Locus;
 import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
 import nl.minvenj.nfi.lrmixstudio.domain.Relatedness;
@@ -302,6 +303,10 @@ class NonContributorTestProgressListener implements AnalysisProgressListener {
     public void locusFinished(final Hypothesis hypothesis, final String locusName, final Double locusProbability) {
     }
 
+    @Override
+    public void intermediateResult(final LikelihoodRatioBounds bounds) {
+    }
+
     private void logHypothesis(final Hypothesis hypothesis) {
         LOG.info("=================");
         LOG.info("Hypothesis {}", hypothesis.getId());
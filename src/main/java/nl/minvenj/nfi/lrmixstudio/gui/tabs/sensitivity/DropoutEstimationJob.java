@@ -160,9 +160,9 @@ public class DropoutEstimationJob implements Callable<ArrayList<Double>> {
     protected void applyDropin(final SecureRandom rnd, final RandomProfileGenerator randomDudeGenerator, ArrayList<String> survivingAlleles) {
         for (String locusName : loci) {
             if (rnd.nextDouble() < hypothesis.getDropInProbability()) {
-                String dropinAllele = locusName + "." + randomDudeGenerator.getRandomAllele(locusName).getAllele();
+                String dropinAllele = locusName + "." + randomDudeGenerator.getRandomAlleleName(locusName);
                 if (!survivingAlleles.contains(dropinAllele)) {
-                    String droppedIn = locusName + "." + randomDudeGenerator.getRandomAllele(locusName).getAllele();
+                    String droppedIn = locusName + "." + randomDudeGenerator.getRandomAlleleName(locusName);
                     survivingAlleles.add(droppedIn);
                 }
             }
@@ -24,7 +24,6 @@ import java.util.Collections;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -39,6 +38,7 @@ import nl.minvenj.nfi.lrmixstudio.domain.Sample;
 import nl.minvenj.nfi.lrmixstudio.gui.ApplicationStateChangeListener;
 import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
 import nl.minvenj.nfi.lrmixstudio.model.AnalysisReport;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
 import nl.minvenj.nfi.lrmixstudio.model.DropoutEstimation;
 
 public class DropoutEstimator extends Thread {
@@ -48,6 +48,8 @@ public class DropoutEstimator extends Thread {
     private final BigDecimal dropin;
     private static final Logger LOG = LoggerFactory.getLogger(DropoutEstimator.class);
     private final DropoutEstimationProgressListener progress;
+    // Without a user interface there is no one to report errors to, so they are passed to the caller
+    private final boolean throwErrors;
     private DropoutEstimation estimate;
     private final Integer iterations;
     private final boolean varyDefenseUnknowns;
@@ -57,6 +59,11 @@ public class DropoutEstimator extends Thread {
     private final BigDecimal dropoutTo;
     private final BigDecimal dropoutSteps;
 
+    /**
+     * Creates a new dropout estimator. The progress listener may be null when
+     * the estimation is performed without a user interface, in which case
+     * errors are thrown from {@link #estimate()}.
+     */
     public DropoutEstimator(final SessionData session, final ArrayList<Sample> personsOfInterest, final BigDecimal dropoutFrom, final BigDecimal dropoutTo, final BigDecimal dropoutSteps, final BigDecimal dropin, final DropoutEstimationProgressListener progress, final Integer iterations, final boolean varyDefenseUnknowns, final boolean varyProsecutionUnknowns) {
         LOG.trace("DropoutEstimator");
         this.observedAlleleCount = session.getObservedAlleleCount();
@@ -66,7 +73,8 @@ public class DropoutEstimator extends Thread {
         this.dropoutTo = dropoutTo;
         this.dropoutSteps = dropoutSteps;
         this.dropin = dropin;
-        this.progress = progress;
+        this.progress = progress == null ? new DefaultDropoutEstimationProgressListenerImpl() : progress;
+        this.throwErrors = progress == null;
         this.iterations = iterations;
         this.varyDefenseUnknowns = varyDefenseUnknowns;
         this.varyProsecutionUnknowns = varyProsecutionUnknowns;
@@ -100,7 +108,7 @@ public class DropoutEstimator extends Thread {
         final int[][] results = new int[iterations][steps + 1];
         progress.hypothesisStarted(hypothesis);
 
-        final ExecutorService service = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        final ExecutorService service = ComputeService.getInstance().createExecutor(ComputeService.Priority.BACKGROUND, Runtime.getRuntime().availableProcessors());
         final ArrayList<Future<ArrayList<Double>>> futures = new ArrayList<>();
 
         // Perform the dropout estimation using the configured number of iterations
@@ -195,6 +203,15 @@ public class DropoutEstimator extends Thread {
             progress.analysisFinished(new LikelihoodRatio());
         }
         catch (final Throwable t) {
+            if (throwErrors) {
+                if (t instanceof InterruptedException) {
+                    throw (InterruptedException) t;
+                }
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                throw new IllegalArgumentException(t);
+            }
             progress.analysisFinished(t);
         }
         return dropoutEstimation;
@@ -39,9 +39,13 @@ import nl.minvenj.nfi.lrmixstudio.domain.Sample;
 import nl.minvenj.nfi.lrmixstudio.gui.ApplicationStateChangeListener;
 import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
 import nl.minvenj.nfi.lrmixstudio.model.AnalysisReportImpl;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
 import nl.minvenj.nfi.lrmixstudio.model.LRMathModel;
 import nl.minvenj.nfi.lrmixstudio.model.LRMathModelFactory;
 import nl.minvenj.nfi.lrmixstudio.model.SensitivityAnalysisResults.Point;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.DropoutPolynomialAnalysis;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.LocusProbabilityCache;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropThreadPool;
 
 public class SensitivityAnalysis extends Thread {
 
@@ -59,6 +63,7 @@ public class SensitivityAnalysis extends Thread {
     private final AnalysisReportImpl masterReport;
     private String targetLocus = null;
     private LRMathModel mathematicalModel = null;
+    private DropoutPolynomialAnalysis polynomialAnalysis = null;
 
     public SensitivityAnalysis(final SessionData session, final String targetLocus, final Collection<Sample> personsOfInterest, final BigDecimal dropoutFrom, final BigDecimal dropoutTo, final BigDecimal dropoutSteps, final BigDecimal dropin, final BigDecimal theta, final SensitivityAnalysisProgressListener sensitivityAnalysisProgressListener, final boolean varyDefenseUnknowns, final boolean varyProsecutionUnknowns) {
         this.masterReport = (AnalysisReportImpl) session.getCurrentReport();
@@ -72,7 +77,7 @@ public class SensitivityAnalysis extends Thread {
         }
 
         this.personsOfInterest = personsOfInterest;
-        this.progress = sensitivityAnalysisProgressListener;
+        this.progress = sensitivityAnalysisProgressListener == null ? new DefaultSensitivityAnalysisProgressListenerImpl() : sensitivityAnalysisProgressListener;
         this.dropoutFrom = dropoutFrom;
         this.dropoutTo = dropoutTo;
         _dropoutSteps = dropoutSteps;
@@ -87,6 +92,9 @@ public class SensitivityAnalysis extends Thread {
         if (mathematicalModel != null) {
             mathematicalModel.interrupt();
         }
+        if (polynomialAnalysis != null) {
+            polynomialAnalysis.interrupt();
+        }
         super.interrupt();
     }
 
@@ -111,6 +119,23 @@ public class SensitivityAnalysis extends Thread {
 
             boolean workback = false;
 
+            session.getProsecution().setDropInProbability(dropin.doubleValue());
+            session.getProsecution().setThetaCorrection(theta.doubleValue());
+            session.getDefense().setDropInProbability(dropin.doubleValue());
+            session.getDefense().setThetaCorrection(theta.doubleValue());
+
+            // Only the dropout varies, so the probabilities can be calculated once as polynomials in the dropout probability
+            polynomialAnalysis = new DropoutPolynomialAnalysis(session, personsOfInterest, varyProsecutionUnknowns, varyDefenseUnknowns);
+            final long polynomialStart = System.currentTimeMillis();
+            final boolean usePolynomials = polynomialAnalysis.calculate(progress);
+            if (usePolynomials) {
+                masterReport.addProcessingTime(System.currentTimeMillis() - polynomialStart);
+            } else {
+                LOG.info("Sensitivity analysis cannot use dropout polynomials. Performing a full analysis for every dropout value.");
+            }
+            // Keeps the results of the previous step, so that a hypothesis or locus that does not depend on the varied dropout is not recalculated
+            final LocusProbabilityCache stepCache = usePolynomials ? null : new LocusProbabilityCache(4 * session.getEnabledLoci().size() + 1, null);
+
             for (BigDecimal dropout = dropoutFrom; dropout.compareTo(dropoutTo) <= 0; dropout = dropout.add(stepSize).stripTrailingZeros()) {
                 for (final Sample sample : personsOfInterest) {
                     session.getDefense().getContributor(sample).setDropoutProbability(dropout.doubleValue());
@@ -124,21 +149,30 @@ public class SensitivityAnalysis extends Thread {
                     session.getProsecution().setUnknownDropoutProbability(dropout.doubleValue());
                 }
 
-                session.getProsecution().setDropInProbability(dropin.doubleValue());
-                session.getProsecution().setThetaCorrection(theta.doubleValue());
-                session.getDefense().setDropInProbability(dropin.doubleValue());
-                session.getDefense().setThetaCorrection(theta.doubleValue());
-
-                progress.setIteration(step++, steps);
-                mathematicalModel = LRMathModelFactory.getMathematicalModel(session.getMathematicalModelName());
-                mathematicalModel.addProgressListener(progress);
-                final LikelihoodRatio lr = mathematicalModel.doAnalysis(session);
-                masterReport.addProcessingTime(session.getCurrentReport().getProcessingTime());
+                progress.setIteration(step, steps);
+                step++;
+                final LikelihoodRatio lr;
+                if (usePolynomials) {
+                    lr = polynomialAnalysis.evaluate(dropout.doubleValue());
+                } else {
+                    if (mathematicalModel == null) {
+                        mathematicalModel = LRMathModelFactory.getMathematicalModel(session.getMathematicalModelName());
+                        mathematicalModel.addProgressListener(progress);
+                        if (mathematicalModel instanceof SplitDropThreadPool) {
+                            ((SplitDropThreadPool) mathematicalModel).setLocusProbabilityCache(stepCache);
+                            ((SplitDropThreadPool) mathematicalModel).setPriority(ComputeService.Priority.BACKGROUND);
+                        }
+                    }
+                    lr = mathematicalModel.doAnalysis(session);
+                    masterReport.addProcessingTime(session.getCurrentReport().getProcessingTime());
+                }
                 progress.setResult(dropout, lr);
 
+                // The LR is evaluated in the log domain, so it is only non-representable if one of the probabilities is exactly zero
                 final Ratio overallRatio = lr.getOverallRatio();
-                if (overallRatio.getRatio() != 0 && !overallRatio.getRatio().isInfinite() && !overallRatio.getRatio().isNaN()) {
-                    lrPoints.add(new Point(null, dropout, new BigDecimal(Math.log10(overallRatio.getRatio()), new MathContext(7, RoundingMode.HALF_UP))));
+                final double log10Ratio = overallRatio.getLog10Ratio();
+                if (!Double.isInfinite(log10Ratio) && !Double.isNaN(log10Ratio)) {
+                    lrPoints.add(new Point(null, dropout, new BigDecimal(log10Ratio, new MathContext(7, RoundingMode.HALF_UP))));
                     progress.setPoints(lrPoints);
                 }
                 else {
@@ -161,20 +195,13 @@ public class SensitivityAnalysis extends Thread {
                     continue;
                 }
 
-                BigDecimal defenseProbability = BigDecimal.ONE;
-                BigDecimal prosecutionProbability = BigDecimal.ONE;
-
-                for (final Ratio ratio : lr.getRatios()) {
-                    defenseProbability = defenseProbability.multiply(new BigDecimal(ratio.getDefenseProbability()));
-                    prosecutionProbability = prosecutionProbability.multiply(new BigDecimal(ratio.getProsecutionProbability()));
-                }
                 try {
-                    defenseProbability = new BigDecimal(Math.log10(defenseProbability.doubleValue()));
-                    prosecutionProbability = new BigDecimal(Math.log10(prosecutionProbability.doubleValue()));
+                    final BigDecimal defenseProbability = new BigDecimal(overallRatio.getLog10DefenseProbability());
+                    final BigDecimal prosecutionProbability = new BigDecimal(overallRatio.getLog10ProsecutionProbability());
                     defenceProbabilityPoints.add(new Point(null, dropout, defenseProbability));
                     prosecutionProbabilityPoints.add(new Point(null, dropout, prosecutionProbability));
                 } catch (final NumberFormatException nfe) {
-                    LOG.debug("Ignoring sensitivity graph at dropout {} because the defence probability = {} and prosecution probability is {}", dropout, defenceProbabilityPoints, prosecutionProbability);
+                    LOG.debug("Ignoring sensitivity graph at dropout {} because the log10 defence probability = {} and log10 prosecution probability is {}", dropout, overallRatio.getLog10DefenseProbability(), overallRatio.getLog10ProsecutionProbability());
                 }
 
                 // If the next dropout value would exceed the upper limit (and we are not currently at this limit) then ensure that the next
@@ -277,6 +304,9 @@ public class SensitivityAnalysis extends Thread {
                 if (mathematicalModel != null) {
                     mathematicalModel.interrupt();
                 }
+                if (polynomialAnalysis != null) {
+                    polynomialAnalysis.interrupt();
+                }
                 LOG.info("Sensitivity Analysis Interrupted!");
             } else {
                 LOG.error("Error in Sensitivity Analysis", ex);
@@ -951,7 +951,7 @@ public class SensitivityAnalysisPanel extends javax.swing.JPanel implements Conf
                 (String) locusComboBox.getSelectedItem(),
                 personsOfInterest, roundedDropoutFrom, roundedDropoutTo,
                 new BigDecimal((Integer) dropoutSteps.getModel().getValue()), roundedDropin, roundedTheta,
-                new SensitivityAnalysisProgressListener(session, this, (String) locusComboBox.getSelectedItem(), personsOfInterest, roundedDropoutFrom, roundedDropoutTo, roundedDropin, roundedTheta, varyDefenseUnknowns, varyProsecutionUnknowns),
+                new SensitivityAnalysisProgressListenerImpl(session, this, (String) locusComboBox.getSelectedItem(), personsOfInterest, roundedDropoutFrom, roundedDropoutTo, roundedDropin, roundedTheta, varyDefenseUnknowns, varyProsecutionUnknowns),
                 varyDefenseUnknowns,
                 varyProsecutionUnknowns);
         analysisThread.start();
@@ -1017,7 +1017,7 @@ public class SensitivityAnalysisPanel extends javax.swing.JPanel implements Conf
                 roundedDropoutTo,
                 new BigDecimal((Integer) dropoutEstimationSteps.getModel().getValue()),
                 roundedDropin,
-                new DropoutEstimationProgressListener(session, this, personsOfInterest, roundedDropoutFrom, roundedDropoutTo, roundedDropin, varyProsecutionUnknowns, varyDefenseUnknowns),
+                new DropoutEstimationProgressListenerImpl(session, this, personsOfInterest, roundedDropoutFrom, roundedDropoutTo, roundedDropin, varyProsecutionUnknowns, varyDefenseUnknowns),
                 (Integer) dropoutEstimationIterations.getValue(),
                 varyDefenseUnknowns,
                 varyProsecutionUnknowns);
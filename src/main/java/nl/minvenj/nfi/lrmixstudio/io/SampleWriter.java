@@ -20,11 +20,16 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+
 public class SampleWriter {
 
     public static final Logger LOG = LoggerFactory.getLogger(SampleWriter.class);
@@ -74,4 +79,42 @@ public class SampleWriter {
         }
     }
 
+    /**
+     * Writes a number of samples to a single file. The header contains at
+     * least 8 allele columns, or more if a locus of one of the samples has more
+     * alleles.
+     *
+     * @param selectedFile The file to write to
+     * @param samples The samples to write
+     * @throws IOException if the file cannot be created or written
+     */
+    public static void write(File selectedFile, Collection<Sample> samples) throws IOException {
+        int alleleColumns = 8;
+        for (Sample sample : samples) {
+            for (Locus locus : sample.getLoci()) {
+                alleleColumns = Math.max(alleleColumns, locus.size());
+            }
+        }
+
+        LOG.debug("Saving {} profiles to {}", samples.size(), selectedFile);
+        try (FileOutputStream fos = new FileOutputStream(selectedFile)) {
+            StringBuilder header = new StringBuilder("SampleName,Marker");
+            for (int idx = 1; idx <= alleleColumns; idx++) {
+                header.append(",Allele").append(idx);
+            }
+            fos.write(header.append("\n").toString().getBytes());
+            for (Sample sample : samples) {
+                for (Locus locus : sample.getLoci()) {
+                    // Only write loci that have at least one allele
+                    if (locus.size() > 0) {
+                        StringBuilder csv = new StringBuilder(sample.getId() + "," + locus.getName());
+                        for (Allele allele : locus.getAlleles()) {
+                            csv.append(",").append(allele.getAllele());
+                        }
+                        fos.write(csv.append("\n").toString().getBytes());
+                    }
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import java.util.Collection;
+import java.util.Random;
+
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+
+/**
+ * Draws random alleles at a single locus according to the population
+ * statistics, using Walker's alias method. The tables are built once, after
+ * which every draw takes constant time and a single random number, and does
+ * not allocate. Alleles are identified by their index in the statistics of the
+ * locus, and genotypes by the index of their pair of alleles.
+ *
+ * The distribution is the same as that of walking the cumulative frequencies
+ * with a uniform random number in [0, 1) and drawing again if it exceeds the
+ * total: the frequencies are normalized if they add up to less than 1, and
+ * truncated at a cumulative frequency of 1 otherwise.
+ */
+public final class AlleleSampler {
+
+    private final String _locusName;
+    private final String[] _alleles;
+    private final double[] _probability;
+    private final int[] _alias;
+
+    /**
+     * Builds the sampler for a locus.
+     *
+     * @param locusName The name of the locus
+     * @param statistics The population statistics to draw from
+     * @throws IllegalArgumentException if the statistics have no alleles with
+     * a positive frequency at the locus
+     */
+    public AlleleSampler(final String locusName, final PopulationStatistics statistics) {
+        final Collection<String> alleles = statistics.getAlleles(locusName);
+        final int count = alleles.size();
+        _locusName = locusName;
+        _alleles = alleles.toArray(new String[count]);
+        _probability = new double[count];
+        _alias = new int[count];
+
+        final double[] weights = new double[count];
+        double cumulative = 0;
+        for (int idx = 0; idx < count; idx++) {
+            final double frequency = Math.max(0, statistics.getProbability(locusName, _alleles[idx]));
+            weights[idx] = Math.min(cumulative + frequency, 1) - Math.min(cumulative, 1);
+            cumulative += frequency;
+        }
+        final double total = Math.min(cumulative, 1);
+        if (count == 0 || total <= 0) {
+            throw new IllegalArgumentException("No allele frequencies for locus " + locusName + " in " + statistics);
+        }
+
+        // Split the alleles into those below and above the average weight, and pair each of the former with one of the latter
+        final int[] small = new int[count];
+        final int[] large = new int[count];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int idx = 0; idx < count; idx++) {
+            weights[idx] = weights[idx] * count / total;
+            if (weights[idx] < 1) {
+                small[smallCount++] = idx;
+            } else {
+                large[largeCount++] = idx;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            final int lower = small[--smallCount];
+            final int upper = large[--largeCount];
+            _probability[lower] = weights[lower];
+            _alias[lower] = upper;
+            weights[upper] = weights[upper] + weights[lower] - 1;
+            if (weights[upper] < 1) {
+                small[smallCount++] = upper;
+            } else {
+                large[largeCount++] = upper;
+            }
+        }
+        // Whatever remains has the average weight, up to rounding errors
+        while (largeCount > 0) {
+            final int idx = large[--largeCount];
+            _probability[idx] = 1;
+            _alias[idx] = idx;
+        }
+        while (smallCount > 0) {
+            final int idx = small[--smallCount];
+            _probability[idx] = 1;
+            _alias[idx] = idx;
+        }
+    }
+
+    /**
+     * @return The name of the locus
+     */
+    public String getLocusName() {
+        return _locusName;
+    }
+
+    /**
+     * @return The number of alleles at the locus
+     */
+    public int getAlleleCount() {
+        return _alleles.length;
+    }
+
+    /**
+     * @param index The index of an allele
+     * @return The name of the allele
+     */
+    public String getAllele(final int index) {
+        return _alleles[index];
+    }
+
+    /**
+     * Draws the index of a random allele.
+     *
+     * @param rnd The source of random numbers
+     * @return The index of the allele
+     */
+    public int nextAllele(final Random rnd) {
+        final double value = rnd.nextDouble() * _alleles.length;
+        final int column = (int) value;
+        return value - column < _probability[column] ? column : _alias[column];
+    }
+
+    /**
+     * Draws a random genotype, consisting of two independently drawn alleles.
+     *
+     * @param rnd The source of random numbers
+     * @return The index of the genotype, see {@link #getGenotype(int, int)}
+     */
+    public int nextGenotype(final Random rnd) {
+        return getGenotype(nextAllele(rnd), nextAllele(rnd));
+    }
+
+    /**
+     * Gets the index of the genotype consisting of two alleles. The order of
+     * the alleles does not matter.
+     *
+     * @param allele1 The index of the first allele
+     * @param allele2 The index of the second allele
+     * @return The index of the genotype
+     */
+    public int getGenotype(final int allele1, final int allele2) {
+        return Math.min(allele1, allele2) * _alleles.length + Math.max(allele1, allele2);
+    }
+
+    /**
+     * @param genotype The index of a genotype
+     * @return The index of the lower allele of the genotype
+     */
+    public int getFirstAllele(final int genotype) {
+        return genotype / _alleles.length;
+    }
+
+    /**
+     * @param genotype The index of a genotype
+     * @return The index of the higher allele of the genotype
+     */
+    public int getSecondAllele(final int genotype) {
+        return genotype % _alleles.length;
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The performance breakdown of a single analysis. For every hypothesis and
+ * locus, this records the number of jobs, the time spent evaluating them, the
+ * number of evaluated permutations and the hit rates of the genotype and
+ * replicate probability caches. Loci whose probability was taken from the
+ * locus probability cache or a checkpoint are recorded as reused.
+ */
+public class AnalysisPerformance {
+
+    private final Map<String, Map<String, LocusPerformance>> _hypotheses = new LinkedHashMap<>();
+    private long _wallTime;
+
+    /**
+     * The performance of the jobs of a single locus under a single hypothesis.
+     * Instances are filled by a single thread and are not thread-safe.
+     */
+    public static final class LocusPerformance {
+
+        private int _jobCount;
+        private long _evaluationTime;
+        private long _permutationCount;
+        private long _genotypeCacheHits;
+        private long _genotypeCacheMisses;
+        private long _replicateCacheHits;
+        private long _replicateCacheMisses;
+        private boolean _reused;
+
+        /**
+         * Records a finished job.
+         *
+         * @param evaluationTime The time in nanoseconds the job took
+         * @param permutationCount The number of permutations the job evaluated
+         * @param genotypeCacheHits The number of genotype probabilities taken
+         * from the cache of the genotype probability calculators
+         * @param genotypeCacheMisses The number of genotype probabilities that
+         * were calculated
+         * @param replicateCacheHits The number of replicate probabilities that
+         * were reused for identical replicate loci
+         * @param replicateCacheMisses The number of replicate probabilities that
+         * were calculated
+         */
+        public void addJob(final long evaluationTime, final long permutationCount, final long genotypeCacheHits, final long genotypeCacheMisses, final long replicateCacheHits, final long replicateCacheMisses) {
+            _jobCount++;
+            _evaluationTime += evaluationTime;
+            _permutationCount += permutationCount;
+            _genotypeCacheHits += genotypeCacheHits;
+            _genotypeCacheMisses += genotypeCacheMisses;
+            _replicateCacheHits += replicateCacheHits;
+            _replicateCacheMisses += replicateCacheMisses;
+        }
+
+        /**
+         * Adds the jobs recorded in another instance.
+         *
+         * @param other The performance to add
+         */
+        public void add(final LocusPerformance other) {
+            _jobCount += other._jobCount;
+            _evaluationTime += other._evaluationTime;
+            _permutationCount += other._permutationCount;
+            _genotypeCacheHits += other._genotypeCacheHits;
+            _genotypeCacheMisses += other._genotypeCacheMisses;
+            _replicateCacheHits += other._replicateCacheHits;
+            _replicateCacheMisses += other._replicateCacheMisses;
+            _reused |= other._reused;
+        }
+
+        /**
+         * Marks the probability of the locus as taken from an earlier
+         * analysis.
+         */
+        public void setReused() {
+            _reused = true;
+        }
+
+        /**
+         * @return true if (part of) the probability of the locus was taken
+         * from an earlier analysis
+         */
+        public boolean isReused() {
+            return _reused;
+        }
+
+        /**
+         * @return The number of jobs
+         */
+        public int getJobCount() {
+            return _jobCount;
+        }
+
+        /**
+         * @return The summed time in nanoseconds of all jobs
+         */
+        public long getEvaluationTime() {
+            return _evaluationTime;
+        }
+
+        /**
+         * @return The number of evaluated permutations
+         */
+        public long getPermutationCount() {
+            return _permutationCount;
+        }
+
+        /**
+         * @return The number of genotype probabilities taken from the cache
+         */
+        public long getGenotypeCacheHits() {
+            return _genotypeCacheHits;
+        }
+
+        /**
+         * @return The number of genotype probabilities that were calculated
+         */
+        public long getGenotypeCacheMisses() {
+            return _genotypeCacheMisses;
+        }
+
+        /**
+         * @return The number of replicate probabilities that were reused
+         */
+        public long getReplicateCacheHits() {
+            return _replicateCacheHits;
+        }
+
+        /**
+         * @return The number of replicate probabilities that were calculated
+         */
+        public long getReplicateCacheMisses() {
+            return _replicateCacheMisses;
+        }
+    }
+
+    /**
+     * Adds the performance of a locus. If the locus was already recorded for
+     * the hypothesis, the performances are added.
+     *
+     * @param hypothesisId The id of the hypothesis
+     * @param locusName The name of the locus
+     * @param performance The performance of the jobs of the locus
+     */
+    public synchronized void addLocus(final String hypothesisId, final String locusName, final LocusPerformance performance) {
+        Map<String, LocusPerformance> loci = _hypotheses.get(hypothesisId);
+        if (loci == null) {
+            loci = new LinkedHashMap<>();
+            _hypotheses.put(hypothesisId, loci);
+        }
+        LocusPerformance locus = loci.get(locusName);
+        if (locus == null) {
+            locus = new LocusPerformance();
+            loci.put(locusName, locus);
+        }
+        locus.add(performance);
+    }
+
+    /**
+     * @return The ids of the hypotheses for which loci were recorded
+     */
+    public synchronized Collection<String> getHypothesisIds() {
+        return new ArrayList<>(_hypotheses.keySet());
+    }
+
+    /**
+     * @param hypothesisId The id of a hypothesis
+     * @return The performance of each locus under the hypothesis, in order of
+     * recording
+     */
+    public synchronized Map<String, LocusPerformance> getLoci(final String hypothesisId) {
+        final Map<String, LocusPerformance> loci = _hypotheses.get(hypothesisId);
+        return loci == null ? Collections.<String, LocusPerformance>emptyMap() : new LinkedHashMap<>(loci);
+    }
+
+    /**
+     * @param hypothesisId The id of a hypothesis
+     * @return The summed performance of all loci under the hypothesis
+     */
+    public LocusPerformance getHypothesisTotal(final String hypothesisId) {
+        final LocusPerformance total = new LocusPerformance();
+        for (final LocusPerformance locus : getLoci(hypothesisId).values()) {
+            total.add(locus);
+        }
+        return total;
+    }
+
+    /**
+     * @return The summed performance of all loci under all hypotheses
+     */
+    public LocusPerformance getTotal() {
+        final LocusPerformance total = new LocusPerformance();
+        for (final String hypothesisId : getHypothesisIds()) {
+            total.add(getHypothesisTotal(hypothesisId));
+        }
+        return total;
+    }
+
+    /**
+     * @param wallTime The time in milliseconds from the start to the end of
+     * the analysis
+     */
+    public synchronized void setWallTime(final long wallTime) {
+        _wallTime = wallTime;
+    }
+
+    /**
+     * @return The time in milliseconds from the start to the end of the
+     * analysis
+     */
+    public synchronized long getWallTime() {
+        return _wallTime;
+    }
+
+    /**
+     * @return The number of evaluated permutations per second of wall time,
+     * or 0 if the wall time is not known
+     */
+    public double getPermutationsPerSecond() {
+        final long wallTime = getWallTime();
+        return wallTime <= 0 ? 0 : getTotal().getPermutationCount() * 1000.0 / wallTime;
+    }
+
+    /**
+     * @return The breakdown as lines of text: a line for every locus and a
+     * total for every hypothesis, followed by the overall totals
+     */
+    public List<String> toLines() {
+        final ArrayList<String> lines = new ArrayList<>();
+        for (final String hypothesisId : getHypothesisIds()) {
+            for (final Map.Entry<String, LocusPerformance> entry : getLoci(hypothesisId).entrySet()) {
+                lines.add(describe(hypothesisId + "." + entry.getKey(), entry.getValue()));
+            }
+            lines.add(describe(hypothesisId, getHypothesisTotal(hypothesisId)));
+        }
+        lines.add(String.format(Locale.ROOT, "Total: wall time %d ms, %.1f permutations/s", getWallTime(), getPermutationsPerSecond()));
+        return lines;
+    }
+
+    private static String describe(final String name, final LocusPerformance performance) {
+        return String.format(Locale.ROOT, "%s: %d jobs, %.1f ms, %d permutations, genotype cache %d/%d, replicate cache %d/%d%s",
+                             name,
+                             performance.getJobCount(),
+                             performance.getEvaluationTime() / 1e6,
+                             performance.getPermutationCount(),
+                             performance.getGenotypeCacheHits(),
+                             performance.getGenotypeCacheHits() + performance.getGenotypeCacheMisses(),
+                             performance.getReplicateCacheHits(),
+                             performance.getReplicateCacheHits() + performance.getReplicateCacheMisses(),
+                             performance.isReused() ? ", reused" : "");
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (final String line : toLines()) {
+            builder.append(line).append('\n');
+        }
+        return builder.toString();
+    }
+}
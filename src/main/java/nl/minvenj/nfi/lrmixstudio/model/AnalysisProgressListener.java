@@ -18,6 +18,7 @@ package nl.minvenj.nfi.lrmixstudio.model;
 
 import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
 import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
 import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
 
 /**
@@ -82,4 +83,13 @@ public interface AnalysisProgressListener {
      * under the given hypothesis.
      */
     public void locusFinished(Hypothesis hypothesis, String locusName, Double locusProbability);
+
+    /**
+     * Called when intermediate results are available for a running analysis.
+     *
+     * @param bounds The {@link LikelihoodRatioBounds} containing the partial
+     * sums of the locus probabilities calculated so far, and lower and upper
+     * bounds on the final probabilities and likelihood ratio
+     */
+    public void intermediateResult(LikelihoodRatioBounds bounds);
 }
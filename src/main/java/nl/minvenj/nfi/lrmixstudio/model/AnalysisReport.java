@@ -77,6 +77,17 @@ public interface AnalysisReport {
 
     public void addProcessingTime(long processingTime);
 
+    /**
+     * @return The performance breakdown of the analysis, or null if the model
+     * did not record one
+     */
+    public AnalysisPerformance getPerformance();
+
+    /**
+     * @param performance The performance breakdown of the analysis
+     */
+    public void setPerformance(AnalysisPerformance performance);
+
     public Collection<String> getEnabledLoci();
 
     public Collection<DisabledLocus> getDisabledLoci();
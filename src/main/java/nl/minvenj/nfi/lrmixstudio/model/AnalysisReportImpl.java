@@ -27,6 +27,7 @@ import nl.minvenj.nfi.lrmixstudio.domain.Allele;
 import nl.minvenj.nfi.lrmixstudio.domain.DisabledLocus;
 import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
 import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
 import nl.minvenj.nfi.lrmixstudio.domain.Locus;
 import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
 import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
@@ -55,6 +56,7 @@ public class AnalysisReportImpl implements AnalysisReport, AnalysisProgressListe
     private final ConfigurationData _config;
     private long _processingTime;
     private String _logfileName;
+    private AnalysisPerformance _performance;
 
     public AnalysisReportImpl(final ConfigurationData config) {
         LOG.debug("Creating new report from {}", config);
@@ -154,6 +156,10 @@ public class AnalysisReportImpl implements AnalysisReport, AnalysisProgressListe
     public void locusFinished(final Hypothesis hypothesis, final String locusName, final Double locusProbability) {
     }
 
+    @Override
+    public void intermediateResult(final LikelihoodRatioBounds bounds) {
+    }
+
     @Override
     public String getCaseNumber() {
         return caseNumber;
@@ -457,4 +463,14 @@ public class AnalysisReportImpl implements AnalysisReport, AnalysisProgressListe
     public void setLogfileName(final String name) {
         _logfileName = name;
     }
+
+    @Override
+    public AnalysisPerformance getPerformance() {
+        return _performance;
+    }
+
+    @Override
+    public void setPerformance(final AnalysisPerformance performance) {
+        _performance = performance;
+    }
 }
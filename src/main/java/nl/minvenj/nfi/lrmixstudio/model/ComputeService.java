@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.gui.ApplicationSettings;
+
+/**
+ * A single, application-wide pool of compute threads. Analyses do not create
+ * their own thread pools, but obtain an {@link ExecutorService} from
+ * {@link #createExecutor(Priority, int)} that submits its tasks to the shared
+ * threads. Several analyses can run concurrently, each limited to its own
+ * number of threads. Queued tasks of interactive analyses are executed before
+ * those of background analyses, and a background analysis never occupies all
+ * threads. Shutting down an executor only affects the tasks of that analysis.
+ */
+public final class ComputeService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ComputeService.class);
+    private static ComputeService _instance;
+    private final ThreadPoolExecutor _pool;
+    private final AtomicLong _sequence = new AtomicLong();
+    // The number of tasks waiting in the executors for a free slot, and the time spent executing tasks
+    private final AtomicInteger _waitingCount = new AtomicInteger();
+    private final StripedCounter _busyTime = new StripedCounter();
+
+    /**
+     * The priority of the tasks of an analysis.
+     */
+    public enum Priority {
+
+        /**
+         * An analysis for which the user is waiting.
+         */
+        INTERACTIVE,
+        /**
+         * An analysis that runs in the background, such as a sensitivity
+         * analysis or a dropout estimation.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * Creates a new compute service. Normally the shared instance obtained
+     * from {@link #getInstance()} is used.
+     *
+     * @param threadCount The number of compute threads
+     */
+    public ComputeService(final int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("A compute service needs at least one thread!");
+        }
+        final AtomicInteger threadNumber = new AtomicInteger();
+        _pool = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "LRmixStudio-compute-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return The shared compute service. The number of threads is the larger
+     * of the number of processors and the thread count in the application
+     * settings.
+     */
+    public static synchronized ComputeService getInstance() {
+        if (_instance == null) {
+            final int threadCount = Math.max(Runtime.getRuntime().availableProcessors(), ApplicationSettings.getThreadCount());
+            LOG.debug("Starting compute service with {} threads", threadCount);
+            _instance = new ComputeService(threadCount);
+        }
+        return _instance;
+    }
+
+    /**
+     * @return The number of compute threads
+     */
+    public int getThreadCount() {
+        return _pool.getMaximumPoolSize();
+    }
+
+    /**
+     * @return The number of tasks that have been submitted but not yet
+     * started, both those queued on the compute threads and those waiting for
+     * their executor to reach its parallelism limit
+     */
+    public int getQueuedTaskCount() {
+        return _pool.getQueue().size() + _waitingCount.get();
+    }
+
+    /**
+     * @return The number of compute threads that are executing a task
+     */
+    public int getActiveThreadCount() {
+        return _pool.getActiveCount();
+    }
+
+    /**
+     * @return The total time in nanoseconds the compute threads have spent
+     * executing tasks
+     */
+    public long getBusyTime() {
+        return _busyTime.sum();
+    }
+
+    /**
+     * Creates an executor for a single analysis. The executor must be shut down
+     * when all tasks have been submitted, and can be cancelled using
+     * {@link ExecutorService#shutdownNow()} without affecting other analyses.
+     *
+     * @param priority The priority of the tasks of the analysis
+     * @param parallelism The maximum number of tasks of the analysis that are
+     * executed concurrently. This is limited to the number of threads, or for
+     * background analyses to one less than the number of threads.
+     * @return An executor that executes its tasks on the compute threads
+     */
+    public ExecutorService createExecutor(final Priority priority, final int parallelism) {
+        if (priority == null) {
+            throw new IllegalArgumentException("No priority specified!");
+        }
+        int limit = Math.min(Math.max(1, parallelism), getThreadCount());
+        if (priority == Priority.BACKGROUND) {
+            // Keep a thread available for interactive analyses
+            limit = Math.min(limit, Math.max(1, getThreadCount() - 1));
+        }
+        return new AnalysisExecutor(priority, limit);
+    }
+
+    /**
+     * A task as queued on the compute threads. Tasks are ordered by priority,
+     * and tasks with the same priority in order of submission.
+     */
+    private final class Task implements Runnable, Comparable<Task> {
+
+        private final AnalysisExecutor _executor;
+        private final Runnable _command;
+        private final long _sequence;
+        private Thread _runner;
+        private boolean _cancelled;
+
+        public Task(final AnalysisExecutor executor, final Runnable command, final long sequence) {
+            _executor = executor;
+            _command = command;
+            _sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            final long start = System.nanoTime();
+            try {
+                synchronized (this) {
+                    if (_cancelled) {
+                        return;
+                    }
+                    _runner = Thread.currentThread();
+                }
+                _command.run();
+            } finally {
+                synchronized (this) {
+                    _runner = null;
+                }
+                _busyTime.add(System.nanoTime() - start);
+                _executor.taskFinished(this);
+            }
+        }
+
+        public synchronized void cancel() {
+            _cancelled = true;
+            if (_command instanceof Future) {
+                ((Future<?>) _command).cancel(true);
+            } else if (_runner != null) {
+                _runner.interrupt();
+            }
+        }
+
+        @Override
+        public int compareTo(final Task other) {
+            final int result = _executor._priority.compareTo(other._executor._priority);
+            if (result != 0) {
+                return result;
+            }
+            return Long.compare(_sequence, other._sequence);
+        }
+    }
+
+    /**
+     * The executor of a single analysis. At most the configured number of
+     * tasks are queued on the compute threads at any time, the remaining tasks
+     * wait here until one of them finishes.
+     */
+    private final class AnalysisExecutor extends AbstractExecutorService {
+
+        private final Priority _priority;
+        private final int _parallelism;
+        private final ArrayDeque<Task> _waiting = new ArrayDeque<>();
+        private final Set<Task> _active = new HashSet<>();
+        private boolean _shutdown;
+
+        public AnalysisExecutor(final Priority priority, final int parallelism) {
+            _priority = priority;
+            _parallelism = parallelism;
+        }
+
+        @Override
+        public synchronized void execute(final Runnable command) {
+            if (_shutdown) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            final Task task = new Task(this, command, _sequence.getAndIncrement());
+            if (_active.size() < _parallelism) {
+                _active.add(task);
+                _pool.execute(task);
+            } else {
+                _waiting.add(task);
+                _waitingCount.incrementAndGet();
+            }
+        }
+
+        private synchronized void taskFinished(final Task task) {
+            _active.remove(task);
+            final Task next = _waiting.poll();
+            if (next != null) {
+                _waitingCount.decrementAndGet();
+                _active.add(next);
+                _pool.execute(next);
+            }
+            if (isTerminated()) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public synchronized void shutdown() {
+            _shutdown = true;
+            if (isTerminated()) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public synchronized List<Runnable> shutdownNow() {
+            _shutdown = true;
+            final List<Runnable> notStarted = new ArrayList<>();
+            for (final Task task : _waiting) {
+                notStarted.add(task._command);
+                task.cancel();
+            }
+            _waitingCount.addAndGet(-_waiting.size());
+            _waiting.clear();
+            for (final Task task : new ArrayList<>(_active)) {
+                task.cancel();
+                if (_pool.remove(task)) {
+                    _active.remove(task);
+                    notStarted.add(task._command);
+                }
+            }
+            if (isTerminated()) {
+                notifyAll();
+            }
+            return notStarted;
+        }
+
+        @Override
+        public synchronized boolean isShutdown() {
+            return _shutdown;
+        }
+
+        @Override
+        public synchronized boolean isTerminated() {
+            return _shutdown && _active.isEmpty() && _waiting.isEmpty();
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+            long remaining = unit.toNanos(timeout);
+            while (!isTerminated()) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                final long start = System.nanoTime();
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining -= System.nanoTime() - start;
+            }
+            return true;
+        }
+    }
+}
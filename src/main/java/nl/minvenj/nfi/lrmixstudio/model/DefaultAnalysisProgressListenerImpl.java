@@ -18,6 +18,7 @@ package nl.minvenj.nfi.lrmixstudio.model;
 
 import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
 import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
 import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
 
 public class DefaultAnalysisProgressListenerImpl implements AnalysisProgressListener {
@@ -45,6 +46,10 @@ public class DefaultAnalysisProgressListenerImpl implements AnalysisProgressList
     public void locusFinished(final Hypothesis hypothesis, final String locusName, final Double locusProbability) {
     }
 
+    @Override
+    public void intermediateResult(final LikelihoodRatioBounds bounds) {
+    }
+
     @Override
     public void analysisFinished(final Throwable e) {
     }
@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application-wide metrics of the calculation engine. The jobs update the
+ * counters once when they finish, using {@link StripedCounter}s so that
+ * concurrent jobs do not contend. The queue depth and worker utilization are
+ * read from the {@link ComputeService}. The shared instance is registered with
+ * the platform MBean server under {@value #OBJECT_NAME}.
+ */
+public final class EngineMetrics implements EngineMetricsMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EngineMetrics.class);
+    /**
+     * The name under which the metrics are registered over JMX.
+     */
+    public static final String OBJECT_NAME = "nl.minvenj.nfi.lrmixstudio:type=EngineMetrics";
+    private static EngineMetrics _instance;
+    private final StripedCounter _permutations = new StripedCounter();
+    private final StripedCounter _jobs = new StripedCounter();
+    private final StripedCounter _jobTime = new StripedCounter();
+    private final StripedCounter _analyses = new StripedCounter();
+    private final StripedCounter _genotypeCacheHits = new StripedCounter();
+    private final StripedCounter _genotypeCacheMisses = new StripedCounter();
+    private final StripedCounter _replicateCacheHits = new StripedCounter();
+    private final StripedCounter _replicateCacheMisses = new StripedCounter();
+    private volatile AnalysisPerformance _lastAnalysis;
+    // The values at the previous read of the rates
+    private long _permutationSampleTime = System.nanoTime();
+    private long _permutationSample;
+    private long _busySampleTime = System.nanoTime();
+    private long _busySample;
+
+    /**
+     * Creates a new instance. Normally the shared instance obtained from
+     * {@link #getInstance()} is used.
+     */
+    public EngineMetrics() {
+    }
+
+    /**
+     * @return The shared instance, which is registered over JMX when it is
+     * first requested
+     */
+    public static synchronized EngineMetrics getInstance() {
+        if (_instance == null) {
+            _instance = new EngineMetrics();
+            try {
+                final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                final ObjectName name = new ObjectName(OBJECT_NAME);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(_instance, name);
+                }
+            } catch (final JMException | SecurityException ex) {
+                LOG.warn("Could not register the engine metrics over JMX: {}", ex.getMessage());
+            }
+        }
+        return _instance;
+    }
+
+    /**
+     * Records a finished job.
+     *
+     * @param evaluationTime The time in nanoseconds the job took
+     * @param permutationCount The number of permutations the job evaluated
+     * @param genotypeCacheHits The number of genotype probabilities taken from
+     * the cache
+     * @param genotypeCacheMisses The number of genotype probabilities that were
+     * calculated
+     * @param replicateCacheHits The number of replicate probabilities that were
+     * reused
+     * @param replicateCacheMisses The number of replicate probabilities that
+     * were calculated
+     */
+    public void jobFinished(final long evaluationTime, final long permutationCount, final long genotypeCacheHits, final long genotypeCacheMisses, final long replicateCacheHits, final long replicateCacheMisses) {
+        _jobs.add(1);
+        _jobTime.add(evaluationTime);
+        _permutations.add(permutationCount);
+        if (genotypeCacheHits != 0) {
+            _genotypeCacheHits.add(genotypeCacheHits);
+        }
+        if (genotypeCacheMisses != 0) {
+            _genotypeCacheMisses.add(genotypeCacheMisses);
+        }
+        if (replicateCacheHits != 0) {
+            _replicateCacheHits.add(replicateCacheHits);
+        }
+        if (replicateCacheMisses != 0) {
+            _replicateCacheMisses.add(replicateCacheMisses);
+        }
+    }
+
+    /**
+     * Records a finished analysis.
+     *
+     * @param performance The performance breakdown of the analysis
+     */
+    public void analysisFinished(final AnalysisPerformance performance) {
+        _analyses.add(1);
+        _lastAnalysis = performance;
+    }
+
+    @Override
+    public long getPermutationsEvaluated() {
+        return _permutations.sum();
+    }
+
+    @Override
+    public synchronized double getPermutationsPerSecond() {
+        final long now = System.nanoTime();
+        final long permutations = _permutations.sum();
+        final double rate = now == _permutationSampleTime ? 0 : (permutations - _permutationSample) * 1e9 / (now - _permutationSampleTime);
+        _permutationSampleTime = now;
+        _permutationSample = permutations;
+        return rate;
+    }
+
+    @Override
+    public long getJobsCompleted() {
+        return _jobs.sum();
+    }
+
+    @Override
+    public long getJobTimeMillis() {
+        return _jobTime.sum() / 1000000;
+    }
+
+    @Override
+    public long getAnalysesCompleted() {
+        return _analyses.sum();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return ComputeService.getInstance().getQueuedTaskCount();
+    }
+
+    @Override
+    public int getWorkerCount() {
+        return ComputeService.getInstance().getThreadCount();
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        return ComputeService.getInstance().getActiveThreadCount();
+    }
+
+    @Override
+    public synchronized double getWorkerUtilization() {
+        final ComputeService service = ComputeService.getInstance();
+        final long now = System.nanoTime();
+        final long busy = service.getBusyTime();
+        final double utilization = now == _busySampleTime ? 0 : (double) (busy - _busySample) / ((now - _busySampleTime) * service.getThreadCount());
+        _busySampleTime = now;
+        _busySample = busy;
+        return Math.min(1, utilization);
+    }
+
+    @Override
+    public long getGenotypeCacheHits() {
+        return _genotypeCacheHits.sum();
+    }
+
+    @Override
+    public long getGenotypeCacheMisses() {
+        return _genotypeCacheMisses.sum();
+    }
+
+    @Override
+    public double getGenotypeCacheHitRate() {
+        return getHitRate(getGenotypeCacheHits(), getGenotypeCacheMisses());
+    }
+
+    @Override
+    public long getReplicateCacheHits() {
+        return _replicateCacheHits.sum();
+    }
+
+    @Override
+    public long getReplicateCacheMisses() {
+        return _replicateCacheMisses.sum();
+    }
+
+    @Override
+    public double getReplicateCacheHitRate() {
+        return getHitRate(getReplicateCacheHits(), getReplicateCacheMisses());
+    }
+
+    private static double getHitRate(final long hits, final long misses) {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    @Override
+    public String[] getLastAnalysisPerformance() {
+        final AnalysisPerformance performance = _lastAnalysis;
+        if (performance == null) {
+            return new String[0];
+        }
+        final List<String> lines = performance.toLines();
+        return lines.toArray(new String[lines.size()]);
+    }
+}
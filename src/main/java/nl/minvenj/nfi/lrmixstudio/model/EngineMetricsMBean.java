@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+/**
+ * The management interface of the {@link EngineMetrics}, as exposed over JMX.
+ * All counts and times are totals since the start of the application.
+ */
+public interface EngineMetricsMBean {
+
+    /**
+     * @return The number of permutations evaluated by all finished jobs
+     */
+    long getPermutationsEvaluated();
+
+    /**
+     * @return The number of permutations evaluated per second since the
+     * previous read of this attribute
+     */
+    double getPermutationsPerSecond();
+
+    /**
+     * @return The number of finished jobs
+     */
+    long getJobsCompleted();
+
+    /**
+     * @return The summed time in milliseconds of all finished jobs
+     */
+    long getJobTimeMillis();
+
+    /**
+     * @return The number of finished analyses
+     */
+    long getAnalysesCompleted();
+
+    /**
+     * @return The number of tasks waiting for a compute thread
+     */
+    int getQueueDepth();
+
+    /**
+     * @return The number of compute threads
+     */
+    int getWorkerCount();
+
+    /**
+     * @return The number of compute threads executing a task
+     */
+    int getActiveWorkers();
+
+    /**
+     * @return The fraction of the available compute thread time spent
+     * executing tasks since the previous read of this attribute
+     */
+    double getWorkerUtilization();
+
+    /**
+     * @return The number of genotype probabilities taken from the cache
+     */
+    long getGenotypeCacheHits();
+
+    /**
+     * @return The number of genotype probabilities that were calculated
+     */
+    long getGenotypeCacheMisses();
+
+    /**
+     * @return The fraction of genotype probabilities taken from the cache of
+     * the genotype probability calculators
+     */
+    double getGenotypeCacheHitRate();
+
+    /**
+     * @return The number of replicate probabilities reused for identical
+     * replicate loci
+     */
+    long getReplicateCacheHits();
+
+    /**
+     * @return The number of replicate probabilities that were calculated
+     */
+    long getReplicateCacheMisses();
+
+    /**
+     * @return The fraction of replicate probabilities reused for identical
+     * replicate loci
+     */
+    double getReplicateCacheHitRate();
+
+    /**
+     * @return The time per hypothesis and locus of the last finished
+     * analysis, one line per locus
+     */
+    String[] getLastAnalysisPerformance();
+}
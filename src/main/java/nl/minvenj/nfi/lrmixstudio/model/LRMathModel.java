@@ -60,6 +60,16 @@ public interface LRMathModel {
      */
     public void startAnalysis(ConfigurationData config);
 
+    /**
+     * Predicts the duration of an analysis of the configuration data from the
+     * measured throughput of earlier jobs.
+     *
+     * @param config A {@link ConfigurationData} object containing the input for
+     * the analysis
+     * @return The predicted duration in milliseconds
+     */
+    public long predictDuration(ConfigurationData config);
+
     /**
      * Starts a sensitivity analysis on the supplied configuration data.
      *
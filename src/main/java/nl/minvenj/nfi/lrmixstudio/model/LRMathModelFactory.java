@@ -19,15 +19,21 @@ package nl.minvenj.nfi.lrmixstudio.model;
 import java.util.Collections;
 import java.util.HashMap;
 
+import nl.minvenj.nfi.lrmixstudio.gui.ApplicationSettings;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropAlleleUnionPool;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropBalancedChunksPool;
 import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropThreadPool;
 
 public class LRMathModelFactory {
 
+    private static final String DEFAULT_MODEL_NAME = "SplitDrop Executor Edition";
     private static HashMap<String, Class> models = new HashMap<>();
 
     private static void init() {
         if (models.isEmpty()) {
-            models.put("SplitDrop Executor Edition", SplitDropThreadPool.class);
+            models.put(DEFAULT_MODEL_NAME, SplitDropThreadPool.class);
+            models.put("SplitDrop Balanced Chunks Edition", SplitDropBalancedChunksPool.class);
+            models.put("SplitDrop Allele Union Edition", SplitDropAlleleUnionPool.class);
         }
     }
 
@@ -36,15 +42,29 @@ public class LRMathModelFactory {
         return Collections.unmodifiableCollection(models.keySet());
     }
 
+    /**
+     * Gets the name of the model to use for new analyses. This is the model
+     * configured in the application settings if that names a known model, or
+     * the SplitDrop Executor Edition otherwise.
+     *
+     * @return The name of the default model
+     */
     public static String getDefaultModelName() {
         init();
-        return "SplitDrop Executor Edition";
+        final String configured = ApplicationSettings.getMathematicalModelName();
+        for (String modelName : models.keySet()) {
+            if (modelName.equalsIgnoreCase(configured)) {
+                return modelName;
+            }
+        }
+        return DEFAULT_MODEL_NAME;
     }
 
     private LRMathModelFactory() {
     }
 
     public static LRMathModel getMathematicalModel(String id) throws InstantiationException, IllegalAccessException {
+        init();
 
         if (id == null) {
             throw new IllegalArgumentException("Mathematical Model ID is null!");
@@ -52,7 +72,7 @@ public class LRMathModelFactory {
 
         for (String modelName : models.keySet()) {
             if (id.equalsIgnoreCase(modelName)) {
-                return (LRMathModel) models.get(id).newInstance();
+                return (LRMathModel) models.get(modelName).newInstance();
             }
         }
 
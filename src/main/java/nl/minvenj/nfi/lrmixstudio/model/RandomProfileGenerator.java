@@ -19,23 +19,43 @@ package nl.minvenj.nfi.lrmixstudio.model;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Random;
 
 import nl.minvenj.nfi.lrmixstudio.domain.Allele;
 import nl.minvenj.nfi.lrmixstudio.domain.Locus;
 import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
 import nl.minvenj.nfi.lrmixstudio.domain.Sample;
 
+/**
+ * Generates random profiles according to the population statistics. The
+ * alleles of each locus are drawn by an {@link AlleleSampler} that is built
+ * once per locus.
+ */
 public class RandomProfileGenerator {
 
-    protected final SecureRandom rnd;
+    protected final Random rnd;
     private final PopulationStatistics stats;
     private final Collection<String> _enabledLoci;
+    private final HashMap<String, AlleleSampler> _samplers = new HashMap<>();
 
     public RandomProfileGenerator(Collection<String> enabledLoci, PopulationStatistics stats) {
         this(enabledLoci, stats, new SecureRandom());
     }
 
     public RandomProfileGenerator(Collection<String> enabledLoci, PopulationStatistics stats, SecureRandom rnd) {
+        this(enabledLoci, stats, (Random) rnd);
+    }
+
+    /**
+     * Creates a generator that draws from the supplied source of random
+     * numbers.
+     *
+     * @param enabledLoci The loci of the generated profiles
+     * @param stats The population statistics to draw the alleles from
+     * @param rnd The source of random numbers
+     */
+    public RandomProfileGenerator(Collection<String> enabledLoci, PopulationStatistics stats, Random rnd) {
         this.stats = stats;
         this.rnd = rnd;
         _enabledLoci = enabledLoci;
@@ -45,10 +65,11 @@ public class RandomProfileGenerator {
         Sample sample = new Sample("RandomSample");
 
         for (String locusName : _enabledLoci) {
+            final AlleleSampler sampler = getSampler(locusName);
             Locus locus = new Locus(locusName);
 
-            locus.addAllele(getRandomAllele(locusName));
-            locus.addAllele(getRandomAllele(locusName));
+            locus.addAllele(new Allele(sampler.getAllele(sampler.nextAllele(rnd))));
+            locus.addAllele(new Allele(sampler.getAllele(sampler.nextAllele(rnd))));
 
             sample.addLocus(locus);
         }
@@ -56,6 +77,46 @@ public class RandomProfileGenerator {
         return sample;
     }
 
+    /**
+     * Gets the sampler for the alleles of a locus, building it on first use.
+     *
+     * @param locusName The name of the locus
+     * @return The sampler for the locus
+     * @throws IllegalArgumentException if the statistics have no alleles with
+     * a positive frequency at the locus
+     */
+    public AlleleSampler getSampler(String locusName) {
+        AlleleSampler sampler = _samplers.get(locusName);
+        if (sampler == null) {
+            sampler = new AlleleSampler(locusName, stats);
+            _samplers.put(locusName, sampler);
+        }
+        return sampler;
+    }
+
+    /**
+     * Generates a random genotype for the named locus without creating
+     * {@link Allele} or {@link Locus} objects.
+     *
+     * @param locusName The name of the target locus
+     * @return The index of the genotype in the {@link AlleleSampler} of the
+     * locus
+     */
+    public int getRandomGenotype(String locusName) {
+        return getSampler(locusName).nextGenotype(rnd);
+    }
+
+    /**
+     * Generates the name of a random allele for the named locus.
+     *
+     * @param locusName The name of the target locus
+     * @return The name of a randomly drawn allele
+     */
+    public String getRandomAlleleName(String locusName) {
+        final AlleleSampler sampler = getSampler(locusName);
+        return sampler.getAllele(sampler.nextAllele(rnd));
+    }
+
     /**
      * Generates a random allele for the getNamed locus
      *
@@ -63,17 +124,6 @@ public class RandomProfileGenerator {
      * @return a randomly generated allele
      */
     public Allele getRandomAllele(String locusName) {
-
-        while (true) {
-            double randomValue = rnd.nextDouble();
-            double threshold = 0.0;
-
-            for (String allele : stats.getAlleles(locusName)) {
-                threshold += stats.getProbability(locusName, allele).doubleValue();
-                if (randomValue <= threshold) {
-                    return new Allele(allele);
-                }
-            }
-        }
+        return new Allele(getRandomAlleleName(locusName));
     }
 }
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that can be incremented by many threads at little cost. Each
+ * thread adds to one of a number of cells, selected by its thread id, so that
+ * concurrent updates rarely contend for the same cache line. Reading the value
+ * sums all cells and is comparatively expensive.
+ */
+final class StripedCounter {
+
+    // The cells are spaced this many longs apart, so that each occupies its own cache line
+    private static final int SPACING = 16;
+    private final AtomicLongArray _cells;
+    private final int _mask;
+
+    StripedCounter() {
+        int stripes = 1;
+        while (stripes < 2 * Runtime.getRuntime().availableProcessors()) {
+            stripes <<= 1;
+        }
+        _mask = stripes - 1;
+        _cells = new AtomicLongArray(stripes * SPACING);
+    }
+
+    /**
+     * Adds a value to the counter.
+     *
+     * @param value The value to add
+     */
+    void add(final long value) {
+        _cells.getAndAdd(((int) Thread.currentThread().getId() & _mask) * SPACING, value);
+    }
+
+    /**
+     * @return The sum of all values added to the counter
+     */
+    long sum() {
+        long sum = 0;
+        for (int idx = 0; idx < _cells.length(); idx += SPACING) {
+            sum += _cells.get(idx);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.io.SampleWriter;
+
+/**
+ * Generates synthetic cases from population statistics. The profiles of the
+ * contributors are drawn by a {@link RandomProfileGenerator}. Each replicate
+ * holds the alleles of the contributors that did not drop out. Drop-in alleles,
+ * drawn by frequency from the alleles that are not yet present, are added to
+ * every replicate until every locus has the requested number of distinct
+ * alleles.
+ *
+ * The random generator is seeded from the seed of the generator and the
+ * parameters of the case, so the same parameters always produce the same case,
+ * regardless of the order in which cases are generated.
+ */
+public class SyntheticCaseGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyntheticCaseGenerator.class);
+    private static final String RANDOM_ALGORITHM = "SHA1PRNG";
+    private final PopulationStatistics _statistics;
+    private final long _seed;
+
+    /**
+     * A generated case.
+     */
+    public static final class SyntheticCase {
+
+        private final List<String> _loci;
+        private final List<Sample> _replicates;
+        private final List<Sample> _contributors;
+        private final Sample _nonContributor;
+
+        SyntheticCase(final List<String> loci, final List<Sample> replicates, final List<Sample> contributors, final Sample nonContributor) {
+            _loci = loci;
+            _replicates = replicates;
+            _contributors = contributors;
+            _nonContributor = nonContributor;
+        }
+
+        /**
+         * @return The names of the loci of the case
+         */
+        public List<String> getLoci() {
+            return Collections.unmodifiableList(_loci);
+        }
+
+        /**
+         * @return The replicates
+         */
+        public List<Sample> getReplicates() {
+            return Collections.unmodifiableList(_replicates);
+        }
+
+        /**
+         * @return The profiles of the contributors to the replicates, named
+         * Contributor1, Contributor2 etc.
+         */
+        public List<Sample> getContributors() {
+            return Collections.unmodifiableList(_contributors);
+        }
+
+        /**
+         * @return A profile, named NonContributor, that did not contribute to
+         * the replicates
+         */
+        public Sample getNonContributor() {
+            return _nonContributor;
+        }
+
+        /**
+         * @return The reference profiles: the contributors followed by the
+         * non-contributor
+         */
+        public List<Sample> getReferences() {
+            final ArrayList<Sample> references = new ArrayList<>(_contributors);
+            references.add(_nonContributor);
+            return references;
+        }
+
+        /**
+         * Writes the replicates and the reference profiles to the files
+         * replicates.csv and references.csv in a directory.
+         *
+         * @param directory The directory to write to. It is created if it does
+         * not exist.
+         * @throws IOException if the files could not be written
+         */
+        public void write(final File directory) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create directory " + directory);
+            }
+            SampleWriter.write(getReplicatesFile(directory), _replicates);
+            SampleWriter.write(getReferencesFile(directory), getReferences());
+        }
+
+        /**
+         * @param directory The directory the case was written to
+         * @return The file holding the replicates
+         */
+        public static File getReplicatesFile(final File directory) {
+            return new File(directory, "replicates.csv");
+        }
+
+        /**
+         * @param directory The directory the case was written to
+         * @return The file holding the reference profiles
+         */
+        public static File getReferencesFile(final File directory) {
+            return new File(directory, "references.csv");
+        }
+    }
+
+    /**
+     * Creates a new generator.
+     *
+     * @param statistics The population statistics to draw alleles from
+     * @param seed The seed of the random generator
+     */
+    public SyntheticCaseGenerator(final PopulationStatistics statistics, final long seed) {
+        if (statistics == null) {
+            throw new IllegalArgumentException("No population statistics specified!");
+        }
+        _statistics = statistics;
+        _seed = seed;
+    }
+
+    /**
+     * Generates a case. The first loci of the population statistics are used.
+     *
+     * @param contributorCount The number of contributors to the replicates
+     * @param replicateCount The number of replicates
+     * @param locusCount The number of loci
+     * @param allelesPerLocus The minimum number of distinct alleles in the
+     * replicates at every locus, or 0 to only add the alleles of the
+     * contributors
+     * @param dropout The probability that an allele of a contributor drops out
+     * of a replicate
+     * @return The generated case
+     */
+    public SyntheticCase generate(final int contributorCount, final int replicateCount, final int locusCount, final int allelesPerLocus, final double dropout) {
+        if (contributorCount < 1 || replicateCount < 1) {
+            throw new IllegalArgumentException("A case needs at least one contributor and one replicate!");
+        }
+        if (locusCount < 1 || locusCount > _statistics.getLoci().size()) {
+            throw new IllegalArgumentException("The number of loci must be within [1, " + _statistics.getLoci().size() + "], not " + locusCount);
+        }
+        if (allelesPerLocus < 0) {
+            throw new IllegalArgumentException("The number of alleles per locus cannot be negative");
+        }
+        if (dropout < 0 || dropout > 1) {
+            throw new IllegalArgumentException("Dropout probability " + dropout + " is not within [0, 1]");
+        }
+
+        final SecureRandom rnd = createRandom(contributorCount, replicateCount, locusCount, allelesPerLocus, dropout);
+        final List<String> loci = new ArrayList<>(new ArrayList<>(_statistics.getLoci()).subList(0, locusCount));
+        final RandomProfileGenerator profileGenerator = new RandomProfileGenerator(loci, _statistics, rnd);
+
+        final ArrayList<Sample> contributors = new ArrayList<>();
+        for (int idx = 1; idx <= contributorCount; idx++) {
+            contributors.add(createProfile(profileGenerator, "Contributor" + idx));
+        }
+        final Sample nonContributor = createProfile(profileGenerator, "NonContributor");
+
+        final ArrayList<Sample> replicates = new ArrayList<>();
+        for (int idx = 1; idx <= replicateCount; idx++) {
+            replicates.add(new Sample("Replicate" + idx));
+        }
+        for (final String locusName : loci) {
+            final ArrayList<String> contributed = new ArrayList<>();
+            for (final Sample contributor : contributors) {
+                for (final Allele allele : contributor.getLocus(locusName).getAlleles()) {
+                    contributed.add(allele.getAllele());
+                }
+            }
+            final LinkedHashSet<String> dropins = new LinkedHashSet<>();
+            final LinkedHashSet<String> distinct = new LinkedHashSet<>(contributed);
+            while (distinct.size() < allelesPerLocus) {
+                final String allele = getRandomAbsentAllele(rnd, locusName, distinct);
+                if (allele == null) {
+                    break;
+                }
+                distinct.add(allele);
+                dropins.add(allele);
+            }
+            if (distinct.size() < allelesPerLocus) {
+                LOG.debug("Locus {} has only {} of the requested {} alleles", locusName, distinct.size(), allelesPerLocus);
+            }
+
+            for (final Sample replicate : replicates) {
+                final LinkedHashSet<String> observed = new LinkedHashSet<>();
+                for (final String allele : contributed) {
+                    if (rnd.nextDouble() >= dropout) {
+                        observed.add(allele);
+                    }
+                }
+                observed.addAll(dropins);
+                if (!observed.isEmpty()) {
+                    final Locus locus = new Locus(locusName);
+                    for (final String allele : observed) {
+                        locus.addAllele(new Allele(allele));
+                    }
+                    replicate.addLocus(locus);
+                }
+            }
+        }
+        return new SyntheticCase(loci, replicates, contributors, nonContributor);
+    }
+
+    /**
+     * Draws an allele that is not yet present, with a probability proportional
+     * to its frequency. Unlike repeated draws from all alleles, this ends
+     * quickly even if only very rare alleles are left.
+     */
+    private String getRandomAbsentAllele(final SecureRandom rnd, final String locusName, final Collection<String> present) {
+        final ArrayList<String> alleles = new ArrayList<>();
+        double total = 0;
+        for (final String allele : _statistics.getAlleles(locusName)) {
+            if (!present.contains(allele)) {
+                alleles.add(allele);
+                total += _statistics.getProbability(locusName, allele);
+            }
+        }
+        if (alleles.isEmpty()) {
+            return null;
+        }
+        final double randomValue = rnd.nextDouble() * total;
+        double threshold = 0;
+        for (final String allele : alleles) {
+            threshold += _statistics.getProbability(locusName, allele);
+            if (randomValue < threshold) {
+                return allele;
+            }
+        }
+        return alleles.get(alleles.size() - 1);
+    }
+
+    private SecureRandom createRandom(final int contributorCount, final int replicateCount, final int locusCount, final int allelesPerLocus, final double dropout) {
+        try {
+            // Seeding a SHA1PRNG before it is used makes its output fully determined by the seed
+            final SecureRandom rnd = SecureRandom.getInstance(RANDOM_ALGORITHM);
+            rnd.setSeed((_seed + ":" + contributorCount + ":" + replicateCount + ":" + locusCount + ":" + allelesPerLocus + ":" + dropout).getBytes(StandardCharsets.UTF_8));
+            return rnd;
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static Sample createProfile(final RandomProfileGenerator profileGenerator, final String name) {
+        try {
+            final Sample profile = profileGenerator.getRandomSample();
+            profile.setId(name);
+            return profile;
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
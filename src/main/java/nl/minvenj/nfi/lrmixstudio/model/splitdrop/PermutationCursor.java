@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+
+/**
+ * A cursor over the same combinations as a {@link PermutationIterator}. Unlike
+ * the iterator, a cursor is meant for a single consumer: it is not
+ * synchronized and does not allocate any objects while stepping through the
+ * combinations.
+ *
+ * @author dejong
+ */
+public interface PermutationCursor {
+
+    /**
+     * Moves the cursor to the next combination.
+     *
+     * @param indices A caller-owned buffer of at least
+     * {@link #getUnknownCount()} elements that receives the genotype index for
+     * each unknown contributor in the next combination
+     * @return The number of permutations represented by the combination, or 0
+     * if no more combinations are available
+     */
+    int next(int[] indices);
+
+    /**
+     * @return The number of unknown contributors in each combination
+     */
+    int getUnknownCount();
+
+    /**
+     * Gets the genotype that corresponds to an index returned by
+     * {@link #next(int[])}.
+     *
+     * @param index The genotype index
+     * @return The genotype as a Locus object
+     */
+    Locus getGenotype(int index);
+
+    /**
+     * Accessor for the number of combinations in the cursor.
+     *
+     * @return A long representing the total number of combinations in the
+     * cursor.
+     */
+    long size();
+}
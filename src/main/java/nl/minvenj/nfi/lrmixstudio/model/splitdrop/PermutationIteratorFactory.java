@@ -24,6 +24,35 @@ public class PermutationIteratorFactory {
         return new PermutationIteratorRelatedness(hypothesis.getUnknownCount(), loci, idx);
     }
 
+    public static PermutationIterator getPermutationIterator(Hypothesis hypothesis, Collection<Locus> loci, int[] prefix) {
+        if (hypothesis.getRelatedness().getRelation() == Relation.NONE) {
+            return new PermutationIteratorPlain(hypothesis.getUnknownCount(), loci, prefix);
+        }
+        return new PermutationIteratorRelatedness(hypothesis.getUnknownCount(), loci, prefix);
+    }
+
+    public static PermutationCursor getPermutationCursor(Hypothesis hypothesis, Collection<Locus> loci, int idx) {
+        return getPermutationCursor(hypothesis, loci, new int[]{idx});
+    }
+
+    public static PermutationCursor getPermutationCursor(Hypothesis hypothesis, Collection<Locus> loci, int[] prefix) {
+        if (hypothesis.getRelatedness().getRelation() == Relation.NONE) {
+            return new PermutationIteratorPlain(hypothesis.getUnknownCount(), loci, prefix);
+        }
+        return new PermutationIteratorRelatedness(hypothesis.getUnknownCount(), loci, prefix);
+    }
+
+    public static PermutationCursor getPermutationCursor(Hypothesis hypothesis, Collection<Locus> loci, long from, long to) {
+        if (hypothesis.getRelatedness().getRelation() == Relation.NONE) {
+            return new PermutationIteratorPlain(hypothesis.getUnknownCount(), loci, from, to);
+        }
+        return new PermutationIteratorRelatedness(hypothesis.getUnknownCount(), loci, from, to);
+    }
+
+    public static PermutationRanker getPermutationRanker(Hypothesis hypothesis, int genotypeCount) {
+        return new PermutationRanker(hypothesis.getUnknownCount(), genotypeCount, hypothesis.getRelatedness().getRelation() != Relation.NONE);
+    }
+
     private PermutationIteratorFactory() {
     }
 
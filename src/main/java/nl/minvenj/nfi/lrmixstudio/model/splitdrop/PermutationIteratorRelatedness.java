@@ -16,49 +16,74 @@ import nl.minvenj.nfi.lrmixstudio.domain.Locus;
  *
  * @author dejong
  */
-public class PermutationIteratorRelatedness implements PermutationIterator {
+public class PermutationIteratorRelatedness implements PermutationIterator, PermutationCursor {
 
     private static final Logger LOG = LoggerFactory.getLogger(PermutationIteratorRelatedness.class);
     private static final int[] FACTORIALS = {1, 1, 2, 6, 24, 120, 720, 5040, 40320, 362880, 3628800, 39916800, 479001600};
     private final int[] _indices;
     private final Locus[] _loci;
-    private final int _batchEnd;
-    private final int[] _locusCount;
+    private long _remaining;
     private final int _n;
     private final long _size;
 
     public PermutationIteratorRelatedness(int unknownCount, Collection<Locus> possibleAlleleCombinations, int batchStart) {
+        this(unknownCount, possibleAlleleCombinations, new int[]{batchStart});
+    }
+
+    /**
+     * Creates an iterator over all combinations that start with the supplied
+     * prefix. The first index is the genotype of the related unknown and can
+     * have any value, the remaining prefix indices must be non-decreasing.
+     *
+     * @param unknownCount The number of unknown contributors
+     * @param possibleAlleleCombinations The genotypes an unknown can have
+     * @param prefix The fixed genotype indices of the first unknowns
+     */
+    public PermutationIteratorRelatedness(int unknownCount, Collection<Locus> possibleAlleleCombinations, int[] prefix) {
         LOG.debug("Creating PermutationIterator for Relatedness");
         _indices = new int[unknownCount];
         _loci = possibleAlleleCombinations.toArray(new Locus[possibleAlleleCombinations.size()]);
-        _locusCount = new int[_loci.length];
 
         // Get the number of permutations for the total n!
         _n = unknownCount > 0 ? FACTORIALS[_indices.length - 1] : 0;
 
-        _batchEnd = batchStart + 1;
-        if (_indices.length > 0) {
-            _indices[0] = batchStart;
-        }
+        int prefixLength = Math.min(prefix.length, _indices.length);
+        System.arraycopy(prefix, 0, _indices, 0, prefixLength);
+        // The related unknown does not constrain the indices of the other unknowns
+        int lowerBound = prefixLength > 1 ? prefix[prefixLength - 1] : 0;
+        Arrays.fill(_indices, Math.min(Math.max(1, prefixLength), _indices.length), _indices.length, lowerBound);
 
-        _size = doSum(_indices.length, _loci.length);
+        long size = _indices.length == 0 ? 0 : PermutationRanker.countSorted(_indices.length - Math.max(1, prefixLength), _loci.length - lowerBound);
+        _size = prefixLength == 0 ? size * _loci.length : size;
+        _remaining = _size;
     }
 
-    private long doSum(int depth, int range) {
-        if (depth <= 0) {
-            return 0;
-        }
-        if (depth == 1) {
-            return 1;
-        }
-        if (depth == 2) {
-            return range;
+    /**
+     * Creates an iterator over the combinations with a rank in the range [from,
+     * to) as defined by the {@link PermutationRanker}.
+     *
+     * @param unknownCount The number of unknown contributors
+     * @param possibleAlleleCombinations The genotypes an unknown can have
+     * @param from The rank of the first combination to return
+     * @param to The rank of the first combination not to return
+     */
+    public PermutationIteratorRelatedness(int unknownCount, Collection<Locus> possibleAlleleCombinations, long from, long to) {
+        _indices = new int[unknownCount];
+        _loci = possibleAlleleCombinations.toArray(new Locus[possibleAlleleCombinations.size()]);
+
+        // Get the number of permutations for the total n!
+        _n = unknownCount > 0 ? FACTORIALS[_indices.length - 1] : 0;
+
+        PermutationRanker ranker = new PermutationRanker(unknownCount, _loci.length, true);
+        if (from < 0 || to < from || to > ranker.size()) {
+            throw new IllegalArgumentException("Range [" + from + ", " + to + ") is not within [0, " + ranker.size() + ")");
         }
-        long size = 0;
-        for (int count = 1; count <= range; count++) {
-            size += doSum(depth - 1, count);
+        if (from < to) {
+            ranker.unrank(from, _indices);
         }
-        return size;
+
+        _size = to - from;
+        _remaining = _size;
     }
 
     @Override
@@ -68,26 +93,32 @@ public class PermutationIteratorRelatedness implements PermutationIterator {
 
     @Override
     public boolean hasNext() {
-        if (_indices.length == 0) {
-            return false;
-        }
-        return _indices[0] < _batchEnd;
+        return _remaining > 0;
     }
 
     @Override
     public synchronized Permutation next() {
-        if (_indices.length == 0 || _indices[0] >= _batchEnd) {
+        final int[] indices = new int[_indices.length];
+        final int permutationFactor = next(indices);
+        if (permutationFactor == 0) {
             return null;
         }
 
-        // Prepare return value
-        Locus[] permutationLoci = new Locus[_indices.length];
-        Arrays.fill(_locusCount, 0);
-        permutationLoci[0] = _loci[_indices[0]];
-        for (int idx = 1; idx < _indices.length; idx++) {
-            _locusCount[_indices[idx]]++;
-            permutationLoci[idx] = _loci[_indices[idx]];
+        final Locus[] permutationLoci = new Locus[indices.length];
+        for (int idx = 0; idx < indices.length; idx++) {
+            permutationLoci[idx] = _loci[indices[idx]];
         }
+        return new Permutation(permutationLoci, permutationFactor);
+    }
+
+    @Override
+    public int next(int[] indices) {
+        if (_remaining == 0) {
+            return 0;
+        }
+
+        System.arraycopy(_indices, 0, indices, 0, _indices.length);
+        _remaining--;
 
         // Update the index values for the next iteration
         int indicesIndex = _indices.length - 1;
@@ -98,12 +129,20 @@ public class PermutationIteratorRelatedness implements PermutationIterator {
         }
         _indices[indicesIndex]++;
 
-        // Do not return equivalent combinations of loci
-        Arrays.fill(_indices, indicesIndex + 1, _indices.length, _indices[indicesIndex]);
+        // Do not return equivalent combinations of loci. The related unknown does not take part in this.
+        Arrays.fill(_indices, indicesIndex + 1, _indices.length, indicesIndex == 0 ? 0 : _indices[indicesIndex]);
 
-        int permutationFactor = calculatePermutationFactor();
-//        LOG.info("Indices: {} factor {}", signature, permutationFactor);
-        return new Permutation(permutationLoci, permutationFactor);
+        return calculatePermutationFactor(indices);
+    }
+
+    @Override
+    public int getUnknownCount() {
+        return _indices.length;
+    }
+
+    @Override
+    public Locus getGenotype(int index) {
+        return _loci[index];
     }
 
     @Override
@@ -112,18 +151,27 @@ public class PermutationIteratorRelatedness implements PermutationIterator {
     }
 
     /**
-     * Calculates the number of permutations for the current collection of loci
+     * Calculates the number of permutations for the supplied collection of loci
      *
-     * @return The number of permutations for the current collection of loci
+     * @param indices The indices of the loci in the combination, where all
+     * indices except the first are sorted
+     * @return The number of permutations for the supplied collection of loci
      */
-    private int calculatePermutationFactor() {
+    private int calculatePermutationFactor(int[] indices) {
         // Divide the total number of permutations by the number of equivalent permutations of each of the components
         // n! / PRODUCT<i=1;k>(Ci!) where n is the number of elements in the signature, k is the number of distinct elements in the signature and Ci is the number of times element i of k is used.
+        // As the indices are sorted, Ci is the length of a run of identical indices.
         int k = 1;
-
-        for (int idx = 0; idx < _locusCount.length; idx++) {
-            k = k * FACTORIALS[_locusCount[idx]];
+        int run = 1;
+        for (int idx = 2; idx < indices.length; idx++) {
+            if (indices[idx] == indices[idx - 1]) {
+                run++;
+            } else {
+                k = k * FACTORIALS[run];
+                run = 1;
+            }
         }
+        k = k * FACTORIALS[run];
 
         return _n / k;
     }
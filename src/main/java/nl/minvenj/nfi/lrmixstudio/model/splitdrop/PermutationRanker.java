@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop;
+
+/**
+ * Maps the combinations of genotypes enumerated by the permutation iterators
+ * to their position (rank) in the enumeration and back. This is an
+ * implementation of the combinatorial number system for multisets, which
+ * makes it possible to start an enumeration at an arbitrary position and to
+ * divide the enumeration into ranges of exactly known size.
+ *
+ * For unrelated unknowns a combination is a non-decreasing sequence of
+ * genotype indices. For a related unknown the first index is free and the
+ * remaining indices are non-decreasing. Ranks follow the lexicographic order
+ * in which {@link PermutationIteratorPlain} and
+ * {@link PermutationIteratorRelatedness} return the combinations.
+ *
+ * @author dejong
+ */
+public class PermutationRanker {
+
+    private final int _unknownCount;
+    private final int _genotypeCount;
+    private final boolean _related;
+    private final long _size;
+
+    /**
+     * Creates a ranker.
+     *
+     * @param unknownCount The number of unknown contributors
+     * @param genotypeCount The number of genotypes each unknown can have
+     * @param related true if the first unknown is related to a known person
+     */
+    public PermutationRanker(int unknownCount, int genotypeCount, boolean related) {
+        if (unknownCount < 0) {
+            throw new IllegalArgumentException("Number of unknowns cannot be negative: " + unknownCount);
+        }
+        if (genotypeCount < 0) {
+            throw new IllegalArgumentException("Number of genotypes cannot be negative: " + genotypeCount);
+        }
+        _unknownCount = unknownCount;
+        _genotypeCount = genotypeCount;
+        _related = related;
+        if (unknownCount == 0) {
+            _size = 0;
+        } else if (related) {
+            _size = genotypeCount * countSorted(unknownCount - 1, genotypeCount);
+        } else {
+            _size = countSorted(unknownCount, genotypeCount);
+        }
+    }
+
+    /**
+     * @return The total number of combinations in the enumeration
+     */
+    public long size() {
+        return _size;
+    }
+
+    /**
+     * Gets the position of a combination in the enumeration.
+     *
+     * @param indices The genotype indices of the combination
+     * @return The rank of the combination
+     */
+    public long rank(int[] indices) {
+        if (indices.length != _unknownCount) {
+            throw new IllegalArgumentException("Expected " + _unknownCount + " indices but got " + indices.length);
+        }
+        if (_unknownCount == 0) {
+            throw new IllegalArgumentException("Cannot rank combinations for 0 unknowns");
+        }
+
+        long rank = 0;
+        int start = 0;
+        if (_related) {
+            checkIndex(indices[0], 0);
+            rank = indices[0] * countSorted(_unknownCount - 1, _genotypeCount);
+            start = 1;
+        }
+
+        int lowerBound = 0;
+        for (int idx = start; idx < _unknownCount; idx++) {
+            checkIndex(indices[idx], lowerBound);
+            // Add the number of combinations that have a lower index at this position.
+            // This is the sum of countSorted(remaining, genotypeCount - i) for i in [lowerBound, indices[idx]), which collapses to a difference of two terms.
+            final int remaining = _unknownCount - idx - 1;
+            rank += countSorted(remaining + 1, _genotypeCount - lowerBound) - countSorted(remaining + 1, _genotypeCount - indices[idx]);
+            lowerBound = indices[idx];
+        }
+        return rank;
+    }
+
+    /**
+     * Gets the combination at a position in the enumeration.
+     *
+     * @param rank The rank of the requested combination
+     * @param indices A buffer that receives the genotype indices of the
+     * combination
+     */
+    public void unrank(long rank, int[] indices) {
+        if (rank < 0 || rank >= _size) {
+            throw new IllegalArgumentException("Rank " + rank + " is outside the enumeration range [0, " + _size + ")");
+        }
+        if (indices.length < _unknownCount) {
+            throw new IllegalArgumentException("Index buffer should hold at least " + _unknownCount + " elements, not " + indices.length);
+        }
+
+        long remainingRank = rank;
+        int start = 0;
+        if (_related) {
+            final long blockSize = countSorted(_unknownCount - 1, _genotypeCount);
+            indices[0] = (int) (remainingRank / blockSize);
+            remainingRank %= blockSize;
+            start = 1;
+        }
+
+        int index = 0;
+        for (int idx = start; idx < _unknownCount; idx++) {
+            final int remaining = _unknownCount - idx - 1;
+            long count;
+            while (remainingRank >= (count = countSorted(remaining, _genotypeCount - index))) {
+                remainingRank -= count;
+                index++;
+            }
+            indices[idx] = index;
+        }
+    }
+
+    private void checkIndex(int index, int lowerBound) {
+        if (index < lowerBound || index >= _genotypeCount) {
+            throw new IllegalArgumentException("Genotype index " + index + " is outside the valid range [" + lowerBound + ", " + _genotypeCount + ")");
+        }
+    }
+
+    /**
+     * Counts the number of non-decreasing sequences of a given length whose
+     * elements are taken from a range of values.
+     *
+     * @param length The length of the sequences
+     * @param range The number of distinct values
+     * @return The number of sequences
+     */
+    public static long countSorted(int length, int range) {
+        if (length == 0) {
+            return 1;
+        }
+        if (range <= 0) {
+            return 0;
+        }
+        return binomial(range + length - 1, length);
+    }
+
+    /**
+     * Calculates the binomial coefficient n over k.
+     *
+     * @param n The number of elements
+     * @param k The number of elements chosen
+     * @return n! / (k! * (n - k)!)
+     */
+    static long binomial(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        final int smallest = Math.min(k, n - k);
+        long result = 1;
+        for (int i = 1; i <= smallest; i++) {
+            final int factor = n - smallest + i;
+            if (result > Long.MAX_VALUE / factor) {
+                throw new IllegalArgumentException("Number of combinations for " + n + " over " + k + " is too large");
+            }
+            // The product of i consecutive integers is always divisible by i!
+            result = result * factor / i;
+        }
+        return result;
+    }
+}
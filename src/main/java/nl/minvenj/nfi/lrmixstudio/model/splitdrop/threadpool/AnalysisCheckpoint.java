@@ -0,0 +1,378 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+
+/**
+ * Records the permutation ranges of an analysis that have been evaluated,
+ * together with their partial locus probabilities, so that an interrupted
+ * analysis can be resumed without evaluating these ranges again.
+ *
+ * A checkpoint is stored in a file named after a fingerprint of the
+ * configuration. The fingerprint is derived from the
+ * {@link LocusProbabilityKey} of every enabled locus under both hypotheses, so
+ * a checkpoint is only found by an analysis of the same model that would
+ * calculate exactly the same locus probabilities. Ranges are identified by
+ * the combination ranks of a {@link PermutationSpace}. Equal locus
+ * probabilities do not imply equal ranks, as the non-contributors are left out
+ * of the fingerprint if theta is 0 but still add alleles to the space, so the
+ * size and fingerprint of every space are recorded as well, and the ranges of
+ * a space that has changed are discarded. The file is replaced
+ * atomically, so an analysis that is killed while saving leaves the previous
+ * checkpoint intact.
+ */
+class AnalysisCheckpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisCheckpoint.class);
+    private static final int FORMAT_VERSION = 2;
+    private static final String FILE_EXTENSION = ".checkpoint";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /**
+     * The minimum time in milliseconds between two saves triggered by
+     * {@link #saveIfDue()}.
+     */
+    static final long SAVE_INTERVAL = 10000;
+    private final File _file;
+    private final String _fingerprint;
+    // The size and fingerprint of the permutation space and the evaluated ranges for each hypothesis and locus
+    private final Map<String, Long> _sizes = new LinkedHashMap<>();
+    private final Map<String, Long> _spaceFingerprints = new HashMap<>();
+    private final Map<String, ArrayList<Range>> _ranges = new LinkedHashMap<>();
+    private long _lastSaved;
+    private boolean _modified;
+
+    /**
+     * An evaluated range of combination ranks and the locus probability
+     * summed over that range.
+     */
+    private static final class Range {
+
+        private final long _from;
+        private final long _to;
+        private final double _mantissa;
+        private final int _exponent;
+        private final double _genotypeMass;
+
+        Range(final long from, final long to, final double mantissa, final int exponent, final double genotypeMass) {
+            _from = from;
+            _to = to;
+            _mantissa = mantissa;
+            _exponent = exponent;
+            _genotypeMass = genotypeMass;
+        }
+    }
+
+    private AnalysisCheckpoint(final File file, final String fingerprint) {
+        _file = file;
+        _fingerprint = fingerprint;
+        _lastSaved = System.currentTimeMillis();
+    }
+
+    /**
+     * Opens the checkpoint for an analysis. If the directory contains a
+     * checkpoint for the same configuration, the ranges recorded in it are
+     * loaded. Otherwise the checkpoint is empty.
+     *
+     * @param directory The directory in which checkpoints are stored
+     * @param engine The identifier of the model that performs the analysis
+     * @param config The configuration of the analysis
+     * @return The checkpoint
+     */
+    static AnalysisCheckpoint open(final File directory, final String engine, final ConfigurationData config) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOG.warn("Could not create checkpoint directory {}", directory);
+        }
+        final String fingerprint = createFingerprint(engine, config);
+        final AnalysisCheckpoint checkpoint = new AnalysisCheckpoint(new File(directory, fingerprint + FILE_EXTENSION), fingerprint);
+        if (checkpoint._file.isFile()) {
+            checkpoint.read();
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Calculates the fingerprint of a configuration. Two configurations have
+     * the same fingerprint if the given model calculates the same probability
+     * for each of their enabled loci under each hypothesis.
+     *
+     * @param engine The identifier of the model that performs the analysis
+     * @param config The configuration of the analysis
+     * @return The fingerprint as a hexadecimal string
+     */
+    static String createFingerprint(final String engine, final ConfigurationData config) {
+        final StringBuilder description = new StringBuilder();
+        for (final String locusName : config.getEnabledLoci()) {
+            for (final Hypothesis hypothesis : new Hypothesis[]{config.getProsecution(), config.getDefense()}) {
+                if (hypothesis != null) {
+                    description.append(hypothesis.getId()).append('.').append(locusName).append('=');
+                    description.append(LocusProbabilityKey.create(engine, locusName, hypothesis, config.getActiveReplicates()).toHexString()).append('\n');
+                }
+            }
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(description.toString().getBytes(StandardCharsets.UTF_8));
+            final char[] hex = new char[digest.length * 2];
+            for (int idx = 0; idx < digest.length; idx++) {
+                hex[idx * 2] = HEX[(digest[idx] >> 4) & 0xF];
+                hex[idx * 2 + 1] = HEX[digest[idx] & 0xF];
+            }
+            return new String(hex);
+        } catch (final NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return The file in which the checkpoint is stored
+     */
+    File getFile() {
+        return _file;
+    }
+
+    /**
+     * Gets the ranges of the permutation space of a locus under a hypothesis
+     * that have not been evaluated. Recorded ranges for a space of a different
+     * size or fingerprint are discarded, as their ranks denote other
+     * permutations.
+     *
+     * @param hypothesis The hypothesis
+     * @param locusName The name of the locus
+     * @param size The number of permutations in the space
+     * @param spaceFingerprint The fingerprint of the space, see
+     * {@link PermutationSpace#getFingerprint()}
+     * @return The ranges that remain to be evaluated, in ascending order. Each
+     * range is an array containing the first rank and the rank after the last.
+     */
+    synchronized ArrayList<long[]> getMissingRanges(final Hypothesis hypothesis, final String locusName, final long size, final long spaceFingerprint) {
+        final String key = hypothesis.getId() + "." + locusName;
+        final Long recordedSize = _sizes.get(key);
+        if (recordedSize == null || recordedSize != size || _spaceFingerprints.get(key) != spaceFingerprint) {
+            if (recordedSize != null) {
+                LOG.warn("Discarding checkpoint of {}, as the permutation space of the locus has changed", key);
+            }
+            _sizes.put(key, size);
+            _spaceFingerprints.put(key, spaceFingerprint);
+            _ranges.put(key, new ArrayList<Range>());
+        }
+        final ArrayList<Range> ranges = _ranges.get(key);
+        Collections.sort(ranges, new Comparator<Range>() {
+            @Override
+            public int compare(final Range a, final Range b) {
+                return Long.compare(a._from, b._from);
+            }
+        });
+        final ArrayList<long[]> missing = new ArrayList<>();
+        long from = 0;
+        for (final Range range : ranges) {
+            if (range._from > from) {
+                missing.add(new long[]{from, range._from});
+            }
+            from = Math.max(from, range._to);
+        }
+        if (from < size) {
+            missing.add(new long[]{from, size});
+        }
+        return missing;
+    }
+
+    /**
+     * Sums the partial probabilities of the evaluated ranges of a locus under
+     * a hypothesis.
+     *
+     * @param hypothesis The hypothesis
+     * @param locusName The name of the locus
+     * @return The summed probability, or null if no ranges were evaluated
+     */
+    synchronized LocusProbability getCompletedSum(final Hypothesis hypothesis, final String locusName) {
+        final ArrayList<Range> ranges = _ranges.get(hypothesis.getId() + "." + locusName);
+        if (ranges == null || ranges.isEmpty()) {
+            return null;
+        }
+        final LocusProbability sum = new LocusProbability(hypothesis, locusName);
+        for (final Range range : ranges) {
+            sum.addValue(range._mantissa, range._exponent);
+            sum.addGenotypeMass(range._genotypeMass);
+        }
+        return sum;
+    }
+
+    /**
+     * Records an evaluated range. The range must lie within a space for which
+     * {@link #getMissingRanges(Hypothesis, String, long, long)} was called.
+     *
+     * @param from The first rank of the range
+     * @param to The rank after the last rank of the range
+     * @param probability The probability summed over the range
+     */
+    synchronized void addRange(final long from, final long to, final LocusProbability probability) {
+        final String key = probability.getHypothesis().getId() + "." + probability.getLocusName();
+        final Long size = _sizes.get(key);
+        if (size == null || from < 0 || to > size || from >= to) {
+            throw new IllegalArgumentException("Range [" + from + ", " + to + ") is not within the permutation space of " + key);
+        }
+        _ranges.get(key).add(new Range(from, to, probability.getMantissa(), probability.getExponent(), probability.getGenotypeMass()));
+        _modified = true;
+    }
+
+    /**
+     * Saves the checkpoint if it was modified and was last saved at least
+     * {@value #SAVE_INTERVAL} milliseconds ago.
+     */
+    synchronized void saveIfDue() {
+        if (_modified && System.currentTimeMillis() - _lastSaved >= SAVE_INTERVAL) {
+            save();
+        }
+    }
+
+    /**
+     * Saves the checkpoint if it was modified since it was last saved. A
+     * failure is logged, as the analysis can continue without a checkpoint.
+     */
+    synchronized void save() {
+        if (!_modified) {
+            return;
+        }
+        _lastSaved = System.currentTimeMillis();
+        // Each save writes to a file of its own, so that concurrent analyses of the same case do not interleave
+        final File temp;
+        try {
+            temp = File.createTempFile(_fingerprint, ".tmp", _file.getParentFile());
+        } catch (final IOException ex) {
+            LOG.warn("Could not write checkpoint file {}: {}", _file, ex.getMessage());
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(_fingerprint);
+            out.writeInt(_ranges.size());
+            for (final Map.Entry<String, ArrayList<Range>> entry : _ranges.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(_sizes.get(entry.getKey()));
+                out.writeLong(_spaceFingerprints.get(entry.getKey()));
+                out.writeInt(entry.getValue().size());
+                for (final Range range : entry.getValue()) {
+                    out.writeLong(range._from);
+                    out.writeLong(range._to);
+                    out.writeDouble(range._mantissa);
+                    out.writeInt(range._exponent);
+                    out.writeDouble(range._genotypeMass);
+                }
+            }
+        } catch (final IOException ex) {
+            LOG.warn("Could not write checkpoint file {}: {}", _file, ex.getMessage());
+            temp.delete();
+            return;
+        }
+        try {
+            replace(temp, _file);
+        } catch (final IOException ex) {
+            LOG.warn("Could not write checkpoint file {}: {}", _file, ex.getMessage());
+            temp.delete();
+            return;
+        }
+        _modified = false;
+        LOG.debug("Saved checkpoint {}", _file);
+    }
+
+    /**
+     * Replaces a file by another file, atomically if the file system supports
+     * it. The replaced file remains in place if the replacement fails.
+     *
+     * @param source the new file
+     * @param target the file to replace
+     * @throws IOException if the file could not be replaced
+     */
+    static void replace(final File source, final File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException ex) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes the checkpoint file. This is called when the analysis has
+     * finished and the checkpoint is no longer needed.
+     */
+    synchronized void delete() {
+        _modified = false;
+        if (_file.isFile() && !_file.delete()) {
+            LOG.warn("Could not delete checkpoint file {}", _file);
+        }
+    }
+
+    private void read() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file)))) {
+            final int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                LOG.warn("Ignoring checkpoint file {} of unsupported version {}", _file, version);
+                return;
+            }
+            if (!_fingerprint.equals(in.readUTF())) {
+                LOG.warn("Ignoring checkpoint file {} of another configuration", _file);
+                return;
+            }
+            final int keyCount = in.readInt();
+            for (int keyIdx = 0; keyIdx < keyCount; keyIdx++) {
+                final String key = in.readUTF();
+                final long size = in.readLong();
+                final long spaceFingerprint = in.readLong();
+                final int rangeCount = in.readInt();
+                final ArrayList<Range> ranges = new ArrayList<>();
+                for (int rangeIdx = 0; rangeIdx < rangeCount; rangeIdx++) {
+                    ranges.add(new Range(in.readLong(), in.readLong(), in.readDouble(), in.readInt(), in.readDouble()));
+                }
+                _sizes.put(key, size);
+                _spaceFingerprints.put(key, spaceFingerprint);
+                _ranges.put(key, ranges);
+            }
+            LOG.info("Resuming analysis from checkpoint {}", _file);
+        } catch (final IOException ex) {
+            LOG.warn("Ignoring unreadable checkpoint file {}: {}", _file, ex.getMessage());
+            _sizes.clear();
+            _spaceFingerprints.clear();
+            _ranges.clear();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+
+/**
+ * Converts the parts of a {@link ConfigurationData} that determine the locus
+ * probabilities to a compact binary form and back. This contains the
+ * population statistics, the active replicates, the profiles referenced by the
+ * hypotheses and the hypotheses themselves. Reports, file names of replicates
+ * that are not active and GUI state are not included.
+ *
+ * The form is only intended to be exchanged between processes running the same
+ * version of the application, and is not suitable for storing cases.
+ */
+public final class CaseSerializer {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private CaseSerializer() {
+    }
+
+    /**
+     * Serializes a case.
+     *
+     * @param config The configuration of the case
+     * @return The serialized case
+     * @throws IOException if the case could not be serialized
+     */
+    public static byte[] write(final ConfigurationData config) throws IOException {
+        if (config.getStatistics() == null) {
+            throw new IllegalArgumentException("No population statistics specified!");
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(nullToEmpty(config.getCaseNumber()));
+        writeStatistics(out, config.getStatistics());
+
+        // All samples are written once, and referenced by their index in this table
+        final Map<Sample, Integer> sampleIndex = new IdentityHashMap<>();
+        final List<Sample> samples = new ArrayList<>();
+        final Collection<Sample> replicates = config.getActiveReplicates();
+        for (final Sample replicate : replicates) {
+            addSample(replicate, samples, sampleIndex);
+        }
+        for (final Hypothesis hypothesis : new Hypothesis[]{config.getProsecution(), config.getDefense()}) {
+            if (hypothesis != null) {
+                for (final Contributor contributor : hypothesis.getContributors()) {
+                    addSample(contributor.getSample(), samples, sampleIndex);
+                }
+                for (final Contributor nonContributor : hypothesis.getNonContributors()) {
+                    addSample(nonContributor.getSample(), samples, sampleIndex);
+                }
+                if (hypothesis.getRelatedness().getRelative() != null) {
+                    addSample(hypothesis.getRelatedness().getRelative(), samples, sampleIndex);
+                }
+            }
+        }
+        out.writeInt(samples.size());
+        for (final Sample sample : samples) {
+            writeSample(out, sample);
+        }
+        out.writeInt(replicates.size());
+
+        writeHypothesis(out, config.getProsecution(), sampleIndex);
+        writeHypothesis(out, config.getDefense(), sampleIndex);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes a case.
+     *
+     * @param data A case serialized by {@link #write(ConfigurationData)}
+     * @return A configuration containing the case
+     * @throws IOException if the data could not be read or was written by
+     * another version of the serializer
+     */
+    public static ConfigurationData read(final byte[] data) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        final int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported case format version " + version + ", expected " + FORMAT_VERSION);
+        }
+        final ConfigurationData config = new ConfigurationData();
+        final String caseNumber = in.readUTF();
+        if (!caseNumber.isEmpty()) {
+            config.setCaseNumber(caseNumber);
+        }
+        final double rareAlleleFrequency = in.readDouble();
+        final PopulationStatistics statistics = readStatistics(in);
+        // Setting the statistics resets the rare allele frequency to the configured value
+        config.setStatistics(statistics);
+        config.setRareAlleleFrequency(rareAlleleFrequency);
+
+        final int sampleCount = in.readInt();
+        final List<Sample> samples = new ArrayList<>();
+        for (int idx = 0; idx < sampleCount; idx++) {
+            samples.add(readSample(in));
+        }
+        final int replicateCount = in.readInt();
+        config.addReplicates(samples.subList(0, replicateCount));
+        config.addProfiles(samples.subList(replicateCount, sampleCount));
+
+        final Hypothesis prosecution = readHypothesis(in, statistics, samples);
+        if (prosecution != null) {
+            config.setProsecution(prosecution);
+        }
+        final Hypothesis defense = readHypothesis(in, statistics, samples);
+        if (defense != null) {
+            config.setDefense(defense);
+        }
+        return config;
+    }
+
+    private static void writeStatistics(final DataOutputStream out, final PopulationStatistics statistics) throws IOException {
+        out.writeDouble(Double.parseDouble(statistics.getRareAlleleFrequency()));
+        out.writeUTF(nullToEmpty(statistics.getFileName()));
+        out.writeUTF(nullToEmpty(statistics.getFileHash()));
+        out.writeInt(statistics.getLoci().size());
+        for (final String locusName : statistics.getLoci()) {
+            final Collection<String> alleles = statistics.getAlleles(locusName);
+            out.writeUTF(locusName);
+            out.writeInt(alleles.size());
+            for (final String allele : alleles) {
+                out.writeUTF(allele);
+                out.writeDouble(statistics.getProbability(locusName, allele));
+            }
+        }
+    }
+
+    private static PopulationStatistics readStatistics(final DataInputStream in) throws IOException {
+        final PopulationStatistics statistics = new PopulationStatistics(in.readUTF());
+        final String fileHash = in.readUTF();
+        if (!fileHash.isEmpty()) {
+            statistics.setFileHash(fileHash);
+        }
+        final int locusCount = in.readInt();
+        for (int locusIdx = 0; locusIdx < locusCount; locusIdx++) {
+            final String locusName = in.readUTF();
+            final int alleleCount = in.readInt();
+            for (int alleleIdx = 0; alleleIdx < alleleCount; alleleIdx++) {
+                final String allele = in.readUTF();
+                statistics.addStatistic(locusName, allele, new BigDecimal(in.readDouble()));
+            }
+        }
+        return statistics;
+    }
+
+    private static void addSample(final Sample sample, final List<Sample> samples, final Map<Sample, Integer> sampleIndex) {
+        if (!sampleIndex.containsKey(sample)) {
+            sampleIndex.put(sample, samples.size());
+            samples.add(sample);
+        }
+    }
+
+    private static void writeSample(final DataOutputStream out, final Sample sample) throws IOException {
+        out.writeUTF(sample.getId());
+        out.writeUTF(nullToEmpty(sample.getSourceFile()));
+        out.writeUTF(nullToEmpty(sample.getSourceFileHash()));
+        out.writeBoolean(sample.isEnabled());
+        out.writeInt(sample.getLoci().size());
+        for (final Locus locus : sample.getLoci()) {
+            out.writeUTF(locus.getName());
+            out.writeBoolean(locus.isTreatedAsHomozygote());
+            out.writeInt(locus.getAlleles().size());
+            for (final Allele allele : locus.getAlleles()) {
+                out.writeUTF(allele.getAllele());
+                out.writeFloat(allele.getPeak());
+            }
+        }
+    }
+
+    private static Sample readSample(final DataInputStream in) throws IOException {
+        final String id = in.readUTF();
+        final Sample sample = new Sample(id, in.readUTF());
+        final String fileHash = in.readUTF();
+        if (!fileHash.isEmpty()) {
+            sample.setSourceFileHash(fileHash);
+        }
+        sample.setEnabled(in.readBoolean());
+        final int locusCount = in.readInt();
+        for (int locusIdx = 0; locusIdx < locusCount; locusIdx++) {
+            final Locus locus = new Locus(in.readUTF());
+            if (in.readBoolean()) {
+                locus.setTreatedAsHomozygote();
+            }
+            final int alleleCount = in.readInt();
+            for (int alleleIdx = 0; alleleIdx < alleleCount; alleleIdx++) {
+                final String allele = in.readUTF();
+                locus.addAllele(new Allele(allele, in.readFloat()));
+            }
+            sample.addLocus(locus);
+        }
+        return sample;
+    }
+
+    private static void writeHypothesis(final DataOutputStream out, final Hypothesis hypothesis, final Map<Sample, Integer> sampleIndex) throws IOException {
+        out.writeBoolean(hypothesis != null);
+        if (hypothesis == null) {
+            return;
+        }
+        out.writeUTF(hypothesis.getId());
+        out.writeInt(hypothesis.getUnknownCount());
+        out.writeDouble(hypothesis.getDropInProbability());
+        out.writeDouble(hypothesis.getUnknownDropoutProbability());
+        out.writeDouble(hypothesis.getThetaCorrection());
+        final Relatedness relatedness = hypothesis.getRelatedness();
+        out.writeUTF(relatedness.getRelation().name());
+        out.writeInt(relatedness.getRelative() == null ? -1 : sampleIndex.get(relatedness.getRelative()));
+        writeContributors(out, hypothesis.getContributors(), sampleIndex);
+        writeContributors(out, hypothesis.getNonContributors(), sampleIndex);
+    }
+
+    private static void writeContributors(final DataOutputStream out, final Collection<Contributor> contributors, final Map<Sample, Integer> sampleIndex) throws IOException {
+        out.writeInt(contributors.size());
+        for (final Contributor contributor : contributors) {
+            out.writeInt(sampleIndex.get(contributor.getSample()));
+            out.writeDouble(contributor.getDropoutProbability());
+        }
+    }
+
+    private static Hypothesis readHypothesis(final DataInputStream in, final PopulationStatistics statistics, final List<Sample> samples) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        final String id = in.readUTF();
+        final int unknowns = in.readInt();
+        final double dropIn = in.readDouble();
+        final double unknownDropout = in.readDouble();
+        final double theta = in.readDouble();
+        final Hypothesis hypothesis = new Hypothesis(id, unknowns, statistics, dropIn, unknownDropout, theta);
+        final String relation = in.readUTF();
+        try {
+            hypothesis.getRelatedness().setRelation(Relatedness.Relation.valueOf(relation));
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Unknown relation " + relation, e);
+        }
+        final int relative = in.readInt();
+        if (relative >= 0) {
+            hypothesis.getRelatedness().setRelative(samples.get(relative));
+        }
+        final int contributorCount = in.readInt();
+        for (int idx = 0; idx < contributorCount; idx++) {
+            final Sample sample = samples.get(in.readInt());
+            hypothesis.addContributor(sample, in.readDouble());
+        }
+        final int nonContributorCount = in.readInt();
+        for (int idx = 0; idx < nonContributorCount; idx++) {
+            final Sample sample = samples.get(in.readInt());
+            hypothesis.addNonContributor(sample, in.readDouble());
+        }
+        return hypothesis;
+    }
+
+    private static String nullToEmpty(final String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+
+/**
+ * Resumes an analysis from an {@link AnalysisCheckpoint} and records the
+ * progress of the analysis in it. The permutation space of each locus is
+ * divided into jobs for the ranges that the checkpoint does not contain yet,
+ * and the range of each of these jobs is added to the checkpoint when the job
+ * completes.
+ */
+class CheckpointTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointTracker.class);
+    private final AnalysisCheckpoint _checkpoint;
+    // The probabilities summed over the ranges completed by an earlier run, and the range evaluated by each job of this run
+    private final Map<String, LocusProbability> _resumedSums = new HashMap<>();
+    private final Map<LocusJob, long[]> _jobRanges = new IdentityHashMap<>();
+    private final Map<Future<LocusProbability>, long[]> _futureRanges = new HashMap<>();
+
+    /**
+     * Creates a tracker for an analysis.
+     *
+     * @param checkpoint The checkpoint of the analysis
+     */
+    CheckpointTracker(final AnalysisCheckpoint checkpoint) {
+        _checkpoint = checkpoint;
+    }
+
+    /**
+     * Generates the jobs for the ranges of the permutation space that were not
+     * evaluated by an earlier run of the same analysis, and takes the sum of
+     * the evaluated ranges from the checkpoint.
+     *
+     * @param model The model that performs the analysis, which creates the jobs
+     * @param locusName The name of the locus
+     * @param config The configuration of the analysis
+     * @param hypothesis The hypothesis to evaluate. This must have at least one
+     * unknown contributor.
+     * @return The jobs to execute. If this is empty, the locus probability is
+     * available from {@link #getResumedSum}.
+     */
+    ArrayList<LocusJob> generateJobs(final SplitDropThreadPool model, final String locusName, final ConfigurationData config, final Hypothesis hypothesis) {
+        final PermutationSpace space = PermutationSpace.create(locusName, config.getActiveReplicates(), hypothesis);
+        final ArrayList<long[]> missing = _checkpoint.getMissingRanges(hypothesis, locusName, space.size(), space.getFingerprint());
+        final LocusProbability completed = _checkpoint.getCompletedSum(hypothesis, locusName);
+        if (completed != null) {
+            _resumedSums.put(hypothesis.getId() + "." + locusName, completed);
+        }
+        final int chunkCount = model.getChunkCount(config);
+        final long chunkSize = Math.max(1, (space.size() + chunkCount - 1) / chunkCount);
+        final ArrayList<LocusJob> jobs = new ArrayList<>();
+        long remaining = 0;
+        for (final long[] range : missing) {
+            for (long from = range[0]; from < range[1]; from += chunkSize) {
+                final long to = Math.min(range[1], from + chunkSize);
+                final LocusJob job = model.createRangeJob(space, config, hypothesis, from, to);
+                _jobRanges.put(job, new long[]{from, to});
+                jobs.add(job);
+            }
+            remaining += range[1] - range[0];
+        }
+        LOG.debug("{}.{} {} of {} permutations remain to be evaluated", hypothesis.getId(), locusName, remaining, space.size());
+        return jobs;
+    }
+
+    /**
+     * @param hypothesis The hypothesis
+     * @param locusName The name of the locus
+     * @return The probability summed over the ranges of the locus that were
+     * evaluated by an earlier run, or null if there are none
+     */
+    LocusProbability getResumedSum(final Hypothesis hypothesis, final String locusName) {
+        return _resumedSums.get(hypothesis.getId() + "." + locusName);
+    }
+
+    /**
+     * @return The probabilities summed over the ranges evaluated by an earlier
+     * run, by hypothesis id and locus name separated by a period
+     */
+    Map<String, LocusProbability> getResumedSums() {
+        return new HashMap<>(_resumedSums);
+    }
+
+    /**
+     * Registers the future of a submitted job, so that the range of the job is
+     * recorded when it completes. This must be called before the future is
+     * passed to {@link #completed}.
+     *
+     * @param job The job
+     * @param future The future of the job
+     */
+    void submitted(final LocusJob job, final Future<LocusProbability> future) {
+        final long[] range = _jobRanges.remove(job);
+        if (range != null) {
+            _futureRanges.put(future, range);
+        }
+    }
+
+    /**
+     * Records the range of a completed job, and saves the checkpoint if this
+     * is due.
+     *
+     * @param future The future of the job
+     * @param probability The result of the job
+     */
+    void completed(final Future<LocusProbability> future, final LocusProbability probability) {
+        final long[] range = _futureRanges.get(future);
+        if (range != null) {
+            _checkpoint.addRange(range[0], range[1], probability);
+            _checkpoint.saveIfDue();
+        }
+    }
+
+    /**
+     * Records the jobs that finished before the analysis was stopped, and
+     * saves the checkpoint so that a later analysis can resume from it.
+     *
+     * @param completionService The completion service to which the jobs were
+     * submitted
+     */
+    void interrupted(final CompletionService<LocusProbability> completionService) {
+        Future<LocusProbability> future;
+        while ((future = completionService.poll()) != null) {
+            // Jobs that were cancelled before they started are queued as well, but never complete
+            if (!future.isDone()) {
+                continue;
+            }
+            try {
+                completed(future, future.get());
+            } catch (InterruptedException | ExecutionException | CancellationException ex) {
+                LOG.debug("Job was not completed: {}", ex.getMessage());
+            }
+        }
+        _checkpoint.save();
+        LOG.info("Saved the progress of the analysis in {}", _checkpoint.getFile());
+    }
+
+    /**
+     * Deletes the checkpoint after the analysis has finished.
+     */
+    void finished() {
+        _checkpoint.delete();
+    }
+}
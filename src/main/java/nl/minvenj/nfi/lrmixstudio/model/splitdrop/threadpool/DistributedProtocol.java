@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The messages exchanged between a {@link SplitDropDistributed} coordinator and
+ * its {@link SplitDropWorker}s. Every message is a type byte followed by the
+ * fields listed below, written with a {@link java.io.DataOutputStream}.
+ *
+ * <pre>
+ * HELLO     worker to coordinator  int version, byte[CHALLENGE_LENGTH] challenge
+ * AUTH      coordinator to worker  byte[CHALLENGE_LENGTH] response
+ * READY     worker to coordinator  int threadCount
+ * CASE      coordinator to worker  long caseId, int length, byte[length] case
+ * RANGE     coordinator to worker  long taskId, long caseId, UTF hypothesisId, UTF locusName,
+ *                                  long from, long to, long size, long fingerprint
+ * RESULT    worker to coordinator  long taskId, double mantissa, int exponent, double genotypeMass
+ * ERROR     worker to coordinator  long taskId, UTF message
+ * HEARTBEAT worker to coordinator  (no fields)
+ * </pre>
+ *
+ * The worker sends HELLO with a random challenge as soon as a coordinator
+ * connects. The coordinator answers with AUTH, holding the HMAC-SHA256 of the
+ * challenge keyed with the secret shared by coordinator and worker. The
+ * worker closes the connection if the response does not match, and sends
+ * READY otherwise. A case is sent
+ * once per connection before the first range that refers to it, and is
+ * serialized by the {@link CaseSerializer}. The size and fingerprint of a range
+ * are those of the {@link PermutationSpace} on the coordinator, and are checked
+ * by the worker before it evaluates the range.
+ */
+final class DistributedProtocol {
+
+    static final int VERSION = 2;
+    static final byte HELLO = 1;
+    static final byte CASE = 2;
+    static final byte RANGE = 3;
+    static final byte RESULT = 4;
+    static final byte ERROR = 5;
+    static final byte HEARTBEAT = 6;
+    static final byte AUTH = 7;
+    static final byte READY = 8;
+    /**
+     * The length in bytes of the challenge and of the response.
+     */
+    static final int CHALLENGE_LENGTH = 32;
+    /**
+     * The maximum length in bytes of a serialized case.
+     */
+    static final int MAX_CASE_LENGTH = 64 * 1024 * 1024;
+    /**
+     * The interval in milliseconds between heartbeats sent by a worker.
+     */
+    static final int HEARTBEAT_INTERVAL = 5000;
+    /**
+     * The time in milliseconds after which the coordinator considers a silent
+     * worker dead.
+     */
+    static final int READ_TIMEOUT = 30000;
+
+    private DistributedProtocol() {
+    }
+
+    /**
+     * Calculates the response to a challenge.
+     *
+     * @param secret The secret shared by coordinator and worker
+     * @param challenge The challenge sent by the worker
+     * @return The HMAC-SHA256 of the challenge keyed with the secret
+     */
+    static byte[] getResponse(final String secret, final byte[] challenge) {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac.doFinal(challenge);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.Arrays;
+
+/**
+ * A locus probability as a polynomial in a single dropout probability d.
+ *
+ * The polynomial is stored in scaled Bernstein form:
+ * <pre>
+ *   P(d) = SUM<i=0;n>( c<sub>i</sub> * d<sup>i</sup> * (1 - d)<sup>n - i</sup> )
+ * </pre>
+ * All factors of the replicate probability (d for a dropped out allele, and 1
+ * - c * d<sup>k</sup> for a present allele) have non-negative coefficients in
+ * this form, so the coefficients of the products and sums are all
+ * non-negative and can be accumulated without cancellation.
+ */
+public final class DropoutPolynomial {
+
+    private final double[] _coefficients;
+
+    /**
+     * Creates a new polynomial.
+     *
+     * @param coefficients The coefficients in scaled Bernstein form. The degree
+     * of the polynomial is one less than the number of coefficients.
+     */
+    public DropoutPolynomial(final double[] coefficients) {
+        if (coefficients.length == 0) {
+            throw new IllegalArgumentException("A polynomial needs at least one coefficient!");
+        }
+        _coefficients = Arrays.copyOf(coefficients, coefficients.length);
+    }
+
+    /**
+     * @return The degree of the polynomial
+     */
+    public int getDegree() {
+        return _coefficients.length - 1;
+    }
+
+    /**
+     * @param index The index of the coefficient
+     * @return The coefficient of d<sup>index</sup> * (1 - d)<sup>n -
+     * index</sup>
+     */
+    public double getCoefficient(final int index) {
+        return _coefficients[index];
+    }
+
+    /**
+     * Evaluates the polynomial.
+     *
+     * @param dropout The dropout probability
+     * @return The value of the polynomial at the given dropout probability
+     */
+    public double evaluate(final double dropout) {
+        if (dropout < 0 || dropout > 1) {
+            throw new IllegalArgumentException("Dropout probability " + dropout + " is not within [0, 1]");
+        }
+        final int degree = getDegree();
+        double value = 0;
+        for (int idx = 0; idx <= degree; idx++) {
+            if (_coefficients[idx] != 0) {
+                value += _coefficients[idx] * Math.pow(dropout, idx) * Math.pow(1 - dropout, degree - idx);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Evaluates the base 10 logarithm of the polynomial. The terms are summed
+     * in the log domain, so the result is finite whenever the value of the
+     * polynomial is positive, even if it is too small to be represented as a
+     * double.
+     *
+     * @param dropout The dropout probability
+     * @return The base 10 logarithm of the value of the polynomial at the given
+     * dropout probability
+     */
+    public double evaluateLog10(final double dropout) {
+        if (dropout < 0 || dropout > 1) {
+            throw new IllegalArgumentException("Dropout probability " + dropout + " is not within [0, 1]");
+        }
+        final int degree = getDegree();
+        final double log10Dropout = Math.log10(dropout);
+        final double log10Present = Math.log10(1 - dropout);
+        final double[] terms = new double[degree + 1];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int idx = 0; idx <= degree; idx++) {
+            terms[idx] = Double.NEGATIVE_INFINITY;
+            if (_coefficients[idx] > 0 && (idx == 0 || dropout > 0) && (idx == degree || dropout < 1)) {
+                terms[idx] = Math.log10(_coefficients[idx]) + (idx == 0 ? 0 : idx * log10Dropout) + (idx == degree ? 0 : (degree - idx) * log10Present);
+                max = Math.max(max, terms[idx]);
+            }
+        }
+        if (max == Double.NEGATIVE_INFINITY) {
+            return max;
+        }
+        double sum = 0;
+        for (final double term : terms) {
+            if (term != Double.NEGATIVE_INFINITY) {
+                sum += Math.pow(10, term - max);
+            }
+        }
+        return max + Math.log10(sum);
+    }
+
+    @Override
+    public String toString() {
+        return "DropoutPolynomial" + Arrays.toString(_coefficients);
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+
+/**
+ * Calculates the probabilities of the evidence under both hypotheses as
+ * polynomials in a single varied dropout probability. After a single pass over
+ * the genotype combinations, the probabilities and the likelihood ratio can be
+ * evaluated at any number of dropout probabilities at very little cost. This is
+ * intended for sensitivity analyses in which only the dropout probability
+ * varies. The jobs are executed with background priority on the shared
+ * {@link ComputeService}.
+ */
+public class DropoutPolynomialAnalysis {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DropoutPolynomialAnalysis.class);
+    private final ConfigurationData _config;
+    private final Collection<Sample> _variedProfiles;
+    private final boolean _varyProsecutionUnknowns;
+    private final boolean _varyDefenseUnknowns;
+    private final Map<String, DropoutPolynomial> _prosecution = new LinkedHashMap<>();
+    private final Map<String, DropoutPolynomial> _defense = new LinkedHashMap<>();
+    private ExecutorService _service;
+
+    /**
+     * Creates a new analysis.
+     *
+     * @param config The configuration of the analysis. The drop-in, theta and
+     * all dropout probabilities that are not varied are taken from the
+     * hypotheses in this configuration.
+     * @param variedProfiles The known profiles whose dropout probability is
+     * varied
+     * @param varyProsecutionUnknowns true if the dropout probability of the
+     * unknowns under the prosecution hypothesis is varied
+     * @param varyDefenseUnknowns true if the dropout probability of the
+     * unknowns under the defense hypothesis is varied
+     */
+    public DropoutPolynomialAnalysis(final ConfigurationData config, final Collection<Sample> variedProfiles, final boolean varyProsecutionUnknowns, final boolean varyDefenseUnknowns) {
+        _config = config;
+        _variedProfiles = new ArrayList<>(variedProfiles);
+        _varyProsecutionUnknowns = varyProsecutionUnknowns;
+        _varyDefenseUnknowns = varyDefenseUnknowns;
+    }
+
+    /**
+     * Calculates the polynomials for all enabled loci.
+     *
+     * @param progress A listener for progress events
+     * @return true if the polynomials were calculated, false if this
+     * configuration cannot be evaluated as a polynomial. In that case, the
+     * analysis must be performed separately for every dropout probability.
+     * @throws InterruptedException if the calculation was interrupted
+     * @throws ExecutionException if a calculation failed
+     */
+    public boolean calculate(final AnalysisProgressListener progress) throws InterruptedException, ExecutionException {
+        final ArrayList<LocusDropoutPolynomialJob> jobs = new ArrayList<>();
+        for (final String locusName : _config.getEnabledLoci()) {
+            if (!addJob(jobs, locusName, _config.getProsecution(), _varyProsecutionUnknowns, progress) || !addJob(jobs, locusName, _config.getDefense(), _varyDefenseUnknowns, progress)) {
+                LOG.debug("Locus {} cannot be evaluated as a dropout polynomial", locusName);
+                return false;
+            }
+        }
+
+        synchronized (this) {
+            _service = ComputeService.getInstance().createExecutor(ComputeService.Priority.BACKGROUND, _config.getThreadCount());
+        }
+        try {
+            final ArrayList<Future<LocusProbability>> futures = new ArrayList<>();
+            for (final LocusDropoutPolynomialJob job : jobs) {
+                futures.add(_service.submit(job));
+            }
+            for (int idx = 0; idx < jobs.size(); idx++) {
+                final LocusProbability probability = futures.get(idx).get();
+                final Map<String, DropoutPolynomial> polynomials = probability.getHypothesis() == _config.getProsecution() ? _prosecution : _defense;
+                polynomials.put(probability.getLocusName(), jobs.get(idx).getPolynomial());
+            }
+        } finally {
+            _service.shutdownNow();
+        }
+        return true;
+    }
+
+    private boolean addJob(final Collection<LocusDropoutPolynomialJob> jobs, final String locusName, final Hypothesis hypothesis, final boolean varyUnknowns, final AnalysisProgressListener progress) {
+        if (hypothesis == null) {
+            return true;
+        }
+        final LocusDropoutPolynomialJob job = LocusProbabilityJobGenerator.generateDropoutPolynomial(locusName, _config.getActiveReplicates(), hypothesis, _variedProfiles, varyUnknowns, progress);
+        if (job == null) {
+            return false;
+        }
+        jobs.add(job);
+        return true;
+    }
+
+    /**
+     * Evaluates the likelihood ratio at the given dropout probability.
+     *
+     * @param dropout The value of the varied dropout probability
+     * @return The likelihood ratio, containing the probabilities of the
+     * evidence under both hypotheses for every locus
+     */
+    public LikelihoodRatio evaluate(final double dropout) {
+        final LikelihoodRatio lr = new LikelihoodRatio();
+        lr.add(evaluate(_prosecution, dropout), evaluate(_defense, dropout));
+        return lr;
+    }
+
+    private LocusProbabilities evaluate(final Map<String, DropoutPolynomial> polynomials, final double dropout) {
+        final LocusProbabilities probabilities = new LocusProbabilities();
+        for (final Map.Entry<String, DropoutPolynomial> entry : polynomials.entrySet()) {
+            probabilities.addLocusProbability(entry.getKey(), entry.getValue().evaluate(dropout), entry.getValue().evaluateLog10(dropout));
+        }
+        return probabilities;
+    }
+
+    /**
+     * @param locusName The name of a locus
+     * @return The probability of the evidence at the locus under the
+     * prosecution hypothesis as a polynomial in the varied dropout probability,
+     * or null if no polynomial was calculated for the locus
+     */
+    public DropoutPolynomial getProsecutionPolynomial(final String locusName) {
+        return _prosecution.get(locusName);
+    }
+
+    /**
+     * @param locusName The name of a locus
+     * @return The probability of the evidence at the locus under the defense
+     * hypothesis as a polynomial in the varied dropout probability, or null if
+     * no polynomial was calculated for the locus
+     */
+    public DropoutPolynomial getDefensePolynomial(final String locusName) {
+        return _defense.get(locusName);
+    }
+
+    /**
+     * Interrupts a running calculation.
+     */
+    public synchronized void interrupt() {
+        if (_service != null) {
+            _service.shutdownNow();
+        }
+    }
+}
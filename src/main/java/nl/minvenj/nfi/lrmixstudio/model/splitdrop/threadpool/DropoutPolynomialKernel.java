@@ -0,0 +1,290 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+
+/**
+ * A variant of the {@link ReplicateKernel} that calculates the replicate
+ * probability as a {@link DropoutPolynomial} in a varied dropout probability d.
+ * The dropout probability of a selected set of known contributors, and
+ * optionally of the unknowns, is replaced by d. All other dropout
+ * probabilities keep their value from the hypothesis.
+ *
+ * Every varied person adds a degree of 2 to the probability of each replicate
+ * (d for each allele of a heterozygote, d<sup>2</sup> for a homozygote), either
+ * as a dropout term or as part of a presence term. The replicate probabilities
+ * of all combinations therefore have the same degree, and their coefficients
+ * can be summed directly.
+ *
+ * Instances are immutable and can be shared by all jobs for the same locus and
+ * hypothesis, but each thread needs its own buffers obtained from
+ * {@link #createBuffer()}.
+ */
+class DropoutPolynomialKernel {
+
+    private final ReplicateKernel _kernel;
+    private final int _unknownCount;
+    private final boolean _varyUnknowns;
+    // Per allele: the fixed part and the degree in d of the dropout product of all known contributor copies of that allele
+    private final double[] _knownFixed;
+    private final int[] _knownDegree;
+    private final long _knownMask;
+    // Per distinct replicate: the fixed part and the degree in d of the dropout product of known contributor alleles not in the replicate
+    private final double[] _knownDroppedOutFixed;
+    private final int[] _knownDroppedOutDegree;
+    // Powers of the unknown dropout probability, used if the unknowns are not varied
+    private final double[] _dropOutPower;
+    private final double[][] _binomials;
+    private final int _replicateDegree;
+    private final int _degree;
+
+    private DropoutPolynomialKernel(final ReplicateKernel kernel, final int unknownCount, final boolean varyUnknowns, final double[] knownFixed, final int[] knownDegree, final long knownMask, final double[] knownDroppedOutFixed, final int[] knownDroppedOutDegree, final double[] dropOutPower, final int replicateDegree, final int degree) {
+        _kernel = kernel;
+        _unknownCount = unknownCount;
+        _varyUnknowns = varyUnknowns;
+        _knownFixed = knownFixed;
+        _knownDegree = knownDegree;
+        _knownMask = knownMask;
+        _knownDroppedOutFixed = knownDroppedOutFixed;
+        _knownDroppedOutDegree = knownDroppedOutDegree;
+        _dropOutPower = dropOutPower;
+        _replicateDegree = replicateDegree;
+        _degree = degree;
+
+        _binomials = new double[replicateDegree + 1][];
+        for (int n = 0; n <= replicateDegree; n++) {
+            _binomials[n] = new double[n + 1];
+            _binomials[n][0] = 1;
+            _binomials[n][n] = 1;
+            for (int k = 1; k < n; k++) {
+                _binomials[n][k] = _binomials[n - 1][k - 1] + _binomials[n - 1][k];
+            }
+        }
+    }
+
+    /**
+     * Compiles a kernel for the given locus and hypothesis.
+     *
+     * @param locusName The name of the locus
+     * @param hypothesis The hypothesis to evaluate
+     * @param kernel The replicate kernel compiled for the locus and hypothesis
+     * @param variedProfiles The known profiles whose dropout probability is
+     * varied
+     * @param varyUnknowns true if the dropout probability of the unknowns is
+     * varied
+     * @return A kernel, or null if the supplied replicate kernel is null
+     */
+    static DropoutPolynomialKernel compile(final String locusName, final Hypothesis hypothesis, final ReplicateKernel kernel, final Collection<Sample> variedProfiles, final boolean varyUnknowns) {
+        if (kernel == null) {
+            return null;
+        }
+
+        final int alleleCount = kernel.getAlleleCount();
+        final double[] knownFixed = new double[alleleCount];
+        final int[] knownDegree = new int[alleleCount];
+        Arrays.fill(knownFixed, 1.0);
+        long knownMask = 0;
+        int variedCount = 0;
+
+        final int replicateCount = kernel.getReplicateCount();
+        final double[] knownDroppedOutFixed = new double[replicateCount];
+        final int[] knownDroppedOutDegree = new int[replicateCount];
+        Arrays.fill(knownDroppedOutFixed, 1.0);
+
+        // Alleles from homozygote loci are only added once
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            final boolean varied = isVaried(contributor, variedProfiles);
+            if (varied) {
+                variedCount++;
+            }
+            final Locus locus = contributor.getSample().getLocus(locusName);
+            for (final Allele allele : locus.getAlleles()) {
+                final int localId = kernel.getLocalId(allele);
+                final double fixed = varied ? 1.0 : contributor.getDropOutProbability(allele.isHomozygote());
+                final int degree = varied ? (allele.isHomozygote() ? 2 : 1) : 0;
+                knownFixed[localId] *= fixed;
+                knownDegree[localId] += degree;
+                knownMask |= 1L << localId;
+                for (int replicate = 0; replicate < replicateCount; replicate++) {
+                    if ((kernel.getReplicateMask(replicate) & (1L << localId)) == 0) {
+                        knownDroppedOutFixed[replicate] *= fixed;
+                        knownDroppedOutDegree[replicate] += degree;
+                    }
+                }
+                if (allele.isHomozygote()) {
+                    break;
+                }
+            }
+        }
+
+        final int unknownCount = hypothesis.getUnknownCount();
+        final double[] dropOutPower = new double[2 * unknownCount + 1];
+        dropOutPower[0] = 1.0;
+        for (int idx = 1; idx < dropOutPower.length; idx++) {
+            dropOutPower[idx] = dropOutPower[idx - 1] * hypothesis.getUnknownDropoutProbability();
+        }
+
+        final int replicateDegree = 2 * (variedCount + (varyUnknowns ? unknownCount : 0));
+        int degree = 0;
+        for (int replicate = 0; replicate < replicateCount; replicate++) {
+            degree += replicateDegree * kernel.getReplicateMultiplicity(replicate);
+        }
+
+        return new DropoutPolynomialKernel(kernel, unknownCount, varyUnknowns, knownFixed, knownDegree, knownMask, knownDroppedOutFixed, knownDroppedOutDegree, dropOutPower, replicateDegree, degree);
+    }
+
+    private static boolean isVaried(final Contributor contributor, final Collection<Sample> variedProfiles) {
+        for (final Sample sample : variedProfiles) {
+            if (sample.getId().equalsIgnoreCase(contributor.getSample().getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The degree of the polynomials calculated by this kernel
+     */
+    int getDegree() {
+        return _degree;
+    }
+
+    /**
+     * @return A set of buffers for use by
+     * {@link #accumulate(int[], long, double, double[], double[][])}. The first
+     * three buffers can hold a polynomial of the degree of this kernel, the
+     * last one a polynomial of the degree of a single replicate.
+     */
+    double[][] createBuffer() {
+        return new double[][]{new double[_degree + 1], new double[_degree + 1], new double[_replicateDegree + 1], new double[_replicateDegree + 1]};
+    }
+
+    /**
+     * Calculates the replicate probability polynomial for the alleles carried
+     * by the unknowns and adds it to the target polynomial.
+     *
+     * @param dose The number of copies of each allele carried by the unknowns,
+     * indexed by the local allele index of the replicate kernel
+     * @param unknownMask A mask with the bits set for all alleles with a
+     * non-zero dose
+     * @param weight The factor to multiply the polynomial by before adding it
+     * to the target
+     * @param target The coefficients of the target polynomial
+     * @param buffers Buffers obtained from {@link #createBuffer()}
+     */
+    void accumulate(final int[] dose, final long unknownMask, final double weight, final double[] target, final double[][] buffers) {
+        final long carried = _knownMask | unknownMask;
+        final int totalDose = 2 * _unknownCount;
+
+        double[] total = buffers[0];
+        double[] work = buffers[1];
+        total[0] = weight;
+        int totalDegree = 0;
+
+        for (int replicate = 0; replicate < _kernel.getReplicateCount(); replicate++) {
+            final long mask = _kernel.getReplicateMask(replicate);
+            double[] replicatePolynomial = buffers[2];
+            double[] replicateWork = buffers[3];
+            replicatePolynomial[0] = 1;
+            int replicatePolynomialDegree = 0;
+
+            // Set B: alleles in the replicate that are carried by one or more contributors
+            double scalar = 1;
+            int presentDose = 0;
+            long present = mask & carried;
+            while (present != 0) {
+                final int allele = Long.numberOfTrailingZeros(present);
+                present &= present - 1;
+                presentDose += dose[allele];
+                final double fixed = _knownFixed[allele] * (_varyUnknowns ? 1 : _dropOutPower[dose[allele]]);
+                final int degree = _knownDegree[allele] + (_varyUnknowns ? dose[allele] : 0);
+                if (degree == 0) {
+                    scalar *= 1 - fixed;
+                } else {
+                    // 1 - fixed * d^k = SUM<i=0;k-1>( C(k,i) d^i (1-d)^(k-i) ) + (1 - fixed) d^k
+                    Arrays.fill(replicateWork, 0, replicatePolynomialDegree + degree + 1, 0);
+                    for (int i = 0; i <= replicatePolynomialDegree; i++) {
+                        final double coefficient = replicatePolynomial[i];
+                        if (coefficient == 0) {
+                            continue;
+                        }
+                        for (int j = 0; j < degree; j++) {
+                            replicateWork[i + j] += coefficient * _binomials[degree][j];
+                        }
+                        replicateWork[i + degree] += coefficient * (1 - fixed);
+                    }
+                    final double[] swap = replicatePolynomial;
+                    replicatePolynomial = replicateWork;
+                    replicateWork = swap;
+                    replicatePolynomialDegree += degree;
+                }
+            }
+
+            // Set A: allele copies that are not in the replicate have dropped out
+            scalar *= _knownDroppedOutFixed[replicate];
+            int shift = _knownDroppedOutDegree[replicate];
+            if (_varyUnknowns) {
+                shift += totalDose - presentDose;
+            } else {
+                scalar *= _dropOutPower[totalDose - presentDose];
+            }
+
+            // Set C: alleles in the replicate that are not carried by any contributor have dropped in
+            long droppedIn = mask & ~carried;
+            if (droppedIn == 0) {
+                scalar *= _kernel.getNoDropIn();
+            } else {
+                while (droppedIn != 0) {
+                    final int allele = Long.numberOfTrailingZeros(droppedIn);
+                    droppedIn &= droppedIn - 1;
+                    scalar *= _kernel.getDropIn(replicate, allele);
+                }
+            }
+
+            // Multiply the total by scalar * d^shift * replicatePolynomial once for each identical replicate
+            for (int count = 0; count < _kernel.getReplicateMultiplicity(replicate); count++) {
+                final int newDegree = totalDegree + shift + replicatePolynomialDegree;
+                Arrays.fill(work, 0, newDegree + 1, 0);
+                for (int i = 0; i <= totalDegree; i++) {
+                    final double coefficient = total[i] * scalar;
+                    if (coefficient == 0) {
+                        continue;
+                    }
+                    for (int j = 0; j <= replicatePolynomialDegree; j++) {
+                        work[i + shift + j] += coefficient * replicatePolynomial[j];
+                    }
+                }
+                final double[] swap = total;
+                total = work;
+                work = swap;
+                totalDegree = newDegree;
+            }
+        }
+
+        for (int idx = 0; idx <= totalDegree; idx++) {
+            target[idx] += total[idx];
+        }
+    }
+}
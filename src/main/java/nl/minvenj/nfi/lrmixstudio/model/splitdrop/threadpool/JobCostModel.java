@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import nl.minvenj.nfi.lrmixstudio.gui.ApplicationSettings;
+
+/**
+ * Predicts the time needed to evaluate a job before it runs. The cost of a
+ * job is expressed in units of one permutation evaluated for one replicate
+ * and one unknown, and converted to time with the average time per unit
+ * measured over the jobs that finished so far. Until enough jobs were
+ * measured, the time per unit is taken from the calibration stored in the
+ * application settings by earlier runs. The calibration is kept in memory and
+ * written to the application settings at most once per
+ * {@link #STORE_INTERVAL_MILLIS} and when the application exits.
+ */
+public final class JobCostModel {
+
+    /**
+     * The time per unit in nanoseconds assumed before the model is calibrated.
+     */
+    static final double DEFAULT_NANOS_PER_UNIT = 50;
+    /**
+     * The weight, in units, of the initial time per unit against the measured
+     * jobs. This keeps a few short jobs from overturning the calibration.
+     */
+    static final long PRIOR_UNITS = 1000000;
+    /**
+     * The minimum time in milliseconds between two writes of the calibration
+     * to the application settings.
+     */
+    static final long STORE_INTERVAL_MILLIS = 10 * 60 * 1000;
+    private static JobCostModel _instance;
+    private final double _initialNanosPerUnit;
+    private long _units;
+    private long _nanos;
+    private long _storedUnits;
+    private long _lastStored = System.currentTimeMillis();
+
+    /**
+     * Creates a new model. Normally the shared instance obtained from
+     * {@link #getInstance()} is used.
+     *
+     * @param initialNanosPerUnit The time per unit in nanoseconds to assume
+     * until jobs were measured
+     */
+    public JobCostModel(final double initialNanosPerUnit) {
+        if (initialNanosPerUnit <= 0 || Double.isNaN(initialNanosPerUnit) || Double.isInfinite(initialNanosPerUnit)) {
+            throw new IllegalArgumentException("Invalid time per unit: " + initialNanosPerUnit);
+        }
+        _initialNanosPerUnit = initialNanosPerUnit;
+    }
+
+    /**
+     * @return The shared instance, initialized from the calibration in the
+     * application settings
+     */
+    public static synchronized JobCostModel getInstance() {
+        if (_instance == null) {
+            final double calibration = ApplicationSettings.getJobCost();
+            _instance = new JobCostModel(calibration > 0 ? calibration : DEFAULT_NANOS_PER_UNIT);
+            Runtime.getRuntime().addShutdownHook(new Thread("JobCostModel store") {
+                @Override
+                public void run() {
+                    _instance.store();
+                }
+            });
+        }
+        return _instance;
+    }
+
+    /**
+     * Calculates the cost of a job.
+     *
+     * @param permutationCount The number of permutations the job evaluates
+     * @param replicateCount The number of replicates
+     * @param unknownCount The number of unknown contributors
+     * @return The cost of the job in units
+     */
+    public static long getCost(final long permutationCount, final int replicateCount, final int unknownCount) {
+        return permutationCount * replicateCount * Math.max(1, unknownCount);
+    }
+
+    /**
+     * Records the time a job took.
+     *
+     * @param cost The cost of the job in units
+     * @param nanos The time in nanoseconds the job took
+     */
+    public synchronized void record(final long cost, final long nanos) {
+        if (cost > 0 && nanos > 0) {
+            _units += cost;
+            _nanos += nanos;
+        }
+    }
+
+    /**
+     * @return The time in nanoseconds to evaluate a unit of cost
+     */
+    public synchronized double getNanosPerUnit() {
+        return (_initialNanosPerUnit * PRIOR_UNITS + _nanos) / (PRIOR_UNITS + _units);
+    }
+
+    /**
+     * Stores the current time per unit in the application settings, so that
+     * later runs of the application start from it. Nothing is written if no
+     * jobs were measured since the last store.
+     */
+    public void store() {
+        final double nanosPerUnit;
+        synchronized (this) {
+            if (_units == _storedUnits) {
+                return;
+            }
+            _storedUnits = _units;
+            _lastStored = System.currentTimeMillis();
+            nanosPerUnit = getNanosPerUnit();
+        }
+        ApplicationSettings.setJobCost(nanosPerUnit);
+    }
+
+    /**
+     * Stores the current time per unit if the last store was more than
+     * {@link #STORE_INTERVAL_MILLIS} ago.
+     */
+    public void storeIfDue() {
+        synchronized (this) {
+            if (System.currentTimeMillis() - _lastStored < STORE_INTERVAL_MILLIS) {
+                return;
+            }
+        }
+        store();
+    }
+
+    /**
+     * Predicts the time needed to evaluate a set of jobs on a number of
+     * workers that each take the longest remaining job when they become idle.
+     *
+     * @param costs The costs of the jobs in units
+     * @param workerCount The number of workers
+     * @return The predicted time in milliseconds
+     */
+    public long predictDuration(final long[] costs, final int workerCount) {
+        return (long) (getMakespan(costs, workerCount) * getNanosPerUnit() / 1000000);
+    }
+
+    /**
+     * Calculates the cost of the busiest worker when the jobs are assigned
+     * longest job first to the least loaded worker.
+     *
+     * @param costs The costs of the jobs
+     * @param workerCount The number of workers
+     * @return The summed cost of the jobs of the busiest worker
+     */
+    static long getMakespan(final long[] costs, final int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Invalid worker count: " + workerCount);
+        }
+        final long[] sorted = costs.clone();
+        Arrays.sort(sorted);
+        final PriorityQueue<Long> loads = new PriorityQueue<>();
+        for (int idx = 0; idx < workerCount; idx++) {
+            loads.add(0L);
+        }
+        long makespan = 0;
+        for (int idx = sorted.length - 1; idx >= 0; idx--) {
+            final long load = loads.poll() + sorted[idx];
+            makespan = Math.max(makespan, load);
+            loads.add(load);
+        }
+        return makespan;
+    }
+}
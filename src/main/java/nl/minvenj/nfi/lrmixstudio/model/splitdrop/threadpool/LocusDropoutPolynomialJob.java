@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.Collection;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype.GenotypeProbabilityTable;
+
+/**
+ * A {@link LocusProbabilityJobAlleleUnion} that, in the same pass, accumulates
+ * the locus probability as a {@link DropoutPolynomial} in a varied dropout
+ * probability. The regular locus probability is calculated using the dropout
+ * probabilities in the hypothesis.
+ */
+public class LocusDropoutPolynomialJob extends LocusProbabilityJobAlleleUnion {
+
+    private final DropoutPolynomialKernel _polynomialKernel;
+    private final double[] _coefficients;
+    private double[][] _buffers;
+    private DropoutPolynomial _polynomial;
+
+    LocusDropoutPolynomialJob(String locusName, Collection<Locus> genotypes, Collection<Sample> replicates, Hypothesis hypothesis, AnalysisProgressListener progress, ReplicateKernel kernel, GenotypeProbabilityTable genotypeTable, DropoutPolynomialKernel polynomialKernel) {
+        super(locusName, genotypes, replicates, hypothesis, progress, kernel, genotypeTable);
+        if (polynomialKernel == null) {
+            throw new IllegalArgumentException("No polynomial kernel specified!");
+        }
+        _polynomialKernel = polynomialKernel;
+        _coefficients = new double[polynomialKernel.getDegree() + 1];
+    }
+
+    @Override
+    public LocusProbability call() throws Exception {
+        _buffers = _polynomialKernel.createBuffer();
+        final LocusProbability result = super.call();
+        final double denominator = _genotypeTable.getDenominator();
+        final double[] coefficients = new double[_coefficients.length];
+        for (int idx = 0; idx < coefficients.length; idx++) {
+            coefficients[idx] = _coefficients[idx] / denominator;
+        }
+        _polynomial = new DropoutPolynomial(coefficients);
+        return result;
+    }
+
+    @Override
+    protected void addSignature(double genotypeProbability, int[] dose, long mask) {
+        _polynomialKernel.accumulate(dose, mask, genotypeProbability, _coefficients, _buffers);
+        super.addSignature(genotypeProbability, dose, mask);
+    }
+
+    /**
+     * @return The locus probability as a polynomial in the varied dropout
+     * probability, or null if the job has not finished
+     */
+    public DropoutPolynomial getPolynomial() {
+        return _polynomial;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A job that calculates (part of) the probability of a single locus under a
+ * single hypothesis.
+ */
+public interface LocusJob extends Callable<LocusProbability> {
+
+    /**
+     * @return The predicted cost of this job in the units of the
+     * {@link JobCostModel}
+     */
+    long getCost();
+
+    /**
+     * @return An upper bound on the summed genotype probability of all
+     * permutations of the locus, not only of those evaluated by this job
+     */
+    double getGenotypeMassBound();
+}
@@ -17,28 +17,146 @@
 package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
 
 import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisPerformance.LocusPerformance;
 
+/**
+ * Accumulates the probability of a single locus under a single hypothesis.
+ *
+ * The value is kept as a mantissa and a binary exponent, so that sums of very
+ * small terms do not underflow. The mantissa is renormalized whenever its
+ * exponent leaves the range [-{@value #RENORMALIZE_EXPONENT},
+ * {@value #RENORMALIZE_EXPONENT}].
+ */
 class LocusProbability {
+    static final int RENORMALIZE_EXPONENT = 512;
+    private static final double LOG10_2 = Math.log10(2);
     private final String _locusName;
     private final Hypothesis _hypothesis;
-    private double _value;
+    // The value is _mantissa * 2^_exponent
+    private double _mantissa;
+    private int _exponent;
+    // The summed genotype probability of all evaluated genotype combinations
+    private double _genotypeMass;
+    // The performance of the jobs that contributed to this probability
+    private final LocusPerformance _performance = new LocusPerformance();
 
     LocusProbability(Hypothesis hypothesis, String locusName) {
         _hypothesis = hypothesis;
         _locusName = locusName;
-        _value = 0;
+        _mantissa = 0;
+        _exponent = 0;
     }
 
     void setValue(double value) {
-        _value = value;
+        _mantissa = value;
+        _exponent = 0;
+        normalize();
     }
 
     void addValue(double otherValue) {
-        _value += otherValue;
+        addValue(otherValue, 0);
+    }
+
+    /**
+     * Adds a value that is specified as a mantissa and a binary exponent.
+     *
+     * @param mantissa The mantissa of the value to add
+     * @param exponent The binary exponent of the value to add
+     */
+    void addValue(double mantissa, int exponent) {
+        if (mantissa == 0) {
+            return;
+        }
+        if (_mantissa == 0) {
+            _mantissa = mantissa;
+            _exponent = exponent;
+        } else if (exponent == _exponent) {
+            _mantissa += mantissa;
+        } else if (exponent > _exponent) {
+            _mantissa = Math.scalb(_mantissa, _exponent - exponent) + mantissa;
+            _exponent = exponent;
+        } else {
+            _mantissa += Math.scalb(mantissa, exponent - _exponent);
+        }
+        normalize();
+    }
+
+    /**
+     * Adds the value of another locus probability.
+     *
+     * @param other The locus probability to add
+     */
+    void add(LocusProbability other) {
+        addValue(other._mantissa, other._exponent);
+        _genotypeMass += other._genotypeMass;
+        _performance.add(other._performance);
+    }
+
+    /**
+     * Records the genotype probability of an evaluated genotype combination.
+     * The locus probability of the combinations that have not been evaluated
+     * is at most the genotype probability mass that remains.
+     *
+     * @param genotypeProbability The genotype probability to add
+     */
+    void addGenotypeMass(double genotypeProbability) {
+        _genotypeMass += genotypeProbability;
+    }
+
+    /**
+     * @return The summed genotype probability of all evaluated genotype
+     * combinations
+     */
+    double getGenotypeMass() {
+        return _genotypeMass;
     }
 
+    /**
+     * @return The mantissa of the value, which is the value divided by two to
+     * the power of {@link #getExponent()}
+     */
+    double getMantissa() {
+        return _mantissa;
+    }
+
+    /**
+     * @return The binary exponent of the value
+     */
+    int getExponent() {
+        return _exponent;
+    }
+
+    private void normalize() {
+        if (_mantissa != 0 && !Double.isInfinite(_mantissa) && !Double.isNaN(_mantissa)) {
+            final int exponent = Math.getExponent(_mantissa);
+            if (exponent < -RENORMALIZE_EXPONENT || exponent > RENORMALIZE_EXPONENT) {
+                _mantissa = Math.scalb(_mantissa, -exponent);
+                _exponent += exponent;
+            }
+        }
+    }
+
+    /**
+     * @return The value as a double. This is zero if the value is too small to
+     * be represented as a double.
+     */
     Double getValue() {
-        return _value;
+        return Math.scalb(_mantissa, _exponent);
+    }
+
+    /**
+     * @return The base 10 logarithm of the value. This is accurate even if the
+     * value is too small to be represented as a double.
+     */
+    double getLog10Value() {
+        return Math.log10(_mantissa) + _exponent * LOG10_2;
+    }
+
+    /**
+     * @return The performance of the jobs that contributed to this probability
+     */
+    LocusPerformance getPerformance() {
+        return _performance;
     }
 
     Hypothesis getHypothesis() {
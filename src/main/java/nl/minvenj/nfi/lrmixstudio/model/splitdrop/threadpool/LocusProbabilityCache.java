@@ -0,0 +1,339 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.gui.ApplicationSettings;
+
+/**
+ * A bounded cache of locus probabilities, indexed by
+ * {@link LocusProbabilityKey}. When the cache is full, the least recently used
+ * entry is discarded.
+ *
+ * If a directory is configured, each entry is also written to a file named
+ * after its key, and entries that are not in memory are looked up in that
+ * directory. This allows results to be reused after a restart. Files that
+ * were not used for longer than the maximum age are removed, and if the
+ * directory holds more than the maximum number of files, the least recently
+ * used files are removed. The directory is pruned when the cache is created
+ * and after every {@link #PRUNE_INTERVAL} writes.
+ *
+ * Several processes can share the directory. Each entry is written to a
+ * temporary file of its own, which then atomically replaces the entry file.
+ * Files are read and written outside the lock of the cache, so that analyses
+ * do not wait for each other's file I/O.
+ */
+public class LocusProbabilityCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocusProbabilityCache.class);
+    private static final String FILE_EXTENSION = ".locusprobability";
+    /**
+     * The number of files written between two prunings of the directory.
+     */
+    static final int PRUNE_INTERVAL = 100;
+    /**
+     * The age in milliseconds after which a temporary file is considered to be
+     * left behind by a process that was killed while writing it. Younger
+     * temporary files may still be written by another process.
+     */
+    static final long TEMP_FILE_MAX_AGE = TimeUnit.HOURS.toMillis(1);
+    private static LocusProbabilityCache _instance;
+    private final int _maxSize;
+    private final File _directory;
+    private final int _maxFiles;
+    private final long _maxAge;
+    private final LinkedHashMap<LocusProbabilityKey, Entry> _entries;
+    private int _writesSincePrune;
+
+    /**
+     * A cached locus probability.
+     */
+    public static final class Entry {
+
+        private final double _value;
+        private final double _log10Value;
+
+        Entry(final double value, final double log10Value) {
+            _value = value;
+            _log10Value = log10Value;
+        }
+
+        /**
+         * @return The locus probability
+         */
+        public double getValue() {
+            return _value;
+        }
+
+        /**
+         * @return The base 10 logarithm of the locus probability
+         */
+        public double getLog10Value() {
+            return _log10Value;
+        }
+    }
+
+    /**
+     * Creates a new cache. The directory is bounded by the maximum number of
+     * files and the maximum age in the {@link ApplicationSettings}.
+     *
+     * @param maxSize The maximum number of entries kept in memory
+     * @param directory The directory in which entries are persisted, or null
+     * to keep entries in memory only
+     */
+    public LocusProbabilityCache(final int maxSize, final File directory) {
+        this(maxSize, directory, directory == null ? Integer.MAX_VALUE : ApplicationSettings.getLocusCacheMaxFiles(), directory == null ? Long.MAX_VALUE : TimeUnit.DAYS.toMillis(ApplicationSettings.getLocusCacheMaxAgeDays()));
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize The maximum number of entries kept in memory
+     * @param directory The directory in which entries are persisted, or null
+     * to keep entries in memory only
+     * @param maxFiles The maximum number of entries kept in the directory
+     * @param maxAge The time in milliseconds after which an entry that was not
+     * used is removed from the directory
+     */
+    public LocusProbabilityCache(final int maxSize, final File directory, final int maxFiles, final long maxAge) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1, not " + maxSize);
+        }
+        if (maxFiles < 1) {
+            throw new IllegalArgumentException("Maximum number of files must be at least 1, not " + maxFiles);
+        }
+        if (maxAge < 1) {
+            throw new IllegalArgumentException("Maximum age must be positive, not " + maxAge);
+        }
+        _maxSize = maxSize;
+        _directory = directory;
+        _maxFiles = maxFiles;
+        _maxAge = maxAge;
+        _entries = new LinkedHashMap<LocusProbabilityKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<LocusProbabilityKey, Entry> eldest) {
+                return size() > _maxSize;
+            }
+        };
+        if (directory != null) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                LOG.warn("Could not create locus cache directory {}", directory);
+            }
+            prune();
+        }
+    }
+
+    /**
+     * Gets the cache shared by all analyses, as configured in the
+     * {@link ApplicationSettings}.
+     *
+     * @return The shared cache, or null if caching is disabled
+     */
+    public static synchronized LocusProbabilityCache getInstance() {
+        final int size = ApplicationSettings.getLocusCacheSize();
+        final String directoryName = ApplicationSettings.getLocusCacheDirectory();
+        final File directory = directoryName.isEmpty() ? null : new File(directoryName);
+        if (size < 1) {
+            _instance = null;
+        } else if (_instance == null || _instance._maxSize != size || (directory == null ? _instance._directory != null : !directory.equals(_instance._directory))) {
+            LOG.debug("Creating locus cache of {} entries in {}", size, directory);
+            _instance = new LocusProbabilityCache(size, directory);
+        }
+        return _instance;
+    }
+
+    /**
+     * Gets a cached probability.
+     *
+     * @param key The key of the probability
+     * @return The cached probability, or null if the probability is not
+     * cached
+     */
+    public Entry get(final LocusProbabilityKey key) {
+        synchronized (this) {
+            final Entry entry = _entries.get(key);
+            if (entry != null || _directory == null) {
+                return entry;
+            }
+        }
+        final Entry entry = read(key);
+        if (entry != null) {
+            synchronized (this) {
+                _entries.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Adds a probability to the cache.
+     *
+     * @param key The key of the probability
+     * @param value The probability
+     * @param log10Value The base 10 logarithm of the probability
+     */
+    public void put(final LocusProbabilityKey key, final double value, final double log10Value) {
+        final Entry entry = new Entry(value, log10Value);
+        final boolean pruneDue;
+        synchronized (this) {
+            _entries.put(key, entry);
+            if (_directory == null) {
+                return;
+            }
+            pruneDue = ++_writesSincePrune >= PRUNE_INTERVAL;
+            if (pruneDue) {
+                _writesSincePrune = 0;
+            }
+        }
+        write(key, entry);
+        if (pruneDue) {
+            prune();
+        }
+    }
+
+    /**
+     * @return The number of entries in memory
+     */
+    public synchronized int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Removes all entries from memory. Persisted entries are not removed.
+     */
+    public synchronized void clear() {
+        _entries.clear();
+    }
+
+    private Entry read(final LocusProbabilityKey key) {
+        final File file = new File(_directory, key.toHexString() + FILE_EXTENSION);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            final Entry entry = new Entry(Double.parseDouble(reader.readLine()), Double.parseDouble(reader.readLine()));
+            // The modification time marks the last use, so that used entries survive pruning
+            file.setLastModified(System.currentTimeMillis());
+            return entry;
+        } catch (final IOException | NumberFormatException | NullPointerException ex) {
+            LOG.warn("Ignoring unreadable locus cache file {}: {}", file, ex.getMessage());
+            return null;
+        }
+    }
+
+    private void write(final LocusProbabilityKey key, final Entry entry) {
+        final File file = new File(_directory, key.toHexString() + FILE_EXTENSION);
+        // Each write goes to a file of its own, so that processes writing the same entry do not interleave
+        final File temp;
+        try {
+            temp = File.createTempFile(key.toHexString(), ".tmp", _directory);
+        } catch (final IOException ex) {
+            LOG.warn("Could not write locus cache file {}: {}", file, ex.getMessage());
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            writer.write(Double.toString(entry.getValue()));
+            writer.write('\n');
+            writer.write(Double.toString(entry.getLog10Value()));
+            writer.write('\n');
+        } catch (final IOException ex) {
+            LOG.warn("Could not write locus cache file {}: {}", file, ex.getMessage());
+            temp.delete();
+            return;
+        }
+        try {
+            AnalysisCheckpoint.replace(temp, file);
+        } catch (final IOException ex) {
+            LOG.warn("Could not write locus cache file {}: {}", file, ex.getMessage());
+            temp.delete();
+        }
+    }
+
+    /**
+     * Removes the files that were not used for longer than the maximum age,
+     * and then the least recently used files over the maximum number of
+     * files. Temporary files are only removed once they are older than
+     * {@link #TEMP_FILE_MAX_AGE}.
+     */
+    void prune() {
+        final File[] files = _directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.getName().endsWith(FILE_EXTENSION) || file.getName().endsWith(".tmp");
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final Map<File, Long> lastModified = new LinkedHashMap<>();
+        int removed = 0;
+        for (final File file : files) {
+            final long modified = file.lastModified();
+            if (file.getName().endsWith(".tmp")) {
+                if (now - modified > TEMP_FILE_MAX_AGE) {
+                    removed += delete(file);
+                }
+            } else if (now - modified > _maxAge) {
+                removed += delete(file);
+            } else {
+                lastModified.put(file, modified);
+            }
+        }
+        if (lastModified.size() > _maxFiles) {
+            final File[] remaining = lastModified.keySet().toArray(new File[lastModified.size()]);
+            Arrays.sort(remaining, new Comparator<File>() {
+                @Override
+                public int compare(final File a, final File b) {
+                    return Long.compare(lastModified.get(a), lastModified.get(b));
+                }
+            });
+            for (int idx = 0; idx < remaining.length - _maxFiles; idx++) {
+                removed += delete(remaining[idx]);
+            }
+        }
+        if (removed > 0) {
+            LOG.debug("Removed {} files from locus cache directory {}", removed, _directory);
+        }
+    }
+
+    private static int delete(final File file) {
+        if (file.delete()) {
+            return 1;
+        }
+        LOG.warn("Could not remove locus cache file {}", file);
+        return 0;
+    }
+}
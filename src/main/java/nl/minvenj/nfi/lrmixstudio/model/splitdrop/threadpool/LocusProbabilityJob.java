@@ -19,8 +19,6 @@ package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.NoSuchElementException;
-import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,42 +31,54 @@ import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
 import nl.minvenj.nfi.lrmixstudio.domain.Sample;
 import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
 import nl.minvenj.nfi.lrmixstudio.model.DefaultAnalysisProgressListenerImpl;
-import nl.minvenj.nfi.lrmixstudio.model.splitdrop.Permutation;
-import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationIterator;
+import nl.minvenj.nfi.lrmixstudio.model.EngineMetrics;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationCursor;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype.AbstractGenotypeProbabilityCalculator;
 import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype.GenotypeProbabilityCalculator;
 import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype.GenotypeProbabilityCalculatorFactory;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype.GenotypeProbabilityTable;
 
 /**
  * This class performs probability calculations at a single locus for a single
  * hypothesis.
  */
-public class LocusProbabilityJob implements Callable<LocusProbability> {
+public class LocusProbabilityJob implements LocusJob {
 
     private static final Logger LOG = LoggerFactory.getLogger(LocusProbabilityJob.class);
     protected final Hypothesis hypothesis;
     protected final LocusProbability _locusProbability;
-    protected final PermutationIterator _permutationIterator;
+    protected final PermutationCursor _permutationCursor;
     protected final Collection<Locus> replicateLoci;
     protected final AnalysisProgressListener progress;
     protected final String locusName;
     // Set A is the drop-out set. These alleles are present in the reference sample, but not the replicate
-    protected final Allele[] droppedOutA = new Allele[Allele.getRegisteredAlleleCount()];
+    protected final Allele[] droppedOutA;
     protected int droppedOutACount = 0;
+    // The distinct alleles of the replicate being evaluated. The position of an allele in this array is its local id, which indexes the arrays below
+    protected final Allele[] replicateAlleles;
+    protected int replicateAlleleCount = 0;
     // This array holds the product of all dropout probabilitities for all alleles that are present in one or more profile
-    protected final double[] presentBProbabilities = new double[Allele.getRegisteredAlleleCount()];
+    protected final double[] presentBProbabilities;
+    // Marks the alleles in presentBProbabilities that are present in both a profile and the replicate. Cleared after each replicate
+    protected final boolean[] presentFlags;
     // Set C is the set of of alleles that are present in the replicate, but not the reference sample
-    protected final Allele[] droppedInC = new Allele[Allele.getRegisteredAlleleCount()];
+    protected final Allele[] droppedInC;
     protected int droppedInCCount = 0;
 
-    protected int presentMinId;
-    protected int presentMaxId;
-
     // This array contains all alleles for all contributors augmented with the alleles for the current permutation
-    protected final Allele[] allAlleles = new Allele[Allele.getRegisteredAlleleCount() * 2];
+    protected final Allele[] allAlleles;
     protected int allAlleleCount = 0;
 
 // Cache for locus results. This to be able to skip recalculation for identical replicate loci
     protected final HashMap<Locus, Double> locusProbabilities;
+    private long _replicateCacheHits;
+    private long _replicateCacheMisses;
+    // The number of evaluations reported to the progress listener
+    private final long _jobSize;
+    // The predicted cost of the job, see JobCostModel
+    private final long _cost;
+    private double _genotypeMassBound = 1;
+    private ValidationTrace _trace;
 
     protected double dropOutProbability;
     protected double dropOutProbabilityHomozygote;
@@ -80,17 +90,60 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
     protected double denominator;
 
     protected int totalAlleleCount;
-    protected final int[] _alleleCounts = new int[Allele.getRegisteredAlleleCount()];
-    protected int[] _localAlleleCounts = new int[Allele.getRegisteredAlleleCount()];
+    protected final int[] _alleleCounts;
+    protected int[] _localAlleleCounts;
     protected int currentAlleleCount;
     private final GenotypeProbabilityCalculator _relatedGenotypeCalculator;
     private final GenotypeProbabilityCalculator _unrelatedGenotypeCalculator;
+    private final ReplicateKernel _replicateKernel;
+    protected final GenotypeProbabilityTable _genotypeTable;
+
+    LocusProbabilityJob(String locusName, PermutationCursor permutationCursor, Collection<Sample> replicates, Hypothesis hypothesis) {
+        this(locusName, permutationCursor, replicates, hypothesis, new DefaultAnalysisProgressListenerImpl());
+    }
+
+    LocusProbabilityJob(String locusName, PermutationCursor permutationCursor, Collection<Sample> replicates, Hypothesis hypothesis, AnalysisProgressListener progress) {
+        this(locusName, permutationCursor, replicates, hypothesis, progress, null, null);
+    }
 
-    LocusProbabilityJob(String locusName, PermutationIterator permutationIterator, Collection<Sample> replicates, Hypothesis hypothesis) {
-        this(locusName, permutationIterator, replicates, hypothesis, new DefaultAnalysisProgressListenerImpl());
+    /**
+     * Creates a job that uses a precompiled replicate kernel and genotype
+     * probability table to evaluate each permutation.
+     *
+     * @param locusName The name of the locus
+     * @param permutationCursor The permutations to evaluate, or null if the
+     * hypothesis has no unknowns
+     * @param replicates The replicates to evaluate
+     * @param hypothesis The hypothesis to evaluate
+     * @param progress The listener to receive progress events
+     * @param replicateKernel The kernel compiled for this locus, hypothesis,
+     * replicates and the genotypes of the permutation cursor, or null to use
+     * the allele-by-allele calculation
+     * @param genotypeTable The genotype probability table for this locus,
+     * hypothesis and the genotypes of the permutation cursor, or null to use
+     * the genotype probability calculators
+     */
+    LocusProbabilityJob(String locusName, PermutationCursor permutationCursor, Collection<Sample> replicates, Hypothesis hypothesis, AnalysisProgressListener progress, ReplicateKernel replicateKernel, GenotypeProbabilityTable genotypeTable) {
+        this(locusName, permutationCursor, replicates, hypothesis, progress, replicateKernel, genotypeTable, permutationCursor == null ? 1 : permutationCursor.size());
     }
 
-    LocusProbabilityJob(String locusName, PermutationIterator permutationIterator, Collection<Sample> replicates, Hypothesis hypothesis, AnalysisProgressListener progress) {
+    /**
+     * Creates a job that reports the supplied number of permutations to the
+     * progress listener. This is intended for subclasses that do not evaluate
+     * the permutations of the cursor one by one.
+     *
+     * @param locusName The name of the locus
+     * @param permutationCursor The permutations to evaluate, or null
+     * @param replicates The replicates to evaluate
+     * @param hypothesis The hypothesis to evaluate
+     * @param progress The listener to receive progress events
+     * @param replicateKernel The kernel compiled for this locus, or null
+     * @param genotypeTable The genotype probability table for this locus, or
+     * null
+     * @param permutationCount The number of evaluations this job will perform
+     * for each replicate
+     */
+    protected LocusProbabilityJob(String locusName, PermutationCursor permutationCursor, Collection<Sample> replicates, Hypothesis hypothesis, AnalysisProgressListener progress, ReplicateKernel replicateKernel, GenotypeProbabilityTable genotypeTable, long permutationCount) {
         if (locusName == null) {
             throw new IllegalArgumentException("No locus name specified!");
         }
@@ -100,7 +153,9 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
         }
 
         this.locusProbabilities = new HashMap<>(replicates.size());
-        _permutationIterator = permutationIterator;
+        _permutationCursor = permutationCursor;
+        _replicateKernel = replicateKernel;
+        _genotypeTable = genotypeTable;
         this.replicateLoci = new ArrayList<>();
         for (Sample replicate : replicates) {
             Locus locus = replicate.getLocus(locusName);
@@ -124,6 +179,19 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
 
         oneMinusTheta = 1.0 - hypothesis.getThetaCorrection();
 
+        // The sets of a replicate are bounded by the alleles of the replicate and those of the contributors and unknowns
+        final int replicateAlleleLimit = getReplicateAlleleLimit(replicateLoci);
+        replicateAlleles = new Allele[replicateAlleleLimit];
+        presentBProbabilities = new double[replicateAlleleLimit];
+        presentFlags = new boolean[replicateAlleleLimit];
+        droppedInC = new Allele[replicateAlleleLimit];
+        allAlleles = new Allele[getContributorAlleleCount(locusName, hypothesis) + 2 * hypothesis.getUnknownCount()];
+        droppedOutA = new Allele[allAlleles.length];
+        // The genotype probability calculators index the allele counts by allele id
+        final int alleleIdLimit = getAlleleIdLimit(locusName, replicateLoci, hypothesis);
+        _alleleCounts = new int[alleleIdLimit];
+        _localAlleleCounts = new int[alleleIdLimit];
+
         _relatedGenotypeCalculator = GenotypeProbabilityCalculatorFactory.getRelatedGenotypeProbabilityCalculator(hypothesis);
         _unrelatedGenotypeCalculator = GenotypeProbabilityCalculatorFactory.getUnrelatedGenotypeProbabilityCalculator(hypothesis);
 
@@ -164,16 +232,118 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
             }
         }
 
+        _jobSize = permutationCount * replicateLoci.size();
+        _cost = JobCostModel.getCost(permutationCount, replicateLoci.size(), hypothesis.getUnknownCount());
         if (progress != null) {
-            progress.locusStarted(hypothesis, locusName, (permutationIterator == null ? 1 : permutationIterator.size()) * replicateLoci.size());
+            progress.locusStarted(hypothesis, locusName, _jobSize);
         }
 
     }
 
+    /**
+     * @param replicateLoci The replicate loci
+     * @return The largest number of alleles in a replicate locus
+     */
+    private static int getReplicateAlleleLimit(final Collection<Locus> replicateLoci) {
+        int limit = 0;
+        for (final Locus replicateLocus : replicateLoci) {
+            limit = Math.max(limit, replicateLocus.getAlleles().size());
+        }
+        return limit;
+    }
+
+    /**
+     * @param locusName The name of the locus
+     * @param hypothesis The hypothesis
+     * @return The number of alleles of the known contributors at the locus
+     */
+    private static int getContributorAlleleCount(final String locusName, final Hypothesis hypothesis) {
+        int count = 0;
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            final Locus locus = contributor.getSample().getLocus(locusName);
+            if (locus != null) {
+                count += locus.getAlleles().size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Determines the size of the allele count arrays, which the genotype
+     * probability calculators index by allele id. Ids are assigned to alleles
+     * for the lifetime of the application, so the number of registered
+     * alleles grows with every case and statistics file that is opened. The
+     * arrays only need to cover the alleles that can occur at the locus: those of the replicates and the known profiles, and the compound
+     * allele that represents the other alleles in the population statistics.
+     * The genotypes of the unknowns are formed from these alleles, see
+     * {@link LocusProbabilityJobGenerator#getPossibleAlleleCombinations}.
+     *
+     * @param locusName The name of the locus
+     * @param replicateLoci The replicate loci
+     * @param hypothesis The hypothesis
+     * @return One more than the largest id of the alleles at the locus
+     */
+    static int getAlleleIdLimit(final String locusName, final Collection<Locus> replicateLoci, final Hypothesis hypothesis) {
+        int limit = Allele.getId(LocusProbabilityJobGenerator.getCompoundAlleleName(locusName)) + 1;
+        for (final Locus replicateLocus : replicateLoci) {
+            limit = Math.max(limit, getAlleleIdLimit(replicateLocus));
+        }
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            limit = Math.max(limit, getAlleleIdLimit(contributor.getSample().getLocus(locusName)));
+        }
+        for (final Contributor nonContributor : hypothesis.getNonContributors()) {
+            limit = Math.max(limit, getAlleleIdLimit(nonContributor.getSample().getLocus(locusName)));
+        }
+        return limit;
+    }
+
+    private static int getAlleleIdLimit(final Locus locus) {
+        int limit = 0;
+        if (locus != null) {
+            for (final Allele allele : locus.getAlleles()) {
+                limit = Math.max(limit, allele.getId() + 1);
+            }
+        }
+        return limit;
+    }
+
     public LocusProbability getProbability() {
         return _locusProbability;
     }
 
+    @Override
+    public long getCost() {
+        return _cost;
+    }
+
+    @Override
+    public double getGenotypeMassBound() {
+        return _genotypeMassBound;
+    }
+
+    /**
+     * Sets the bound on the genotype probability mass of the locus, which the
+     * generator calculates once for all jobs of the locus. Jobs of a
+     * hypothesis without unknowns keep the default of 1.
+     *
+     * @param genotypeMassBound The bound, see
+     * {@link LocusProbabilityJobGenerator#getGenotypeMassBound}
+     */
+    void setGenotypeMassBound(final double genotypeMassBound) {
+        _genotypeMassBound = genotypeMassBound;
+    }
+
+    /**
+     * Sets the trace in which this job records every evaluated permutation.
+     * A traced job calculates the probability of each replicate separately
+     * instead of using the replicate kernel, so that they can be recorded.
+     *
+     * @param trace The trace, or null to not trace this job
+     */
+    void setTrace(final ValidationTrace trace) {
+        _trace = trace;
+    }
+
     /**
      * Converts an array of Locus objects into a string suitable for logging.
      *
@@ -191,25 +361,44 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
     @Override
     public LocusProbability call() throws Exception {
         LOG.debug("Started {}", locusName);
+        final long start = System.nanoTime();
+        final ValidationTrace.Job trace = _trace == null ? null : _trace.startJob(hypothesis.getId(), locusName, replicateLoci, allAlleles, allAlleleCount);
+        final double[] replicateProbabilities = trace == null ? null : new double[replicateLoci.size()];
         try {
-            if (_permutationIterator == null) {
+            if (_permutationCursor == null) {
                 _locusProbability.setValue(calculateSingleLocusProbability());
+                _locusProbability.addGenotypeMass(1);
+                if (trace != null) {
+                    trace.permutation(1, new int[0], null, getReplicateProbabilities(replicateProbabilities), 1);
+                }
             } else {
-                Permutation permutation;
-                while ((permutation = _permutationIterator.next()) != null) {
+                final int[] indices = new int[_permutationCursor.getUnknownCount()];
+                final Locus[] permutationLoci = new Locus[indices.length];
+                final ReplicateKernel kernel = trace == null ? _replicateKernel : null;
+                final int[] dose = kernel == null ? null : kernel.createDoseBuffer();
+                final int[] counts = _genotypeTable == null ? null : _genotypeTable.createCountBuffer();
+                final int[] exponent = new int[1];
+                int permutationFactor;
+                while ((permutationFactor = _permutationCursor.next(indices)) != 0) {
                     if (Thread.interrupted()) {
                         throw new InterruptedException();
                     }
 
-                    double replicateProbability = calculateReplicateProbability(permutation.getLoci());
-                    double genotypeProbability = calculateGenotypeProbability(permutation.getLoci());
+                    for (int idx = 0; idx < indices.length; idx++) {
+                        permutationLoci[idx] = _permutationCursor.getGenotype(indices[idx]);
+                    }
+
+                    // The kernel scales the replicate probability to avoid underflow for large numbers of replicates
+                    double replicateProbability = kernel == null ? calculateReplicateProbability(permutationLoci) : kernel.calculateScaled(indices, dose, exponent);
+                    double genotypeProbability = _genotypeTable == null ? calculateGenotypeProbability(permutationLoci) : _genotypeTable.calculate(indices, counts);
                     double prob = genotypeProbability * replicateProbability;
-                    _locusProbability.addValue(permutation.getPermutationFactor() * prob);
+                    _locusProbability.addValue(permutationFactor * prob, kernel == null ? 0 : exponent[0]);
+                    _locusProbability.addGenotypeMass(permutationFactor * genotypeProbability);
+                    if (trace != null) {
+                        trace.permutation(permutationFactor, indices, _permutationCursor, getReplicateProbabilities(replicateProbabilities), genotypeProbability);
+                    }
                 }
             }
-        } catch (NoSuchElementException e) {
-            // Can happen if multiple thread share a permutation iterator object. Nothing to worry about.
-            LOG.debug("No Such Element", e);
         } catch (InterruptedException ie) {
             LOG.debug("Calculations for locus {} were interrupted!", locusName);
             progress.analysisFinished(ie);
@@ -221,11 +410,53 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
         }
 
         LOG.debug("Hypothesis {} Locus {} Done", hypothesis.getId(), locusName);
+        if (trace != null) {
+            trace.finished(_locusProbability.getValue());
+        }
+        recordPerformance(start);
         progress.locusFinished(hypothesis, locusName, _locusProbability.getValue());
 
         return _locusProbability;
     }
 
+    /**
+     * Records the time taken by this job, the number of evaluations and the
+     * cache statistics in the result and in the {@link EngineMetrics}, and
+     * calibrates the {@link JobCostModel} with the time taken.
+     *
+     * @param start The value of {@link System#nanoTime()} when the job started
+     */
+    protected void recordPerformance(final long start) {
+        final long evaluationTime = System.nanoTime() - start;
+        long genotypeCacheHits = 0;
+        long genotypeCacheMisses = 0;
+        for (final GenotypeProbabilityCalculator calculator : new GenotypeProbabilityCalculator[]{_relatedGenotypeCalculator, _unrelatedGenotypeCalculator}) {
+            if (calculator instanceof AbstractGenotypeProbabilityCalculator) {
+                genotypeCacheHits += ((AbstractGenotypeProbabilityCalculator) calculator).getCacheHits();
+                genotypeCacheMisses += ((AbstractGenotypeProbabilityCalculator) calculator).getCacheMisses();
+            }
+        }
+        _locusProbability.getPerformance().addJob(evaluationTime, _jobSize, genotypeCacheHits, genotypeCacheMisses, _replicateCacheHits, _replicateCacheMisses);
+        EngineMetrics.getInstance().jobFinished(evaluationTime, _jobSize, genotypeCacheHits, genotypeCacheMisses, _replicateCacheHits, _replicateCacheMisses);
+        JobCostModel.getInstance().record(_cost, evaluationTime);
+    }
+
+    /**
+     * Gets the probabilities of the replicates calculated by the last call of
+     * {@link #calculateReplicateProbability(Locus[])}.
+     *
+     * @param probabilities The buffer to receive the probability of each
+     * replicate
+     * @return The buffer
+     */
+    private double[] getReplicateProbabilities(final double[] probabilities) {
+        int idx = 0;
+        for (final Locus replicateLocus : replicateLoci) {
+            probabilities[idx++] = locusProbabilities.get(replicateLocus);
+        }
+        return probabilities;
+    }
+
     public double calculateSingleLocusProbability() {
         return calculateReplicateProbability(new Locus[]{});
     }
@@ -250,8 +481,11 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
         for (Locus replicateLocus : replicateLoci) {
             Double precalculated = locusProbabilities.get(replicateLocus);
             if (precalculated == null) {
+                _replicateCacheMisses++;
                 precalculated = calculateReplicateProbability(replicateLocus);
                 locusProbabilities.put(replicateLocus, precalculated);
+            } else {
+                _replicateCacheHits++;
             }
             replicateProbability *= precalculated;
         }
@@ -261,8 +495,6 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
     public double calculateReplicateProbability(Locus replicateLocus) {
         double returnValue = 1.0;
 
-        boolean[] presentFlags = new boolean[Allele.getRegisteredAlleleCount()];
-
         classifyAlleles(replicateLocus, presentFlags);
 
         for (int idx = 0; idx < droppedOutACount; idx++) {
@@ -274,9 +506,10 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
             }
         }
 
-        for (int idx = presentMinId; idx <= presentMaxId; idx++) {
+        for (int idx = 0; idx < replicateAlleleCount; idx++) {
             if (presentFlags[idx]) {
                 returnValue *= 1 - presentBProbabilities[idx];
+                presentFlags[idx] = false;
             }
         }
 
@@ -295,30 +528,24 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
     protected void classifyAlleles(Locus replicateLocus, boolean[] presentFlags) {
         droppedOutACount = 0;
         droppedInCCount = 0;
-
-        presentMinId = presentBProbabilities.length - 1;
-        presentMaxId = 0;
+        replicateAlleleCount = 0;
 
         // Assume all alleles have dropped in. We will move the alleles out of this set as appropriate. 
         // Note that alleles from homozygote loci only get added once
         for (Allele allele : replicateLocus.getAlleles()) {
-            if (!contains(droppedInC, droppedInCCount, allele)) {
+            if (!contains(replicateAlleles, replicateAlleleCount, allele)) {
                 droppedInC[droppedInCCount++] = allele;
-            }
-            presentBProbabilities[allele.getId()] = 1.0;
-            presentFlags[allele.getId()] = false;
-            if (allele.getId() < presentMinId) {
-                presentMinId = allele.getId();
-            }
-            if (allele.getId() > presentMaxId) {
-                presentMaxId = allele.getId();
+                presentBProbabilities[replicateAlleleCount] = 1.0;
+                presentFlags[replicateAlleleCount] = false;
+                replicateAlleles[replicateAlleleCount++] = allele;
             }
         }
 
         for (int alleleIndex = 0; alleleIndex < currentAlleleCount; alleleIndex++) {
             Allele allele = allAlleles[alleleIndex];
+            final int localId = indexOf(replicateAlleles, replicateAlleleCount, allele);
             // If this allele is not present in the replicate, it goes into set A
-            if (!replicateLocus.getAlleles().contains(allele)) {
+            if (localId < 0) {
                 droppedOutA[droppedOutACount++] = allele;
             } else {
                 // Remove this allele from the Dropped In set C
@@ -327,13 +554,13 @@ public class LocusProbabilityJob implements Callable<LocusProbability> {
                     remove(droppedInC, droppedInCCount--, cIndex);
                 }
 
-                presentFlags[allele.getId()] = true;
+                presentFlags[localId] = true;
 
                 // Update the product of dropout probabilities for this allele
                 if (allele.getLocus().getSample() == null) {
-                    presentBProbabilities[allele.getId()] *= allele.isHomozygote() ? presentMultipleProbabilityHomozygote : presentMultipleProbability;
+                    presentBProbabilities[localId] *= allele.isHomozygote() ? presentMultipleProbabilityHomozygote : presentMultipleProbability;
                 } else {
-                    presentBProbabilities[allele.getId()] *= hypothesis.getContributor(allele).getPresentMultipleProbability(allele.isHomozygote());
+                    presentBProbabilities[localId] *= hypothesis.getContributor(allele).getPresentMultipleProbability(allele.isHomozygote());
                 }
             }
         }
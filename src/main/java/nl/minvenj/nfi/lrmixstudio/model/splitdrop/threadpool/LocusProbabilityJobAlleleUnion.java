@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationRanker;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype.GenotypeProbabilityTable;
+
+/**
+ * This class performs probability calculations at a single locus for a single
+ * hypothesis by aggregating over allele-dose signatures instead of genotype
+ * combinations.
+ *
+ * The replicate probability of a combination of genotypes only depends on the
+ * number of copies of each allele carried by the unknowns (the dose), and not
+ * on how these copies are divided over the unknowns. The genotype
+ * probabilities of all combinations that share a signature are therefore
+ * summed first, after which the replicate probability is evaluated once for
+ * each signature.
+ *
+ * For unrelated unknowns the summed genotype probability of a signature follows
+ * directly from the allele counts: the sampling formula is exchangeable, so
+ * each ordering of the alleles has the same probability and the number of
+ * orderings is the multinomial coefficient. If the first unknown is related to
+ * a known individual, the sum also runs over the genotypes of that unknown that
+ * fit in the signature.
+ */
+public class LocusProbabilityJobAlleleUnion extends LocusProbabilityJob {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocusProbabilityJobAlleleUnion.class);
+    private final ReplicateKernel _kernel;
+    private final boolean _related;
+    private final int _unknownCount;
+    // The local indices of all alleles that an unknown can carry
+    private final int[] _alleles;
+    // The number of ways an unrelated unknown can take copies of an allele, indexed by allele position, the copies already taken by the related unknown and the total dose
+    private final double[][][] _copyProbability;
+    // Per pair of local allele indices: the genotype probability of the related unknown
+    private final double[][] _relatedProbability;
+    private final double[] _factorials;
+    private final int[] _exponent = new int[1];
+
+    /**
+     * Creates a new job.
+     *
+     * @param locusName The name of the locus
+     * @param genotypes The candidate genotypes for the unknowns, in the order
+     * used to compile the kernel and the genotype table
+     * @param replicates The replicates to evaluate
+     * @param hypothesis The hypothesis to evaluate
+     * @param progress The listener to receive progress events
+     * @param kernel The replicate kernel compiled for this locus, hypothesis,
+     * replicates and genotypes
+     * @param genotypeTable The genotype probability table for this locus,
+     * hypothesis and genotypes
+     */
+    LocusProbabilityJobAlleleUnion(String locusName, Collection<Locus> genotypes, Collection<Sample> replicates, Hypothesis hypothesis, AnalysisProgressListener progress, ReplicateKernel kernel, GenotypeProbabilityTable genotypeTable) {
+        super(locusName, null, replicates, hypothesis, progress, kernel, genotypeTable, PermutationRanker.countSorted(2 * hypothesis.getUnknownCount(), countHomozygotes(genotypes)));
+        if (kernel == null || genotypeTable == null) {
+            throw new IllegalArgumentException("No replicate kernel or genotype table specified!");
+        }
+        _kernel = kernel;
+        _related = hypothesis.getRelatedness().getRelation() != Relation.NONE && hypothesis.getUnknownCount() > 0;
+        _unknownCount = hypothesis.getUnknownCount();
+
+        final int maxDose = 2 * _unknownCount;
+        _factorials = new double[maxDose + 1];
+        _factorials[0] = 1;
+        for (int idx = 1; idx <= maxDose; idx++) {
+            _factorials[idx] = _factorials[idx - 1] * idx;
+        }
+
+        // Map the local allele indices of the kernel to those of the genotype table
+        final int[] tableIds = new int[kernel.getAlleleCount()];
+        Arrays.fill(tableIds, -1);
+        final ArrayList<Integer> alleles = new ArrayList<>();
+        _relatedProbability = new double[kernel.getAlleleCount()][kernel.getAlleleCount()];
+        for (int genotype = 0; genotype < genotypeTable.getGenotypeCount(); genotype++) {
+            final int allele1 = kernel.getGenotypeAllele1(genotype);
+            final int allele2 = kernel.getGenotypeAllele2(genotype);
+            if (tableIds[allele1] < 0) {
+                tableIds[allele1] = genotypeTable.getAllele1(genotype);
+                alleles.add(allele1);
+            }
+            if (tableIds[allele2] < 0) {
+                tableIds[allele2] = genotypeTable.getAllele2(genotype);
+                alleles.add(allele2);
+            }
+            _relatedProbability[allele1][allele2] = genotypeTable.getRelatedProbability(genotype);
+            _relatedProbability[allele2][allele1] = genotypeTable.getRelatedProbability(genotype);
+        }
+        _alleles = new int[alleles.size()];
+        for (int idx = 0; idx < _alleles.length; idx++) {
+            _alleles[idx] = alleles.get(idx);
+        }
+
+        // Precalculate the probability of drawing copies of each allele given the alleles already drawn:
+        //   PRODUCT<j=from;to-1>( (n + j) * Theta + (1 - Theta) * p ) / (to - from)!
+        // where n is the number of copies in the known profiles.
+        _copyProbability = new double[_alleles.length][3][maxDose + 1];
+        for (int idx = 0; idx < _alleles.length; idx++) {
+            final int tableId = tableIds[_alleles[idx]];
+            for (int from = 0; from < 3; from++) {
+                double probability = 1;
+                for (int to = from; to <= maxDose; to++) {
+                    _copyProbability[idx][from][to] = probability / _factorials[to - from];
+                    probability *= genotypeTable.getAlleleTerm(tableId, to);
+                }
+            }
+        }
+    }
+
+    private static int countHomozygotes(Collection<Locus> genotypes) {
+        int homozygotes = 0;
+        for (final Locus genotype : genotypes) {
+            if (genotype.isHomozygote()) {
+                homozygotes++;
+            }
+        }
+        return homozygotes;
+    }
+
+    @Override
+    public LocusProbability call() throws Exception {
+        LOG.debug("Started {}", locusName);
+        final long start = System.nanoTime();
+        try {
+            final int[] dose = _kernel.createDoseBuffer();
+            final int[] present = new int[2 * _unknownCount];
+            evaluate(0, 2 * _unknownCount, dose, 0L, present, 0, 1.0);
+        } catch (InterruptedException ie) {
+            LOG.debug("Calculations for locus {} were interrupted!", locusName);
+            progress.analysisFinished(ie);
+            throw ie;
+        } catch (Exception e) {
+            LOG.error("Error in Locus Probability calculation for {}", locusName, e);
+            progress.analysisFinished(e);
+            throw e;
+        }
+
+        LOG.debug("Hypothesis {} Locus {} Done", hypothesis.getId(), locusName);
+        recordPerformance(start);
+        progress.locusFinished(hypothesis, locusName, _locusProbability.getValue());
+
+        return _locusProbability;
+    }
+
+    /**
+     * Recursively distributes the remaining allele copies over the alleles
+     * from the supplied position onward, and adds the probabilities of all
+     * resulting signatures to the locus probability.
+     *
+     * @param position The position in the allele list to assign a dose to
+     * @param remaining The number of allele copies still to be distributed
+     * @param dose The dose of each allele so far
+     * @param mask The mask of all alleles with a non-zero dose so far
+     * @param present The positions of all alleles with a non-zero dose so far
+     * @param presentCount The number of entries in present
+     * @param unrelatedProbability The product of the copy probabilities of the
+     * alleles assigned so far
+     * @throws InterruptedException if the thread was interrupted
+     */
+    private void evaluate(int position, int remaining, int[] dose, long mask, int[] present, int presentCount, double unrelatedProbability) throws InterruptedException {
+        if (remaining == 0) {
+            addSignatureProbability(dose, mask, present, presentCount, unrelatedProbability);
+            return;
+        }
+
+        final int allele = _alleles[position];
+        if (position == _alleles.length - 1) {
+            // The last allele takes all remaining copies
+            dose[allele] = remaining;
+            present[presentCount] = position;
+            addSignatureProbability(dose, mask | (1L << allele), present, presentCount + 1, unrelatedProbability * _copyProbability[position][0][remaining]);
+            dose[allele] = 0;
+            return;
+        }
+
+        evaluate(position + 1, remaining, dose, mask, present, presentCount, unrelatedProbability);
+        present[presentCount] = position;
+        for (int copies = 1; copies <= remaining; copies++) {
+            dose[allele] = copies;
+            evaluate(position + 1, remaining - copies, dose, mask | (1L << allele), present, presentCount + 1, unrelatedProbability * _copyProbability[position][0][copies]);
+        }
+        dose[allele] = 0;
+    }
+
+    /**
+     * Adds the probability of a single signature to the locus probability:
+     * the summed genotype probability of all genotype combinations with this
+     * signature times the replicate probability.
+     */
+    private void addSignatureProbability(int[] dose, long mask, int[] present, int presentCount, double unrelatedProbability) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        double genotypeProbability;
+        if (!_related) {
+            genotypeProbability = _factorials[2 * _unknownCount] * unrelatedProbability;
+        } else {
+            // Sum over all genotypes of the related unknown that fit in the signature
+            genotypeProbability = 0;
+            for (int first = 0; first < presentCount; first++) {
+                for (int second = first; second < presentCount; second++) {
+                    final int allele1 = _alleles[present[first]];
+                    final int allele2 = _alleles[present[second]];
+                    if (first == second && dose[allele1] < 2) {
+                        continue;
+                    }
+                    double probability = _relatedProbability[allele1][allele2] * _factorials[2 * _unknownCount - 2];
+                    for (int idx = 0; idx < presentCount; idx++) {
+                        final int allele = _alleles[present[idx]];
+                        final int taken = (idx == first ? 1 : 0) + (idx == second ? 1 : 0);
+                        probability *= _copyProbability[present[idx]][taken][dose[allele]];
+                    }
+                    genotypeProbability += probability;
+                }
+            }
+        }
+
+        if (genotypeProbability != 0) {
+            addSignature(genotypeProbability, dose, mask);
+        }
+    }
+
+    /**
+     * Called once for each signature with a non-zero genotype probability.
+     * Subclasses can override this method to collect additional results per
+     * signature.
+     *
+     * @param genotypeProbability The summed genotype probability of all
+     * genotype combinations with this signature, not yet divided by the theta
+     * denominator
+     * @param dose The number of copies of each allele carried by the unknowns,
+     * indexed by the local allele index of the replicate kernel
+     * @param mask The mask of all alleles with a non-zero dose
+     */
+    protected void addSignature(double genotypeProbability, int[] dose, long mask) {
+        // The kernel scales the replicate probability to avoid underflow for large numbers of replicates
+        final double replicateProbability = _kernel.calculateScaled(dose, mask, _exponent);
+        _locusProbability.addValue(genotypeProbability / _genotypeTable.getDenominator() * replicateProbability, _exponent[0]);
+    }
+}
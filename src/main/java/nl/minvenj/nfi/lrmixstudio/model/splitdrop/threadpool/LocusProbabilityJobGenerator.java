@@ -21,6 +21,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
@@ -33,12 +35,15 @@ import nl.minvenj.nfi.lrmixstudio.domain.Locus;
 import nl.minvenj.nfi.lrmixstudio.domain.Sample;
 import nl.minvenj.nfi.lrmixstudio.gui.ApplicationSettings;
 import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
-import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationIterator;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationCursor;
 import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationIteratorFactory;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationRanker;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype.GenotypeProbabilityTable;
 
 public class LocusProbabilityJobGenerator {
 
     private static final Logger LOG = LoggerFactory.getLogger(LocusProbabilityJobGenerator.class);
+    private static final String COMPOUND_ALLELE_SUFFIX = "-other";
 
     private LocusProbabilityJobGenerator() {
     }
@@ -54,107 +59,332 @@ public class LocusProbabilityJobGenerator {
         if (hypothesis.getUnknownCount() > 0) {
 
             LOG.debug("Locus {} under {} has {} unknowns.", locusName, hypothesis.getId(), hypothesis.getUnknownCount());
-            // Create the set of all possible allele combinations at the current locus
-            final HashMap<String, Locus> possibleAlleleCombinations = new HashMap<>();
-            final Collection<String> alleleCollection = new ArrayList<>();
-
-            // LRDYN-133 Add rare alleles observed in the replicates
-            for (final Sample replicate : activeReplicates) {
-                Locus replicateLocus = replicate.getLocus(locusName);
-                if (replicateLocus == null) {
-                    replicateLocus = new Locus(locusName);
-                    replicateLocus.setSample(replicate);
-                }
-                for (final Allele replicateAllele : replicateLocus.getAlleles()) {
-                    if (!alleleCollection.contains(replicateAllele.getAllele())) {
-                        alleleCollection.add(replicateAllele.getAllele());
-                    }
+            final Collection<Locus> possibleAlleleCombinations = getPossibleAlleleCombinations(locusName, activeReplicates, hypothesis);
+            final ReplicateKernel kernel = compileKernel(locusName, activeReplicates, hypothesis, possibleAlleleCombinations);
+            final GenotypeProbabilityTable genotypeTable = createGenotypeTable(locusName, hypothesis, possibleAlleleCombinations);
+            final double genotypeMassBound = getGenotypeMassBound(locusName, hypothesis, possibleAlleleCombinations);
+            for (int idx = 0; idx < possibleAlleleCombinations.size(); idx++) {
+                final PermutationCursor permutationCursor = PermutationIteratorFactory.getPermutationCursor(hypothesis, possibleAlleleCombinations, idx);
+                final LocusProbabilityJob job = createJob(locusName, permutationCursor, activeReplicates, hypothesis, progress, kernel, genotypeTable);
+                job.setGenotypeMassBound(genotypeMassBound);
+                retval.add(job);
+                if (service != null) {
+                    service.submit(job);
                 }
             }
+        } else {
+            LOG.debug("Locus {} under {} has no unknowns.", locusName, hypothesis.getId());
+            final LocusProbabilityJob job = createJob(locusName, null, activeReplicates, hypothesis, progress, null, null);
+            retval.add(job);
+            if (service != null) {
+                service.submit(job);
+            }
+        }
+        return retval;
+    }
 
-            // Add alleles in the contributor samples (only non-rare alleles)
-            for (final Contributor con : hypothesis.getContributors()) {
-                Locus conLocus = con.getSample().getLocus(locusName);
-                if (conLocus == null) {
-                    conLocus = new Locus(locusName);
-                    conLocus.setSample(con.getSample());
-                }
-                for (final Allele conAllele : conLocus.getAlleles()) {
-                    if (!alleleCollection.contains(conAllele.getAllele()) && !hypothesis.getPopulationStatistics().isRareAllele(conAllele)) {
-                        alleleCollection.add(conAllele.getAllele());
-                    }
-                }
+    /**
+     * Generates jobs that each cover an equal part of the permutation space.
+     * The space is divided into consecutive ranges of combination ranks as
+     * defined by the {@link PermutationRanker}.
+     *
+     * @param locusName The name of the locus
+     * @param activeReplicates The replicates to evaluate
+     * @param hypothesis The hypothesis to evaluate
+     * @param progress The listener to receive progress events
+     * @param chunkCount The number of chunks the permutation space should
+     * approximately be divided into
+     * @return A list of jobs covering the entire permutation space
+     */
+    public static ArrayList<LocusProbabilityJob> generate(final String locusName, final Collection<Sample> activeReplicates, final Hypothesis hypothesis, final AnalysisProgressListener progress, final int chunkCount) {
+        if (chunkCount < 1) {
+            throw new IllegalArgumentException("Chunk count must be at least 1, not " + chunkCount);
+        }
+
+        final ArrayList<LocusProbabilityJob> retval = new ArrayList<>();
+        if (hypothesis.getUnknownCount() > 0) {
+            final PermutationSpace space = PermutationSpace.create(locusName, activeReplicates, hypothesis);
+            final long totalSize = space.size();
+            final long chunkSize = Math.max(1, (totalSize + chunkCount - 1) / chunkCount);
+            LOG.debug("Locus {} under {} has {} unknowns. Splitting {} permutations into chunks of {}", locusName, hypothesis.getId(), hypothesis.getUnknownCount(), totalSize, chunkSize);
+            for (long from = 0; from < totalSize; from += chunkSize) {
+                retval.add(space.createJob(from, Math.min(totalSize, from + chunkSize), progress));
+            }
+        } else {
+            LOG.debug("Locus {} under {} has no unknowns.", locusName, hypothesis.getId());
+            retval.add(createJob(locusName, null, activeReplicates, hypothesis, progress, null, null));
+        }
+        return retval;
+    }
+
+    /**
+     * Generates a single job that aggregates the genotype combinations of the
+     * unknowns by allele-dose signature, see
+     * {@link LocusProbabilityJobAlleleUnion}. If the hypothesis has no
+     * unknowns, the application runs in validation mode or the locus cannot be
+     * compiled into a {@link ReplicateKernel}, the jobs of
+     * {@link #generate(String, Collection, Hypothesis, AnalysisProgressListener)}
+     * are returned instead.
+     *
+     * @param locusName The name of the locus
+     * @param activeReplicates The replicates to evaluate
+     * @param hypothesis The hypothesis to evaluate
+     * @param progress The listener to receive progress events
+     * @return A list of jobs covering the entire permutation space
+     */
+    public static ArrayList<LocusProbabilityJob> generateAlleleUnion(final String locusName, final Collection<Sample> activeReplicates, final Hypothesis hypothesis, final AnalysisProgressListener progress) {
+        if (hypothesis.getUnknownCount() > 0) {
+            final Collection<Locus> possibleAlleleCombinations = getPossibleAlleleCombinations(locusName, activeReplicates, hypothesis);
+            final ReplicateKernel kernel = compileKernel(locusName, activeReplicates, hypothesis, possibleAlleleCombinations);
+            if (kernel != null) {
+                LOG.debug("Locus {} under {} has {} unknowns. Aggregating by allele signature.", locusName, hypothesis.getId(), hypothesis.getUnknownCount());
+                final LocusProbabilityJob job = new LocusProbabilityJobAlleleUnion(locusName, possibleAlleleCombinations, activeReplicates, hypothesis, progress, kernel, GenotypeProbabilityTable.create(locusName, hypothesis, possibleAlleleCombinations));
+                job.setGenotypeMassBound(getGenotypeMassBound(locusName, hypothesis, possibleAlleleCombinations));
+                final ArrayList<LocusProbabilityJob> retval = new ArrayList<>();
+                retval.add(job);
+                return retval;
             }
+        }
+        return generate(locusName, activeReplicates, hypothesis, progress);
+    }
 
-            // Add alleles in the non-contributor samples (only non-rare alleles)
-            for (final Contributor nonCon : hypothesis.getNonContributors()) {
-                Locus nonConLocus = nonCon.getSample().getLocus(locusName);
-                if (nonConLocus == null) {
-                    nonConLocus = new Locus(locusName);
-                    nonConLocus.setSample(nonCon.getSample());
-                }
-                for (final Allele nonConAllele : nonConLocus.getAlleles()) {
-                    if (!alleleCollection.contains(nonConAllele.getAllele()) && !hypothesis.getPopulationStatistics().isRareAllele(nonConAllele)) {
-                        alleleCollection.add(nonConAllele.getAllele());
-                    }
-                }
+    /**
+     * Generates a job that calculates the locus probability as a polynomial in
+     * a varied dropout probability, see {@link LocusDropoutPolynomialJob}.
+     *
+     * @param locusName The name of the locus
+     * @param activeReplicates The replicates to evaluate
+     * @param hypothesis The hypothesis to evaluate
+     * @param variedProfiles The known profiles whose dropout probability is
+     * varied
+     * @param varyUnknowns true if the dropout probability of the unknowns is
+     * varied
+     * @param progress The listener to receive progress events
+     * @return A job, or null if the application runs in validation mode or the
+     * locus cannot be compiled into a {@link ReplicateKernel}
+     */
+    public static LocusDropoutPolynomialJob generateDropoutPolynomial(final String locusName, final Collection<Sample> activeReplicates, final Hypothesis hypothesis, final Collection<Sample> variedProfiles, final boolean varyUnknowns, final AnalysisProgressListener progress) {
+        final Collection<Locus> possibleAlleleCombinations = hypothesis.getUnknownCount() > 0 ? getPossibleAlleleCombinations(locusName, activeReplicates, hypothesis) : new ArrayList<Locus>();
+        final ReplicateKernel kernel = compileKernel(locusName, activeReplicates, hypothesis, possibleAlleleCombinations);
+        final DropoutPolynomialKernel polynomialKernel = DropoutPolynomialKernel.compile(locusName, hypothesis, kernel, variedProfiles, varyUnknowns);
+        if (polynomialKernel == null) {
+            return null;
+        }
+        return new LocusDropoutPolynomialJob(locusName, possibleAlleleCombinations, activeReplicates, hypothesis, progress, kernel, GenotypeProbabilityTable.create(locusName, hypothesis, possibleAlleleCombinations), polynomialKernel);
+    }
+
+    /**
+     * Generates jobs that evaluate a locus under a number of variants of the
+     * same hypothesis that only differ in their dropout, drop-in and theta
+     * parameters, see {@link LocusProbabilityJobMultiParameter}. The jobs each
+     * cover an equal part of the permutation space.
+     *
+     * @param locusName The name of the locus
+     * @param activeReplicates The replicates to evaluate
+     * @param hypotheses The variants of the hypothesis, one per parameter set
+     * @param progress The listener to receive progress events
+     * @param chunkCount The number of chunks the permutation space should
+     * approximately be divided into
+     * @return A list of jobs covering the entire permutation space, or null if
+     * the application runs in validation mode or the locus cannot be compiled
+     * into a {@link ReplicateKernel}
+     */
+    public static ArrayList<LocusProbabilityJobMultiParameter> generateMultiParameter(final String locusName, final Collection<Sample> activeReplicates, final List<Hypothesis> hypotheses, final AnalysisProgressListener progress, final int chunkCount) {
+        if (chunkCount < 1) {
+            throw new IllegalArgumentException("Chunk count must be at least 1, not " + chunkCount);
+        }
+        if (hypotheses.isEmpty()) {
+            throw new IllegalArgumentException("No hypotheses specified!");
+        }
+
+        final Hypothesis hypothesis = hypotheses.get(0);
+        final Collection<Locus> possibleAlleleCombinations = hypothesis.getUnknownCount() > 0 ? getPossibleAlleleCombinations(locusName, activeReplicates, hypothesis) : new ArrayList<Locus>();
+        final ReplicateKernel[] kernels = new ReplicateKernel[hypotheses.size()];
+        final int[] genotypeTableIndex = new int[hypotheses.size()];
+        final ArrayList<GenotypeProbabilityTable> genotypeTables = new ArrayList<>();
+        final HashMap<Double, Integer> thetaIndex = new HashMap<>();
+        for (int idx = 0; idx < hypotheses.size(); idx++) {
+            kernels[idx] = compileKernel(locusName, activeReplicates, hypotheses.get(idx), possibleAlleleCombinations);
+            if (kernels[idx] == null) {
+                return null;
             }
+            final double theta = hypotheses.get(idx).getThetaCorrection();
+            Integer tableIndex = thetaIndex.get(theta);
+            if (tableIndex == null) {
+                tableIndex = genotypeTables.size();
+                thetaIndex.put(theta, tableIndex);
+                genotypeTables.add(hypothesis.getUnknownCount() > 0 ? GenotypeProbabilityTable.create(locusName, hypotheses.get(idx), possibleAlleleCombinations) : null);
+            }
+            genotypeTableIndex[idx] = tableIndex;
+        }
+        final GenotypeProbabilityTable[] tables = genotypeTables.toArray(new GenotypeProbabilityTable[genotypeTables.size()]);
 
-            // Add a single allele that has the combined probabilities of all alleles not in the samples and profiles
-            Double otherFrequency = 0.0;
-            for (final String allele : hypothesis.getPopulationStatistics().getAlleles(locusName)) {
-                if (!allele.endsWith("-other") && !alleleCollection.contains(allele)) {
-                    otherFrequency += hypothesis.getPopulationStatistics().getProbability(locusName, allele);
-                }
+        final ArrayList<LocusProbabilityJobMultiParameter> retval = new ArrayList<>();
+        if (hypothesis.getUnknownCount() > 0) {
+            final long totalSize = PermutationIteratorFactory.getPermutationRanker(hypothesis, possibleAlleleCombinations.size()).size();
+            final long chunkSize = Math.max(1, (totalSize + chunkCount - 1) / chunkCount);
+            LOG.debug("Locus {} under {} has {} unknowns. Evaluating {} parameter sets over {} permutations in chunks of {}", locusName, hypothesis.getId(), hypothesis.getUnknownCount(), hypotheses.size(), totalSize, chunkSize);
+            for (long from = 0; from < totalSize; from += chunkSize) {
+                final PermutationCursor permutationCursor = PermutationIteratorFactory.getPermutationCursor(hypothesis, possibleAlleleCombinations, from, Math.min(totalSize, from + chunkSize));
+                retval.add(new LocusProbabilityJobMultiParameter(locusName, permutationCursor, hypothesis, progress, kernels, tables, genotypeTableIndex));
             }
+        } else {
+            retval.add(new LocusProbabilityJobMultiParameter(locusName, null, hypothesis, progress, kernels, tables, genotypeTableIndex));
+        }
+        return retval;
+    }
+
+    static LocusProbabilityJob createJob(final String locusName, final PermutationCursor permutationCursor, final Collection<Sample> activeReplicates, final Hypothesis hypothesis, final AnalysisProgressListener progress, final ReplicateKernel kernel, final GenotypeProbabilityTable genotypeTable) {
+        if (ApplicationSettings.isValidationMode()) {
+            return new LocusProbabilityJobValidation(locusName, permutationCursor, activeReplicates, hypothesis, progress);
+        }
+        return new LocusProbabilityJob(locusName, permutationCursor, activeReplicates, hypothesis, progress, kernel, genotypeTable);
+    }
+
+    static GenotypeProbabilityTable createGenotypeTable(final String locusName, final Hypothesis hypothesis, final Collection<Locus> possibleAlleleCombinations) {
+        // Validation mode logs the formula of every genotype probability, so it uses the genotype probability calculators
+        if (ApplicationSettings.isValidationMode()) {
+            return null;
+        }
+        return GenotypeProbabilityTable.create(locusName, hypothesis, possibleAlleleCombinations);
+    }
+
+    static ReplicateKernel compileKernel(final String locusName, final Collection<Sample> activeReplicates, final Hypothesis hypothesis, final Collection<Locus> possibleAlleleCombinations) {
+        // Validation mode logs the classification of every allele, so it uses the allele-by-allele calculation
+        if (ApplicationSettings.isValidationMode()) {
+            return null;
+        }
+        return ReplicateKernel.compile(locusName, activeReplicates, hypothesis, possibleAlleleCombinations);
+    }
 
-            // Do not add the combined allele if its frequency is not a number, infinity or zero
-            if (!otherFrequency.isInfinite() && !otherFrequency.isNaN() && otherFrequency > 0) {
-                alleleCollection.add(locusName + "-other");
-                hypothesis.getPopulationStatistics().addCompoundStatistic(locusName, locusName + "-other", new BigDecimal(otherFrequency));
+    /**
+     * Calculates an upper bound on the summed genotype probability of all
+     * genotype combinations of the unknowns at the given locus. Each unknown
+     * draws two alleles from the candidate alleles, and the probabilities of
+     * the candidates for a single draw sum to at most the summed frequency of
+     * the candidates or one, whichever is larger.
+     *
+     * @param locusName The name of the locus
+     * @param hypothesis The hypothesis to evaluate
+     * @param genotypes The candidate genotypes of the unknowns, as built by
+     * {@link #getPossibleAlleleCombinations}
+     * @return An upper bound on the genotype probability mass, which is 1 if
+     * the hypothesis has no unknowns
+     */
+    static double getGenotypeMassBound(final String locusName, final Hypothesis hypothesis, final Collection<Locus> genotypes) {
+        if (hypothesis.getUnknownCount() == 0) {
+            return 1;
+        }
+        final HashSet<String> alleles = new HashSet<>();
+        for (final Locus genotype : genotypes) {
+            for (final Allele allele : genotype.getAlleles()) {
+                alleles.add(allele.getAllele());
             }
+        }
+        double frequencySum = 0;
+        for (final String allele : alleles) {
+            frequencySum += hypothesis.getPopulationStatistics().getProbability(locusName, allele);
+        }
+        return Math.pow(Math.max(1, frequencySum), 2 * hypothesis.getUnknownCount());
+    }
 
-            final String[] alleles = alleleCollection.toArray(new String[0]);
-            Arrays.sort(alleles);
-            for (int allele1Idx = 0; allele1Idx < alleles.length; allele1Idx++) {
-                for (int allele2Idx = allele1Idx; allele2Idx < alleles.length; allele2Idx++) {
-                    final String name = allele1Idx + "." + allele2Idx;
-                    if (!possibleAlleleCombinations.containsKey(name)) {
-                        final Locus newLocus = new Locus(locusName);
-                        newLocus.addAllele(new Allele(alleles[allele1Idx]));
-                        newLocus.addAllele(new Allele(alleles[allele2Idx]));
-                        possibleAlleleCombinations.put(name, newLocus);
-                    }
+    /**
+     * Gets the name of the compound allele that combines the frequencies of
+     * all alleles at a locus that are not observed in the replicates or known
+     * profiles.
+     *
+     * @param locusName The name of the locus
+     * @return The name of the compound allele
+     */
+    static String getCompoundAlleleName(final String locusName) {
+        return locusName + COMPOUND_ALLELE_SUFFIX;
+    }
+
+    /**
+     * Builds the collection of genotypes an unknown contributor can have at the
+     * given locus.
+     *
+     * @param locusName The name of the locus
+     * @param activeReplicates The replicates to evaluate
+     * @param hypothesis The hypothesis to evaluate
+     * @return A collection containing all candidate genotypes
+     */
+    static Collection<Locus> getPossibleAlleleCombinations(final String locusName, final Collection<Sample> activeReplicates, final Hypothesis hypothesis) {
+        // Create the set of all possible allele combinations at the current locus
+        final HashMap<String, Locus> possibleAlleleCombinations = new HashMap<>();
+        final Collection<String> alleleCollection = new ArrayList<>();
+
+        // LRDYN-133 Add rare alleles observed in the replicates
+        for (final Sample replicate : activeReplicates) {
+            Locus replicateLocus = replicate.getLocus(locusName);
+            if (replicateLocus == null) {
+                replicateLocus = new Locus(locusName);
+                replicateLocus.setSample(replicate);
+            }
+            for (final Allele replicateAllele : replicateLocus.getAlleles()) {
+                if (!alleleCollection.contains(replicateAllele.getAllele())) {
+                    alleleCollection.add(replicateAllele.getAllele());
                 }
             }
+        }
 
-            LOG.debug("Possible Allele Combinations: {}", possibleAlleleCombinations);
-            for (int idx = 0; idx < possibleAlleleCombinations.size(); idx++) {
-                final PermutationIterator permutationIterator = PermutationIteratorFactory.getPermutationIterator(hypothesis, possibleAlleleCombinations.values(), idx);
-                LocusProbabilityJob job;
-                if (ApplicationSettings.isValidationMode()) {
-                    job = new LocusProbabilityJobValidation(locusName, permutationIterator, activeReplicates, hypothesis, progress);
-                } else {
-                    job = new LocusProbabilityJob(locusName, permutationIterator, activeReplicates, hypothesis, progress);
+        // Add alleles in the contributor samples (only non-rare alleles)
+        for (final Contributor con : hypothesis.getContributors()) {
+            Locus conLocus = con.getSample().getLocus(locusName);
+            if (conLocus == null) {
+                conLocus = new Locus(locusName);
+                conLocus.setSample(con.getSample());
+            }
+            for (final Allele conAllele : conLocus.getAlleles()) {
+                if (!alleleCollection.contains(conAllele.getAllele()) && !hypothesis.getPopulationStatistics().isRareAllele(conAllele)) {
+                    alleleCollection.add(conAllele.getAllele());
                 }
-                retval.add(job);
-                if (service != null) {
-                    service.submit(job);
+            }
+        }
+
+        // Add alleles in the non-contributor samples (only non-rare alleles)
+        for (final Contributor nonCon : hypothesis.getNonContributors()) {
+            Locus nonConLocus = nonCon.getSample().getLocus(locusName);
+            if (nonConLocus == null) {
+                nonConLocus = new Locus(locusName);
+                nonConLocus.setSample(nonCon.getSample());
+            }
+            for (final Allele nonConAllele : nonConLocus.getAlleles()) {
+                if (!alleleCollection.contains(nonConAllele.getAllele()) && !hypothesis.getPopulationStatistics().isRareAllele(nonConAllele)) {
+                    alleleCollection.add(nonConAllele.getAllele());
                 }
             }
-        } else {
-            LOG.debug("Locus {} under {} has no unknowns.", locusName, hypothesis.getId());
-            LocusProbabilityJob job;
-            if (ApplicationSettings.isValidationMode()) {
-                job = new LocusProbabilityJobValidation(locusName, null, activeReplicates, hypothesis, progress);
-            } else {
-                job = new LocusProbabilityJob(locusName, null, activeReplicates, hypothesis, progress);
+        }
+
+        // Add a single allele that has the combined probabilities of all alleles not in the samples and profiles
+        Double otherFrequency = 0.0;
+        for (final String allele : hypothesis.getPopulationStatistics().getAlleles(locusName)) {
+            if (!allele.endsWith(COMPOUND_ALLELE_SUFFIX) && !alleleCollection.contains(allele)) {
+                otherFrequency += hypothesis.getPopulationStatistics().getProbability(locusName, allele);
             }
-            retval.add(job);
-            if (service != null) {
-                service.submit(job);
+        }
+
+        // Do not add the combined allele if its frequency is not a number, infinity or zero
+        if (!otherFrequency.isInfinite() && !otherFrequency.isNaN() && otherFrequency > 0) {
+            alleleCollection.add(getCompoundAlleleName(locusName));
+            hypothesis.getPopulationStatistics().addCompoundStatistic(locusName, getCompoundAlleleName(locusName), new BigDecimal(otherFrequency));
+        }
+
+        final String[] alleles = alleleCollection.toArray(new String[0]);
+        Arrays.sort(alleles);
+        for (int allele1Idx = 0; allele1Idx < alleles.length; allele1Idx++) {
+            for (int allele2Idx = allele1Idx; allele2Idx < alleles.length; allele2Idx++) {
+                final String name = allele1Idx + "." + allele2Idx;
+                if (!possibleAlleleCombinations.containsKey(name)) {
+                    final Locus newLocus = new Locus(locusName);
+                    newLocus.addAllele(new Allele(alleles[allele1Idx]));
+                    newLocus.addAllele(new Allele(alleles[allele2Idx]));
+                    possibleAlleleCombinations.put(name, newLocus);
+                }
             }
         }
-        return retval;
+
+        LOG.debug("Possible Allele Combinations: {}", possibleAlleleCombinations);
+        return new ArrayList<>(possibleAlleleCombinations.values());
     }
 }
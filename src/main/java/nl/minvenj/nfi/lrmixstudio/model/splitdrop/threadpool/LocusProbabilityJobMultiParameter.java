@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationCursor;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype.GenotypeProbabilityTable;
+
+/**
+ * This class performs probability calculations at a single locus for a single
+ * hypothesis under a number of parameter sets at once.
+ *
+ * The permutations of the unknowns are enumerated once. For each permutation
+ * the allele doses are determined once, the genotype probability is calculated
+ * once per distinct theta correction, and the replicate probability once per
+ * parameter set using a replicate kernel compiled for that set. The results
+ * are summed into one accumulator per parameter set.
+ */
+public class LocusProbabilityJobMultiParameter implements Callable<double[]> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocusProbabilityJobMultiParameter.class);
+    private final String _locusName;
+    private final Hypothesis _hypothesis;
+    private final PermutationCursor _permutationCursor;
+    private final AnalysisProgressListener _progress;
+    private final ReplicateKernel[] _kernels;
+    private final GenotypeProbabilityTable[] _genotypeTables;
+    private final int[] _genotypeTableIndex;
+
+    /**
+     * Creates a new job.
+     *
+     * @param locusName The name of the locus
+     * @param permutationCursor The permutations to evaluate, or null if the
+     * hypothesis has no unknowns
+     * @param hypothesis The hypothesis to report to the progress listener
+     * @param progress The listener to receive progress events
+     * @param kernels The replicate kernel for each parameter set. All kernels
+     * must be compiled for the same genotypes.
+     * @param genotypeTables The genotype probability table for each distinct
+     * theta correction, or null if the hypothesis has no unknowns
+     * @param genotypeTableIndex The index of the genotype probability table for
+     * each parameter set
+     */
+    LocusProbabilityJobMultiParameter(final String locusName, final PermutationCursor permutationCursor, final Hypothesis hypothesis, final AnalysisProgressListener progress, final ReplicateKernel[] kernels, final GenotypeProbabilityTable[] genotypeTables, final int[] genotypeTableIndex) {
+        if (kernels.length == 0 || kernels.length != genotypeTableIndex.length) {
+            throw new IllegalArgumentException("Need one replicate kernel and genotype table index per parameter set!");
+        }
+        _locusName = locusName;
+        _permutationCursor = permutationCursor;
+        _hypothesis = hypothesis;
+        _progress = progress;
+        _kernels = kernels;
+        _genotypeTables = genotypeTables;
+        _genotypeTableIndex = genotypeTableIndex;
+
+        if (progress != null) {
+            progress.locusStarted(hypothesis, locusName, permutationCursor == null ? 1 : permutationCursor.size());
+        }
+    }
+
+    /**
+     * @return The number of parameter sets evaluated by this job
+     */
+    public int getParameterSetCount() {
+        return _kernels.length;
+    }
+
+    @Override
+    public double[] call() throws Exception {
+        LOG.debug("Started {} for {} parameter sets", _locusName, _kernels.length);
+        final double[] probabilities = new double[_kernels.length];
+        try {
+            final int[] dose = _kernels[0].createDoseBuffer();
+            if (_permutationCursor == null) {
+                for (int set = 0; set < _kernels.length; set++) {
+                    probabilities[set] = _kernels[set].calculate(dose, 0L);
+                }
+            } else {
+                final int[] indices = new int[_permutationCursor.getUnknownCount()];
+                final int[] counts = _genotypeTables[0].createCountBuffer();
+                final double[] genotypeProbabilities = new double[_genotypeTables.length];
+                final ReplicateKernel layout = _kernels[0];
+                int permutationFactor;
+                while ((permutationFactor = _permutationCursor.next(indices)) != 0) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+
+                    long mask = 0;
+                    for (int idx = 0; idx < indices.length; idx++) {
+                        final int allele1 = layout.getGenotypeAllele1(indices[idx]);
+                        final int allele2 = layout.getGenotypeAllele2(indices[idx]);
+                        dose[allele1]++;
+                        dose[allele2]++;
+                        mask |= (1L << allele1) | (1L << allele2);
+                    }
+
+                    for (int table = 0; table < _genotypeTables.length; table++) {
+                        genotypeProbabilities[table] = permutationFactor * _genotypeTables[table].calculate(indices, counts);
+                    }
+
+                    for (int set = 0; set < _kernels.length; set++) {
+                        probabilities[set] += genotypeProbabilities[_genotypeTableIndex[set]] * _kernels[set].calculate(dose, mask);
+                    }
+
+                    for (int idx = 0; idx < indices.length; idx++) {
+                        dose[layout.getGenotypeAllele1(indices[idx])] = 0;
+                        dose[layout.getGenotypeAllele2(indices[idx])] = 0;
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            LOG.debug("Calculations for locus {} were interrupted!", _locusName);
+            throw ie;
+        } catch (Exception e) {
+            LOG.error("Error in Locus Probability calculation for {}", _locusName, e);
+            throw e;
+        }
+
+        LOG.debug("Hypothesis {} Locus {} Done", _hypothesis.getId(), _locusName);
+        if (_progress != null) {
+            _progress.locusFinished(_hypothesis, _locusName, probabilities[0]);
+        }
+        return probabilities;
+    }
+
+    /**
+     * @return The name of the locus evaluated by this job
+     */
+    public String getLocusName() {
+        return _locusName;
+    }
+
+    /**
+     * @return The hypothesis evaluated by this job
+     */
+    public Hypothesis getHypothesis() {
+        return _hypothesis;
+    }
+}
@@ -17,7 +17,6 @@
 package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
 
 import java.util.Collection;
-import java.util.NoSuchElementException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,8 +27,7 @@ import nl.minvenj.nfi.lrmixstudio.domain.Locus;
 import nl.minvenj.nfi.lrmixstudio.domain.Sample;
 import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
 import nl.minvenj.nfi.lrmixstudio.model.DefaultAnalysisProgressListenerImpl;
-import nl.minvenj.nfi.lrmixstudio.model.splitdrop.Permutation;
-import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationIterator;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationCursor;
 
 /**
  * This class performs probability calculations at a single locus for a single
@@ -39,39 +37,45 @@ public class LocusProbabilityJobValidation extends LocusProbabilityJob {
 
     private static final Logger LOG = new ValidationLogger(LoggerFactory.getLogger(LocusProbabilityJobValidation.class));
 
-    LocusProbabilityJobValidation(String locusName, PermutationIterator permutationIterator, Collection<Sample> replicates, Hypothesis hypothesis) {
-        super(locusName, permutationIterator, replicates, hypothesis, new DefaultAnalysisProgressListenerImpl());
+    LocusProbabilityJobValidation(String locusName, PermutationCursor permutationCursor, Collection<Sample> replicates, Hypothesis hypothesis) {
+        super(locusName, permutationCursor, replicates, hypothesis, new DefaultAnalysisProgressListenerImpl());
     }
 
-    LocusProbabilityJobValidation(String locusName, PermutationIterator permutationIterator, Collection<Sample> replicates, Hypothesis hypothesis, AnalysisProgressListener progress) {
-        super(locusName, permutationIterator, replicates, hypothesis, progress);
+    LocusProbabilityJobValidation(String locusName, PermutationCursor permutationCursor, Collection<Sample> replicates, Hypothesis hypothesis, AnalysisProgressListener progress) {
+        super(locusName, permutationCursor, replicates, hypothesis, progress);
     }
 
     @Override
     public LocusProbability call() throws Exception {
+        final long start = System.nanoTime();
         try {
-            if (_permutationIterator == null) {
+            if (_permutationCursor == null) {
                 _locusProbability.setValue(calculateSingleLocusProbability());
+                _locusProbability.addGenotypeMass(1);
                 LOG.info("{} Locus {} locusProbability = {}", hypothesis.getId(), locusName, _locusProbability.getValue());
                 LOG.info("");
             } else {
-                Permutation permutation;
-                while ((permutation = _permutationIterator.next()) != null) {
+                final int[] indices = new int[_permutationCursor.getUnknownCount()];
+                final Locus[] permutationLoci = new Locus[indices.length];
+                int permutationFactor;
+                while ((permutationFactor = _permutationCursor.next(indices)) != 0) {
                     if (Thread.interrupted()) {
                         throw new InterruptedException();
                     }
 
-                    double replicateProbability = calculateReplicateProbability(permutation.getLoci());
-                    double genotypeProbability = calculateGenotypeProbability(permutation.getLoci());
+                    for (int idx = 0; idx < indices.length; idx++) {
+                        permutationLoci[idx] = _permutationCursor.getGenotype(indices[idx]);
+                    }
+
+                    double replicateProbability = calculateReplicateProbability(permutationLoci);
+                    double genotypeProbability = calculateGenotypeProbability(permutationLoci);
                     double prob = genotypeProbability * replicateProbability;
-                    _locusProbability.addValue(permutation.getPermutationFactor() * prob);
-                    LOG.info("{} Locus {} Permutation {} ({}) pRep = {} pGen = {} locusProbability = {}", hypothesis.getId(), locusName, toLogString(permutation.getLoci()), permutation.getPermutationFactor(), replicateProbability, genotypeProbability, prob);
+                    _locusProbability.addValue(permutationFactor * prob);
+                    _locusProbability.addGenotypeMass(permutationFactor * genotypeProbability);
+                    LOG.info("{} Locus {} Permutation {} ({}) pRep = {} pGen = {} locusProbability = {}", hypothesis.getId(), locusName, toLogString(permutationLoci), permutationFactor, replicateProbability, genotypeProbability, prob);
                     LOG.info("");
                 }
             }
-        } catch (NoSuchElementException e) {
-            // Can happen if multiple thread share a permutation iterator object. Nothing to worry about.
-            LOG.debug("No Such Element", e);
         } catch (InterruptedException ie) {
             LOG.debug("Calculations for locus {} were interrupted!", locusName);
             progress.analysisFinished(ie);
@@ -83,6 +87,7 @@ public class LocusProbabilityJobValidation extends LocusProbabilityJob {
         }
 
         LOG.debug("Hypothesis {} Locus {} Done", hypothesis.getId(), locusName);
+        recordPerformance(start);
         progress.locusFinished(hypothesis, locusName, _locusProbability.getValue());
 
         return _locusProbability;
@@ -129,7 +134,7 @@ public class LocusProbabilityJobValidation extends LocusProbabilityJob {
         double returnValue = 1.0;
 
         String formula = "";
-        String[] presentFactors = new String[Allele.getRegisteredAlleleCount()];
+        String[] presentFactors = new String[presentBProbabilities.length];
         for (int idx = 0; idx < presentFactors.length; idx++) {
             presentFactors[idx] = "";
         }
@@ -157,7 +162,7 @@ public class LocusProbabilityJobValidation extends LocusProbabilityJob {
             }
         }
 
-        for (int idx = presentMinId; idx <= presentMaxId; idx++) {
+        for (int idx = 0; idx < replicateAlleleCount; idx++) {
             if (!presentFactors[idx].isEmpty()) {
                 formula += " (1-" + presentFactors[idx] + ")";
                 returnValue *= 1 - presentBProbabilities[idx];
@@ -183,29 +188,23 @@ public class LocusProbabilityJobValidation extends LocusProbabilityJob {
     protected void classifyAlleles(Locus replicateLocus, String[] presentFactors) {
         droppedOutACount = 0;
         droppedInCCount = 0;
-
-        presentMinId = presentBProbabilities.length - 1;
-        presentMaxId = 0;
+        replicateAlleleCount = 0;
 
         // Assume all alleles have dropped in. We will move the alleles out of this set as appropriate. 
         // Note that alleles from homozygote loci only get added once
         for (Allele allele : replicateLocus.getAlleles()) {
-            if (!contains(droppedInC, droppedInCCount, allele)) {
+            if (!contains(replicateAlleles, replicateAlleleCount, allele)) {
                 droppedInC[droppedInCCount++] = allele;
-            }
-            presentBProbabilities[allele.getId()] = 1;
-            if (allele.getId() < presentMinId) {
-                presentMinId = allele.getId();
-            }
-            if (allele.getId() > presentMaxId) {
-                presentMaxId = allele.getId();
+                presentBProbabilities[replicateAlleleCount] = 1;
+                replicateAlleles[replicateAlleleCount++] = allele;
             }
         }
 
         for (int alleleIndex = 0; alleleIndex < currentAlleleCount; alleleIndex++) {
             Allele allele = allAlleles[alleleIndex];
+            final int localId = indexOf(replicateAlleles, replicateAlleleCount, allele);
             // If this allele is not present in the replicate, it goes into set A
-            if (!replicateLocus.getAlleles().contains(allele)) {
+            if (localId < 0) {
                 droppedOutA[droppedOutACount++] = allele;
             } else {
                 // Remove this allele from the Dropped In set C
@@ -216,15 +215,15 @@ public class LocusProbabilityJobValidation extends LocusProbabilityJob {
 
                 // Update the product of dropout probabilities for this allele
                 if (allele.getLocus().getSample() == null) {
-                    presentFactors[allele.getId()] += " d_unknown";
-                    presentBProbabilities[allele.getId()] *= allele.isHomozygote() ? presentMultipleProbabilityHomozygote : presentMultipleProbability;
+                    presentFactors[localId] += " d_unknown";
+                    presentBProbabilities[localId] *= allele.isHomozygote() ? presentMultipleProbabilityHomozygote : presentMultipleProbability;
                 } else {
-                    presentFactors[allele.getId()] += " d_" + allele.getLocus().getSampleId();
-                    presentBProbabilities[allele.getId()] *= hypothesis.getContributor(allele).getPresentMultipleProbability(allele.isHomozygote());
+                    presentFactors[localId] += " d_" + allele.getLocus().getSampleId();
+                    presentBProbabilities[localId] *= hypothesis.getContributor(allele).getPresentMultipleProbability(allele.isHomozygote());
                 }
 
                 if (allele.isHomozygote()) {
-                    presentFactors[allele.getId()] += "^2";
+                    presentFactors[localId] += "^2";
                 }
             }
         }
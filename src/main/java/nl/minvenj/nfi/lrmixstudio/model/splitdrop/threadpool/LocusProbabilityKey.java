@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+
+/**
+ * A structural fingerprint of everything that determines the probability of a
+ * single locus under a single hypothesis: the hypothesis parameters, the
+ * genotypes and dropout probabilities of the contributors, the genotypes of
+ * the non-contributors and the relative, the replicate loci and the allele
+ * frequencies at the locus.
+ *
+ * The fingerprint is the SHA-256 digest of a canonical description of these
+ * inputs. Sample names and the order of contributors and replicates do not
+ * affect the result and are not part of the description. Inputs that only
+ * affect the genotype probabilities of the unknowns are left out if the
+ * hypothesis has no unknowns, and the non-contributors are left out if theta
+ * is zero. A change to such an input therefore does not cause the locus to be
+ * recalculated.
+ */
+public final class LocusProbabilityKey {
+
+    /**
+     * Identifies the layout of the canonical description. This must be
+     * changed whenever the description or the calculation changes, so that
+     * persisted results are no longer found.
+     */
+    private static final String VERSION = "2";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private final byte[] _digest;
+    private final String _hex;
+
+    private LocusProbabilityKey(final byte[] digest) {
+        _digest = digest;
+        final char[] hex = new char[digest.length * 2];
+        for (int idx = 0; idx < digest.length; idx++) {
+            hex[idx * 2] = HEX[(digest[idx] >> 4) & 0xF];
+            hex[idx * 2 + 1] = HEX[digest[idx] & 0xF];
+        }
+        _hex = new String(hex);
+    }
+
+    /**
+     * Creates the key for a locus under a hypothesis.
+     *
+     * @param engine The identifier of the model that calculates the
+     * probability
+     * @param locusName The name of the locus
+     * @param hypothesis The hypothesis
+     * @param replicates The replicates to evaluate
+     * @return A new key
+     */
+    public static LocusProbabilityKey create(final String engine, final String locusName, final Hypothesis hypothesis, final Collection<Sample> replicates) {
+        final StringBuilder description = new StringBuilder();
+        description.append(VERSION).append('|').append(engine).append('|').append(locusName);
+        final int unknownCount = hypothesis.getUnknownCount();
+        description.append("|unknowns=").append(unknownCount);
+        description.append("|dropIn=").append(hypothesis.getDropInProbability());
+        if (unknownCount > 0) {
+            description.append("|unknownDropout=").append(hypothesis.getUnknownDropoutProbability());
+            description.append("|theta=").append(hypothesis.getThetaCorrection());
+            final Relation relation = hypothesis.getRelatedness().getRelation();
+            description.append("|relation=").append(relation);
+            if (relation != Relation.NONE) {
+                final Sample relative = hypothesis.getRelatedness().getRelative();
+                description.append("|relative=").append(relative == null ? "" : describe(relative.getLocus(locusName)));
+            }
+        }
+
+        final ArrayList<String> contributors = new ArrayList<>();
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            contributors.add(describe(contributor.getSample().getLocus(locusName)) + "@" + contributor.getDropoutProbability());
+        }
+        Collections.sort(contributors);
+        description.append("|contributors=").append(contributors);
+
+        // Non-contributors only affect the genotype probabilities of the unknowns through the theta correction
+        if (unknownCount > 0 && hypothesis.getThetaCorrection() != 0) {
+            final ArrayList<String> nonContributors = new ArrayList<>();
+            for (final Contributor nonContributor : hypothesis.getNonContributors()) {
+                nonContributors.add(describe(nonContributor.getSample().getLocus(locusName)));
+            }
+            Collections.sort(nonContributors);
+            description.append("|nonContributors=").append(nonContributors);
+        }
+
+        final ArrayList<String> replicateLoci = new ArrayList<>();
+        for (final Sample replicate : replicates) {
+            replicateLoci.add(describe(replicate.getLocus(locusName)));
+        }
+        Collections.sort(replicateLoci);
+        description.append("|replicates=").append(replicateLoci);
+
+        final PopulationStatistics statistics = hypothesis.getPopulationStatistics();
+        description.append("|rare=").append(statistics.getRareAlleleFrequency());
+        final String[] alleles = statistics.getAlleles(locusName).toArray(new String[0]);
+        Arrays.sort(alleles);
+        description.append("|frequencies=");
+        for (final String allele : alleles) {
+            description.append(allele).append('=').append(statistics.getProbability(locusName, allele)).append(',');
+        }
+
+        try {
+            return new LocusProbabilityKey(MessageDigest.getInstance("SHA-256").digest(description.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (final NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String describe(final Locus locus) {
+        if (locus == null) {
+            return "-";
+        }
+        final ArrayList<String> alleles = new ArrayList<>();
+        for (final Allele allele : locus.getAlleles()) {
+            alleles.add(allele.getAllele());
+        }
+        Collections.sort(alleles);
+        return alleles.toString() + (locus.isHomozygote() ? "H" : "");
+    }
+
+    /**
+     * @return The fingerprint as a hexadecimal string
+     */
+    public String toHexString() {
+        return _hex;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof LocusProbabilityKey && Arrays.equals(_digest, ((LocusProbabilityKey) obj)._digest);
+    }
+
+    @Override
+    public int hashCode() {
+        // The digest is uniformly distributed, so its first bytes are a good hash
+        return (_digest[0] & 0xFF) << 24 | (_digest[1] & 0xFF) << 16 | (_digest[2] & 0xFF) << 8 | (_digest[3] & 0xFF);
+    }
+
+    @Override
+    public String toString() {
+        return _hex;
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+
+/**
+ * Calculates the likelihood ratio of a configuration for a number of
+ * {@link ParameterSet}s in a single pass over the permutations of the unknowns
+ * at each locus. The enumeration of the permutations and the calculation of
+ * the allele doses are shared by all parameter sets, so the cost of adding a
+ * parameter set is limited to evaluating the replicate probability (and the
+ * genotype probability for a new theta correction) per permutation.
+ *
+ * If a locus cannot be compiled into a {@link ReplicateKernel}, or the
+ * application runs in validation mode, each parameter set is analyzed
+ * separately using the {@link SplitDropThreadPool}.
+ *
+ * The jobs are executed with background priority on the shared
+ * {@link ComputeService}.
+ */
+public class MultiParameterAnalysis {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MultiParameterAnalysis.class);
+    /**
+     * The number of chunks per thread into which the permutation space of each
+     * locus is divided.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+    private final ConfigurationData _config;
+    private final List<ParameterSet> _parameterSets;
+    private ExecutorService _service;
+    private SplitDropThreadPool _fallback;
+    private boolean _interrupted;
+
+    /**
+     * Creates a new analysis.
+     *
+     * @param config The configuration of the analysis
+     * @param parameterSets The parameter sets to evaluate
+     * @throws IllegalArgumentException if no parameter sets are specified
+     */
+    public MultiParameterAnalysis(final ConfigurationData config, final Collection<ParameterSet> parameterSets) {
+        if (parameterSets == null || parameterSets.isEmpty()) {
+            throw new IllegalArgumentException("No parameter sets specified!");
+        }
+        _config = config;
+        _parameterSets = new ArrayList<>(parameterSets);
+    }
+
+    /**
+     * Calculates the likelihood ratio for all parameter sets.
+     *
+     * @param progress A listener for progress events, or null
+     * @return The likelihood ratio for each parameter set, in the order of the
+     * parameter sets
+     * @throws InterruptedException if the calculation was interrupted
+     * @throws ExecutionException if a calculation failed
+     */
+    public List<LikelihoodRatio> calculate(final AnalysisProgressListener progress) throws InterruptedException, ExecutionException {
+        final List<Hypothesis> prosecution = apply(_config.getProsecution());
+        final List<Hypothesis> defense = apply(_config.getDefense());
+        final int chunkCount = _config.getThreadCount() * CHUNKS_PER_THREAD;
+
+        final ArrayList<LocusProbabilityJobMultiParameter> jobs = new ArrayList<>();
+        for (final String locusName : _config.getEnabledLoci()) {
+            if (!addJobs(jobs, locusName, prosecution, progress, chunkCount) || !addJobs(jobs, locusName, defense, progress, chunkCount)) {
+                LOG.debug("Locus {} cannot be evaluated for multiple parameter sets at once", locusName);
+                return calculateSeparately(progress);
+            }
+        }
+
+        final ArrayList<LocusProbabilities> prosecutionProbabilities = createProbabilities();
+        final ArrayList<LocusProbabilities> defenseProbabilities = createProbabilities();
+        synchronized (this) {
+            if (_interrupted) {
+                throw new InterruptedException();
+            }
+            _service = ComputeService.getInstance().createExecutor(ComputeService.Priority.BACKGROUND, _config.getThreadCount());
+        }
+        try {
+            final ArrayList<Future<double[]>> futures = new ArrayList<>();
+            for (final LocusProbabilityJobMultiParameter job : jobs) {
+                futures.add(_service.submit(job));
+            }
+            for (int idx = 0; idx < jobs.size(); idx++) {
+                final double[] values = futures.get(idx).get();
+                final LocusProbabilityJobMultiParameter job = jobs.get(idx);
+                final ArrayList<LocusProbabilities> probabilities = prosecution.contains(job.getHypothesis()) ? prosecutionProbabilities : defenseProbabilities;
+                for (int set = 0; set < values.length; set++) {
+                    final Double current = probabilities.get(set).getLocusProbability(job.getLocusName());
+                    probabilities.get(set).addLocusProbability(job.getLocusName(), current == null ? values[set] : current + values[set]);
+                }
+            }
+        } finally {
+            _service.shutdownNow();
+        }
+
+        final ArrayList<LikelihoodRatio> retval = new ArrayList<>();
+        for (int set = 0; set < _parameterSets.size(); set++) {
+            final LikelihoodRatio lr = new LikelihoodRatio();
+            lr.add(prosecutionProbabilities.get(set), defenseProbabilities.get(set));
+            retval.add(lr);
+        }
+        return retval;
+    }
+
+    private List<Hypothesis> apply(final Hypothesis hypothesis) {
+        final ArrayList<Hypothesis> hypotheses = new ArrayList<>();
+        if (hypothesis != null) {
+            for (final ParameterSet parameterSet : _parameterSets) {
+                hypotheses.add(parameterSet.apply(hypothesis));
+            }
+        }
+        return hypotheses;
+    }
+
+    private boolean addJobs(final Collection<LocusProbabilityJobMultiParameter> jobs, final String locusName, final List<Hypothesis> hypotheses, final AnalysisProgressListener progress, final int chunkCount) {
+        if (hypotheses.isEmpty()) {
+            return true;
+        }
+        final ArrayList<LocusProbabilityJobMultiParameter> locusJobs = LocusProbabilityJobGenerator.generateMultiParameter(locusName, _config.getActiveReplicates(), hypotheses, progress, chunkCount);
+        if (locusJobs == null) {
+            return false;
+        }
+        jobs.addAll(locusJobs);
+        return true;
+    }
+
+    private ArrayList<LocusProbabilities> createProbabilities() {
+        final ArrayList<LocusProbabilities> probabilities = new ArrayList<>();
+        for (int set = 0; set < _parameterSets.size(); set++) {
+            probabilities.add(new LocusProbabilities());
+        }
+        return probabilities;
+    }
+
+    private List<LikelihoodRatio> calculateSeparately(final AnalysisProgressListener progress) throws InterruptedException {
+        final ArrayList<LikelihoodRatio> retval = new ArrayList<>();
+        for (final ParameterSet parameterSet : _parameterSets) {
+            final ConfigurationData config = new ConfigurationData(_config);
+            if (_config.getProsecution() != null) {
+                config.setProsecution(parameterSet.apply(_config.getProsecution()));
+            }
+            if (_config.getDefense() != null) {
+                config.setDefense(parameterSet.apply(_config.getDefense()));
+            }
+            synchronized (this) {
+                if (_interrupted) {
+                    throw new InterruptedException();
+                }
+                if (_fallback == null) {
+                    _fallback = new SplitDropThreadPool(progress);
+                    _fallback.setPriority(ComputeService.Priority.BACKGROUND);
+                }
+            }
+            retval.add(_fallback.doAnalysis(config));
+        }
+        return retval;
+    }
+
+    /**
+     * Interrupts a running calculation.
+     */
+    public synchronized void interrupt() {
+        _interrupted = true;
+        if (_service != null) {
+            _service.shutdownNow();
+        }
+        if (_fallback != null) {
+            _fallback.interrupt();
+        }
+    }
+}
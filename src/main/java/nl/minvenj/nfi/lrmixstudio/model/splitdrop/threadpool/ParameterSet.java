@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+
+/**
+ * A combination of model parameters for which the likelihood ratio is
+ * evaluated by a {@link MultiParameterAnalysis}. The dropout probability is
+ * applied to all contributors and to the unknowns of both hypotheses.
+ */
+public final class ParameterSet {
+
+    private final double _dropout;
+    private final double _dropIn;
+    private final double _theta;
+
+    /**
+     * Creates a new parameter set.
+     *
+     * @param dropout The dropout probability of all contributors and unknowns
+     * @param dropIn The drop-in probability
+     * @param theta The theta correction
+     * @throws IllegalArgumentException if a parameter is not within [0, 1]
+     */
+    public ParameterSet(final double dropout, final double dropIn, final double theta) {
+        checkRange("Dropout probability", dropout);
+        checkRange("Drop-in probability", dropIn);
+        checkRange("Theta correction", theta);
+        _dropout = dropout;
+        _dropIn = dropIn;
+        _theta = theta;
+    }
+
+    private static void checkRange(final String name, final double value) {
+        if (!(value >= 0 && value <= 1)) {
+            throw new IllegalArgumentException(name + " " + value + " is not within [0, 1]");
+        }
+    }
+
+    /**
+     * @return The dropout probability of all contributors and unknowns
+     */
+    public double getDropout() {
+        return _dropout;
+    }
+
+    /**
+     * @return The drop-in probability
+     */
+    public double getDropIn() {
+        return _dropIn;
+    }
+
+    /**
+     * @return The theta correction
+     */
+    public double getTheta() {
+        return _theta;
+    }
+
+    /**
+     * Creates a copy of a hypothesis with the parameters of this set applied.
+     *
+     * @param hypothesis The hypothesis to copy
+     * @return A copy of the hypothesis using the parameters in this set
+     */
+    public Hypothesis apply(final Hypothesis hypothesis) {
+        final Hypothesis copy = hypothesis.copy();
+        copy.setDropInProbability(_dropIn);
+        copy.setThetaCorrection(_theta);
+        copy.setUnknownDropoutProbability(_dropout);
+        for (final Contributor contributor : copy.getContributors()) {
+            contributor.setDropoutProbability(_dropout);
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterSet[dropout=" + _dropout + ", dropIn=" + _dropIn + ", theta=" + _theta + "]";
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.Collection;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationCursor;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationIteratorFactory;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationRanker;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype.GenotypeProbabilityTable;
+
+/**
+ * The permutation space of the unknowns at a single locus under a single
+ * hypothesis, together with the replicate kernel and genotype probability
+ * table shared by all jobs that evaluate a part of it. Parts of the space are
+ * identified by a range of combination ranks as defined by the
+ * {@link PermutationRanker}, so the same range denotes the same permutations in
+ * every process that builds the space from the same case.
+ */
+class PermutationSpace {
+
+    private final String _locusName;
+    private final Collection<Sample> _replicates;
+    private final Hypothesis _hypothesis;
+    private final Collection<Locus> _genotypes;
+    private final ReplicateKernel _kernel;
+    private final GenotypeProbabilityTable _genotypeTable;
+    private final double _genotypeMassBound;
+    private final long _size;
+
+    private PermutationSpace(final String locusName, final Collection<Sample> replicates, final Hypothesis hypothesis, final Collection<Locus> genotypes) {
+        _locusName = locusName;
+        _replicates = replicates;
+        _hypothesis = hypothesis;
+        _genotypes = genotypes;
+        _kernel = LocusProbabilityJobGenerator.compileKernel(locusName, replicates, hypothesis, genotypes);
+        _genotypeTable = LocusProbabilityJobGenerator.createGenotypeTable(locusName, hypothesis, genotypes);
+        _genotypeMassBound = LocusProbabilityJobGenerator.getGenotypeMassBound(locusName, hypothesis, genotypes);
+        _size = PermutationIteratorFactory.getPermutationRanker(hypothesis, genotypes.size()).size();
+    }
+
+    /**
+     * Builds the permutation space for the given locus and hypothesis.
+     *
+     * @param locusName The name of the locus
+     * @param replicates The replicates to evaluate
+     * @param hypothesis The hypothesis to evaluate. This must have at least one
+     * unknown contributor.
+     * @return The permutation space
+     */
+    static PermutationSpace create(final String locusName, final Collection<Sample> replicates, final Hypothesis hypothesis) {
+        if (hypothesis.getUnknownCount() == 0) {
+            throw new IllegalArgumentException("Hypothesis " + hypothesis.getId() + " has no unknowns!");
+        }
+        return new PermutationSpace(locusName, replicates, hypothesis, LocusProbabilityJobGenerator.getPossibleAlleleCombinations(locusName, replicates, hypothesis));
+    }
+
+    /**
+     * @return The name of the locus
+     */
+    String getLocusName() {
+        return _locusName;
+    }
+
+    /**
+     * @return The number of permutations in the space
+     */
+    long size() {
+        return _size;
+    }
+
+    /**
+     * @return An upper bound on the summed genotype probability of all
+     * permutations in the space
+     */
+    double getGenotypeMassBound() {
+        return _genotypeMassBound;
+    }
+
+    /**
+     * Calculates a fingerprint of the genotypes of the unknowns in the order
+     * in which they are ranked. Two processes that calculate the same
+     * fingerprint and size for a space assign the same permutations to the
+     * same ranks.
+     *
+     * @return The fingerprint of the space
+     */
+    long getFingerprint() {
+        long fingerprint = _size;
+        for (final Locus genotype : _genotypes) {
+            for (final Allele allele : genotype.getAlleles()) {
+                fingerprint = 31 * fingerprint + allele.getAllele().hashCode();
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Creates a job that evaluates a range of the space.
+     *
+     * @param from The rank of the first permutation to evaluate
+     * @param to The rank after the last permutation to evaluate
+     * @param progress The listener to receive progress events
+     * @return A job for the range
+     */
+    LocusProbabilityJob createJob(final long from, final long to, final AnalysisProgressListener progress) {
+        if (from < 0 || to > _size || from >= to) {
+            throw new IllegalArgumentException("Range [" + from + ", " + to + ") is not within the " + _size + " permutations of locus " + _locusName);
+        }
+        final PermutationCursor cursor = PermutationIteratorFactory.getPermutationCursor(_hypothesis, _genotypes, from, to);
+        final LocusProbabilityJob job = LocusProbabilityJobGenerator.createJob(_locusName, cursor, _replicates, _hypothesis, progress, _kernel, _genotypeTable);
+        job.setGenotypeMassBound(_genotypeMassBound);
+        return job;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+
+/**
+ * A job that has a range of a permutation space evaluated by one of the
+ * workers of a {@link SplitDropDistributed} coordinator. If the worker dies
+ * before it returns the result, the range is evaluated by another worker.
+ *
+ * The time the job takes is mostly spent waiting for the network and the
+ * worker, so it is not used to calibrate the {@link JobCostModel}.
+ */
+class RemoteRangeJob implements LocusJob {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RemoteRangeJob.class);
+    private final SplitDropDistributed _coordinator;
+    private final long _caseId;
+    private final byte[] _caseData;
+    private final String _locusName;
+    private final Hypothesis _hypothesis;
+    private final AnalysisProgressListener _progress;
+    private final LocusProbability _locusProbability;
+    private final long _from;
+    private final long _to;
+    private final long _size;
+    private final long _fingerprint;
+    private final long _jobSize;
+    private final long _cost;
+    private final double _genotypeMassBound;
+
+    /**
+     * Creates a new job.
+     *
+     * @param coordinator The coordinator that assigns workers to the job
+     * @param caseId The identifier of the case
+     * @param caseData The case serialized by {@link CaseSerializer}
+     * @param locusName The name of the locus
+     * @param replicates The replicates to evaluate
+     * @param hypothesis The hypothesis to evaluate
+     * @param progress The listener to receive progress events
+     * @param space The permutation space of the locus under the hypothesis
+     * @param from The rank of the first permutation to evaluate
+     * @param to The rank after the last permutation to evaluate
+     */
+    RemoteRangeJob(final SplitDropDistributed coordinator, final long caseId, final byte[] caseData, final String locusName, final Collection<Sample> replicates, final Hypothesis hypothesis, final AnalysisProgressListener progress, final PermutationSpace space, final long from, final long to) {
+        _coordinator = coordinator;
+        _caseId = caseId;
+        _caseData = caseData;
+        _locusName = locusName;
+        _hypothesis = hypothesis;
+        _progress = progress;
+        _locusProbability = new LocusProbability(hypothesis, locusName);
+        _from = from;
+        _to = to;
+        _size = space.size();
+        _fingerprint = space.getFingerprint();
+        _genotypeMassBound = space.getGenotypeMassBound();
+        _jobSize = (to - from) * replicates.size();
+        _cost = JobCostModel.getCost(to - from, replicates.size(), hypothesis.getUnknownCount());
+        progress.locusStarted(hypothesis, locusName, _jobSize);
+    }
+
+    @Override
+    public long getCost() {
+        return _cost;
+    }
+
+    @Override
+    public double getGenotypeMassBound() {
+        return _genotypeMassBound;
+    }
+
+    @Override
+    public LocusProbability call() throws Exception {
+        final long start = System.nanoTime();
+        try {
+            while (true) {
+                final WorkerConnection worker = _coordinator.acquire();
+                try {
+                    worker.evaluate(_caseId, _caseData, _hypothesis.getId(), _locusName, _from, _to, _size, _fingerprint, _locusProbability);
+                    break;
+                } catch (final IOException e) {
+                    LOG.warn("Reassigning permutations [{}, {}) of locus {} under {}: {}", _from, _to, _locusName, _hypothesis.getId(), e.getMessage());
+                } finally {
+                    _coordinator.release(worker);
+                }
+            }
+        } catch (final InterruptedException ie) {
+            LOG.debug("Calculations for locus {} were interrupted!", _locusName);
+            _progress.analysisFinished(ie);
+            throw ie;
+        } catch (final Exception e) {
+            LOG.error("Error in Locus Probability calculation for {}", _locusName, e);
+            _progress.analysisFinished(e);
+            throw e;
+        }
+
+        LOG.debug("Hypothesis {} Locus {} range [{}, {}) Done", _hypothesis.getId(), _locusName, _from, _to);
+        _locusProbability.getPerformance().addJob(System.nanoTime() - start, _jobSize, 0, 0, 0, 0);
+        _progress.locusFinished(_hypothesis, _locusName, _locusProbability.getValue());
+        return _locusProbability;
+    }
+}
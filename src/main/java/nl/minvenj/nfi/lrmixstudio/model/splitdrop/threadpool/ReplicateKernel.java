@@ -0,0 +1,475 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+
+/**
+ * A precompiled form of the replicate probability calculation in
+ * {@link LocusProbabilityJob} for a single locus under a single hypothesis.
+ *
+ * All alleles that can occur at the locus are given a dense local index, so
+ * that allele sets can be represented as bits in a long. The contributions of
+ * the known contributors are calculated once, and identical replicates are
+ * merged and evaluated once. What remains per permutation is determined by the
+ * number of copies of each allele carried by the unknowns (the dose), which is
+ * applied through a table of powers of the unknown dropout probability.
+ *
+ * Instances are immutable and can be shared by all jobs for the same locus and
+ * hypothesis. Each thread needs its own dose buffer obtained from
+ * {@link #createDoseBuffer()}.
+ */
+class ReplicateKernel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicateKernel.class);
+    private static final int MAX_ALLELES = Long.SIZE;
+
+    private final int _unknownCount;
+    private final int _alleleCount;
+    // Maps the global allele ids to local allele indices
+    private final HashMap<Integer, Integer> _localIds;
+    // Per candidate genotype: the local allele indices (equal for homozygotes) and the allele mask
+    private final int[] _genotypeAllele1;
+    private final int[] _genotypeAllele2;
+    private final long[] _genotypeMask;
+    // Per distinct replicate: the allele mask, the number of identical replicates and the dropout product of the known contributors for alleles not in the replicate
+    private final long[] _replicateMask;
+    private final int[] _replicateMultiplicity;
+    private final double[] _knownDroppedOut;
+    // Per distinct replicate and allele: the drop-in term
+    private final double[][] _dropIn;
+    // Per allele: the product of the dropout probabilities of all known contributor copies of that allele
+    private final double[] _knownPresent;
+    private final long _knownMask;
+    private final double _noDropIn;
+    // Powers of the unknown dropout probability
+    private final double[] _dropOutPower;
+
+    private ReplicateKernel(final int unknownCount, final HashMap<Integer, Integer> localIds, final int[] genotypeAllele1, final int[] genotypeAllele2, final long[] genotypeMask, final long[] replicateMask, final int[] replicateMultiplicity, final double[] knownDroppedOut, final double[][] dropIn, final double[] knownPresent, final long knownMask, final double noDropIn, final double[] dropOutPower) {
+        _unknownCount = unknownCount;
+        _alleleCount = localIds.size();
+        _localIds = localIds;
+        _genotypeAllele1 = genotypeAllele1;
+        _genotypeAllele2 = genotypeAllele2;
+        _genotypeMask = genotypeMask;
+        _replicateMask = replicateMask;
+        _replicateMultiplicity = replicateMultiplicity;
+        _knownDroppedOut = knownDroppedOut;
+        _dropIn = dropIn;
+        _knownPresent = knownPresent;
+        _knownMask = knownMask;
+        _noDropIn = noDropIn;
+        _dropOutPower = dropOutPower;
+    }
+
+    /**
+     * Compiles a kernel for the given locus and hypothesis.
+     *
+     * @param locusName The name of the locus
+     * @param replicates The replicates to evaluate
+     * @param hypothesis The hypothesis to evaluate
+     * @param genotypes The candidate genotypes for the unknowns, in the order
+     * used by the permutation cursor
+     * @return A kernel, or null if the locus has too many distinct alleles to
+     * be represented as bits in a long or if a contributor lacks the locus
+     */
+    static ReplicateKernel compile(final String locusName, final Collection<Sample> replicates, final Hypothesis hypothesis, final Collection<Locus> genotypes) {
+        final HashMap<Integer, Integer> localIds = new HashMap<>();
+
+        // Collect the allele copies of the known contributors. Alleles from homozygote loci are only added once.
+        final ArrayList<Allele> knownAlleles = new ArrayList<>();
+        for (final Contributor contributor : hypothesis.getContributors()) {
+            final Locus locus = contributor.getSample().getLocus(locusName);
+            if (locus == null) {
+                return null;
+            }
+            for (final Allele allele : locus.getAlleles()) {
+                knownAlleles.add(allele);
+                if (allele.isHomozygote()) {
+                    break;
+                }
+            }
+        }
+
+        final ArrayList<Locus> replicateLoci = new ArrayList<>();
+        for (final Sample replicate : replicates) {
+            Locus locus = replicate.getLocus(locusName);
+            if (locus == null) {
+                locus = new Locus(locusName);
+                locus.setSample(replicate);
+            }
+            replicateLoci.add(locus);
+        }
+
+        for (final Locus replicateLocus : replicateLoci) {
+            for (final Allele allele : replicateLocus.getAlleles()) {
+                getLocalId(localIds, allele);
+            }
+        }
+        for (final Allele allele : knownAlleles) {
+            getLocalId(localIds, allele);
+        }
+        for (final Locus genotype : genotypes) {
+            for (final Allele allele : genotype.getAlleles()) {
+                getLocalId(localIds, allele);
+            }
+        }
+
+        if (localIds.size() > MAX_ALLELES) {
+            LOG.debug("Locus {} has {} distinct alleles. Not using a replicate kernel.", locusName, localIds.size());
+            return null;
+        }
+
+        final int alleleCount = localIds.size();
+
+        // Candidate genotypes for the unknowns
+        final int[] genotypeAllele1 = new int[genotypes.size()];
+        final int[] genotypeAllele2 = new int[genotypes.size()];
+        final long[] genotypeMask = new long[genotypes.size()];
+        int genotypeIndex = 0;
+        for (final Locus genotype : genotypes) {
+            final List<Allele> alleles = new ArrayList<>(genotype.getAlleles());
+            if (alleles.size() != 2) {
+                LOG.debug("Genotype {} does not have 2 alleles. Not using a replicate kernel.", alleles);
+                return null;
+            }
+            genotypeAllele1[genotypeIndex] = localIds.get(alleles.get(0).getId());
+            genotypeAllele2[genotypeIndex] = localIds.get(alleles.get(1).getId());
+            genotypeMask[genotypeIndex] = (1L << genotypeAllele1[genotypeIndex]) | (1L << genotypeAllele2[genotypeIndex]);
+            genotypeIndex++;
+        }
+
+        // The dropout product and combined mask of the known contributors
+        final double[] knownPresent = new double[alleleCount];
+        final double[] knownWeight = new double[knownAlleles.size()];
+        final int[] knownLocalId = new int[knownAlleles.size()];
+        Arrays.fill(knownPresent, 1.0);
+        long knownMask = 0;
+        for (int idx = 0; idx < knownAlleles.size(); idx++) {
+            final Allele allele = knownAlleles.get(idx);
+            knownLocalId[idx] = localIds.get(allele.getId());
+            knownWeight[idx] = hypothesis.getContributor(allele).getDropOutProbability(allele.isHomozygote());
+            knownPresent[knownLocalId[idx]] *= knownWeight[idx];
+            knownMask |= 1L << knownLocalId[idx];
+        }
+
+        // Merge identical replicates
+        final ArrayList<Long> masks = new ArrayList<>();
+        final ArrayList<Integer> multiplicities = new ArrayList<>();
+        final ArrayList<Locus> representatives = new ArrayList<>();
+        for (final Locus replicateLocus : replicateLoci) {
+            long mask = 0;
+            for (final Allele allele : replicateLocus.getAlleles()) {
+                mask |= 1L << localIds.get(allele.getId());
+            }
+            final int existing = masks.indexOf(mask);
+            if (existing >= 0) {
+                multiplicities.set(existing, multiplicities.get(existing) + 1);
+            } else {
+                masks.add(mask);
+                multiplicities.add(1);
+                representatives.add(replicateLocus);
+            }
+        }
+
+        final double dropInProbability = hypothesis.getDropInProbability();
+        final long[] replicateMask = new long[masks.size()];
+        final int[] replicateMultiplicity = new int[masks.size()];
+        final double[] knownDroppedOut = new double[masks.size()];
+        final double[][] dropIn = new double[masks.size()][alleleCount];
+        for (int replicateIndex = 0; replicateIndex < masks.size(); replicateIndex++) {
+            replicateMask[replicateIndex] = masks.get(replicateIndex);
+            replicateMultiplicity[replicateIndex] = multiplicities.get(replicateIndex);
+            knownDroppedOut[replicateIndex] = 1.0;
+            for (int idx = 0; idx < knownAlleles.size(); idx++) {
+                if ((replicateMask[replicateIndex] & (1L << knownLocalId[idx])) == 0) {
+                    knownDroppedOut[replicateIndex] *= knownWeight[idx];
+                }
+            }
+            final Locus representative = representatives.get(replicateIndex);
+            for (final Allele allele : representative.getAlleles()) {
+                dropIn[replicateIndex][localIds.get(allele.getId())] = dropInProbability * hypothesis.getPopulationStatistics().getProbability(representative, allele);
+            }
+        }
+
+        final int unknownCount = hypothesis.getUnknownCount();
+        final double[] dropOutPower = new double[2 * unknownCount + 1];
+        dropOutPower[0] = 1.0;
+        for (int idx = 1; idx < dropOutPower.length; idx++) {
+            dropOutPower[idx] = dropOutPower[idx - 1] * hypothesis.getUnknownDropoutProbability();
+        }
+
+        LOG.debug("Compiled replicate kernel for {} under {}: {} alleles, {} distinct replicates", locusName, hypothesis.getId(), alleleCount, masks.size());
+        return new ReplicateKernel(unknownCount, localIds, genotypeAllele1, genotypeAllele2, genotypeMask, replicateMask, replicateMultiplicity, knownDroppedOut, dropIn, knownPresent, knownMask, 1 - dropInProbability, dropOutPower);
+    }
+
+    private static int getLocalId(final HashMap<Integer, Integer> localIds, final Allele allele) {
+        Integer localId = localIds.get(allele.getId());
+        if (localId == null) {
+            localId = localIds.size();
+            localIds.put(allele.getId(), localId);
+        }
+        return localId;
+    }
+
+    /**
+     * @return A buffer to hold the allele doses of the unknowns during
+     * evaluation. The buffer must be all zeroes between calls, which
+     * {@link #calculate(int[], int[])} guarantees.
+     */
+    int[] createDoseBuffer() {
+        return new int[_alleleCount];
+    }
+
+    /**
+     * Calculates the replicate probability for a combination of genotypes for
+     * the unknowns.
+     *
+     * @param indices The candidate genotype index for each unknown
+     * @param dose A buffer obtained from {@link #createDoseBuffer()}
+     * @return The product of the probabilities of all replicates
+     */
+    double calculate(final int[] indices, final int[] dose) {
+        long unknownMask = 0;
+        for (int idx = 0; idx < _unknownCount; idx++) {
+            final int genotype = indices[idx];
+            dose[_genotypeAllele1[genotype]]++;
+            dose[_genotypeAllele2[genotype]]++;
+            unknownMask |= _genotypeMask[genotype];
+        }
+
+        final double replicateProbability = calculate(dose, unknownMask);
+
+        for (int idx = 0; idx < _unknownCount; idx++) {
+            final int genotype = indices[idx];
+            dose[_genotypeAllele1[genotype]] = 0;
+            dose[_genotypeAllele2[genotype]] = 0;
+        }
+        return replicateProbability;
+    }
+
+    /**
+     * Calculates the replicate probability for the alleles carried by the
+     * unknowns. This probability only depends on the number of copies of each
+     * allele carried by the unknowns and not on how these copies are divided
+     * over the unknowns.
+     *
+     * @param dose The number of copies of each allele carried by the unknowns,
+     * indexed by local allele index. The doses must add up to twice the number
+     * of unknowns.
+     * @param unknownMask A mask with the bits set for all alleles with a
+     * non-zero dose
+     * @return The product of the probabilities of all replicates
+     */
+    double calculate(final int[] dose, final long unknownMask) {
+        final long carried = _knownMask | unknownMask;
+        double replicateProbability = 1;
+        for (int replicateIndex = 0; replicateIndex < _replicateMask.length; replicateIndex++) {
+            final double probability = calculateReplicate(replicateIndex, dose, carried);
+            for (int count = 0; count < _replicateMultiplicity[replicateIndex]; count++) {
+                replicateProbability *= probability;
+            }
+        }
+        return replicateProbability;
+    }
+
+    /**
+     * Calculates the replicate probability for a combination of genotypes for
+     * the unknowns as a mantissa and a binary exponent, so that the product
+     * does not underflow for large numbers of replicates.
+     *
+     * @param indices The candidate genotype index for each unknown
+     * @param dose A buffer obtained from {@link #createDoseBuffer()}
+     * @param exponent A buffer of at least one element that receives the
+     * binary exponent of the product
+     * @return The mantissa of the product of the probabilities of all
+     * replicates
+     */
+    double calculateScaled(final int[] indices, final int[] dose, final int[] exponent) {
+        long unknownMask = 0;
+        for (int idx = 0; idx < _unknownCount; idx++) {
+            final int genotype = indices[idx];
+            dose[_genotypeAllele1[genotype]]++;
+            dose[_genotypeAllele2[genotype]]++;
+            unknownMask |= _genotypeMask[genotype];
+        }
+
+        final double replicateProbability = calculateScaled(dose, unknownMask, exponent);
+
+        for (int idx = 0; idx < _unknownCount; idx++) {
+            final int genotype = indices[idx];
+            dose[_genotypeAllele1[genotype]] = 0;
+            dose[_genotypeAllele2[genotype]] = 0;
+        }
+        return replicateProbability;
+    }
+
+    /**
+     * Calculates the replicate probability for the alleles carried by the
+     * unknowns as a mantissa and a binary exponent, so that the product does
+     * not underflow for large numbers of replicates.
+     *
+     * @param dose The number of copies of each allele carried by the unknowns,
+     * indexed by local allele index. The doses must add up to twice the number
+     * of unknowns.
+     * @param unknownMask A mask with the bits set for all alleles with a
+     * non-zero dose
+     * @param exponent A buffer of at least one element that receives the
+     * binary exponent of the product
+     * @return The mantissa of the product of the probabilities of all
+     * replicates
+     */
+    double calculateScaled(final int[] dose, final long unknownMask, final int[] exponent) {
+        final long carried = _knownMask | unknownMask;
+        double replicateProbability = 1;
+        int scale = 0;
+        for (int replicateIndex = 0; replicateIndex < _replicateMask.length; replicateIndex++) {
+            final double probability = calculateReplicate(replicateIndex, dose, carried);
+            // Identical replicates are merged, so a single replicate can underflow the product
+            for (int count = 0; count < _replicateMultiplicity[replicateIndex]; count++) {
+                replicateProbability *= probability;
+                if (replicateProbability != 0 && Math.getExponent(replicateProbability) < -LocusProbability.RENORMALIZE_EXPONENT) {
+                    final int shift = Math.getExponent(replicateProbability);
+                    replicateProbability = Math.scalb(replicateProbability, -shift);
+                    scale += shift;
+                }
+            }
+        }
+        exponent[0] = scale;
+        return replicateProbability;
+    }
+
+    /**
+     * Calculates the probability of a single distinct replicate.
+     */
+    private double calculateReplicate(final int replicateIndex, final int[] dose, final long carried) {
+        final long mask = _replicateMask[replicateIndex];
+
+        // Set B: alleles in the replicate that are carried by one or more contributors
+        double probability = 1;
+        int presentDose = 0;
+        long present = mask & carried;
+        while (present != 0) {
+            final int allele = Long.numberOfTrailingZeros(present);
+            present &= present - 1;
+            presentDose += dose[allele];
+            probability *= 1 - _knownPresent[allele] * _dropOutPower[dose[allele]];
+        }
+
+        // Set A: allele copies that are not in the replicate have dropped out
+        probability *= _knownDroppedOut[replicateIndex] * _dropOutPower[2 * _unknownCount - presentDose];
+
+        // Set C: alleles in the replicate that are not carried by any contributor have dropped in
+        long droppedIn = mask & ~carried;
+        if (droppedIn == 0) {
+            probability *= _noDropIn;
+        } else {
+            while (droppedIn != 0) {
+                final int allele = Long.numberOfTrailingZeros(droppedIn);
+                droppedIn &= droppedIn - 1;
+                probability *= _dropIn[replicateIndex][allele];
+            }
+        }
+        return probability;
+    }
+
+    /**
+     * @return The number of distinct alleles known to this kernel
+     */
+    int getAlleleCount() {
+        return _alleleCount;
+    }
+
+    /**
+     * @param allele An allele
+     * @return The local index of the allele, or -1 if the allele does not occur
+     * at this locus
+     */
+    int getLocalId(final Allele allele) {
+        final Integer localId = _localIds.get(allele.getId());
+        return localId == null ? -1 : localId;
+    }
+
+    /**
+     * @return The number of distinct replicates
+     */
+    int getReplicateCount() {
+        return _replicateMask.length;
+    }
+
+    /**
+     * @param replicate The index of a distinct replicate
+     * @return The mask of the alleles in the replicate
+     */
+    long getReplicateMask(final int replicate) {
+        return _replicateMask[replicate];
+    }
+
+    /**
+     * @param replicate The index of a distinct replicate
+     * @return The number of replicates that are identical to this one
+     */
+    int getReplicateMultiplicity(final int replicate) {
+        return _replicateMultiplicity[replicate];
+    }
+
+    /**
+     * @param replicate The index of a distinct replicate
+     * @param allele The local index of an allele in the replicate
+     * @return The drop-in term of the allele in the replicate
+     */
+    double getDropIn(final int replicate, final int allele) {
+        return _dropIn[replicate][allele];
+    }
+
+    /**
+     * @return The probability that no allele dropped in
+     */
+    double getNoDropIn() {
+        return _noDropIn;
+    }
+
+    /**
+     * @param genotype The index of a candidate genotype
+     * @return The local index of the first allele of the genotype
+     */
+    int getGenotypeAllele1(final int genotype) {
+        return _genotypeAllele1[genotype];
+    }
+
+    /**
+     * @param genotype The index of a candidate genotype
+     * @return The local index of the second allele of the genotype. This is
+     * equal to the first allele for homozygotes.
+     */
+    int getGenotypeAllele2(final int genotype) {
+        return _genotypeAllele2[genotype];
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.util.ArrayList;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+
+/**
+ * A variant of the {@link SplitDropThreadPool} that does not enumerate every
+ * combination of genotypes for the unknowns. Instead, the genotype
+ * probabilities are summed per distinct allele-dose signature and the
+ * replicate probability is evaluated once per signature. Each locus is
+ * evaluated by a single job, so the loci are executed in parallel.
+ */
+public class SplitDropAlleleUnionPool extends SplitDropThreadPool {
+
+    public SplitDropAlleleUnionPool() {
+        this(null);
+    }
+
+    public SplitDropAlleleUnionPool(final AnalysisProgressListener progressListener) {
+        super(progressListener, false);
+    }
+
+    @Override
+    protected ArrayList<? extends LocusJob> generateJobs(final String locusName, final ConfigurationData config, final Hypothesis hypothesis) {
+        return LocusProbabilityJobGenerator.generateAlleleUnion(locusName, config.getActiveReplicates(), hypothesis, this);
+    }
+
+    /**
+     * The signatures of a locus are aggregated over the whole permutation
+     * space in a single pass, so the progress cannot be saved in ranges.
+     */
+    @Override
+    protected boolean isCheckpointSupported() {
+        return false;
+    }
+
+    /**
+     * The signatures are aggregated without evaluating the permutations one
+     * by one, so there is nothing to trace.
+     */
+    @Override
+    protected boolean isTraceSupported() {
+        return false;
+    }
+
+    @Override
+    public String getId() {
+        return "SplitDrop Allele Union Edition";
+    }
+}
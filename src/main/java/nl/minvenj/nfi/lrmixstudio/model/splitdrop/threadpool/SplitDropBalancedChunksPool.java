@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+
+/**
+ * A variant of the {@link SplitDropThreadPool} that divides the permutation
+ * space of each locus into chunks of roughly equal size. Idle threads pick up
+ * the remaining chunks, so no single large job keeps running after all other
+ * threads have gone idle.
+ */
+public class SplitDropBalancedChunksPool extends SplitDropThreadPool {
+
+    public SplitDropBalancedChunksPool() {
+        this(null);
+    }
+
+    public SplitDropBalancedChunksPool(final AnalysisProgressListener progressListener) {
+        super(progressListener, true);
+    }
+
+    @Override
+    public String getId() {
+        return "SplitDrop Balanced Chunks Edition";
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+
+/**
+ * A variant of the {@link SplitDropThreadPool} that has the permutation spaces
+ * evaluated by {@link SplitDropWorker}s in other processes, possibly on other
+ * machines. The permutation space of each locus with unknowns is divided into
+ * ranges, and each range is sent to a worker with an idle thread together with
+ * the serialized case. The partial sums returned by the workers are merged
+ * into the likelihood ratio as in the {@link SplitDropThreadPool}. Loci
+ * without unknowns are evaluated locally.
+ *
+ * If a worker dies, the ranges it was evaluating are reassigned to the
+ * remaining workers. The analysis only fails if no workers remain.
+ */
+public class SplitDropDistributed extends SplitDropThreadPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SplitDropDistributed.class);
+    /**
+     * The number of ranges per worker thread into which the permutation space
+     * of each locus is divided.
+     */
+    private static final int CHUNKS_PER_THREAD = 8;
+    private static final AtomicLong CASE_IDS = new AtomicLong();
+    private final List<InetSocketAddress> _addresses;
+    private final String _secret;
+    private final Map<InetSocketAddress, WorkerConnection> _workers = new LinkedHashMap<>();
+    private long _caseId;
+    private byte[] _caseData;
+
+    /**
+     * Creates a new model.
+     *
+     * @param workers The addresses of the workers
+     * @param secret The secret shared with the workers
+     */
+    public SplitDropDistributed(final Collection<InetSocketAddress> workers, final String secret) {
+        this(workers, secret, null);
+    }
+
+    /**
+     * Creates a new model.
+     *
+     * @param workers The addresses of the workers
+     * @param secret The secret shared with the workers
+     * @param progressListener A listener for progress events, or null
+     */
+    public SplitDropDistributed(final Collection<InetSocketAddress> workers, final String secret, final AnalysisProgressListener progressListener) {
+        super(progressListener, false);
+        if (workers == null || workers.isEmpty()) {
+            throw new IllegalArgumentException("No workers specified!");
+        }
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("No shared secret specified!");
+        }
+        _addresses = new ArrayList<>(workers);
+        _secret = secret;
+    }
+
+    /**
+     * Starts an analysis. Workers that are not connected are (re)connected
+     * first.
+     *
+     * @param config The configuration of the analysis
+     * @throws IllegalStateException if none of the workers can be reached
+     */
+    @Override
+    public void startAnalysis(final ConfigurationData config) {
+        connect();
+        try {
+            _caseData = CaseSerializer.write(config);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Could not serialize the case: " + e.getMessage(), e);
+        }
+        _caseId = CASE_IDS.incrementAndGet();
+        super.startAnalysis(config);
+    }
+
+    private synchronized void connect() {
+        for (final InetSocketAddress address : _addresses) {
+            final WorkerConnection worker = _workers.get(address);
+            if (worker == null || !worker.isAlive()) {
+                try {
+                    _workers.put(address, WorkerConnection.connect(address, _secret));
+                } catch (final IOException e) {
+                    LOG.warn("Could not connect to worker {}: {}", address, e.getMessage());
+                    _workers.remove(address);
+                }
+            }
+        }
+        if (_workers.isEmpty()) {
+            throw new IllegalStateException("None of the workers " + _addresses + " could be reached");
+        }
+    }
+
+    /**
+     * @return The total number of threads of all connected workers
+     */
+    synchronized int getWorkerThreadCount() {
+        int threadCount = 0;
+        for (final WorkerConnection worker : _workers.values()) {
+            if (worker.isAlive()) {
+                threadCount += worker.getThreadCount();
+            }
+        }
+        return threadCount;
+    }
+
+    /**
+     * Creates an executor with one thread for every worker thread. The jobs
+     * mostly wait for the results of the workers, so they do not occupy the
+     * threads of the shared compute service.
+     */
+    @Override
+    protected ExecutorService createExecutor(final ConfigurationData config) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, getWorkerThreadCount()), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "SplitDropDistributed-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    protected ArrayList<? extends LocusJob> generateJobs(final String locusName, final ConfigurationData config, final Hypothesis hypothesis) {
+        if (hypothesis.getUnknownCount() == 0) {
+            return super.generateJobs(locusName, config, hypothesis);
+        }
+        final PermutationSpace space = PermutationSpace.create(locusName, config.getActiveReplicates(), hypothesis);
+        final long chunkCount = getChunkCount(config);
+        final long chunkSize = Math.max(1, (space.size() + chunkCount - 1) / chunkCount);
+        LOG.debug("Locus {} under {} has {} unknowns. Distributing {} permutations in ranges of {}", locusName, hypothesis.getId(), hypothesis.getUnknownCount(), space.size(), chunkSize);
+        final ArrayList<LocusJob> jobs = new ArrayList<>();
+        for (long from = 0; from < space.size(); from += chunkSize) {
+            jobs.add(createRangeJob(space, config, hypothesis, from, Math.min(space.size(), from + chunkSize)));
+        }
+        return jobs;
+    }
+
+    @Override
+    LocusJob createRangeJob(final PermutationSpace space, final ConfigurationData config, final Hypothesis hypothesis, final long from, final long to) {
+        return new RemoteRangeJob(this, _caseId, _caseData, space.getLocusName(), config.getActiveReplicates(), hypothesis, this, space, from, to);
+    }
+
+    /**
+     * The permutations of loci with unknowns are evaluated by the workers,
+     * so they cannot be traced in this process.
+     */
+    @Override
+    protected boolean isTraceSupported() {
+        return false;
+    }
+
+    @Override
+    int getChunkCount(final ConfigurationData config) {
+        return Math.max(1, getWorkerThreadCount()) * CHUNKS_PER_THREAD;
+    }
+
+    /**
+     * Reserves an idle thread of one of the workers, waiting until one becomes
+     * available.
+     *
+     * @return The worker with the reserved thread
+     * @throws IOException if all workers have died
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    synchronized WorkerConnection acquire() throws IOException, InterruptedException {
+        while (true) {
+            boolean alive = false;
+            for (final WorkerConnection worker : _workers.values()) {
+                if (worker.tryAcquire()) {
+                    return worker;
+                }
+                alive |= worker.isAlive();
+            }
+            if (!alive) {
+                throw new IOException("All workers have died");
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Releases a thread reserved by {@link #acquire()}.
+     *
+     * @param worker The worker with the reserved thread
+     */
+    synchronized void release(final WorkerConnection worker) {
+        worker.release();
+        notifyAll();
+    }
+
+    /**
+     * Closes the connections to all workers.
+     */
+    public synchronized void close() {
+        for (final WorkerConnection worker : _workers.values()) {
+            worker.close();
+        }
+        _workers.clear();
+    }
+
+    @Override
+    public String getId() {
+        return "SplitDrop Distributed Edition";
+    }
+}
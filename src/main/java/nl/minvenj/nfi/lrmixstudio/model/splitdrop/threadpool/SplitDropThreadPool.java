@@ -17,13 +17,19 @@
 package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
 
 import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -33,60 +39,137 @@ import org.slf4j.LoggerFactory;
 
 import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
 import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
 import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
+import nl.minvenj.nfi.lrmixstudio.gui.ApplicationSettings;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisPerformance;
 import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisReport;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
 import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.EngineMetrics;
 import nl.minvenj.nfi.lrmixstudio.model.LRMathModel;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationIteratorFactory;
 
-public final class SplitDropThreadPool implements LRMathModel, AnalysisProgressListener {
+public class SplitDropThreadPool implements LRMathModel, AnalysisProgressListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(SplitDropThreadPool.class);
+    /**
+     * The number of chunks per thread into which the permutation space of each
+     * locus is divided when running in chunked mode.
+     */
+    private static final int CHUNKS_PER_THREAD = 8;
+    private final boolean _balancedChunks;
     private final ArrayList<AnalysisProgressListener> progress = new ArrayList();
     private ExecutorService service;
+    private ComputeService.Priority _priority = ComputeService.Priority.INTERACTIVE;
+    private AnalysisProgressListener _reportListener;
+    private AnalysisReport _report;
+    private AnalysisPerformance _performance;
+    private long _startTime;
     private final Map<String, LocusProbabilities> probabilities;
     private final AtomicInteger locusCount;
     private LikelihoodRatio lr;
-    private final ArrayList<Future<LocusProbability>> futures = new ArrayList<>();
     private Thread _watchDog;
     private boolean _interrupted;
+    private LocusProbabilityCache _cache;
+    private LocusProbabilityCache _dedicatedCache;
+    private int _reusedCount;
+    private final Map<String, LocusProbabilityKey> _cacheKeys = new HashMap<>();
+    private final ArrayList<String> _loci = new ArrayList<>();
+    // The number of unfinished jobs and the bound on the genotype probability mass for each calculated hypothesis and locus
+    private final Map<String, Integer> _pendingJobs = new HashMap<>();
+    private final Map<String, Double> _genotypeMassBounds = new HashMap<>();
+    private File _checkpointDirectory;
+    private CheckpointTracker _checkpoint;
+    private File _validationTraceFile;
+    private volatile ValidationTrace _trace;
 
     private class WatchdogThread extends Thread {
 
-        Collection<Future<LocusProbability>> _futures;
+        private final CompletionService<LocusProbability> _completionService;
+        private final int _jobCount;
 
-        public WatchdogThread(final Collection<Future<LocusProbability>> futures) {
-            _futures = futures;
+        public WatchdogThread(final CompletionService<LocusProbability> completionService, final int jobCount) {
+            _completionService = completionService;
+            _jobCount = jobCount;
         }
 
         @Override
         public void run() {
             try {
-                for (final Future<LocusProbability> f : futures) {
-                    final LocusProbability prob = f.get();
+                // Sum the results of all jobs for the same hypothesis and locus without leaving the extended range of LocusProbability
+                final Map<String, LocusProbability> sums = _checkpoint == null ? new HashMap<String, LocusProbability>() : _checkpoint.getResumedSums();
+                for (int idx = 0; idx < _jobCount; idx++) {
+                    // Results are processed in order of completion, so that intermediate results are published as soon as possible
+                    final Future<LocusProbability> future = _completionService.take();
+                    final LocusProbability prob = future.get();
+                    if (_checkpoint != null) {
+                        _checkpoint.completed(future, prob);
+                    }
+                    LOG.debug("{}.{} Probability = {}", prob.getHypothesis().getId(), prob.getLocusName(), prob.getValue());
+                    final String key = prob.getHypothesis().getId() + "." + prob.getLocusName();
+                    LocusProbability sum = sums.get(key);
+                    if (sum == null) {
+                        sum = new LocusProbability(prob.getHypothesis(), prob.getLocusName());
+                        sums.put(key, sum);
+                    }
+                    sum.add(prob);
                     LocusProbabilities probs = probabilities.get(prob.getHypothesis().getId());
                     if (probs == null) {
                         probs = new LocusProbabilities();
                         probabilities.put(prob.getHypothesis().getId(), probs);
                     }
-                    Double current = probs.getLocusProbability(prob.getLocusName());
-                    LOG.debug("{}.{} Probability = {}", prob.getHypothesis().getId(), prob.getLocusName(), prob.getValue());
-                    if (current == null) {
-                        current = prob.getValue();
-                    } else {
-                        current += prob.getValue();
+                    probs.addLocusProbability(prob.getLocusName(), sum.getValue(), sum.getLog10Value());
+                    _pendingJobs.put(key, _pendingJobs.get(key) - 1);
+                    intermediateResult(createBounds(sums));
+                }
+                if (_cache != null) {
+                    for (final Map.Entry<String, LocusProbability> entry : sums.entrySet()) {
+                        final LocusProbability sum = entry.getValue();
+                        _cache.put(_cacheKeys.get(entry.getKey()), sum.getValue(), sum.getLog10Value());
                     }
-                    probs.addLocusProbability(prob.getLocusName(), current);
                 }
+                if (_checkpoint != null) {
+                    _checkpoint.finished();
+                }
+                closeTrace(true);
+                recordPerformance(sums);
+                JobCostModel.getInstance().storeIfDue();
                 lr = new LikelihoodRatio();
                 lr.add(probabilities.get("Prosecution"), probabilities.get("Defense"));
                 analysisFinished(lr);
             } catch (InterruptedException | ExecutionException ex) {
+                if (_checkpoint != null) {
+                    _checkpoint.interrupted(_completionService);
+                }
+                closeTrace(false);
                 analysisFinished(ex);
             }
+            catch (final CancellationException ce) {
+                if (_checkpoint != null) {
+                    _checkpoint.interrupted(_completionService);
+                }
+                closeTrace(false);
+                analysisFinished(new InterruptedException("Analysis was cancelled"));
+            }
             catch (final Throwable t) {
+                closeTrace(false);
                 analysisFinished(new UnsupportedOperationException(t));
             }
         }
+
+        private void recordPerformance(final Map<String, LocusProbability> sums) {
+            for (final LocusProbability sum : sums.values()) {
+                _performance.addLocus(sum.getHypothesis().getId(), sum.getLocusName(), sum.getPerformance());
+            }
+            _performance.setWallTime((System.nanoTime() - _startTime) / 1000000);
+            if (_report != null) {
+                _report.setPerformance(_performance);
+            }
+            EngineMetrics.getInstance().analysisFinished(_performance);
+            LOG.debug("Analysis performance:\n{}", _performance);
+        }
     }
 
     public SplitDropThreadPool() {
@@ -94,6 +177,20 @@ public final class SplitDropThreadPool implements LRMathModel, AnalysisProgressL
     }
 
     public SplitDropThreadPool(final AnalysisProgressListener progressListener) {
+        this(progressListener, false);
+    }
+
+    /**
+     * Creates a new model.
+     *
+     * @param progressListener A listener for progress events, or null
+     * @param balancedChunks If true, the permutation space of each locus is
+     * divided into chunks of roughly equal size, so that idle threads can pick
+     * up the remaining chunks of a large locus. If false, one job is created
+     * per genotype of the first unknown.
+     */
+    protected SplitDropThreadPool(final AnalysisProgressListener progressListener, final boolean balancedChunks) {
+        _balancedChunks = balancedChunks;
         if (progressListener != null) {
             addProgressListener(progressListener);
         }
@@ -103,32 +200,411 @@ public final class SplitDropThreadPool implements LRMathModel, AnalysisProgressL
 
     @Override
     public void startAnalysis(final ConfigurationData config) {
-        System.gc();
         LOG.debug("Starting analysis with {} threads", config.getThreadCount());
         _interrupted = false;
-        service = Executors.newFixedThreadPool(config.getThreadCount());
-        addProgressListener((AnalysisProgressListener) config.getCurrentReport());
+        lr = null;
+        locusCount.set(0);
+        _trace = openTrace();
+        service = createExecutor(config);
+        // The report of a previous analysis on this instance must not receive the events of this one
+        progress.remove(_reportListener);
+        _report = config.getCurrentReport();
+        _reportListener = (AnalysisProgressListener) _report;
+        addProgressListener(_reportListener);
+        _performance = new AnalysisPerformance();
+        _startTime = System.nanoTime();
+        probabilities.clear();
         probabilities.put("Defense", new LocusProbabilities());
         probabilities.put("Prosecution", new LocusProbabilities());
         analysisStarted();
-        final ArrayList<LocusProbabilityJob> jobs = new ArrayList<>();
+        // Traced results must be calculated, so that they are recorded
+        _cache = _trace == null ? getCache() : null;
+        _cacheKeys.clear();
+        _reusedCount = 0;
+        _loci.clear();
+        _loci.addAll(config.getEnabledLoci());
+        _pendingJobs.clear();
+        _genotypeMassBounds.clear();
+        // Like cached results, the progress of an earlier run is not reused in validation mode or when tracing
+        final File checkpointDirectory = getCheckpointDirectory();
+        if (checkpointDirectory != null && isCheckpointSupported() && !ApplicationSettings.isValidationMode() && _trace == null) {
+            _checkpoint = new CheckpointTracker(AnalysisCheckpoint.open(checkpointDirectory, getId(), config));
+        } else {
+            _checkpoint = null;
+        }
+        final ArrayList<LocusJob> jobs = new ArrayList<>();
         for (final String locusName : config.getEnabledLoci()) {
             if (config.getProsecution() != null) {
-                jobs.addAll(LocusProbabilityJobGenerator.generate(locusName, config.getActiveReplicates(), config.getProsecution(), this));
+                addJobs(jobs, locusName, config, config.getProsecution());
             }
             if (config.getDefense() != null) {
-                jobs.addAll(LocusProbabilityJobGenerator.generate(locusName, config.getActiveReplicates(), config.getDefense(), this));
+                addJobs(jobs, locusName, config, config.getDefense());
             }
         }
 
-        for (final LocusProbabilityJob job : jobs) {
-            futures.add(service.submit(job));
+        LOG.debug("Reused {} locus probabilities, calculating {}", _reusedCount, _pendingJobs.size());
+        if (_trace != null) {
+            // Models that support tracing evaluate the permutations in LocusProbabilityJobs
+            for (final LocusJob job : jobs) {
+                ((LocusProbabilityJob) job).setTrace(_trace);
+            }
+        }
+        // Start the most expensive jobs first, so that no large job is left running alone at the end
+        Collections.sort(jobs, new Comparator<LocusJob>() {
+            @Override
+            public int compare(final LocusJob a, final LocusJob b) {
+                return Long.compare(b.getCost(), a.getCost());
+            }
+        });
+        final long[] costs = new long[jobs.size()];
+        for (int idx = 0; idx < costs.length; idx++) {
+            costs[idx] = jobs.get(idx).getCost();
+        }
+        LOG.debug("Predicted duration of {} jobs on {} threads: {} ms", jobs.size(), config.getThreadCount(), JobCostModel.getInstance().predictDuration(costs, config.getThreadCount()));
+        final CompletionService<LocusProbability> completionService = new ExecutorCompletionService<>(service);
+        for (final LocusJob job : jobs) {
+            final Future<LocusProbability> future = completionService.submit(job);
+            if (_checkpoint != null) {
+                _checkpoint.submitted(job, future);
+            }
         }
         service.shutdown();
-        _watchDog = new WatchdogThread(futures);
+        _watchDog = new WatchdogThread(completionService, jobs.size());
         _watchDog.start();
     }
 
+    @Override
+    public long predictDuration(final ConfigurationData config) {
+        final LocusProbabilityCache cache = getCache();
+        final int replicateCount = config.getActiveReplicates().size();
+        final ArrayList<Long> costs = new ArrayList<>();
+        for (final String locusName : config.getEnabledLoci()) {
+            for (final Hypothesis hypothesis : new Hypothesis[]{config.getProsecution(), config.getDefense()}) {
+                if (hypothesis == null || (cache != null && cache.get(LocusProbabilityKey.create(getId(), locusName, hypothesis, config.getActiveReplicates())) != null)) {
+                    continue;
+                }
+                if (hypothesis.getUnknownCount() == 0) {
+                    costs.add(JobCostModel.getCost(1, replicateCount, 0));
+                    continue;
+                }
+                // The permutations of a locus are divided over roughly equal jobs
+                final int genotypeCount = LocusProbabilityJobGenerator.getPossibleAlleleCombinations(locusName, config.getActiveReplicates(), hypothesis).size();
+                final long permutationCount = PermutationIteratorFactory.getPermutationRanker(hypothesis, genotypeCount).size();
+                final long jobCount = Math.max(1, Math.min(permutationCount, getChunkCount(config)));
+                for (long idx = 0; idx < jobCount; idx++) {
+                    final long from = permutationCount * idx / jobCount;
+                    final long to = permutationCount * (idx + 1) / jobCount;
+                    costs.add(JobCostModel.getCost(to - from, replicateCount, hypothesis.getUnknownCount()));
+                }
+            }
+        }
+        final long[] costArray = new long[costs.size()];
+        for (int idx = 0; idx < costArray.length; idx++) {
+            costArray[idx] = costs.get(idx);
+        }
+        return JobCostModel.getInstance().predictDuration(costArray, config.getThreadCount());
+    }
+
+    private LocusProbabilityCache getCache() {
+        // Results in validation mode must be calculated, so that they are logged
+        if (ApplicationSettings.isValidationMode()) {
+            return null;
+        }
+        if (_dedicatedCache != null) {
+            return _dedicatedCache;
+        }
+        // Background analyses, such as those of random profiles in the non-contributor test, are rarely repeated and would evict the results of interactive analyses
+        if (_priority == ComputeService.Priority.BACKGROUND) {
+            return null;
+        }
+        return LocusProbabilityCache.getInstance();
+    }
+
+    /**
+     * Sets the cache from which the results of earlier analyses are reused.
+     * By default the cache configured in the application settings is used.
+     * A caller that performs a series of analyses in which only some
+     * hypotheses or loci change can supply its own cache, so that the
+     * unchanged results are reused even if the shared cache is disabled or
+     * too small.
+     *
+     * @param cache The cache to use, or null to use the shared cache. The
+     * shared cache is not used by analyses that run with
+     * {@link ComputeService.Priority#BACKGROUND} priority.
+     */
+    public void setLocusProbabilityCache(final LocusProbabilityCache cache) {
+        _dedicatedCache = cache;
+    }
+
+    /**
+     * Sets the directory in which the progress of analyses is saved. While an
+     * analysis runs, the evaluated permutation ranges and their partial
+     * probabilities are saved periodically and when the analysis is
+     * interrupted. A later analysis of the same configuration resumes from the
+     * saved progress. By default the directory configured in the application
+     * settings is used.
+     *
+     * @param directory The directory for checkpoints, or null to use the
+     * directory in the application settings
+     */
+    public void setCheckpointDirectory(final File directory) {
+        _checkpointDirectory = directory;
+    }
+
+    private File getCheckpointDirectory() {
+        if (_checkpointDirectory != null) {
+            return _checkpointDirectory;
+        }
+        final String directoryName = ApplicationSettings.getCheckpointDirectory();
+        return directoryName.isEmpty() ? null : new File(directoryName);
+    }
+
+    /**
+     * Sets the file to which subsequent analyses append a binary trace of
+     * every evaluated permutation, for validation. Unlike validation mode,
+     * tracing does not format any text during the calculation and leaves the
+     * genotype probability caches enabled; the trace is rendered to the
+     * validation log afterwards by {@link ValidationTrace#render}. By default
+     * the file configured in the application settings is used.
+     *
+     * @param file The trace file, or null to use the file in the application
+     * settings
+     */
+    public void setValidationTraceFile(final File file) {
+        _validationTraceFile = file;
+    }
+
+    private File getValidationTraceFile() {
+        if (_validationTraceFile != null) {
+            return _validationTraceFile;
+        }
+        final String fileName = ApplicationSettings.getValidationTraceFile();
+        return fileName.isEmpty() ? null : new File(fileName);
+    }
+
+    /**
+     * Indicates whether the jobs of this model can record a validation trace.
+     *
+     * @return true if validation traces are supported
+     */
+    protected boolean isTraceSupported() {
+        return true;
+    }
+
+    private ValidationTrace openTrace() {
+        final File file = getValidationTraceFile();
+        if (file == null) {
+            return null;
+        }
+        if (!isTraceSupported()) {
+            LOG.warn("The {} model does not support validation traces. No trace is written to {}", getId(), file);
+            return null;
+        }
+        try {
+            final ValidationTrace trace = ValidationTrace.open(file, getId());
+            LOG.info("Writing validation trace to {}", file);
+            return trace;
+        } catch (final IOException ex) {
+            throw new IllegalArgumentException("Could not open validation trace " + file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Closes the validation trace of the current analysis, if any.
+     *
+     * @param complete true if all jobs have finished
+     */
+    private void closeTrace(final boolean complete) {
+        final ValidationTrace trace = _trace;
+        _trace = null;
+        if (trace != null) {
+            try {
+                trace.close(complete);
+            } catch (final IOException ex) {
+                LOG.error("Error writing validation trace {}", trace.getFile(), ex);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the progress of an analysis can be saved in a
+     * checkpoint. If so, the permutation space of every locus with unknowns
+     * is divided into ranges of combination ranks, which are evaluated by the
+     * jobs created by {@link #createRangeJob}, instead of the jobs of
+     * {@link #generateJobs}.
+     *
+     * @return true if checkpoints are supported
+     */
+    protected boolean isCheckpointSupported() {
+        return true;
+    }
+
+    /**
+     * Sets the priority with which the jobs of subsequent analyses are executed
+     * on the shared {@link ComputeService}. By default analyses run with
+     * {@link ComputeService.Priority#INTERACTIVE} priority. Analyses with
+     * {@link ComputeService.Priority#BACKGROUND} priority do not use the
+     * shared locus probability cache.
+     *
+     * @param priority The priority of the jobs
+     */
+    public void setPriority(final ComputeService.Priority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("No priority specified!");
+        }
+        _priority = priority;
+    }
+
+    /**
+     * Creates the executor on which the jobs of an analysis are run. By
+     * default this submits the jobs to the shared {@link ComputeService} with
+     * the configured priority and the thread count of the configuration.
+     *
+     * @param config The configuration of the analysis
+     * @return The executor for the jobs of the analysis
+     */
+    protected ExecutorService createExecutor(final ConfigurationData config) {
+        return ComputeService.getInstance().createExecutor(_priority, config.getThreadCount());
+    }
+
+    /**
+     * Adds the jobs for a single locus under a single hypothesis, or the
+     * cached probability if the same locus was evaluated before under an
+     * identical hypothesis.
+     */
+    private void addJobs(final ArrayList<LocusJob> jobs, final String locusName, final ConfigurationData config, final Hypothesis hypothesis) {
+        if (_cache != null) {
+            final LocusProbabilityKey key = LocusProbabilityKey.create(getId(), locusName, hypothesis, config.getActiveReplicates());
+            final LocusProbabilityCache.Entry entry = _cache.get(key);
+            if (entry != null) {
+                LOG.debug("{}.{} Probability = {} (cached)", hypothesis.getId(), locusName, entry.getValue());
+                locusStarted(hypothesis, locusName, 1);
+                probabilities.get(hypothesis.getId()).addLocusProbability(locusName, entry.getValue(), entry.getLog10Value());
+                locusFinished(hypothesis, locusName, entry.getValue());
+                _performance.addLocus(hypothesis.getId(), locusName, createReusedPerformance());
+                _reusedCount++;
+                return;
+            }
+            _cacheKeys.put(hypothesis.getId() + "." + locusName, key);
+        }
+        final ArrayList<? extends LocusJob> locusJobs;
+        if (_checkpoint != null && hypothesis.getUnknownCount() > 0) {
+            locusJobs = _checkpoint.generateJobs(this, locusName, config, hypothesis);
+            if (locusJobs.isEmpty()) {
+                final LocusProbability sum = _checkpoint.getResumedSum(hypothesis, locusName);
+                LOG.debug("{}.{} Probability = {} (checkpoint)", hypothesis.getId(), locusName, sum.getValue());
+                locusStarted(hypothesis, locusName, 1);
+                probabilities.get(hypothesis.getId()).addLocusProbability(locusName, sum.getValue(), sum.getLog10Value());
+                locusFinished(hypothesis, locusName, sum.getValue());
+                sum.getPerformance().setReused();
+                return;
+            }
+        } else {
+            locusJobs = generateJobs(locusName, config, hypothesis);
+        }
+        jobs.addAll(locusJobs);
+        _pendingJobs.put(hypothesis.getId() + "." + locusName, locusJobs.size());
+        _genotypeMassBounds.put(hypothesis.getId() + "." + locusName, locusJobs.get(0).getGenotypeMassBound());
+    }
+
+    private static AnalysisPerformance.LocusPerformance createReusedPerformance() {
+        final AnalysisPerformance.LocusPerformance performance = new AnalysisPerformance.LocusPerformance();
+        performance.setReused();
+        return performance;
+    }
+
+    /**
+     * Creates a job that evaluates a range of the permutation space of a
+     * locus.
+     *
+     * @param space The permutation space
+     * @param config The configuration of the analysis
+     * @param hypothesis The hypothesis to evaluate
+     * @param from The rank of the first permutation to evaluate
+     * @param to The rank after the last permutation to evaluate
+     * @return The job
+     */
+    LocusJob createRangeJob(final PermutationSpace space, final ConfigurationData config, final Hypothesis hypothesis, final long from, final long to) {
+        return space.createJob(from, to, this);
+    }
+
+    /**
+     * @param config The configuration of the analysis
+     * @return The number of chunks into which the permutation space of each
+     * locus is divided
+     */
+    int getChunkCount(final ConfigurationData config) {
+        return config.getThreadCount() * CHUNKS_PER_THREAD;
+    }
+
+    /**
+     * Creates the bounds on the locus probabilities from the results received
+     * so far. The probability of a locus that is still being calculated is at
+     * least the sum of the finished jobs, and at most that sum plus the
+     * genotype probability mass not covered by the finished jobs.
+     *
+     * @param sums The summed results of the finished jobs for each hypothesis
+     * and locus
+     * @return The bounds on the final results
+     */
+    private LikelihoodRatioBounds createBounds(final Map<String, LocusProbability> sums) {
+        final Map<String, LocusProbabilities> lower = new HashMap<>();
+        final Map<String, LocusProbabilities> upper = new HashMap<>();
+        for (final String hypothesisId : new String[]{"Prosecution", "Defense"}) {
+            final LocusProbabilities lowerBounds = new LocusProbabilities();
+            final LocusProbabilities upperBounds = new LocusProbabilities();
+            for (final String locusName : _loci) {
+                final String key = hypothesisId + "." + locusName;
+                final Integer pending = _pendingJobs.get(key);
+                if (pending == null || pending == 0) {
+                    final LocusProbabilities probs = probabilities.get(hypothesisId);
+                    final Double value = probs.getLocusProbability(locusName);
+                    if (value != null) {
+                        lowerBounds.addLocusProbability(locusName, value, probs.getLocusLog10Probability(locusName));
+                        upperBounds.addLocusProbability(locusName, value, probs.getLocusLog10Probability(locusName));
+                    }
+                } else {
+                    final LocusProbability sum = sums.get(key);
+                    final double value = sum == null ? 0 : sum.getValue();
+                    final double log10Value = sum == null ? Double.NEGATIVE_INFINITY : sum.getLog10Value();
+                    final double remaining = Math.max(0, _genotypeMassBounds.get(key) - (sum == null ? 0 : sum.getGenotypeMass()));
+                    lowerBounds.addLocusProbability(locusName, value, log10Value);
+                    upperBounds.addLocusProbability(locusName, value + remaining, log10Sum(log10Value, Math.log10(remaining)));
+                }
+            }
+            lower.put(hypothesisId, lowerBounds);
+            upper.put(hypothesisId, upperBounds);
+        }
+        return new LikelihoodRatioBounds(lower.get("Prosecution"), upper.get("Prosecution"), lower.get("Defense"), upper.get("Defense"));
+    }
+
+    private static double log10Sum(final double log10A, final double log10B) {
+        if (log10A == Double.NEGATIVE_INFINITY) {
+            return log10B;
+        }
+        if (log10B == Double.NEGATIVE_INFINITY) {
+            return log10A;
+        }
+        final double max = Math.max(log10A, log10B);
+        return max + Math.log10(1 + Math.pow(10, Math.min(log10A, log10B) - max));
+    }
+
+    /**
+     * Generates the jobs that calculate the probability of a single locus
+     * under a single hypothesis.
+     *
+     * @param locusName The name of the locus
+     * @param config The configuration of the analysis
+     * @param hypothesis The hypothesis to evaluate
+     * @return The jobs to execute
+     */
+    protected ArrayList<? extends LocusJob> generateJobs(final String locusName, final ConfigurationData config, final Hypothesis hypothesis) {
+        if (_balancedChunks) {
+            return LocusProbabilityJobGenerator.generate(locusName, config.getActiveReplicates(), hypothesis, this, getChunkCount(config));
+        }
+        return LocusProbabilityJobGenerator.generate(locusName, config.getActiveReplicates(), hypothesis, this);
+    }
+
     @Override
     public LikelihoodRatio doAnalysis(final ConfigurationData config) throws InterruptedException {
         startAnalysis(config);
@@ -165,14 +641,22 @@ public final class SplitDropThreadPool implements LRMathModel, AnalysisProgressL
 
     @Override
     public void analysisFinished(final LikelihoodRatio lr) {
-        EventQueue.invokeLater(new Runnable() {
+        // The listeners of this analysis, as the instance may already be running the next one when the event is delivered
+        final ArrayList<AnalysisProgressListener> listeners = new ArrayList<>(progress);
+        final Runnable notifier = new Runnable() {
             @Override
             public void run() {
-                for (final AnalysisProgressListener listener : progress) {
+                for (final AnalysisProgressListener listener : listeners) {
                     listener.analysisFinished(lr);
                 }
             }
-        });
+        };
+        // Without a display, such as in the command line runner, there is no event dispatch thread to deliver the result on
+        if (GraphicsEnvironment.isHeadless()) {
+            notifier.run();
+        } else {
+            EventQueue.invokeLater(notifier);
+        }
     }
 
     @Override
@@ -218,6 +702,14 @@ public final class SplitDropThreadPool implements LRMathModel, AnalysisProgressL
         }
     }
 
+    @Override
+    public void intermediateResult(final LikelihoodRatioBounds bounds) {
+        LOG.debug("Intermediate result: {}", bounds);
+        for (final AnalysisProgressListener listener : progress) {
+            listener.intermediateResult(bounds);
+        }
+    }
+
     @Override
     public String getId() {
         return "SplitDrop Threadpool Edition";
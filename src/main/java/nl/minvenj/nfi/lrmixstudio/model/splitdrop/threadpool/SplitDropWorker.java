@@ -0,0 +1,415 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.DefaultAnalysisProgressListenerImpl;
+
+/**
+ * Evaluates ranges of permutation spaces on behalf of a
+ * {@link SplitDropDistributed} coordinator. The worker accepts any number of
+ * coordinator connections, and evaluates the ranges it receives on the shared
+ * {@link ComputeService}. See {@link DistributedProtocol} for the messages
+ * exchanged.
+ *
+ * The cases contain DNA profiles and are sent unencrypted, so by default the
+ * worker only listens on the loopback interface. A worker that serves other
+ * machines should be bound to an address on a trusted network. Coordinators
+ * must prove that they know the secret configured on the worker before they
+ * can send anything.
+ *
+ * Coordinators and workers must run the same version of the application, as
+ * the ranges only denote the same permutations if both build the permutation
+ * spaces in the same way. Each range carries the size and fingerprint of the
+ * space on the coordinator, and is rejected if these do not match.
+ */
+public class SplitDropWorker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SplitDropWorker.class);
+    // The number of cases kept per connection, so that a coordinator does not need to resend a case between analyses
+    private static final int MAX_CASES = 4;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private final ServerSocket _serverSocket;
+    private final int _threadCount;
+    private final String _secret;
+    private final ArrayList<Socket> _connections = new ArrayList<>();
+    private Thread _acceptThread;
+    private volatile boolean _closed;
+
+    /**
+     * A case received over a connection, with the permutation spaces built for
+     * it so far.
+     */
+    private static class WorkerCase {
+
+        private final ConfigurationData _config;
+        private final Map<String, PermutationSpace> _spaces = new HashMap<>();
+
+        public WorkerCase(final ConfigurationData config) {
+            _config = config;
+        }
+    }
+
+    private class ConnectionHandler extends Thread {
+
+        private final Socket _socket;
+        private final DataOutputStream _out;
+        private final Map<Long, WorkerCase> _cases = new LinkedHashMap<Long, WorkerCase>(MAX_CASES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, WorkerCase> eldest) {
+                return size() > MAX_CASES;
+            }
+        };
+        private final ExecutorService _service;
+        private final Timer _heartbeat;
+
+        public ConnectionHandler(final Socket socket) throws IOException {
+            super("SplitDropWorker " + socket.getRemoteSocketAddress());
+            setDaemon(true);
+            _socket = socket;
+            _out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            _service = ComputeService.getInstance().createExecutor(ComputeService.Priority.INTERACTIVE, _threadCount);
+            _heartbeat = new Timer(getName() + " heartbeat", true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(_socket.getInputStream()));
+                authenticate(in);
+                _heartbeat.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        try {
+                            synchronized (_out) {
+                                _out.writeByte(DistributedProtocol.HEARTBEAT);
+                                _out.flush();
+                            }
+                        } catch (final IOException e) {
+                            cancel();
+                        }
+                    }
+                }, DistributedProtocol.HEARTBEAT_INTERVAL, DistributedProtocol.HEARTBEAT_INTERVAL);
+
+                while (true) {
+                    final byte type = in.readByte();
+                    switch (type) {
+                        case DistributedProtocol.CASE:
+                            readCase(in);
+                            break;
+                        case DistributedProtocol.RANGE:
+                            readRange(in);
+                            break;
+                        default:
+                            throw new IOException("Unexpected message type " + type);
+                    }
+                }
+            } catch (final EOFException e) {
+                LOG.info("Coordinator {} disconnected", _socket.getRemoteSocketAddress());
+            } catch (final IOException e) {
+                if (!_closed) {
+                    LOG.warn("Connection to coordinator {} failed: {}", _socket.getRemoteSocketAddress(), e.getMessage());
+                }
+            } catch (final RejectedExecutionException e) {
+                LOG.info("Closing connection to coordinator {}: the worker is shutting down", _socket.getRemoteSocketAddress());
+            } catch (final RuntimeException e) {
+                LOG.warn("Closing connection to coordinator {}: invalid message", _socket.getRemoteSocketAddress(), e);
+            } finally {
+                _heartbeat.cancel();
+                _service.shutdownNow();
+                closeQuietly(_socket);
+                synchronized (_connections) {
+                    _connections.remove(_socket);
+                }
+            }
+        }
+
+        /**
+         * Sends a challenge to the coordinator and checks its response. The
+         * coordinator has {@link DistributedProtocol#READ_TIMEOUT} to respond.
+         *
+         * @throws ProtocolException if the response is not correct
+         */
+        private void authenticate(final DataInputStream in) throws IOException {
+            final byte[] challenge = new byte[DistributedProtocol.CHALLENGE_LENGTH];
+            RANDOM.nextBytes(challenge);
+            _socket.setSoTimeout(DistributedProtocol.READ_TIMEOUT);
+            synchronized (_out) {
+                _out.writeByte(DistributedProtocol.HELLO);
+                _out.writeInt(DistributedProtocol.VERSION);
+                _out.write(challenge);
+                _out.flush();
+            }
+            if (in.readByte() != DistributedProtocol.AUTH) {
+                throw new ProtocolException("Coordinator did not authenticate");
+            }
+            final byte[] response = new byte[DistributedProtocol.CHALLENGE_LENGTH];
+            in.readFully(response);
+            if (!MessageDigest.isEqual(response, DistributedProtocol.getResponse(_secret, challenge))) {
+                throw new ProtocolException("Coordinator does not know the shared secret");
+            }
+            _socket.setSoTimeout(0);
+            synchronized (_out) {
+                _out.writeByte(DistributedProtocol.READY);
+                _out.writeInt(getThreadCount());
+                _out.flush();
+            }
+        }
+
+        private void readCase(final DataInputStream in) throws IOException {
+            final long caseId = in.readLong();
+            final int length = in.readInt();
+            if (length < 0 || length > DistributedProtocol.MAX_CASE_LENGTH) {
+                throw new ProtocolException("Invalid case length " + length);
+            }
+            final byte[] data = new byte[length];
+            in.readFully(data);
+            final ConfigurationData config = CaseSerializer.read(data);
+            LOG.debug("Received case {} ({} bytes)", caseId, data.length);
+            synchronized (_cases) {
+                _cases.put(caseId, new WorkerCase(config));
+            }
+        }
+
+        private void readRange(final DataInputStream in) throws IOException {
+            final long taskId = in.readLong();
+            final long caseId = in.readLong();
+            final String hypothesisId = in.readUTF();
+            final String locusName = in.readUTF();
+            final long from = in.readLong();
+            final long to = in.readLong();
+            final long size = in.readLong();
+            final long fingerprint = in.readLong();
+            _service.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final PermutationSpace space = getSpace(caseId, hypothesisId, locusName);
+                        if (space.size() != size || space.getFingerprint() != fingerprint) {
+                            throw new IllegalStateException("The permutations of locus " + locusName + " under " + hypothesisId + " differ between coordinator and worker. Check that both run the same version.");
+                        }
+                        final LocusProbability probability = space.createJob(from, to, new DefaultAnalysisProgressListenerImpl()).call();
+                        synchronized (_out) {
+                            _out.writeByte(DistributedProtocol.RESULT);
+                            _out.writeLong(taskId);
+                            _out.writeDouble(probability.getMantissa());
+                            _out.writeInt(probability.getExponent());
+                            _out.writeDouble(probability.getGenotypeMass());
+                            _out.flush();
+                        }
+                    } catch (final IOException e) {
+                        LOG.debug("Could not send result of task {}: {}", taskId, e.getMessage());
+                    } catch (final Exception e) {
+                        LOG.error("Error evaluating task {}", taskId, e);
+                        sendError(taskId, e.getMessage() == null ? e.getClass().getName() : e.getMessage());
+                    }
+                }
+            });
+        }
+
+        private void sendError(final long taskId, final String message) {
+            try {
+                synchronized (_out) {
+                    _out.writeByte(DistributedProtocol.ERROR);
+                    _out.writeLong(taskId);
+                    _out.writeUTF(message);
+                    _out.flush();
+                }
+            } catch (final IOException e) {
+                LOG.debug("Could not send error of task {}: {}", taskId, e.getMessage());
+            }
+        }
+
+        private PermutationSpace getSpace(final long caseId, final String hypothesisId, final String locusName) {
+            final WorkerCase workerCase;
+            synchronized (_cases) {
+                workerCase = _cases.get(caseId);
+            }
+            if (workerCase == null) {
+                throw new IllegalStateException("Case " + caseId + " was not received");
+            }
+            // Building a space adds compound alleles to the statistics, so spaces of the same case are built one at a time
+            synchronized (workerCase) {
+                final String key = hypothesisId + "." + locusName;
+                PermutationSpace space = workerCase._spaces.get(key);
+                if (space == null) {
+                    final Hypothesis hypothesis = "Prosecution".equals(hypothesisId) ? workerCase._config.getProsecution() : "Defense".equals(hypothesisId) ? workerCase._config.getDefense() : null;
+                    if (hypothesis == null) {
+                        throw new IllegalStateException("Case " + caseId + " has no hypothesis " + hypothesisId);
+                    }
+                    space = PermutationSpace.create(locusName, workerCase._config.getActiveReplicates(), hypothesis);
+                    workerCase._spaces.put(key, space);
+                }
+                return space;
+            }
+        }
+    }
+
+    /**
+     * Creates a new worker that listens on the loopback interface.
+     *
+     * @param port The port to listen on, or 0 to use any free port
+     * @param threadCount The maximum number of ranges evaluated concurrently
+     * for each coordinator
+     * @param secret The secret that coordinators must know
+     * @throws IOException if the port could not be opened
+     */
+    public SplitDropWorker(final int port, final int threadCount, final String secret) throws IOException {
+        this(null, port, threadCount, secret);
+    }
+
+    /**
+     * Creates a new worker.
+     *
+     * @param bindAddress The address to listen on, or null to listen on the
+     * loopback interface
+     * @param port The port to listen on, or 0 to use any free port
+     * @param threadCount The maximum number of ranges evaluated concurrently
+     * for each coordinator
+     * @param secret The secret that coordinators must know
+     * @throws IOException if the port could not be opened
+     */
+    public SplitDropWorker(final InetAddress bindAddress, final int port, final int threadCount, final String secret) throws IOException {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1, not " + threadCount);
+        }
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("No shared secret specified!");
+        }
+        _threadCount = threadCount;
+        _secret = secret;
+        _serverSocket = new ServerSocket(port, 50, bindAddress == null ? InetAddress.getLoopbackAddress() : bindAddress);
+    }
+
+    /**
+     * @return The address the worker listens on
+     */
+    public InetAddress getAddress() {
+        return _serverSocket.getInetAddress();
+    }
+
+    /**
+     * @return The port the worker listens on
+     */
+    public int getPort() {
+        return _serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return The number of ranges evaluated concurrently for each coordinator.
+     * This is limited by the number of threads of the {@link ComputeService}.
+     */
+    public int getThreadCount() {
+        return Math.min(_threadCount, ComputeService.getInstance().getThreadCount());
+    }
+
+    /**
+     * Starts accepting connections from coordinators.
+     */
+    public synchronized void start() {
+        if (_acceptThread != null) {
+            throw new IllegalStateException("Worker already started!");
+        }
+        _acceptThread = new Thread("SplitDropWorker on port " + getPort()) {
+            @Override
+            public void run() {
+                LOG.info("Worker listening on {} port {} with {} threads", getAddress().getHostAddress(), getPort(), getThreadCount());
+                while (!_closed) {
+                    try {
+                        final Socket socket = _serverSocket.accept();
+                        socket.setTcpNoDelay(true);
+                        LOG.info("Coordinator {} connected", socket.getRemoteSocketAddress());
+                        synchronized (_connections) {
+                            _connections.add(socket);
+                        }
+                        new ConnectionHandler(socket).start();
+                    } catch (final IOException e) {
+                        if (!_closed) {
+                            LOG.error("Error accepting connection", e);
+                        }
+                    }
+                }
+            }
+        };
+        _acceptThread.start();
+    }
+
+    /**
+     * Waits until the worker is closed.
+     *
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    public void join() throws InterruptedException {
+        final Thread acceptThread;
+        synchronized (this) {
+            acceptThread = _acceptThread;
+        }
+        if (acceptThread != null) {
+            acceptThread.join();
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes all open connections. Ranges
+     * that are being evaluated are abandoned.
+     */
+    public void close() {
+        _closed = true;
+        closeQuietly(_serverSocket);
+        synchronized (_connections) {
+            for (final Socket socket : _connections) {
+                closeQuietly(socket);
+            }
+            _connections.clear();
+        }
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            LOG.debug("Error closing {}: {}", closeable, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,517 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationCursor;
+
+/**
+ * A compact binary trace of the calculations of an analysis, for validation.
+ * For every job, the trace holds the replicates, the alleles of the known
+ * contributors and, for every evaluated permutation, the genotypes of the
+ * unknowns, the probability of each replicate and the genotype probability.
+ * The human-readable validation log is rendered from the trace afterwards by
+ * {@link #render}, so the calculations themselves do not format any text.
+ *
+ * Each thread appends its records to its own buffer without locking. A full
+ * buffer is written to the end of the file as a single block, so the records
+ * of concurrent jobs interleave by block but are never torn. The file is only
+ * appended to, so the traces of successive analyses follow each other.
+ */
+public final class ValidationTrace {
+
+    static final int MAGIC = 0x4C525452;
+    static final int VERSION = 1;
+    static final byte ANALYSIS = 1;
+    static final byte JOB = 2;
+    static final byte GENOTYPE = 3;
+    static final byte PERMUTATION = 4;
+    static final byte JOB_END = 5;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File _file;
+    private final FileChannel _channel;
+    private final AtomicInteger _jobIds = new AtomicInteger();
+    private final ConcurrentLinkedQueue<ByteBuffer> _buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ByteBuffer> _buffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            _buffers.add(buffer);
+            return buffer;
+        }
+    };
+    private volatile boolean _closed;
+
+    /**
+     * The trace of a single job. A job is evaluated by a single thread, so
+     * instances are not thread-safe.
+     */
+    public final class Job {
+
+        private final int _id;
+        private final int _replicateCount;
+        private final BitSet _tracedGenotypes = new BitSet();
+
+        private Job(final int id, final int replicateCount) {
+            _id = id;
+            _replicateCount = replicateCount;
+        }
+
+        /**
+         * Records an evaluated permutation.
+         *
+         * @param permutationFactor The number of permutations represented by
+         * the combination
+         * @param indices The genotype index of each unknown, as returned by
+         * the cursor
+         * @param cursor The cursor that returned the indices, or null if the
+         * hypothesis has no unknowns
+         * @param replicateProbabilities The probability of each replicate
+         * @param genotypeProbability The genotype probability of the
+         * combination
+         */
+        public void permutation(final int permutationFactor, final int[] indices, final PermutationCursor cursor, final double[] replicateProbabilities, final double genotypeProbability) {
+            for (final int index : indices) {
+                if (!_tracedGenotypes.get(index)) {
+                    _tracedGenotypes.set(index);
+                    traceGenotype(index, cursor.getGenotype(index));
+                }
+            }
+            final ByteBuffer buffer = reserve(1 + 4 * 4 + 4 * indices.length + 8 * _replicateCount + 8);
+            buffer.put(PERMUTATION);
+            buffer.putInt(_id);
+            buffer.putInt(permutationFactor);
+            buffer.putInt(indices.length);
+            for (final int index : indices) {
+                buffer.putInt(index);
+            }
+            buffer.putInt(_replicateCount);
+            for (int idx = 0; idx < _replicateCount; idx++) {
+                buffer.putDouble(replicateProbabilities[idx]);
+            }
+            buffer.putDouble(genotypeProbability);
+        }
+
+        /**
+         * Records the end of the job.
+         *
+         * @param probability The summed probability of the permutations of
+         * the job
+         */
+        public void finished(final double probability) {
+            final ByteBuffer buffer = reserve(1 + 4 + 8);
+            buffer.put(JOB_END);
+            buffer.putInt(_id);
+            buffer.putDouble(probability);
+        }
+
+        private void traceGenotype(final int index, final Locus genotype) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeByte(GENOTYPE);
+                out.writeInt(_id);
+                out.writeInt(index);
+                writeAlleles(out, genotype.getAlleles());
+            } catch (final IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            append(bytes.toByteArray());
+        }
+    }
+
+    private ValidationTrace(final File file, final FileChannel channel) {
+        _file = file;
+        _channel = channel;
+    }
+
+    /**
+     * Opens a trace file for appending the trace of an analysis.
+     *
+     * @param file The trace file. If it does not exist, it is created.
+     * @param engine The identifier of the model that performs the analysis
+     * @return The trace
+     * @throws IOException If the file could not be opened
+     */
+    public static ValidationTrace open(final File file, final String engine) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        final ValidationTrace trace = new ValidationTrace(file, channel);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (channel.size() == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            out.writeByte(ANALYSIS);
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(engine);
+        }
+        trace.write(ByteBuffer.wrap(bytes.toByteArray()));
+        return trace;
+    }
+
+    /**
+     * @return The trace file
+     */
+    public File getFile() {
+        return _file;
+    }
+
+    /**
+     * Records the start of a job.
+     *
+     * @param hypothesisId The id of the hypothesis
+     * @param locusName The name of the locus
+     * @param replicates The replicate loci, in the order of the replicate
+     * probabilities of the permutations
+     * @param knownAlleles The alleles of the known contributors
+     * @param knownAlleleCount The number of elements of knownAlleles in use
+     * @return The trace of the job
+     */
+    public Job startJob(final String hypothesisId, final String locusName, final Collection<Locus> replicates, final Allele[] knownAlleles, final int knownAlleleCount) {
+        final Job job = new Job(_jobIds.incrementAndGet(), replicates.size());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(JOB);
+            out.writeInt(job._id);
+            out.writeUTF(hypothesisId);
+            out.writeUTF(locusName);
+            out.writeInt(replicates.size());
+            for (final Locus replicate : replicates) {
+                out.writeUTF(replicate.getSampleId());
+                writeAlleles(out, replicate.getAlleles());
+            }
+            out.writeInt(knownAlleleCount);
+            for (int idx = 0; idx < knownAlleleCount; idx++) {
+                out.writeUTF(knownAlleles[idx].getAllele());
+                out.writeBoolean(knownAlleles[idx].isHomozygote());
+                out.writeUTF(knownAlleles[idx].getLocus().getSampleId());
+            }
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        append(bytes.toByteArray());
+        return job;
+    }
+
+    /**
+     * Closes the trace.
+     *
+     * @param complete If true, all jobs have finished and the records still
+     * buffered are written. If false, jobs may still be running and their
+     * buffered records are discarded.
+     * @throws IOException If the records could not be written
+     */
+    public void close(final boolean complete) throws IOException {
+        _closed = true;
+        try {
+            if (complete) {
+                for (final ByteBuffer buffer : _buffers) {
+                    flush(buffer);
+                }
+            }
+        } finally {
+            _channel.close();
+        }
+    }
+
+    private static void writeAlleles(final DataOutputStream out, final Collection<Allele> alleles) throws IOException {
+        out.writeInt(alleles.size());
+        for (final Allele allele : alleles) {
+            out.writeUTF(allele.getAllele());
+            out.writeBoolean(allele.isHomozygote());
+        }
+    }
+
+    private void append(final byte[] record) {
+        reserve(record.length).put(record);
+    }
+
+    /**
+     * Makes room for a record in the buffer of the current thread.
+     *
+     * @param size The size of the record in bytes
+     * @return The buffer to write the record to
+     */
+    private ByteBuffer reserve(final int size) {
+        if (_closed) {
+            throw new IllegalStateException("The validation trace " + _file + " was closed");
+        }
+        ByteBuffer buffer = _buffer.get();
+        if (buffer.remaining() < size) {
+            flush(buffer);
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(size);
+                _buffers.add(buffer);
+                _buffer.set(buffer);
+            }
+        }
+        return buffer;
+    }
+
+    private void flush(final ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            write(buffer);
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Error writing the validation trace " + _file, ex);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void write(final ByteBuffer block) throws IOException {
+        // Blocks of different threads must not interleave
+        synchronized (_channel) {
+            while (block.hasRemaining()) {
+                _channel.write(block);
+            }
+        }
+    }
+
+    /**
+     * Renders a trace as the human-readable validation log. The lines of
+     * concurrent jobs appear in the order in which their blocks were written.
+     * A trace that ends in an incomplete record, for instance because the
+     * analysis was interrupted, is rendered up to that record.
+     *
+     * @param in The trace
+     * @param out The writer for the log
+     * @throws IOException If the trace could not be read, or is not a
+     * validation trace
+     */
+    public static void render(final InputStream in, final PrintWriter out) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a validation trace");
+        }
+        final int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported validation trace version " + version);
+        }
+        final Map<Integer, TracedJob> jobs = new HashMap<>();
+        try {
+            while (true) {
+                final int type = data.read();
+                if (type < 0) {
+                    break;
+                }
+                switch (type) {
+                    case ANALYSIS:
+                        jobs.clear();
+                        out.printf("Analysis started %1$tF %1$tT with model %2$s%n", data.readLong(), data.readUTF());
+                        break;
+                    case JOB:
+                        final TracedJob job = TracedJob.read(data);
+                        jobs.put(job._id, job);
+                        break;
+                    case GENOTYPE:
+                        getJob(jobs, data.readInt())._genotypes.put(data.readInt(), readAlleles(data));
+                        break;
+                    case PERMUTATION:
+                        getJob(jobs, data.readInt()).renderPermutation(data, out);
+                        break;
+                    case JOB_END:
+                        final TracedJob finished = getJob(jobs, data.readInt());
+                        out.printf("%s Locus %s job %d done, probability = %s%n", finished._hypothesisId, finished._locusName, finished._id, data.readDouble());
+                        out.println();
+                        jobs.remove(finished._id);
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + type + " in validation trace");
+                }
+            }
+        } catch (final EOFException eof) {
+            out.println("Validation trace ends in an incomplete record");
+        }
+        out.flush();
+    }
+
+    private static TracedJob getJob(final Map<Integer, TracedJob> jobs, final int id) throws IOException {
+        final TracedJob job = jobs.get(id);
+        if (job == null) {
+            throw new IOException("Validation trace refers to unknown job " + id);
+        }
+        return job;
+    }
+
+    private static List<TracedAllele> readAlleles(final DataInputStream data) throws IOException {
+        final int count = data.readInt();
+        final ArrayList<TracedAllele> alleles = new ArrayList<>(count);
+        for (int idx = 0; idx < count; idx++) {
+            alleles.add(new TracedAllele(data.readUTF(), data.readBoolean(), ""));
+        }
+        return alleles;
+    }
+
+    /**
+     * An allele as read from a trace.
+     */
+    private static final class TracedAllele {
+
+        private final String _allele;
+        private final boolean _homozygote;
+        private final String _sampleId;
+
+        private TracedAllele(final String allele, final boolean homozygote, final String sampleId) {
+            _allele = allele;
+            _homozygote = homozygote;
+            _sampleId = sampleId;
+        }
+
+        @Override
+        public String toString() {
+            return _allele + (_homozygote ? "'" : "");
+        }
+    }
+
+    /**
+     * A job as read from a trace, with the genotypes read so far.
+     */
+    private static final class TracedJob {
+
+        private int _id;
+        private String _hypothesisId;
+        private String _locusName;
+        private final List<List<TracedAllele>> _replicates = new ArrayList<>();
+        private final List<TracedAllele> _knownAlleles = new ArrayList<>();
+        private final Map<Integer, List<TracedAllele>> _genotypes = new HashMap<>();
+
+        private static TracedJob read(final DataInputStream data) throws IOException {
+            final TracedJob job = new TracedJob();
+            job._id = data.readInt();
+            job._hypothesisId = data.readUTF();
+            job._locusName = data.readUTF();
+            final int replicateCount = data.readInt();
+            for (int idx = 0; idx < replicateCount; idx++) {
+                data.readUTF();
+                job._replicates.add(readAlleles(data));
+            }
+            final int knownCount = data.readInt();
+            for (int idx = 0; idx < knownCount; idx++) {
+                job._knownAlleles.add(new TracedAllele(data.readUTF(), data.readBoolean(), data.readUTF()));
+            }
+            return job;
+        }
+
+        private void renderPermutation(final DataInputStream data, final PrintWriter out) throws IOException {
+            final int permutationFactor = data.readInt();
+            final int unknownCount = data.readInt();
+            final List<TracedAllele> alleles = new ArrayList<>(_knownAlleles);
+            final StringBuilder permutation = new StringBuilder();
+            for (int idx = 0; idx < unknownCount; idx++) {
+                final int index = data.readInt();
+                final List<TracedAllele> genotype = _genotypes.get(index);
+                if (genotype == null) {
+                    throw new IOException("Validation trace refers to unknown genotype " + index + " of job " + _id);
+                }
+                permutation.append(idx == 0 ? "" : "; ").append(genotype);
+                // Like the calculation, the allele of a homozygous genotype is only counted once
+                for (final TracedAllele allele : genotype) {
+                    alleles.add(new TracedAllele(allele._allele, allele._homozygote, ""));
+                    if (allele._homozygote) {
+                        break;
+                    }
+                }
+            }
+            final int replicateCount = data.readInt();
+            double replicateProbability = 1;
+            for (int idx = 0; idx < replicateCount; idx++) {
+                final double probability = data.readDouble();
+                replicateProbability *= probability;
+                out.printf("%s Locus %s Replicate %s Permutation %s replicate probability formula:%s = %s%n", _hypothesisId, _locusName, _replicates.get(idx), toAlleleString(alleles), getFormula(_replicates.get(idx), alleles), probability);
+            }
+            final double genotypeProbability = data.readDouble();
+            if (unknownCount == 0) {
+                out.printf("%s Locus %s locusProbability = %s%n", _hypothesisId, _locusName, replicateProbability);
+            } else {
+                out.printf("%s Locus %s Permutation [%s] (%d) pRep = %s pGen = %s locusProbability = %s%n", _hypothesisId, _locusName, permutation, permutationFactor, replicateProbability, genotypeProbability, genotypeProbability * replicateProbability);
+            }
+        }
+
+        private static String toAlleleString(final List<TracedAllele> alleles) {
+            final StringBuilder builder = new StringBuilder("[");
+            for (final TracedAllele allele : alleles) {
+                builder.append(builder.length() == 1 ? "" : ", ").append(allele._allele);
+            }
+            return builder.append(']').toString();
+        }
+
+        /**
+         * Builds the formula of a replicate probability in the notation of the
+         * validation log, by classifying the alleles in the same way as the
+         * calculation: alleles of contributors that are absent from the
+         * replicate have dropped out, alleles present in the replicate have
+         * not dropped out for at least one contributor, and alleles in the
+         * replicate that no contributor has have dropped in.
+         */
+        private static String getFormula(final List<TracedAllele> replicate, final List<TracedAllele> alleles) {
+            final StringBuilder formula = new StringBuilder();
+            final Map<String, StringBuilder> presentFactors = new LinkedHashMap<>();
+            for (final TracedAllele allele : replicate) {
+                presentFactors.put(allele._allele, new StringBuilder());
+            }
+            for (final TracedAllele allele : alleles) {
+                final String person = allele._sampleId.isEmpty() ? "unknown" : allele._sampleId;
+                final StringBuilder factors = presentFactors.get(allele._allele);
+                if (factors == null) {
+                    formula.append(" d_").append(person).append(allele._homozygote ? "^2" : "");
+                } else {
+                    factors.append(" d_").append(person).append(allele._homozygote ? "^2" : "");
+                }
+            }
+            boolean droppedIn = false;
+            for (final Map.Entry<String, StringBuilder> entry : presentFactors.entrySet()) {
+                if (entry.getValue().length() > 0) {
+                    formula.append(" (1-").append(entry.getValue()).append(')');
+                }
+            }
+            for (final Map.Entry<String, StringBuilder> entry : presentFactors.entrySet()) {
+                if (entry.getValue().length() == 0) {
+                    formula.append(" cp").append(entry.getKey());
+                    droppedIn = true;
+                }
+            }
+            if (!droppedIn) {
+                formula.append(" (1-c)");
+            }
+            return formula.toString();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * Copyright (C) 2013, 2014 Netherlands Forensic Institute
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The connection of a {@link SplitDropDistributed} coordinator to a single
+ * {@link SplitDropWorker}. Ranges are sent by the threads that evaluate them,
+ * which then wait for the result. A reader thread receives the results and
+ * hands them to the waiting threads. If the connection fails or the worker
+ * stays silent for longer than {@link DistributedProtocol#READ_TIMEOUT}, the
+ * worker is considered dead and all ranges it was evaluating fail with an
+ * {@link IOException}.
+ */
+class WorkerConnection {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkerConnection.class);
+    private static final AtomicLong TASK_IDS = new AtomicLong();
+    private final InetSocketAddress _address;
+    private final Socket _socket;
+    private final DataInputStream _in;
+    private final DataOutputStream _out;
+    private final int _threadCount;
+    private final Map<Long, PendingRange> _pending = new HashMap<>();
+    private final Set<Long> _sentCases = new HashSet<>();
+    private boolean _alive = true;
+    private volatile boolean _closed;
+    private int _busy;
+
+    /**
+     * A range that was sent to the worker and for which no result has been
+     * received.
+     */
+    private static class PendingRange {
+
+        private final LocusProbability _target;
+        private boolean _done;
+        private String _error;
+        private IOException _failure;
+
+        public PendingRange(final LocusProbability target) {
+            _target = target;
+        }
+    }
+
+    private WorkerConnection(final InetSocketAddress address, final Socket socket, final String secret) throws IOException {
+        _address = address;
+        _socket = socket;
+        _in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        _out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (_in.readByte() != DistributedProtocol.HELLO) {
+            throw new IOException("Worker " + address + " did not identify itself");
+        }
+        final int version = _in.readInt();
+        if (version != DistributedProtocol.VERSION) {
+            throw new IOException("Worker " + address + " uses protocol version " + version + ", expected " + DistributedProtocol.VERSION);
+        }
+        final byte[] challenge = new byte[DistributedProtocol.CHALLENGE_LENGTH];
+        _in.readFully(challenge);
+        _out.writeByte(DistributedProtocol.AUTH);
+        _out.write(DistributedProtocol.getResponse(secret, challenge));
+        _out.flush();
+        final byte type;
+        try {
+            type = _in.readByte();
+        } catch (final EOFException e) {
+            throw new IOException("Worker " + address + " rejected the shared secret");
+        }
+        if (type != DistributedProtocol.READY) {
+            throw new IOException("Worker " + address + " sent unexpected message type " + type);
+        }
+        _threadCount = _in.readInt();
+        if (_threadCount < 1) {
+            throw new IOException("Worker " + address + " has no threads");
+        }
+    }
+
+    /**
+     * Connects to a worker.
+     *
+     * @param address The address of the worker
+     * @param secret The secret shared with the worker
+     * @return The connection
+     * @throws IOException if the worker could not be reached, did not
+     * respond as expected or rejected the secret
+     */
+    static WorkerConnection connect(final InetSocketAddress address, final String secret) throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.connect(address, DistributedProtocol.READ_TIMEOUT);
+            socket.setSoTimeout(DistributedProtocol.READ_TIMEOUT);
+            socket.setTcpNoDelay(true);
+            final WorkerConnection connection = new WorkerConnection(address, socket, secret);
+            connection.startReader();
+            LOG.info("Connected to worker {} with {} threads", address, connection._threadCount);
+            return connection;
+        } catch (final IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void startReader() {
+        final Thread reader = new Thread("WorkerConnection " + _address) {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final byte type = _in.readByte();
+                        switch (type) {
+                            case DistributedProtocol.RESULT: {
+                                final long taskId = _in.readLong();
+                                final double mantissa = _in.readDouble();
+                                final int exponent = _in.readInt();
+                                final double genotypeMass = _in.readDouble();
+                                final PendingRange range = remove(taskId);
+                                if (range != null) {
+                                    synchronized (range) {
+                                        range._target.addValue(mantissa, exponent);
+                                        range._target.addGenotypeMass(genotypeMass);
+                                        range._done = true;
+                                        range.notifyAll();
+                                    }
+                                }
+                                break;
+                            }
+                            case DistributedProtocol.ERROR: {
+                                final long taskId = _in.readLong();
+                                final String message = _in.readUTF();
+                                final PendingRange range = remove(taskId);
+                                if (range != null) {
+                                    synchronized (range) {
+                                        range._error = message;
+                                        range._done = true;
+                                        range.notifyAll();
+                                    }
+                                }
+                                break;
+                            }
+                            case DistributedProtocol.HEARTBEAT:
+                                break;
+                            default:
+                                throw new IOException("Unexpected message type " + type);
+                        }
+                    }
+                } catch (final IOException e) {
+                    fail(e);
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private synchronized PendingRange remove(final long taskId) {
+        return _pending.remove(taskId);
+    }
+
+    /**
+     * Marks the worker as dead and fails all ranges it was evaluating.
+     */
+    private void fail(final IOException cause) {
+        final ArrayList<PendingRange> pending;
+        synchronized (this) {
+            if (!_alive) {
+                return;
+            }
+            _alive = false;
+            pending = new ArrayList<>(_pending.values());
+            _pending.clear();
+        }
+        if (_closed) {
+            LOG.debug("Closed connection to worker {}", _address);
+        } else {
+            LOG.warn("Lost connection to worker {}: {}", _address, cause.getMessage());
+        }
+        close();
+        for (final PendingRange range : pending) {
+            synchronized (range) {
+                range._failure = new IOException("Lost connection to worker " + _address, cause);
+                range._done = true;
+                range.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Evaluates a range on the worker and adds the result to the supplied
+     * locus probability. The calling thread blocks until the result has been
+     * received.
+     *
+     * @param caseId The identifier of the case
+     * @param caseData The case serialized by {@link CaseSerializer}. This is
+     * only sent if the worker has not received the case before.
+     * @param hypothesisId The identifier of the hypothesis
+     * @param locusName The name of the locus
+     * @param from The rank of the first permutation to evaluate
+     * @param to The rank after the last permutation to evaluate
+     * @param size The size of the permutation space on the coordinator
+     * @param fingerprint The fingerprint of the permutation space on the
+     * coordinator
+     * @param target The locus probability to add the result to
+     * @throws IOException if the worker died before the result was received.
+     * The range can be evaluated by another worker.
+     * @throws IllegalStateException if the worker could not evaluate the range
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    void evaluate(final long caseId, final byte[] caseData, final String hypothesisId, final String locusName, final long from, final long to, final long size, final long fingerprint, final LocusProbability target) throws IOException, InterruptedException {
+        final long taskId = TASK_IDS.incrementAndGet();
+        final PendingRange range = new PendingRange(target);
+        synchronized (this) {
+            if (!_alive) {
+                throw new IOException("Worker " + _address + " is dead");
+            }
+            _pending.put(taskId, range);
+        }
+        try {
+            synchronized (_out) {
+                if (_sentCases.add(caseId)) {
+                    _out.writeByte(DistributedProtocol.CASE);
+                    _out.writeLong(caseId);
+                    _out.writeInt(caseData.length);
+                    _out.write(caseData);
+                }
+                _out.writeByte(DistributedProtocol.RANGE);
+                _out.writeLong(taskId);
+                _out.writeLong(caseId);
+                _out.writeUTF(hypothesisId);
+                _out.writeUTF(locusName);
+                _out.writeLong(from);
+                _out.writeLong(to);
+                _out.writeLong(size);
+                _out.writeLong(fingerprint);
+                _out.flush();
+            }
+        } catch (final IOException e) {
+            fail(e);
+        }
+
+        try {
+            synchronized (range) {
+                while (!range._done) {
+                    range.wait();
+                }
+            }
+        } finally {
+            remove(taskId);
+        }
+        if (range._failure != null) {
+            throw range._failure;
+        }
+        if (range._error != null) {
+            throw new IllegalStateException("Worker " + _address + " failed to evaluate " + locusName + " under " + hypothesisId + ": " + range._error);
+        }
+    }
+
+    /**
+     * Reserves a thread of the worker.
+     *
+     * @return true if the worker is alive and had an idle thread
+     */
+    synchronized boolean tryAcquire() {
+        if (_alive && _busy < _threadCount) {
+            _busy++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Releases a thread reserved by {@link #tryAcquire()}.
+     */
+    synchronized void release() {
+        _busy--;
+    }
+
+    synchronized boolean isAlive() {
+        return _alive;
+    }
+
+    InetSocketAddress getAddress() {
+        return _address;
+    }
+
+    int getThreadCount() {
+        return _threadCount;
+    }
+
+    /**
+     * Closes the connection. Ranges that are still being evaluated fail.
+     */
+    void close() {
+        _closed = true;
+        try {
+            _socket.close();
+        } catch (final IOException e) {
+            LOG.debug("Error closing connection to {}: {}", _address, e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return _address.toString();
+    }
+}
@@ -24,6 +24,8 @@ public abstract class AbstractGenotypeProbabilityCalculator implements GenotypeP
 
     private static final Logger LOG = new ValidationLogger(LoggerFactory.getLogger(AbstractGenotypeProbabilityCalculator.class));
     private final HashMap<Locus, HashMap<Locus, Double>> _probabilityCache = new HashMap<>();
+    private long _cacheHits;
+    private long _cacheMisses;
 
     @Override
     public double calculate(int[] alleleCounts, Locus subjectLocus) {
@@ -43,12 +45,14 @@ public abstract class AbstractGenotypeProbabilityCalculator implements GenotypeP
             } else {
                 Double cachedValue = probsPerReferenceLocus.get(subjectLocus);
                 if (cachedValue != null) {
+                    _cacheHits++;
                     LOG.debug("Genotype Probability for {} from cache = {}", referenceLocus, cachedValue);
                     return cachedValue;
                 }
             }
         }
 
+        _cacheMisses++;
         double calculateSpi = calculateSpi(alleleCounts, referenceLocus, subjectLocus);
         if (!ApplicationSettings.isValidationMode()) {
             probsPerReferenceLocus.put(subjectLocus, calculateSpi);
@@ -57,6 +61,21 @@ public abstract class AbstractGenotypeProbabilityCalculator implements GenotypeP
         return calculateSpi;
     }
 
+    /**
+     * @return The number of genotype probabilities that were taken from the
+     * cache
+     */
+    public long getCacheHits() {
+        return _cacheHits;
+    }
+
+    /**
+     * @return The number of genotype probabilities that were calculated
+     */
+    public long getCacheMisses() {
+        return _cacheMisses;
+    }
+
     /**
      * Method to be implemented by concrete subclasses of this class to perform
      * the actual probability calculations.
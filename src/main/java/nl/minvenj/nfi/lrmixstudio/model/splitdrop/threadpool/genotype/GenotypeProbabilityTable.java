@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+
+/**
+ * A precalculated table of genotype probabilities for the candidate genotypes
+ * of the unknowns at a single locus under a single hypothesis. Genotypes are
+ * identified by their ordinal in the collection of candidate genotypes, and
+ * alleles by a dense local index.
+ *
+ * The probability of the first unknown, which may be related to a known
+ * individual, is stored per genotype. The probabilities of the remaining
+ * unknowns depend on the alleles drawn before them, and are calculated from
+ * the precalculated terms of the theta-corrected sampling formula:
+ * <pre>
+ *   (n + c) * Theta + (1 - Theta) * p
+ * </pre>
+ * where n is the number of copies of the allele in the known profiles, c is
+ * the number of copies drawn by previous unknowns and p is the allele
+ * frequency. If theta is zero, the term reduces to the Hardy/Weinberg allele
+ * frequency.
+ *
+ * Instances are immutable and can be shared by all jobs for the locus and
+ * hypothesis. Each thread needs its own count buffer obtained from
+ * {@link #createCountBuffer()}.
+ *
+ * @author dejong
+ */
+public final class GenotypeProbabilityTable {
+
+    private final int[] _allele1;
+    private final int[] _allele2;
+    private final double[] _heterozygoteFactor;
+    private final double[] _relatedProbability;
+    private final double[][] _alleleTerms;
+    private final double _denominator;
+
+    private GenotypeProbabilityTable(final int[] allele1, final int[] allele2, final double[] heterozygoteFactor, final double[] relatedProbability, final double[][] alleleTerms, final double denominator) {
+        _allele1 = allele1;
+        _allele2 = allele2;
+        _heterozygoteFactor = heterozygoteFactor;
+        _relatedProbability = relatedProbability;
+        _alleleTerms = alleleTerms;
+        _denominator = denominator;
+    }
+
+    /**
+     * Creates a table for the given locus and hypothesis.
+     *
+     * @param locusName The name of the locus
+     * @param hypothesis The hypothesis to evaluate
+     * @param genotypes The candidate genotypes for the unknowns
+     * @return A new table
+     * @throws IllegalArgumentException if a known profile does not contain the
+     * locus or a genotype does not have two alleles
+     */
+    public static GenotypeProbabilityTable create(final String locusName, final Hypothesis hypothesis, final Collection<Locus> genotypes) {
+        final ArrayList<Locus> knownLoci = new ArrayList<>();
+        final ArrayList<Contributor> knownProfiles = new ArrayList<>(hypothesis.getContributors());
+        knownProfiles.addAll(hypothesis.getNonContributors());
+        for (final Contributor contributor : knownProfiles) {
+            final Locus locus = contributor.getSample().getLocus(locusName);
+            if (locus == null) {
+                throw new IllegalArgumentException("Input error: profile " + contributor.getSample().getId() + " does not contain locus " + locusName);
+            }
+            knownLoci.add(locus);
+        }
+
+        // Count the alleles in the known profiles. The counts only need to cover the alleles of the known profiles and the genotypes.
+        final int[] alleleCounts = new int[Math.max(getAlleleIdLimit(knownLoci), getAlleleIdLimit(genotypes))];
+        int totalAlleleCount = 0;
+        for (final Locus locus : knownLoci) {
+            for (final Allele allele : locus.getAlleles()) {
+                alleleCounts[allele.getId()]++;
+                totalAlleleCount++;
+            }
+        }
+
+        final GenotypeProbabilityCalculator relatedCalculator = GenotypeProbabilityCalculatorFactory.getRelatedGenotypeProbabilityCalculator(hypothesis);
+        final HashMap<Integer, Integer> localIds = new HashMap<>();
+        final ArrayList<Allele> alleles = new ArrayList<>();
+        final ArrayList<Locus> alleleLoci = new ArrayList<>();
+        final int[] allele1 = new int[genotypes.size()];
+        final int[] allele2 = new int[genotypes.size()];
+        final double[] heterozygoteFactor = new double[genotypes.size()];
+        final double[] relatedProbability = new double[genotypes.size()];
+        int genotypeIndex = 0;
+        for (final Locus genotype : genotypes) {
+            final List<Allele> genotypeAlleles = new ArrayList<>(genotype.getAlleles());
+            if (genotypeAlleles.size() != 2) {
+                throw new IllegalArgumentException("Genotype " + genotype + " does not have 2 alleles!");
+            }
+            final int[] ids = new int[2];
+            for (int idx = 0; idx < 2; idx++) {
+                final Allele allele = genotypeAlleles.get(idx);
+                Integer localId = localIds.get(allele.getId());
+                if (localId == null) {
+                    localId = alleles.size();
+                    localIds.put(allele.getId(), localId);
+                    alleles.add(allele);
+                    alleleLoci.add(genotype);
+                }
+                ids[idx] = localId;
+            }
+            allele1[genotypeIndex] = ids[0];
+            allele2[genotypeIndex] = ids[1];
+            heterozygoteFactor[genotypeIndex] = genotype.isHomozygote() ? 1 : 2;
+            final int[] counts = new int[alleleCounts.length];
+            System.arraycopy(alleleCounts, 0, counts, 0, alleleCounts.length);
+            relatedProbability[genotypeIndex] = relatedCalculator.calculate(counts, genotype);
+            genotypeIndex++;
+        }
+
+        // The unknowns draw 2 copies each, so no allele can have more copies than that before a draw
+        final double theta = hypothesis.getThetaCorrection();
+        final int maxCopies = 2 * hypothesis.getUnknownCount();
+        final double[][] alleleTerms = new double[alleles.size()][maxCopies + 1];
+        for (int idx = 0; idx < alleles.size(); idx++) {
+            final Allele allele = alleles.get(idx);
+            final double p = hypothesis.getPopulationStatistics().getProbability(alleleLoci.get(idx), allele);
+            for (int copies = 0; copies <= maxCopies; copies++) {
+                if (theta == 0) {
+                    alleleTerms[idx][copies] = p;
+                } else {
+                    alleleTerms[idx][copies] = (alleleCounts[allele.getId()] + copies) * theta + (1 - theta) * p;
+                }
+            }
+        }
+
+        double denominator = 1;
+        if (theta > 0) {
+            for (int i = totalAlleleCount + (hypothesis.getRelatedness().getRelation() == Relation.NONE ? 0 : 2); i < totalAlleleCount + hypothesis.getUnknownCount() * 2; i++) {
+                denominator *= (1 + (i - 1) * theta);
+            }
+        }
+
+        return new GenotypeProbabilityTable(allele1, allele2, heterozygoteFactor, relatedProbability, alleleTerms, denominator);
+    }
+
+    private static int getAlleleIdLimit(final Collection<Locus> loci) {
+        int limit = 0;
+        for (final Locus locus : loci) {
+            for (final Allele allele : locus.getAlleles()) {
+                limit = Math.max(limit, allele.getId() + 1);
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @return The number of candidate genotypes
+     */
+    public int getGenotypeCount() {
+        return _allele1.length;
+    }
+
+    /**
+     * @return The number of distinct alleles in the candidate genotypes
+     */
+    public int getAlleleCount() {
+        return _alleleTerms.length;
+    }
+
+    /**
+     * @param genotype The ordinal of a candidate genotype
+     * @return The local index of the first allele of the genotype
+     */
+    public int getAllele1(final int genotype) {
+        return _allele1[genotype];
+    }
+
+    /**
+     * @param genotype The ordinal of a candidate genotype
+     * @return The local index of the second allele of the genotype. This is
+     * equal to the first allele for homozygotes.
+     */
+    public int getAllele2(final int genotype) {
+        return _allele2[genotype];
+    }
+
+    /**
+     * @param genotype The ordinal of a candidate genotype
+     * @return The probability of the first unknown having this genotype
+     */
+    public double getRelatedProbability(final int genotype) {
+        return _relatedProbability[genotype];
+    }
+
+    /**
+     * @param allele The local index of an allele
+     * @param copies The number of copies of the allele drawn by previous
+     * unknowns
+     * @return The term of the sampling formula for drawing the next copy of the
+     * allele
+     */
+    public double getAlleleTerm(final int allele, final int copies) {
+        return _alleleTerms[allele][copies];
+    }
+
+    /**
+     * @return The theta correction denominator for the unknowns
+     */
+    public double getDenominator() {
+        return _denominator;
+    }
+
+    /**
+     * @return A buffer to hold the number of copies of each allele drawn by
+     * the unknowns during a calculation. The buffer must be all zeroes between
+     * calls, which {@link #calculate(int[], int[])} guarantees.
+     */
+    public int[] createCountBuffer() {
+        return new int[_alleleTerms.length];
+    }
+
+    /**
+     * Calculates the genotype probability of a combination of genotypes for
+     * the unknowns.
+     *
+     * @param genotypes The genotype ordinal for each unknown. The first entry
+     * is the genotype of the unknown that may be related to a known individual.
+     * @param counts A buffer obtained from {@link #createCountBuffer()}
+     * @return The genotype probability of the combination
+     */
+    public double calculate(final int[] genotypes, final int[] counts) {
+        double genotypeProbability = _relatedProbability[genotypes[0]];
+        counts[_allele1[genotypes[0]]]++;
+        counts[_allele2[genotypes[0]]]++;
+        for (int idx = 1; idx < genotypes.length; idx++) {
+            final int allele1 = _allele1[genotypes[idx]];
+            final int allele2 = _allele2[genotypes[idx]];
+            genotypeProbability *= _heterozygoteFactor[genotypes[idx]] * _alleleTerms[allele1][counts[allele1]++];
+            genotypeProbability *= _alleleTerms[allele2][counts[allele2]++];
+        }
+
+        for (int idx = 0; idx < genotypes.length; idx++) {
+            counts[_allele1[genotypes[idx]]] = 0;
+            counts[_allele2[genotypes[idx]]] = 0;
+        }
+        return genotypeProbability / _denominator;
+    }
+}
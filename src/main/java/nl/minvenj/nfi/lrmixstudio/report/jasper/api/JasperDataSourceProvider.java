@@ -40,6 +40,7 @@ import nl.minvenj.nfi.lrmixstudio.domain.Sample;
 import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
 import nl.minvenj.nfi.lrmixstudio.io.PopulationStatisticsReader;
 import nl.minvenj.nfi.lrmixstudio.io.SampleReader;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisPerformance;
 import nl.minvenj.nfi.lrmixstudio.model.AnalysisReport;
 import nl.minvenj.nfi.lrmixstudio.model.DropoutEstimation;
 import nl.minvenj.nfi.lrmixstudio.model.NonContributorTestResults;
@@ -253,6 +254,15 @@ public class JasperDataSourceProvider implements JRDataSourceProvider {
                 return 0;
             }
 
+            @Override
+            public AnalysisPerformance getPerformance() {
+                return null;
+            }
+
+            @Override
+            public void setPerformance(final AnalysisPerformance performance) {
+            }
+
             @Override
             public Collection<String> getEnabledLoci() {
                 return new ArrayList<>();
@@ -4,6 +4,9 @@
  */
 package nl.minvenj.nfi.lrmixstudio;
 
+import nl.minvenj.nfi.lrmixstudio.cli.BatchPipelineTest;
+import nl.minvenj.nfi.lrmixstudio.cli.LRmixStudioCliTest;
+import nl.minvenj.nfi.lrmixstudio.cli.ScalingBenchmarkTest;
 import nl.minvenj.nfi.lrmixstudio.domain.DomainSuite;
 import nl.minvenj.nfi.lrmixstudio.io.IoSuite;
 import nl.minvenj.nfi.lrmixstudio.model.ModelSuite;
@@ -19,7 +22,7 @@ import org.junit.runners.Suite;
  * @author dejong
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({DomainSuite.class, IoSuite.class, ModelSuite.class})
+@Suite.SuiteClasses({DomainSuite.class, IoSuite.class, ModelSuite.class, LRmixStudioCliTest.class, BatchPipelineTest.class, ScalingBenchmarkTest.class})
 public class LrmixStudioSuite {
 
     @BeforeClass
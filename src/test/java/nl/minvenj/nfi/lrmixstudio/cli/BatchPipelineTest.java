@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author dejong
+ */
+public class BatchPipelineTest {
+
+    private File _directory;
+
+    public BatchPipelineTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("lrmixstudio-batch").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(_directory);
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private String getPath(final String resourceName) throws Exception {
+        return new File(getClass().getResource(resourceName).toURI()).getAbsolutePath();
+    }
+
+    private File writeManifest(final String... lines) throws IOException {
+        final File manifest = new File(_directory, "manifest.txt");
+        final StringBuilder content = new StringBuilder();
+        for (final String line : lines) {
+            content.append(line).append("\n");
+        }
+        Files.write(manifest.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        return manifest;
+    }
+
+    private String caseLine(final String caseNumber, final String contributor) throws Exception {
+        return "--replicates \"" + getPath("/testfiles/case-05/sample.txt") + "\" --profiles \"" + getPath("/testfiles/case-05/suspect.txt") + "\" --case-number " + caseNumber + " --hp-contributors " + contributor + " --hp-unknowns 2 --hd-unknowns 3";
+    }
+
+    /**
+     * Test of readCases method with a manifest, of class BatchPipeline.
+     */
+    @Test
+    public void testReadCasesManifest() throws Exception {
+        System.out.println("readCasesManifest");
+        final File manifest = writeManifest("# A comment", "", "--case-number \"case 1\" --dropout 0.2", "--case-number \"case 1\"", "--dropin 0.1");
+        final List<String> common = Arrays.asList("--statistics", "stats.csv");
+        final List<BatchCase> cases = BatchPipeline.readCases(manifest, common);
+        assertEquals(3, cases.size());
+        assertEquals("case_1", cases.get(0).getName());
+        assertEquals(Arrays.asList("--statistics", "stats.csv", "--case-number", "case 1", "--dropout", "0.2"), cases.get(0).getArguments());
+        assertEquals("case_1-2", cases.get(1).getName());
+        assertEquals("case-5", cases.get(2).getName());
+    }
+
+    /**
+     * Test of readCases method with a directory, of class BatchPipeline.
+     */
+    @Test
+    public void testReadCasesDirectory() throws Exception {
+        System.out.println("readCasesDirectory");
+        Files.write(new File(_directory, "b.log").toPath(), new byte[0]);
+        Files.write(new File(_directory, "a.log").toPath(), new byte[0]);
+        new File(_directory, "subdirectory").mkdir();
+        final List<BatchCase> cases = BatchPipeline.readCases(_directory, Collections.<String>emptyList());
+        assertEquals(2, cases.size());
+        assertEquals("a", cases.get(0).getName());
+        assertEquals(Arrays.asList("--session", new File(_directory, "a.log").getAbsolutePath()), cases.get(0).getArguments());
+        assertEquals("b", cases.get(1).getName());
+    }
+
+    /**
+     * Test of run method, of class BatchPipeline.
+     */
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        final File manifest = writeManifest(caseLine("first", "suspect"), caseLine("second", "nobody"), caseLine("third", "suspect") + " --dropout 0.3");
+        final File output = new File(_directory, "reports");
+        final List<BatchCase> cases = BatchPipeline.readCases(manifest, Arrays.asList("--statistics", getPath("/testfiles/frequencies_NFI.csv")));
+        final BatchPipeline pipeline = new BatchPipeline(cases, output, CommandLineOptions.Format.JSON, 2);
+        pipeline.run();
+
+        assertEquals(1, pipeline.getFailedCount());
+        assertTrue(cases.get(0).isSucceeded());
+        assertFalse(cases.get(1).isSucceeded());
+        assertTrue(cases.get(1).getError().getMessage().contains("nobody"));
+        assertTrue(cases.get(2).isSucceeded());
+        assertTrue(pipeline.getCasesPerHour() > 0);
+
+        // The same case with a different dropout gives a different result
+        final double first = cases.get(0).getSession().getCurrentReport().getLikelihoodRatio().getOverallRatio().getLog10Ratio();
+        final double third = cases.get(2).getSession().getCurrentReport().getLikelihoodRatio().getOverallRatio().getLog10Ratio();
+        assertTrue(first != third);
+
+        assertTrue(new File(output, "first.json").isFile());
+        assertFalse(new File(output, "second.json").exists());
+        assertTrue(new File(output, "third.json").isFile());
+        final List<String> summary = Files.readAllLines(new File(output, BatchPipeline.SUMMARY_FILENAME).toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, summary.size());
+        assertTrue(summary.get(1).startsWith("first,OK," + first + ","));
+        assertTrue(summary.get(2).startsWith("second,FAILED,,"));
+        assertTrue(summary.get(3).startsWith("third,OK," + third + ","));
+    }
+
+    /**
+     * Test of the batch mode of the command line runner.
+     */
+    @Test
+    public void testCommandLine() throws Exception {
+        System.out.println("commandLine");
+        final File manifest = writeManifest(caseLine("first", "suspect"));
+        final File output = new File(_directory, "reports");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int result = LRmixStudioCli.run(new String[]{"--batch", manifest.getAbsolutePath(), "--output-dir", output.getAbsolutePath(), "--statistics", getPath("/testfiles/frequencies_NFI.csv"), "--format", "csv", "--concurrent-cases", "1"}, new PrintStream(out, true), new PrintStream(err, true));
+        assertEquals(LRmixStudioCli.EXIT_OK, result);
+        assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8).startsWith("Processed 1 cases (0 failed)"));
+        assertTrue(new File(output, "first.csv").isFile());
+
+        assertEquals(LRmixStudioCli.EXIT_USAGE, LRmixStudioCli.run(new String[]{"--batch", manifest.getAbsolutePath()}, new PrintStream(out, true), new PrintStream(err, true)));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.gui.SessionData;
+import nl.minvenj.nfi.lrmixstudio.model.LRMathModelFactory;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropWorker;
+
+/**
+ *
+ * @author dejong
+ */
+public class LRmixStudioCliTest {
+
+    private static final String SAMPLE_FILENAME = "/testfiles/case-05/sample.txt";
+    private static final String SUSPECT_FILENAME = "/testfiles/case-05/suspect.txt";
+    private static final String STATISTICS_FILENAME = "/testfiles/frequencies_NFI.csv";
+
+    private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream _err = new ByteArrayOutputStream();
+
+    public LRmixStudioCliTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private String getPath(final String resourceName) throws Exception {
+        return new File(getClass().getResource(resourceName).toURI()).getAbsolutePath();
+    }
+
+    private String[] caseArguments(final String... extra) throws Exception {
+        final String[] base = {"--replicates", getPath(SAMPLE_FILENAME), "--profiles", getPath(SUSPECT_FILENAME), "--statistics", getPath(STATISTICS_FILENAME), "--case-number", "case-05", "--hp-contributors", "suspect", "--hp-unknowns", "2", "--hd-unknowns", "3"};
+        final String[] args = new String[base.length + extra.length];
+        System.arraycopy(base, 0, args, 0, base.length);
+        System.arraycopy(extra, 0, args, base.length, extra.length);
+        return args;
+    }
+
+    private int run(final String... args) {
+        return LRmixStudioCli.run(args, new PrintStream(_out, true), new PrintStream(_err, true));
+    }
+
+    /**
+     * Test of run method with the help option, of class LRmixStudioCli.
+     */
+    @Test
+    public void testHelp() {
+        System.out.println("help");
+        assertEquals(LRmixStudioCli.EXIT_OK, run("--help"));
+        assertTrue(new String(_out.toByteArray(), StandardCharsets.UTF_8).startsWith("Usage"));
+    }
+
+    /**
+     * Test of run method with invalid arguments, of class LRmixStudioCli.
+     */
+    @Test
+    public void testInvalidArguments() throws Exception {
+        System.out.println("invalidArguments");
+        assertEquals(LRmixStudioCli.EXIT_USAGE, run("--unknown-option", "value"));
+        assertEquals(LRmixStudioCli.EXIT_USAGE, run("--replicates", getPath(SAMPLE_FILENAME)));
+        assertEquals(LRmixStudioCli.EXIT_USAGE, run(caseArguments("--dropout", "1.5")));
+        assertEquals(LRmixStudioCli.EXIT_USAGE, run(caseArguments("--sensitivity", "0.5:0.1:10")));
+        assertEquals(LRmixStudioCli.EXIT_USAGE, run(caseArguments("--format", "xml")));
+        assertEquals(LRmixStudioCli.EXIT_FAILED, run(caseArguments("--hd-contributors", "nobody")));
+        assertTrue(new String(_err.toByteArray(), StandardCharsets.UTF_8).contains("nobody"));
+    }
+
+    /**
+     * Test of createSession method, of class LRmixStudioCli.
+     */
+    @Test
+    public void testCreateSession() throws Exception {
+        System.out.println("createSession");
+        final SessionData session = LRmixStudioCli.createSession(CommandLineOptions.parse(caseArguments("--rare-allele-frequency", "0.0123", "--dropout", "0.2")));
+        assertEquals(0.0123, session.getRareAlleleFrequency(), 0);
+        assertEquals("0.0123", session.getStatistics().getRareAlleleFrequency());
+        assertEquals(1, session.getProsecution().getContributors().size());
+        assertEquals(0.2, session.getProsecution().getContributors().iterator().next().getDropoutProbability(), 0);
+        assertEquals(0, session.getDefense().getContributors().size());
+        assertEquals(3, session.getDefense().getUnknownCount());
+    }
+
+    /**
+     * Test of run method with JSON output, of class LRmixStudioCli.
+     */
+    @Test
+    public void testRunJson() throws Exception {
+        System.out.println("runJson");
+        final SessionData session = LRmixStudioCli.createSession(CommandLineOptions.parse(caseArguments()));
+        final LikelihoodRatio expected = LRMathModelFactory.getMathematicalModel(session.getMathematicalModelName()).doAnalysis(session);
+
+        assertEquals(LRmixStudioCli.EXIT_OK, run(caseArguments()));
+        final String json = new String(_out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"caseNumber\": \"case-05\""));
+        assertTrue(json.contains("\"overall\": {\"prosecution\": " + expected.getOverallRatio().getProsecutionProbability()));
+        assertTrue(json.contains("\"log10LR\": " + expected.getOverallRatio().getLog10Ratio() + "}"));
+        assertTrue(json.contains("{\"locus\": \"VWA\""));
+        assertTrue(json.trim().endsWith("}"));
+    }
+
+    /**
+     * Test of run method with CSV output and all additional analyses, of class
+     * LRmixStudioCli.
+     */
+    @Test
+    public void testRunCsv() throws Exception {
+        System.out.println("runCsv");
+        final File output = File.createTempFile("lrmixstudio-cli", ".csv");
+        output.deleteOnExit();
+        assertEquals(LRmixStudioCli.EXIT_OK, run(caseArguments("--format", "csv", "--output", output.getAbsolutePath(), "--sensitivity", "0.01:0.5:7", "--vary-unknowns", "--dropout-estimation", "50", "--non-contributor-test", "10")));
+
+        final String csv = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+        assertTrue(csv.startsWith("Locus,Pr(E|Hp),Pr(E|Hd),LR,Log10(LR)\n"));
+        assertTrue(csv.contains("\nOverall,"));
+        assertTrue(csv.contains("\nDropout,Log10(LR),Log10(Pr(E|Hp)),Log10(Pr(E|Hd))\n0.01,"));
+        assertTrue(csv.contains("\nDropout estimation,Iterations,Minimum,Maximum\nProsecution,50,"));
+        assertTrue(csv.contains("\nsuspect,10,"));
+        assertEquals(0, _out.size());
+    }
+
+    /**
+     * Test of run method with workers, of class LRmixStudioCli.
+     */
+    @Test
+    public void testRunWithWorkers() throws Exception {
+        System.out.println("runWithWorkers");
+        assertEquals(LRmixStudioCli.EXIT_USAGE, run(caseArguments("--workers", "localhost")));
+        assertEquals(LRmixStudioCli.EXIT_USAGE, run(caseArguments("--workers", "localhost:70000")));
+
+        final SessionData session = LRmixStudioCli.createSession(CommandLineOptions.parse(caseArguments()));
+        final LikelihoodRatio expected = LRMathModelFactory.getMathematicalModel(session.getMathematicalModelName()).doAnalysis(session);
+
+        assertEquals(LRmixStudioCli.EXIT_USAGE, run(caseArguments("--workers", "localhost:1")));
+
+        final SplitDropWorker worker = new SplitDropWorker(0, 2, "secret");
+        worker.start();
+        try {
+            _out.reset();
+            assertEquals(LRmixStudioCli.EXIT_OK, run(caseArguments("--workers", worker.getAddress().getHostAddress() + ":" + worker.getPort(), "--secret", "secret")));
+            final String json = new String(_out.toByteArray(), StandardCharsets.UTF_8);
+            // The partial sums are merged in order of completion, so the last digits may differ
+            final Matcher matcher = Pattern.compile("\"overall\": \\{.*\"log10LR\": ([^}]+)\\}").matcher(json);
+            assertTrue(matcher.find());
+            assertEquals(expected.getOverallRatio().getLog10Ratio(), Double.parseDouble(matcher.group(1)), 1E-10);
+        } finally {
+            worker.close();
+        }
+    }
+}
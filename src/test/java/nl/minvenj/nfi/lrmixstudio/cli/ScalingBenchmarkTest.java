@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.model.LRMathModelFactory;
+
+/**
+ *
+ * @author dejong
+ */
+public class ScalingBenchmarkTest {
+
+    public ScalingBenchmarkTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private String getPath(final String resourceName) throws Exception {
+        return new File(getClass().getResource(resourceName).toURI()).getAbsolutePath();
+    }
+
+    /**
+     * Test of run method, of class ScalingBenchmark.
+     */
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int exitCode = ScalingBenchmark.run(new String[]{"--statistics", getPath("/testfiles/frequencies_NFI.csv"), "--contributors", "1,2", "--replicates", "2", "--loci", "4", "--models", "all", "--threads", "1"}, new PrintStream(out, true, "UTF-8"), new PrintStream(err, true, "UTF-8"));
+        assertEquals(new String(err.toByteArray(), StandardCharsets.UTF_8), LRmixStudioCli.EXIT_OK, exitCode);
+
+        int modelCount = 0;
+        for (final String model : LRMathModelFactory.getAllModelNames()) {
+            modelCount++;
+        }
+        final String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(ScalingBenchmark.CSV_HEADER, lines[0]);
+        assertEquals(1 + 2 * modelCount, lines.length);
+        for (int idx = 1; idx < lines.length; idx++) {
+            final String[] fields = lines[idx].split(",");
+            assertEquals(12, fields.length);
+            assertEquals("ok", fields[6]);
+            assertTrue(Long.parseLong(fields[8]) > 0);
+            assertTrue(Long.parseLong(fields[10]) > 0);
+        }
+        // Every model calculates the same likelihood ratio for the same case
+        assertEquals(Double.parseDouble(lines[1].split(",")[11]), Double.parseDouble(lines[modelCount].split(",")[11]), 1e-9);
+    }
+
+    /**
+     * Test of run method with invalid arguments, of class ScalingBenchmark.
+     */
+    @Test
+    public void testRunInvalidArguments() throws Exception {
+        System.out.println("runInvalidArguments");
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final PrintStream errStream = new PrintStream(err, true, "UTF-8");
+        assertEquals(LRmixStudioCli.EXIT_USAGE, ScalingBenchmark.run(new String[]{"--contributors", "1"}, System.out, errStream));
+        assertTrue(new String(err.toByteArray(), StandardCharsets.UTF_8).contains("--statistics"));
+        assertEquals(LRmixStudioCli.EXIT_USAGE, ScalingBenchmark.run(new String[]{"--statistics", "stats.csv", "--replicates", "0"}, System.out, errStream));
+        assertEquals(LRmixStudioCli.EXIT_USAGE, ScalingBenchmark.run(new String[]{"--statistics", "stats.csv", "--models", "NoSuchModel"}, System.out, errStream));
+    }
+}
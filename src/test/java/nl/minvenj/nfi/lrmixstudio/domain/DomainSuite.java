@@ -16,7 +16,7 @@ import org.junit.runners.Suite;
  * @author dejong
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({AlleleTest.class, LocusTest.class, HypothesisTest.class, ContributorTest.class, SampleTest.class, RatioTest.class, LocusProbabilitiesTest.class, PopulationStatisticsTest.class, LikelihoodRatioTest.class})
+@Suite.SuiteClasses({AlleleTest.class, LocusTest.class, IdRegistryTest.class, HypothesisTest.class, ContributorTest.class, SampleTest.class, RatioTest.class, LocusProbabilitiesTest.class, PopulationStatisticsTest.class, LikelihoodRatioTest.class, LikelihoodRatioBoundsTest.class})
 public class DomainSuite {
 
     @BeforeClass
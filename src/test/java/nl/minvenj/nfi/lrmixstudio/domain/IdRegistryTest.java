@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author dejong
+ */
+public class IdRegistryTest {
+
+    public IdRegistryTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getId method, of class IdRegistry.
+     */
+    @Test
+    public void testGetId() {
+        System.out.println("getId");
+        final IdRegistry registry = new IdRegistry();
+        assertEquals(0, registry.size());
+        assertEquals(0, registry.getId("12"));
+        assertEquals(1, registry.getId("13"));
+        assertEquals(0, registry.getId("12"));
+        assertEquals(2, registry.size());
+    }
+
+    /**
+     * Test that names registered concurrently get consecutive ids, and that
+     * every thread gets the same id for the same name.
+     */
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        System.out.println("concurrentRegistration");
+        final IdRegistry registry = new IdRegistry();
+        final int nameCount = 1000;
+        final int threadCount = 8;
+        final ExecutorService service = Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Future<int[]>> results = new ArrayList<>();
+            for (int thread = 0; thread < threadCount; thread++) {
+                final int offset = thread * 97;
+                results.add(service.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        final int[] ids = new int[nameCount];
+                        for (int idx = 0; idx < nameCount; idx++) {
+                            final int name = (idx + offset) % nameCount;
+                            ids[name] = registry.getId("allele" + name);
+                        }
+                        return ids;
+                    }
+                }));
+            }
+
+            final int[] expected = results.get(0).get();
+            for (final Future<int[]> result : results) {
+                final int[] ids = result.get();
+                for (int idx = 0; idx < nameCount; idx++) {
+                    assertEquals(expected[idx], ids[idx]);
+                }
+            }
+            final BitSet used = new BitSet();
+            for (final int id : expected) {
+                assertTrue(id >= 0 && id < nameCount);
+                used.set(id);
+            }
+            assertEquals(nameCount, used.cardinality());
+            assertEquals(nameCount, registry.size());
+        } finally {
+            service.shutdown();
+        }
+    }
+}
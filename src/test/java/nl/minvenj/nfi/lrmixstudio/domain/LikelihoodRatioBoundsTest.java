@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author dejong
+ */
+public class LikelihoodRatioBoundsTest {
+
+    public LikelihoodRatioBoundsTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private LocusProbabilities createProbabilities(final double locus1, final double locus2) {
+        final LocusProbabilities probabilities = new LocusProbabilities();
+        probabilities.addLocusProbability("Locus1", locus1, Math.log10(locus1));
+        probabilities.addLocusProbability("Locus2", locus2, Math.log10(locus2));
+        return probabilities;
+    }
+
+    /**
+     * Test of getLog10LowerBound and getLog10UpperBound methods, of class
+     * LikelihoodRatioBounds.
+     */
+    @Test
+    public void testBounds() {
+        System.out.println("bounds");
+        final LikelihoodRatioBounds instance = new LikelihoodRatioBounds(createProbabilities(0.01, 0.1), createProbabilities(0.1, 0.1), createProbabilities(0.001, 0.01), createProbabilities(0.01, 0.01));
+        assertEquals(0, instance.getLog10LowerBound("Locus1"), 1E-12);
+        assertEquals(2, instance.getLog10UpperBound("Locus1"), 1E-12);
+        assertEquals(1, instance.getLog10LowerBound("Locus2"), 1E-12);
+        assertEquals(1, instance.getLog10UpperBound("Locus2"), 1E-12);
+        assertEquals(1, instance.getLog10LowerBound(), 1E-12);
+        assertEquals(3, instance.getLog10UpperBound(), 1E-12);
+        assertTrue(Double.isNaN(instance.getLog10LowerBound("Locus3")));
+    }
+
+    /**
+     * Test of the constructor of class LikelihoodRatioBounds.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingProbabilities() {
+        System.out.println("missingProbabilities");
+        new LikelihoodRatioBounds(new LocusProbabilities(), new LocusProbabilities(), null, new LocusProbabilities());
+    }
+}
@@ -109,6 +109,32 @@ public class LikelihoodRatioTest {
         assertEquals(0.125, instance.getOverallRatio().getRatio(), 0.0);
     }
 
+    /**
+     * Test of getOverallRatio method, of class LikelihoodRatio, for locus
+     * probabilities whose product underflows.
+     */
+    @Test
+    public void testGetOverallRatioLog10() {
+        System.out.println("getOverallRatioLog10");
+        LocusProbabilities prosecution = new LocusProbabilities();
+        LocusProbabilities defense = new LocusProbabilities();
+        for (int idx = 0; idx < 30; idx++) {
+            prosecution.addLocusProbability("Locus" + idx, 1E-14);
+            defense.addLocusProbability("Locus" + idx, 1E-15);
+        }
+        // A probability that is too small to be represented as a double
+        prosecution.addLocusProbability("Small", 0.0, -400);
+        defense.addLocusProbability("Small", 0.0, -401);
+
+        LikelihoodRatio instance = new LikelihoodRatio();
+        instance.add(prosecution, defense);
+
+        assertEquals(0.0, instance.getOverallRatio().getProsecutionProbability(), 0.0);
+        assertEquals(-820, instance.getOverallRatio().getLog10ProsecutionProbability(), 1E-9);
+        assertEquals(-851, instance.getOverallRatio().getLog10DefenseProbability(), 1E-9);
+        assertEquals(31, instance.getOverallRatio().getLog10Ratio(), 1E-9);
+    }
+
     /**
      * Test of getRatios method, of class LikelihoodRatio.
      */
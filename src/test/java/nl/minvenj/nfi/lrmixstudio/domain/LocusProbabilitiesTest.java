@@ -92,6 +92,24 @@ public class LocusProbabilitiesTest {
         assertEquals(expResult, result, 0.0001);
     }
 
+    /**
+     * Test of getGlobalLog10Probability method, of class LocusProbabilities.
+     */
+    @Test
+    public void testGetGlobalLog10Probability() {
+        System.out.println("getGlobalLog10Probability");
+        LocusProbabilities instance = new LocusProbabilities();
+        instance.addLocusProbability("Locus 1", 0.1);
+        instance.addLocusProbability("Locus 2", 0.0, -500);
+        assertEquals(-1, instance.getLocusLog10Probability("Locus 1"), 1E-12);
+        assertEquals(-500, instance.getLocusLog10Probability("Locus 2"), 0.0);
+        assertEquals(-501, instance.getGlobalLog10Probability(), 1E-12);
+
+        // Replacing the probability without a logarithm discards the previous logarithm
+        instance.addLocusProbability("Locus 2", 0.01);
+        assertEquals(-3, instance.getGlobalLog10Probability(), 1E-12);
+    }
+
     /**
      * Test of toString method, of class ReplicateProbabilities.
      */
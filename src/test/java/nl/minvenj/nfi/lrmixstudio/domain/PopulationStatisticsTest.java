@@ -10,6 +10,8 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 
 import org.junit.After;
@@ -134,4 +136,89 @@ public class PopulationStatisticsTest {
         instance.setFileHash("hash");
         assertEquals("id hash", instance.toString());
     }
+
+    /**
+     * Test that the alleles of a locus whose name is a prefix of another locus
+     * name are kept apart.
+     */
+    @Test
+    public void testLocusNamePrefix() {
+        System.out.println("locusNamePrefix");
+        final PopulationStatistics instance = new PopulationStatistics("prefix");
+        instance.addStatistic("PrefixD2S1", "12", new BigDecimal("0.4"));
+        instance.addStatistic("PrefixD2S1338", "17", new BigDecimal("0.3"));
+        assertEquals(1, instance.getAlleles("PrefixD2S1").size());
+        assertEquals("12", instance.getAlleles("PrefixD2S1").iterator().next());
+        assertEquals(0.3, instance.getProbability("PrefixD2S1338", "17"), 0);
+        assertEquals(PopulationStatistics.DEFAULT_FREQUENCY, instance.getProbability("PrefixD2S1", "17"), 0);
+        assertFalse(instance.isPresent("PrefixD2S13"));
+        assertTrue(instance.getAlleles("PrefixD2S13").isEmpty());
+    }
+
+    /**
+     * Test of a panel with more loci and alleles than the former fixed size
+     * storage could hold.
+     */
+    @Test
+    public void testLargePanel() {
+        System.out.println("largePanel");
+        final PopulationStatistics instance = new PopulationStatistics("panel");
+        final int locusCount = 300;
+        final int alleleCount = 40;
+        for (int locus = 0; locus < locusCount; locus++) {
+            for (int allele = 0; allele < alleleCount; allele++) {
+                instance.addStatistic("Panel" + locus, "mh" + locus + "-" + allele, new BigDecimal(allele + 1).divide(new BigDecimal(1000)));
+            }
+        }
+        assertEquals(locusCount, instance.getLoci().size());
+        assertTrue(Allele.getRegisteredAlleleCount() > 1024);
+        for (int locus = 0; locus < locusCount; locus++) {
+            final Collection<String> alleles = instance.getAlleles("Panel" + locus);
+            assertEquals(alleleCount, alleles.size());
+            assertTrue(alleles == instance.getAlleles("Panel" + locus));
+            int allele = 0;
+            for (final String name : alleles) {
+                assertEquals("mh" + locus + "-" + allele, name);
+                assertEquals((allele + 1) / 1000.0, instance.getProbability("Panel" + locus, name), 1E-15);
+                allele++;
+            }
+        }
+
+        final Locus locus = new Locus("Panel7");
+        final Allele allele = new Allele("mh7-3");
+        allele.setLocus(locus);
+        assertFalse(instance.isRareAllele(allele));
+        final Allele other = new Allele("mh8-3");
+        other.setLocus(locus);
+        assertTrue(instance.isRareAllele(other));
+    }
+
+    /**
+     * Test that the collection returned by getAlleles cannot be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetAllelesUnmodifiable() {
+        System.out.println("getAllelesUnmodifiable");
+        final PopulationStatistics instance = new PopulationStatistics("unmodifiable");
+        instance.addStatistic("FGA", "20", new BigDecimal("0.1"));
+        instance.getAlleles("FGA").add("21");
+    }
+
+    /**
+     * Test that the alleles returned by getAlleles are not affected by
+     * later additions, of class PopulationStatistics.
+     */
+    @Test
+    public void testGetAllelesSnapshot() {
+        System.out.println("getAllelesSnapshot");
+        final PopulationStatistics instance = new PopulationStatistics("snapshot");
+        instance.addStatistic("FGA", "20", new BigDecimal("0.1"));
+        instance.addStatistic("FGA", "21", new BigDecimal("0.2"));
+        final Collection<String> alleles = instance.getAlleles("FGA");
+        instance.addStatistic("FGA", "22", new BigDecimal("0.3"));
+        instance.addCompoundStatistic("FGA", "20", new BigDecimal("0.4"));
+        assertEquals(Arrays.asList("20", "21"), new ArrayList<>(alleles));
+        assertEquals(Arrays.asList("21", "22"), new ArrayList<>(instance.getAlleles("FGA")));
+        assertEquals(0.4, instance.getProbability("FGA", "20"), 0);
+    }
 }
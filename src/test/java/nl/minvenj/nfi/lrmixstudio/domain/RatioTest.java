@@ -96,4 +96,20 @@ public class RatioTest {
         String result = instance.toString();
         assertEquals(expResult, result);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test of getLog10Ratio method, of class Ratio.
+     */
+    @Test
+    public void testGetLog10Ratio() {
+        System.out.println("getLog10Ratio");
+        Ratio instance = new Ratio("id", 0.3, 0.1);
+        assertEquals(Math.log10(3), instance.getLog10Ratio(), 1E-12);
+
+        instance = new Ratio("id", 0.0, 0.0, null, -400, -410);
+        assertTrue(instance.getRatio().isNaN());
+        assertEquals(10, instance.getLog10Ratio(), 1E-12);
+        assertEquals(-400, instance.getLog10ProsecutionProbability(), 0.0);
+        assertEquals(-410, instance.getLog10DefenseProbability(), 0.0);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+
+/**
+ *
+ * @author dejong
+ */
+public class AlleleSamplerTest {
+
+    private static final int DRAWS = 1000000;
+
+    public AlleleSamplerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static PopulationStatistics createStatistics(final String locusName, final String... frequencies) {
+        final PopulationStatistics statistics = new PopulationStatistics("sampler");
+        for (int idx = 0; idx < frequencies.length; idx++) {
+            statistics.addStatistic(locusName, Integer.toString(10 + idx), new BigDecimal(frequencies[idx]));
+        }
+        return statistics;
+    }
+
+    private static double[] draw(final AlleleSampler sampler) {
+        final Random rnd = new Random(1234);
+        final double[] fractions = new double[sampler.getAlleleCount()];
+        for (int draw = 0; draw < DRAWS; draw++) {
+            fractions[sampler.nextAllele(rnd)] += 1.0 / DRAWS;
+        }
+        return fractions;
+    }
+
+    /**
+     * Test that alleles are drawn with their frequencies.
+     */
+    @Test
+    public void testNextAllele() {
+        System.out.println("nextAllele");
+        final AlleleSampler sampler = new AlleleSampler("SamplerA", createStatistics("SamplerA", "0.5", "0.3", "0.15", "0.05", "0"));
+        assertEquals(5, sampler.getAlleleCount());
+        assertEquals("12", sampler.getAllele(2));
+        final double[] fractions = draw(sampler);
+        assertEquals(0.5, fractions[0], 0.003);
+        assertEquals(0.3, fractions[1], 0.003);
+        assertEquals(0.15, fractions[2], 0.003);
+        assertEquals(0.05, fractions[3], 0.003);
+        assertEquals(0, fractions[4], 0);
+    }
+
+    /**
+     * Test that frequencies that add up to less than 1 are normalized, and
+     * that frequencies beyond a cumulative frequency of 1 are truncated, as
+     * in sampling by cumulative frequency.
+     */
+    @Test
+    public void testUnnormalizedFrequencies() {
+        System.out.println("unnormalizedFrequencies");
+        double[] fractions = draw(new AlleleSampler("SamplerB", createStatistics("SamplerB", "0.2", "0.2")));
+        assertEquals(0.5, fractions[0], 0.003);
+        assertEquals(0.5, fractions[1], 0.003);
+
+        fractions = draw(new AlleleSampler("SamplerC", createStatistics("SamplerC", "0.6", "0.6", "0.2")));
+        assertEquals(0.6, fractions[0], 0.003);
+        assertEquals(0.4, fractions[1], 0.003);
+        assertEquals(0, fractions[2], 0);
+    }
+
+    /**
+     * Test of the genotype indices of class AlleleSampler.
+     */
+    @Test
+    public void testGenotype() {
+        System.out.println("genotype");
+        final AlleleSampler sampler = new AlleleSampler("SamplerD", createStatistics("SamplerD", "0.25", "0.25", "0.25", "0.25"));
+        assertEquals(sampler.getGenotype(1, 3), sampler.getGenotype(3, 1));
+        assertEquals(1, sampler.getFirstAllele(sampler.getGenotype(3, 1)));
+        assertEquals(3, sampler.getSecondAllele(sampler.getGenotype(3, 1)));
+        final Random rnd = new Random(1);
+        for (int draw = 0; draw < 1000; draw++) {
+            final int genotype = sampler.nextGenotype(rnd);
+            assertEquals(genotype, sampler.getGenotype(sampler.getSecondAllele(genotype), sampler.getFirstAllele(genotype)));
+        }
+    }
+
+    /**
+     * Test that a locus without frequencies is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoFrequencies() {
+        System.out.println("noFrequencies");
+        new AlleleSampler("SamplerE", createStatistics("SamplerF", "0.5"));
+    }
+}
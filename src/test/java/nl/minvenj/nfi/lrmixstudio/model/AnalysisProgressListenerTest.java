@@ -12,6 +12,7 @@ import org.junit.Test;
 
 import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
 import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
 import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
 
 /**
@@ -153,6 +154,10 @@ public class AnalysisProgressListenerTest {
         public void locusFinished(final Hypothesis hypothesis, final String locusName, final Double locusProbability) {
         }
 
+        @Override
+        public void intermediateResult(final LikelihoodRatioBounds bounds) {
+        }
+
         @Override
         public void analysisFinished(final LikelihoodRatio lr) {
         }
@@ -316,6 +316,15 @@ public class AnalysisReportTest {
             return 0;
         }
 
+        @Override
+        public AnalysisPerformance getPerformance() {
+            return null;
+        }
+
+        @Override
+        public void setPerformance(final AnalysisPerformance performance) {
+        }
+
         @Override
         public Collection<String> getEnabledLoci() {
             return Collections.emptyList();
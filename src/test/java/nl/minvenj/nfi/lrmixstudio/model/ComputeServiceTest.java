@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author dejong
+ */
+public class ComputeServiceTest {
+
+    public ComputeServiceTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getInstance method, of class ComputeService.
+     */
+    @Test
+    public void testGetInstance() {
+        System.out.println("getInstance");
+        final ComputeService instance = ComputeService.getInstance();
+        assertSame(instance, ComputeService.getInstance());
+        assertTrue(instance.getThreadCount() >= Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Test of createExecutor method, of class ComputeService. No more tasks
+     * than the requested parallelism may run at the same time.
+     */
+    @Test
+    public void testCreateExecutorParallelism() throws Exception {
+        System.out.println("createExecutorParallelism");
+        final ComputeService instance = new ComputeService(4);
+        final ExecutorService executor = instance.createExecutor(ComputeService.Priority.INTERACTIVE, 2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ArrayList<Future<Integer>> futures = new ArrayList<>();
+        for (int idx = 0; idx < 8; idx++) {
+            final int value = idx;
+            futures.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    final int current = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), current));
+                    }
+                    Thread.sleep(20);
+                    running.decrementAndGet();
+                    return value;
+                }
+            }));
+        }
+        executor.shutdown();
+        for (int idx = 0; idx < futures.size(); idx++) {
+            assertEquals(idx, futures.get(idx).get().intValue());
+        }
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+        assertEquals(2, maxRunning.get());
+    }
+
+    /**
+     * Test of createExecutor method, of class ComputeService. Queued tasks of
+     * an interactive analysis must run before those of a background analysis
+     * that were submitted earlier.
+     */
+    @Test
+    public void testCreateExecutorPriority() throws Exception {
+        System.out.println("createExecutorPriority");
+        final ComputeService instance = new ComputeService(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        final ExecutorService blocker = instance.createExecutor(ComputeService.Priority.INTERACTIVE, 1);
+        blocker.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                blocked.countDown();
+                release.await();
+                return null;
+            }
+        });
+        blocked.await();
+
+        final ExecutorService background = instance.createExecutor(ComputeService.Priority.BACKGROUND, 1);
+        final ExecutorService interactive = instance.createExecutor(ComputeService.Priority.INTERACTIVE, 1);
+        final Future<?> backgroundResult = background.submit(new Runnable() {
+            @Override
+            public void run() {
+                order.add("background");
+            }
+        });
+        final Future<?> interactiveResult = interactive.submit(new Runnable() {
+            @Override
+            public void run() {
+                order.add("interactive");
+            }
+        });
+        release.countDown();
+        backgroundResult.get();
+        interactiveResult.get();
+        assertEquals("[interactive, background]", order.toString());
+    }
+
+    /**
+     * Test of the shutdownNow method of an executor created by class
+     * ComputeService. Cancelling one analysis must not affect another.
+     */
+    @Test
+    public void testShutdownNow() throws Exception {
+        System.out.println("shutdownNow");
+        final ComputeService instance = new ComputeService(2);
+        final CountDownLatch started = new CountDownLatch(1);
+        final ExecutorService cancelled = instance.createExecutor(ComputeService.Priority.BACKGROUND, 1);
+        final Future<Void> running = cancelled.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                started.countDown();
+                Thread.sleep(60000);
+                return null;
+            }
+        });
+        final ArrayList<Future<String>> waiting = new ArrayList<>();
+        for (int idx = 0; idx < 3; idx++) {
+            waiting.add(cancelled.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return "not cancelled";
+                }
+            }));
+        }
+        started.await();
+
+        assertEquals(3, cancelled.shutdownNow().size());
+        assertTrue(cancelled.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(running.isCancelled());
+        for (final Future<String> future : waiting) {
+            try {
+                future.get();
+                assertFalse("Task should have been cancelled", true);
+            } catch (final CancellationException ce) {
+                // Expected
+            }
+        }
+        try {
+            cancelled.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return "rejected";
+                }
+            });
+            assertFalse("Task should have been rejected", true);
+        } catch (final RejectedExecutionException ree) {
+            // Expected
+        }
+
+        final ExecutorService other = instance.createExecutor(ComputeService.Priority.INTERACTIVE, 2);
+        assertEquals("done", other.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "done";
+            }
+        }).get(5, TimeUnit.SECONDS));
+        other.shutdown();
+        assertTrue(other.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test of the constructor of class ComputeService with an invalid number
+     * of threads.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorInvalid() {
+        System.out.println("constructorInvalid");
+        new ComputeService(0);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisPerformance.LocusPerformance;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.LocusProbabilityCache;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropThreadPool;
+
+/**
+ *
+ * @author dejong
+ */
+public class EngineMetricsTest extends ReferenceCaseTest {
+
+    public EngineMetricsTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of the registration of class EngineMetrics in the platform MBean
+     * server.
+     */
+    @Test
+    public void testRegistration() throws Exception {
+        System.out.println("registration");
+        final EngineMetrics metrics = EngineMetrics.getInstance();
+        assertNotNull(metrics);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(EngineMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(metrics.getJobsCompleted(), ((Long) server.getAttribute(name, "JobsCompleted")).longValue());
+        assertTrue((Integer) server.getAttribute(name, "WorkerCount") > 0);
+    }
+
+    /**
+     * Test of the counters and rates of class EngineMetrics.
+     */
+    @Test
+    public void testCounters() {
+        System.out.println("counters");
+        final EngineMetrics metrics = new EngineMetrics();
+        assertEquals(0, metrics.getGenotypeCacheHitRate(), 0);
+        metrics.jobFinished(2000000, 100, 3, 1, 0, 4);
+        metrics.jobFinished(1000000, 50, 5, 3, 2, 2);
+        assertEquals(2, metrics.getJobsCompleted());
+        assertEquals(3, metrics.getJobTimeMillis());
+        assertEquals(150, metrics.getPermutationsEvaluated());
+        assertEquals(8, metrics.getGenotypeCacheHits());
+        assertEquals(4, metrics.getGenotypeCacheMisses());
+        assertEquals(2.0 / 3, metrics.getGenotypeCacheHitRate(), 1E-12);
+        assertEquals(0.25, metrics.getReplicateCacheHitRate(), 1E-12);
+        assertEquals(0, metrics.getAnalysesCompleted());
+        assertEquals(0, metrics.getLastAnalysisPerformance().length);
+
+        final AnalysisPerformance performance = new AnalysisPerformance();
+        final LocusPerformance locus = new LocusPerformance();
+        locus.addJob(1000000, 50, 5, 3, 2, 2);
+        performance.addLocus("Defense", "TPOX", locus);
+        metrics.analysisFinished(performance);
+        assertEquals(1, metrics.getAnalysesCompleted());
+        assertEquals(performance.toLines().size(), metrics.getLastAnalysisPerformance().length);
+    }
+
+    /**
+     * Test that an analysis records its performance breakdown in the report
+     * and in the engine metrics.
+     */
+    @Test
+    public void testAnalysisPerformance() throws Exception {
+        System.out.println("analysisPerformance");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3);
+        final int locusCount = config.getEnabledLoci().size();
+        final EngineMetrics metrics = EngineMetrics.getInstance();
+        final long jobsBefore = metrics.getJobsCompleted();
+        final long permutationsBefore = metrics.getPermutationsEvaluated();
+        final long analysesBefore = metrics.getAnalysesCompleted();
+
+        SplitDropThreadPool model = new SplitDropThreadPool();
+        final LocusProbabilityCache cache = new LocusProbabilityCache(100, null);
+        model.setLocusProbabilityCache(cache);
+        model.doAnalysis(config);
+
+        final AnalysisPerformance performance = config.getCurrentReport().getPerformance();
+        assertNotNull(performance);
+        assertEquals(2, performance.getHypothesisIds().size());
+        assertEquals(locusCount, performance.getLoci("Defense").size());
+        assertEquals(locusCount, performance.getLoci("Prosecution").size());
+        final LocusPerformance defense = performance.getHypothesisTotal("Defense");
+        assertFalse(defense.isReused());
+        assertTrue(defense.getJobCount() > 0);
+        assertTrue(defense.getPermutationCount() > 0);
+        assertTrue(performance.getWallTime() >= 0);
+        assertEquals(2 * locusCount + 3, performance.toLines().size());
+
+        final LocusPerformance total = performance.getTotal();
+        assertTrue(metrics.getJobsCompleted() - jobsBefore >= total.getJobCount());
+        assertTrue(metrics.getPermutationsEvaluated() - permutationsBefore >= total.getPermutationCount());
+        assertTrue(metrics.getAnalysesCompleted() > analysesBefore);
+
+        // A repeated analysis takes all loci from the cache
+        final ConfigurationData repeated = createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3);
+        model = new SplitDropThreadPool();
+        model.setLocusProbabilityCache(cache);
+        model.doAnalysis(repeated);
+        final AnalysisPerformance reused = repeated.getCurrentReport().getPerformance();
+        for (final LocusPerformance locus : reused.getLoci("Defense").values()) {
+            assertTrue(locus.isReused());
+            assertEquals(0, locus.getJobCount());
+        }
+    }
+}
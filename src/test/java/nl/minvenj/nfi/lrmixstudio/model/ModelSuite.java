@@ -17,7 +17,7 @@ import org.junit.runners.Suite;
  * @author dejong
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({AnalysisProgressListenerTest.class, ConfigurationDataChangeListenerTest.class, LRMathModelFactoryTest.class, ConfigurationDataTest.class, AnalysisReportTest.class, AnalysisReportImplTest.class, DefaultAnalysisProgressListenerImplTest.class, SplitDropSuite.class, DropoutEstimationTest.class, SensitivityAnalysisResultsTest.class, ConfigurationDataElementTest.class})
+@Suite.SuiteClasses({AnalysisProgressListenerTest.class, ConfigurationDataChangeListenerTest.class, LRMathModelFactoryTest.class, ConfigurationDataTest.class, AnalysisReportTest.class, AnalysisReportImplTest.class, DefaultAnalysisProgressListenerImplTest.class, SplitDropSuite.class, DropoutEstimationTest.class, SensitivityAnalysisResultsTest.class, ConfigurationDataElementTest.class, ComputeServiceTest.class, SyntheticCaseGeneratorTest.class, EngineMetricsTest.class, AlleleSamplerTest.class})
 public class ModelSuite {
 
     @BeforeClass
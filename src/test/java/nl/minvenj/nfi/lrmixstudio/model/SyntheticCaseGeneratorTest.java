@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.io.PopulationStatisticsReader;
+import nl.minvenj.nfi.lrmixstudio.io.SampleReader;
+import nl.minvenj.nfi.lrmixstudio.model.SyntheticCaseGenerator.SyntheticCase;
+
+/**
+ *
+ * @author dejong
+ */
+public class SyntheticCaseGeneratorTest {
+
+    private static final String STATISTICS_FILENAME = "/testfiles/frequencies_NFI.csv";
+    private PopulationStatistics _statistics;
+
+    public SyntheticCaseGeneratorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        _statistics = new PopulationStatisticsReader(STATISTICS_FILENAME).getStatistics();
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of generate method, of class SyntheticCaseGenerator.
+     */
+    @Test
+    public void testGenerate() {
+        System.out.println("generate");
+        final SyntheticCase syntheticCase = new SyntheticCaseGenerator(_statistics, 42).generate(3, 2, 5, 0, 0);
+        assertEquals(5, syntheticCase.getLoci().size());
+        assertEquals(2, syntheticCase.getReplicates().size());
+        assertEquals(3, syntheticCase.getContributors().size());
+        assertEquals("Contributor1", syntheticCase.getContributors().get(0).getId());
+        assertEquals("NonContributor", syntheticCase.getNonContributor().getId());
+        assertEquals(4, syntheticCase.getReferences().size());
+
+        // Without dropout or drop-in, every replicate holds exactly the alleles of the contributors
+        for (final String locusName : syntheticCase.getLoci()) {
+            final HashSet<String> expected = new HashSet<>();
+            for (final Sample contributor : syntheticCase.getContributors()) {
+                assertEquals(2, contributor.getLocus(locusName).size());
+                expected.addAll(getAlleles(contributor.getLocus(locusName)));
+            }
+            for (final Sample replicate : syntheticCase.getReplicates()) {
+                assertEquals(expected, new HashSet<>(getAlleles(replicate.getLocus(locusName))));
+            }
+        }
+    }
+
+    /**
+     * Test of generate method with a number of alleles per locus, of class
+     * SyntheticCaseGenerator.
+     */
+    @Test
+    public void testGenerateAllelesPerLocus() {
+        System.out.println("generateAllelesPerLocus");
+        final SyntheticCase syntheticCase = new SyntheticCaseGenerator(_statistics, 42).generate(1, 1, 10, 6, 0);
+        for (final String locusName : syntheticCase.getLoci()) {
+            assertTrue(syntheticCase.getReplicates().get(0).getLocus(locusName).size() >= 6);
+        }
+    }
+
+    /**
+     * Test that the same parameters give the same case, of class
+     * SyntheticCaseGenerator.
+     */
+    @Test
+    public void testReproducible() {
+        System.out.println("reproducible");
+        final SyntheticCaseGenerator generator = new SyntheticCaseGenerator(_statistics, 7);
+        final SyntheticCase first = generator.generate(2, 3, 8, 0, 0.3);
+        // Generating another case in between does not change the result
+        generator.generate(1, 1, 4, 0, 0.1);
+        final SyntheticCase second = new SyntheticCaseGenerator(_statistics, 7).generate(2, 3, 8, 0, 0.3);
+        final SyntheticCase other = new SyntheticCaseGenerator(_statistics, 8).generate(2, 3, 8, 0, 0.3);
+        assertEquals(describe(first), describe(second));
+        assertFalse(describe(first).equals(describe(other)));
+    }
+
+    /**
+     * Test of write method, of class SyntheticCaseGenerator.SyntheticCase.
+     */
+    @Test
+    public void testWrite() throws Exception {
+        System.out.println("write");
+        final SyntheticCase syntheticCase = new SyntheticCaseGenerator(_statistics, 3).generate(2, 3, 6, 0, 0.2);
+        final File directory = Files.createTempDirectory("lrmixstudio-synthetic").toFile();
+        try {
+            syntheticCase.write(directory);
+            final List<Sample> replicates = new ArrayList<>(new SampleReader(SyntheticCase.getReplicatesFile(directory), true).getSamples());
+            final List<Sample> references = new ArrayList<>(new SampleReader(SyntheticCase.getReferencesFile(directory), false).getSamples());
+            assertEquals(3, replicates.size());
+            assertEquals(3, references.size());
+            for (int idx = 0; idx < replicates.size(); idx++) {
+                assertEquals(syntheticCase.getReplicates().get(idx).getId(), replicates.get(idx).getId());
+                for (final Locus locus : syntheticCase.getReplicates().get(idx).getLoci()) {
+                    assertNotNull(replicates.get(idx).getLocus(locus.getName()));
+                    assertEquals(new HashSet<>(getAlleles(locus)), new HashSet<>(getAlleles(replicates.get(idx).getLocus(locus.getName()))));
+                }
+            }
+        } finally {
+            SyntheticCase.getReplicatesFile(directory).delete();
+            SyntheticCase.getReferencesFile(directory).delete();
+            directory.delete();
+        }
+    }
+
+    /**
+     * Test of generate method with invalid parameters, of class
+     * SyntheticCaseGenerator.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGenerateTooManyLoci() {
+        System.out.println("generateTooManyLoci");
+        new SyntheticCaseGenerator(_statistics, 1).generate(1, 1, _statistics.getLoci().size() + 1, 0, 0.1);
+    }
+
+    private static List<String> getAlleles(final Locus locus) {
+        final ArrayList<String> alleles = new ArrayList<>();
+        for (final Allele allele : locus.getAlleles()) {
+            alleles.add(allele.getAllele());
+        }
+        return alleles;
+    }
+
+    private static String describe(final SyntheticCase syntheticCase) {
+        final StringBuilder description = new StringBuilder();
+        for (final Sample sample : syntheticCase.getReplicates()) {
+            for (final Locus locus : sample.getLoci()) {
+                description.append(sample.getId()).append(locus.getName()).append(getAlleles(locus));
+            }
+        }
+        for (final Sample sample : syntheticCase.getReferences()) {
+            for (final Locus locus : sample.getLoci()) {
+                description.append(sample.getId()).append(locus.getName()).append(getAlleles(locus));
+            }
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+
+/**
+ *
+ * @author dejong
+ */
+public class PermutationCursorTest {
+
+    private static final int ALLELE_COUNT = 8;
+    private static final long MAX_ALLOCATED_BYTES = 4096;
+    private ArrayList<Locus> _possibleLoci;
+
+    public PermutationCursorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        _possibleLoci = new ArrayList<>();
+        for (int allele1 = 1; allele1 <= ALLELE_COUNT; allele1++) {
+            for (int allele2 = allele1; allele2 <= ALLELE_COUNT; allele2++) {
+                final Locus locus = new Locus("Cursor");
+                locus.addAllele(new Allele("" + allele1));
+                locus.addAllele(new Allele("" + allele2));
+                _possibleLoci.add(locus);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private void compare(final PermutationIterator iterator, final PermutationCursor cursor) {
+        final int[] indices = new int[cursor.getUnknownCount()];
+        long count = 0;
+        int permutationFactor;
+        while ((permutationFactor = cursor.next(indices)) != 0) {
+            final Permutation permutation = iterator.next();
+            assertEquals(permutation.getPermutationFactor(), permutationFactor);
+            for (int idx = 0; idx < indices.length; idx++) {
+                assertEquals(permutation.getLoci()[idx], cursor.getGenotype(indices[idx]));
+            }
+            count++;
+        }
+        assertEquals(null, iterator.next());
+        assertEquals(cursor.size(), count);
+    }
+
+    /**
+     * Test of next method, of class PermutationCursor. The cursor must return
+     * the same combinations as the iterator.
+     */
+    @Test
+    public void testNext() {
+        System.out.println("next");
+        for (int unknowns = 1; unknowns < 5; unknowns++) {
+            for (int start = 0; start < _possibleLoci.size(); start += 7) {
+                compare(new PermutationIteratorPlain(unknowns, _possibleLoci, start), new PermutationIteratorPlain(unknowns, _possibleLoci, start));
+                compare(new PermutationIteratorRelatedness(unknowns, _possibleLoci, start), new PermutationIteratorRelatedness(unknowns, _possibleLoci, start));
+            }
+        }
+    }
+
+    private long walk(final PermutationCursor cursor, final int[] indices) {
+        long permutations = 0;
+        int permutationFactor;
+        while ((permutationFactor = cursor.next(indices)) != 0) {
+            permutations += permutationFactor;
+        }
+        return permutations;
+    }
+
+    private long getCollectionCount() {
+        long count = 0;
+        for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Test that stepping through a cursor does not allocate memory.
+     */
+    @Test
+    public void testAllocation() {
+        System.out.println("allocation");
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        final int unknowns = 4;
+        final int[] indices = new int[unknowns];
+        final long threadId = Thread.currentThread().getId();
+
+        // Warm up so the measured run is not affected by class loading
+        walk(new PermutationIteratorPlain(unknowns, _possibleLoci, new int[0]), indices);
+
+        final PermutationIteratorPlain cursor = new PermutationIteratorPlain(unknowns, _possibleLoci, new int[0]);
+        final long gcBefore = getCollectionCount();
+        final long before = threadBean.getThreadAllocatedBytes(threadId);
+        final long permutations = walk(cursor, indices);
+        final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        final long collections = getCollectionCount() - gcBefore;
+
+        final PermutationIteratorPlain iterator = new PermutationIteratorPlain(unknowns, _possibleLoci, new int[0]);
+        final long iteratorBefore = threadBean.getThreadAllocatedBytes(threadId);
+        while (iterator.next() != null) {
+        }
+        final long iteratorAllocated = threadBean.getThreadAllocatedBytes(threadId) - iteratorBefore;
+
+        System.out.println("  Cursor:   " + cursor.size() + " combinations, " + allocated + " bytes allocated, " + collections + " garbage collections");
+        System.out.println("  Iterator: " + iterator.size() + " combinations, " + iteratorAllocated + " bytes allocated");
+        assertEquals(Math.pow(_possibleLoci.size(), unknowns), permutations, 0.0);
+        assertTrue("Cursor allocated " + allocated + " bytes", allocated < MAX_ALLOCATED_BYTES);
+    }
+}
@@ -129,4 +129,44 @@ public class PermutationIteratorRelatednessTest {
         }
     }
 
+    private long countPrefix(int unknownCount, int[] prefix, long[] permutations) {
+        PermutationIteratorRelatedness instance = new PermutationIteratorRelatedness(unknownCount, _possibleLoci, prefix);
+        long count = 0;
+        while (instance.hasNext()) {
+            Permutation next = instance.next();
+            assertNotNull(next);
+            for (int idx = 0; idx < prefix.length; idx++) {
+                assertEquals(_possibleLoci.get(prefix[idx]), next.getLoci()[idx]);
+            }
+            permutations[0] += next.getPermutationFactor();
+            count++;
+        }
+        assertEquals("Size is reported as " + instance.size() + " when " + count + " items were actually returned!", count, instance.size());
+        return count;
+    }
+
+    /**
+     * Test of the prefix constructor of class PermutationIteratorRelatedness. The iterators for all
+     * two-index prefixes must together cover the same space as the iterators
+     * for all single-index prefixes.
+     */
+    @Test
+    public void testPrefix() {
+        System.out.println("prefix");
+        for (int unknownCount = 2; unknownCount < 5; unknownCount++) {
+            long[] permutations = new long[1];
+            long count = 0;
+            long expectedCount = 0;
+            for (int first = 0; first < _possibleLoci.size(); first++) {
+                expectedCount += new PermutationIteratorRelatedness(unknownCount, _possibleLoci, first).size();
+                int[] prefix = new int[]{first};
+                for (int second = prefix.length == 1 ? 0 : prefix[prefix.length - 1]; second < _possibleLoci.size(); second++) {
+                    count += countPrefix(unknownCount, new int[]{first, second}, permutations);
+                }
+            }
+            assertEquals(expectedCount, count);
+            assertEquals(Math.pow(_possibleLoci.size(), unknownCount - 1) * _possibleLoci.size(), permutations[0], 0.0);
+            assertEquals(expectedCount, new PermutationIteratorRelatedness(unknownCount, _possibleLoci, new int[0]).size());
+        }
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+
+/**
+ *
+ * @author dejong
+ */
+public class PermutationRankerTest {
+
+    private ArrayList<Locus> _possibleLoci;
+
+    public PermutationRankerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        _possibleLoci = new ArrayList<>();
+        for (int idx = 1; idx <= 7; idx++) {
+            final Locus locus = new Locus("Locus " + idx);
+            locus.addAllele(new Allele("" + idx));
+            locus.addAllele(new Allele("" + idx));
+            _possibleLoci.add(locus);
+        }
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private PermutationCursor getCursor(final boolean related, final int unknowns, final long from, final long to) {
+        if (related) {
+            return new PermutationIteratorRelatedness(unknowns, _possibleLoci, from, to);
+        }
+        return new PermutationIteratorPlain(unknowns, _possibleLoci, from, to);
+    }
+
+    private PermutationCursor getCursor(final boolean related, final int unknowns) {
+        if (related) {
+            return new PermutationIteratorRelatedness(unknowns, _possibleLoci, new int[0]);
+        }
+        return new PermutationIteratorPlain(unknowns, _possibleLoci, new int[0]);
+    }
+
+    /**
+     * Test of rank and unrank methods, of class PermutationRanker. Ranks must
+     * follow the enumeration order of the permutation iterators.
+     */
+    @Test
+    public void testRankUnrank() {
+        System.out.println("rankUnrank");
+        for (final boolean related : new boolean[]{false, true}) {
+            for (int unknowns = 1; unknowns <= 4; unknowns++) {
+                final PermutationRanker ranker = new PermutationRanker(unknowns, _possibleLoci.size(), related);
+                final PermutationCursor cursor = getCursor(related, unknowns);
+                assertEquals(cursor.size(), ranker.size());
+
+                final int[] indices = new int[unknowns];
+                final int[] unranked = new int[unknowns];
+                long rank = 0;
+                while (cursor.next(indices) != 0) {
+                    assertEquals("Rank of " + Arrays.toString(indices), rank, ranker.rank(indices));
+                    ranker.unrank(rank, unranked);
+                    assertArrayEquals(indices, unranked);
+                    rank++;
+                }
+                assertEquals(ranker.size(), rank);
+            }
+        }
+    }
+
+    /**
+     * Test of the range constructors of the permutation iterators. Consecutive
+     * ranges must together return the same combinations as a single walk.
+     */
+    @Test
+    public void testRanges() {
+        System.out.println("ranges");
+        for (final boolean related : new boolean[]{false, true}) {
+            for (int unknowns = 1; unknowns <= 4; unknowns++) {
+                final PermutationCursor full = getCursor(related, unknowns);
+                final long size = full.size();
+                final int[] expected = new int[unknowns];
+                final int[] actual = new int[unknowns];
+                for (final long chunkSize : new long[]{1, 5, 13, size}) {
+                    final PermutationCursor reference = getCursor(related, unknowns);
+                    for (long from = 0; from < size; from += chunkSize) {
+                        final PermutationCursor range = getCursor(related, unknowns, from, Math.min(size, from + chunkSize));
+                        assertEquals(Math.min(size, from + chunkSize) - from, range.size());
+                        int permutationFactor;
+                        while ((permutationFactor = range.next(actual)) != 0) {
+                            assertEquals(reference.next(expected), permutationFactor);
+                            assertArrayEquals(expected, actual);
+                        }
+                    }
+                    assertEquals(0, reference.next(expected));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of unrank method, of class PermutationRanker, with invalid ranks.
+     */
+    @Test
+    public void testUnrankOutOfRange() {
+        System.out.println("unrankOutOfRange");
+        final PermutationRanker ranker = new PermutationRanker(3, _possibleLoci.size(), false);
+        for (final long rank : new long[]{-1, ranker.size()}) {
+            try {
+                ranker.unrank(rank, new int[3]);
+                fail("Expected exception not thrown for rank " + rank);
+            } catch (final IllegalArgumentException e) {
+            }
+        }
+    }
+
+    /**
+     * Test of countSorted method, of class PermutationRanker.
+     */
+    @Test
+    public void testCountSorted() {
+        System.out.println("countSorted");
+        assertEquals(1, PermutationRanker.countSorted(0, 10));
+        assertEquals(10, PermutationRanker.countSorted(1, 10));
+        assertEquals(55, PermutationRanker.countSorted(2, 10));
+        assertEquals(0, PermutationRanker.countSorted(2, 0));
+        // 4 unknowns over the 1275 genotypes of 50 alleles
+        assertEquals(110629606725L, PermutationRanker.countSorted(4, 1275));
+    }
+}
@@ -18,7 +18,7 @@ import org.junit.runners.Suite;
  * @author dejong
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ThreadpoolSuite.class, PermutationIteratorPlainTest.class, ValidationTest.class})
+@Suite.SuiteClasses({ThreadpoolSuite.class, PermutationIteratorPlainTest.class, PermutationCursorTest.class, PermutationRankerTest.class, ValidationTest.class})
 public class SplitDropSuite {
 
     @BeforeClass
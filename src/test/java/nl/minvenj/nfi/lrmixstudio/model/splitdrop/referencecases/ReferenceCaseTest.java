@@ -4,6 +4,9 @@
  */
 package nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 
 import java.util.Collection;
@@ -12,6 +15,7 @@ import org.junit.Ignore;
 
 import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
 import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
 import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
 import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
 import nl.minvenj.nfi.lrmixstudio.domain.Ratio;
@@ -19,6 +23,7 @@ import nl.minvenj.nfi.lrmixstudio.domain.Sample;
 import nl.minvenj.nfi.lrmixstudio.io.PopulationStatisticsReader;
 import nl.minvenj.nfi.lrmixstudio.io.SampleReader;
 import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
 
 /**
  *
@@ -28,6 +33,8 @@ import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
 public class ReferenceCaseTest {
 
     protected static final String REFERENCE_NFI_POPULATION_STATISTICS_FILENAME = "/testfiles/frequencies_NFI.csv";
+    protected static final String CASE5_SAMPLE_FILENAME = "/testfiles/case-05/sample.txt";
+    protected static final String CASE5_SUSPECT_FILENAME = "/testfiles/case-05/suspect.txt";
     protected static final int THREADCOUNT = 20;
 
     public static final class ReferenceAnalysisProgressListenerImpl implements AnalysisProgressListener {
@@ -63,6 +70,10 @@ public class ReferenceCaseTest {
         @Override
         public void locusFinished(final Hypothesis hypothesis, final String locusName, final Double locusProbability) {
         }
+
+        @Override
+        public void intermediateResult(final LikelihoodRatioBounds bounds) {
+        }
     }
 
     protected String getProbabilityTerm(final Ratio lr) {
@@ -119,4 +130,92 @@ public class ReferenceCaseTest {
         }
         return samples;
     }
+
+    /**
+     * Creates a configuration for case 5 in which the suspect is a contributor
+     * under the prosecution hypothesis and a non-contributor under the defense
+     * hypothesis.
+     *
+     * @param prosecutionUnknowns the number of unknowns under the prosecution
+     * hypothesis
+     * @param defenseUnknowns the number of unknowns under the defense
+     * hypothesis
+     * @param dropIn the drop-in probability
+     * @param unknownDropout the dropout probability of the unknowns
+     * @param theta the theta correction
+     * @param suspectDropout the dropout probability of the suspect
+     * @return the configuration
+     */
+    protected ConfigurationData createCase5Configuration(final int prosecutionUnknowns, final int defenseUnknowns, final double dropIn, final double unknownDropout, final double theta, final double suspectDropout) {
+        final Collection<Sample> replicates = readReplicates(CASE5_SAMPLE_FILENAME);
+        final Collection<Sample> suspectSamples = readProfiles(CASE5_SUSPECT_FILENAME);
+        final PopulationStatistics popStats = readPopulationStatistics(REFERENCE_NFI_POPULATION_STATISTICS_FILENAME);
+
+        final Hypothesis prosecutionHypothesis = new Hypothesis("Prosecution", prosecutionUnknowns, popStats, dropIn, unknownDropout, theta);
+        final Hypothesis defenseHypothesis = new Hypothesis("Defense", defenseUnknowns, popStats, dropIn, unknownDropout, theta);
+        for (final Sample s : suspectSamples) {
+            prosecutionHypothesis.addContributor(s, suspectDropout);
+            defenseHypothesis.addNonContributor(s, suspectDropout);
+        }
+        return createConfiguration(prosecutionHypothesis, defenseHypothesis, replicates, suspectSamples, popStats);
+    }
+
+    /**
+     * Creates a configuration for the supplied hypotheses and samples, using
+     * four threads.
+     *
+     * @param prosecution the prosecution hypothesis
+     * @param defense the defense hypothesis
+     * @param replicates the replicates
+     * @param profiles the reference profiles
+     * @param popStats the population statistics
+     * @return the configuration
+     */
+    protected ConfigurationData createConfiguration(final Hypothesis prosecution, final Hypothesis defense, final Collection<Sample> replicates, final Collection<Sample> profiles, final PopulationStatistics popStats) {
+        final ConfigurationData config = new ConfigurationData();
+        config.setDefense(defense);
+        config.setProsecution(prosecution);
+        config.addProfiles(profiles);
+        config.addReplicates(replicates);
+        config.setStatistics(popStats);
+        config.setThreadCount(4);
+        // Copies of the configuration only contain the locus list if it was built before copying
+        assertFalse(config.getEnabledLoci().isEmpty());
+        return config;
+    }
+
+    /**
+     * Asserts that two results contain the same loci, that the probabilities
+     * of each locus agree within the supplied relative tolerance, and that the
+     * overall ratios agree accordingly.
+     *
+     * @param expected the expected result
+     * @param actual the actual result
+     * @param tolerance the relative tolerance of each locus probability
+     */
+    protected void assertSameRatios(final LikelihoodRatio expected, final LikelihoodRatio actual, final double tolerance) {
+        assertSameRatios("", expected, actual, tolerance);
+    }
+
+    /**
+     * Asserts that two results contain the same loci, that the probabilities
+     * of each locus agree within the supplied relative tolerance, and that the
+     * overall ratios agree accordingly.
+     *
+     * @param message a description of the result, appended to failure messages
+     * @param expected the expected result
+     * @param actual the actual result
+     * @param tolerance the relative tolerance of each locus probability
+     */
+    protected void assertSameRatios(final String message, final LikelihoodRatio expected, final LikelihoodRatio actual, final double tolerance) {
+        assertEquals("Number of loci" + message, expected.getRatios().size(), actual.getRatios().size());
+        for (final Ratio ratio : expected.getRatios()) {
+            final Ratio other = actual.getRatio(ratio.getLocusName());
+            assertNotNull("Locus " + ratio.getLocusName() + message, other);
+            assertEquals("Prosecution at " + ratio.getLocusName() + message, ratio.getProsecutionProbability(), other.getProsecutionProbability(), Math.abs(ratio.getProsecutionProbability()) * tolerance);
+            assertEquals("Defense at " + ratio.getLocusName() + message, ratio.getDefenseProbability(), other.getDefenseProbability(), Math.abs(ratio.getDefenseProbability()) * tolerance);
+        }
+        // The relative errors of the locus probabilities add up in the overall ratio
+        assertEquals("Overall ratio" + message, expected.getOverallRatio().getLog10Ratio(), actual.getOverallRatio().getLog10Ratio(), 2 * expected.getRatios().size() * tolerance);
+    }
 }
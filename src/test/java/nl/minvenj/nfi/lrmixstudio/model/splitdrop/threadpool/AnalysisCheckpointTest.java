@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.AnalysisProgressListener;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+
+/**
+ *
+ * @author dejong
+ */
+public class AnalysisCheckpointTest extends ReferenceCaseTest {
+
+    private File _directory;
+
+    public AnalysisCheckpointTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        _directory = Files.createTempDirectory("checkpoint").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (final File file : _directory.listFiles()) {
+            file.delete();
+        }
+        _directory.delete();
+    }
+
+    private ConfigurationData createConfig(final double dropout) {
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.05, 0.1, 0.01, dropout);
+        config.setThreadCount(2);
+        return config;
+    }
+
+    private SplitDropThreadPool createModel(final AnalysisProgressListener listener) {
+        final SplitDropThreadPool model = new SplitDropThreadPool(listener);
+        // Results of earlier analyses must not be reused from the shared cache
+        model.setLocusProbabilityCache(new LocusProbabilityCache(100, null));
+        model.setCheckpointDirectory(_directory);
+        return model;
+    }
+
+    /**
+     * Test that an interrupted analysis leaves a checkpoint, and that an
+     * analysis of the same configuration resumes from it and gives the same
+     * results as an uninterrupted analysis.
+     */
+    @Test
+    public void testResume() throws Exception {
+        System.out.println("resume");
+        final ConfigurationData config = createConfig(0.2);
+        final JobCounter completeCounter = new JobCounter(null);
+        final LikelihoodRatio expected = createModel(completeCounter).doAnalysis(new ConfigurationData(config));
+        assertFalse(expected.getRatios().isEmpty());
+        assertEquals("The checkpoint of a finished analysis must be deleted", 0, _directory.listFiles().length);
+
+        final JobCounter interruptCounter = new JobCounter(5);
+        final SplitDropThreadPool interrupted = createModel(interruptCounter);
+        interruptCounter.setModel(interrupted);
+        try {
+            interrupted.doAnalysis(new ConfigurationData(config));
+            fail("The analysis was not interrupted");
+        } catch (final InterruptedException ie) {
+        }
+        final File checkpoint = new File(_directory, AnalysisCheckpoint.createFingerprint(interrupted.getId(), config) + ".checkpoint");
+        assertTrue(checkpoint.isFile());
+
+        final JobCounter resumeCounter = new JobCounter(null);
+        final LikelihoodRatio resumed = createModel(resumeCounter).doAnalysis(new ConfigurationData(config));
+        assertTrue("Jobs completed before the interrupt were evaluated again", resumeCounter.getCount() <= completeCounter.getCount() - 5);
+        assertFalse(checkpoint.exists());
+
+        assertSameRatios(expected, resumed, 1E-12);
+        assertEquals(expected.getOverallRatio().getLog10Ratio(), resumed.getOverallRatio().getLog10Ratio(), 1E-10);
+    }
+
+    /**
+     * Test of createFingerprint method, of class AnalysisCheckpoint.
+     */
+    @Test
+    public void testCreateFingerprint() {
+        System.out.println("createFingerprint");
+        final ConfigurationData config = createConfig(0.2);
+        final String fingerprint = AnalysisCheckpoint.createFingerprint("engine", config);
+        assertEquals(64, fingerprint.length());
+        assertEquals(fingerprint, AnalysisCheckpoint.createFingerprint("engine", createConfig(0.2)));
+        assertNotEquals(fingerprint, AnalysisCheckpoint.createFingerprint("engine", createConfig(0.3)));
+        assertNotEquals(fingerprint, AnalysisCheckpoint.createFingerprint("other engine", config));
+    }
+
+    /**
+     * Test that the evaluated ranges are saved and the missing ranges are
+     * determined after reopening the checkpoint.
+     */
+    @Test
+    public void testMissingRanges() {
+        System.out.println("missingRanges");
+        final ConfigurationData config = createConfig(0.2);
+        final Hypothesis hypothesis = config.getDefense();
+        final String locusName = config.getEnabledLoci().iterator().next();
+        final AnalysisCheckpoint checkpoint = AnalysisCheckpoint.open(_directory, "engine", config);
+        assertRanges(new long[][]{{0, 100}}, checkpoint.getMissingRanges(hypothesis, locusName, 100, 0));
+        assertNull(checkpoint.getCompletedSum(hypothesis, locusName));
+
+        final LocusProbability first = new LocusProbability(hypothesis, locusName);
+        first.setValue(1.5E-300);
+        first.addGenotypeMass(0.25);
+        checkpoint.addRange(50, 100, first);
+        final LocusProbability second = new LocusProbability(hypothesis, locusName);
+        second.setValue(0.5E-300);
+        second.addGenotypeMass(0.125);
+        checkpoint.addRange(10, 20, second);
+        try {
+            checkpoint.addRange(90, 110, second);
+            fail("A range outside the permutation space was accepted");
+        } catch (final IllegalArgumentException iae) {
+        }
+        checkpoint.save();
+
+        final AnalysisCheckpoint reopened = AnalysisCheckpoint.open(_directory, "engine", config);
+        assertRanges(new long[][]{{0, 10}, {20, 50}}, reopened.getMissingRanges(hypothesis, locusName, 100, 0));
+        final LocusProbability sum = reopened.getCompletedSum(hypothesis, locusName);
+        assertEquals(2E-300, sum.getValue(), 1E-315);
+        assertEquals(0.375, sum.getGenotypeMass(), 0);
+
+        // A checkpoint of a permutation space with other permutations cannot be resumed
+        assertRanges(new long[][]{{0, 100}}, reopened.getMissingRanges(hypothesis, locusName, 100, 1));
+        assertNull(reopened.getCompletedSum(hypothesis, locusName));
+
+        // Nor can a checkpoint of a permutation space of another size
+        assertRanges(new long[][]{{0, 120}}, reopened.getMissingRanges(hypothesis, locusName, 120, 0));
+        assertNull(reopened.getCompletedSum(hypothesis, locusName));
+
+        reopened.delete();
+        assertEquals(0, _directory.listFiles().length);
+    }
+
+    /**
+     * Test that analyses of the same configuration that save their checkpoints
+     * concurrently leave a single complete checkpoint.
+     */
+    @Test
+    public void testConcurrentSave() throws Exception {
+        System.out.println("concurrentSave");
+        final ConfigurationData config = createConfig(0.2);
+        final Hypothesis hypothesis = config.getDefense();
+        final String locusName = config.getEnabledLoci().iterator().next();
+        final Thread[] threads = new Thread[4];
+        for (int idx = 0; idx < threads.length; idx++) {
+            final AnalysisCheckpoint checkpoint = AnalysisCheckpoint.open(_directory, "engine", config);
+            checkpoint.getMissingRanges(hypothesis, locusName, 1000, 0);
+            threads[idx] = new Thread() {
+                @Override
+                public void run() {
+                    for (int from = 0; from < 200; from++) {
+                        final LocusProbability probability = new LocusProbability(hypothesis, locusName);
+                        probability.setValue(1E-10);
+                        checkpoint.addRange(from, from + 1, probability);
+                        checkpoint.save();
+                    }
+                }
+            };
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, _directory.listFiles().length);
+        final AnalysisCheckpoint reopened = AnalysisCheckpoint.open(_directory, "engine", config);
+        assertRanges(new long[][]{{200, 1000}}, reopened.getMissingRanges(hypothesis, locusName, 1000, 0));
+        assertEquals(200E-10, reopened.getCompletedSum(hypothesis, locusName).getValue(), 1E-15);
+    }
+
+    /**
+     * Test that an analysis does not resume the ranges recorded for a
+     * permutation space that assigns other permutations to the same ranks.
+     * Without theta correction the non-contributors do not change the locus
+     * probabilities, so they are not part of the checkpoint file name, but
+     * their alleles are part of the permutation space.
+     */
+    @Test
+    public void testChangedNonContributor() throws Exception {
+        System.out.println("changedNonContributor");
+        final ConfigurationData config = createNonContributorConfig("16");
+        final ConfigurationData changed = createNonContributorConfig("17");
+        assertEquals(AnalysisCheckpoint.createFingerprint("engine", config), AnalysisCheckpoint.createFingerprint("engine", changed));
+        final PermutationSpace space = PermutationSpace.create("D10S1248", config.getActiveReplicates(), config.getDefense());
+        assertEquals(space.size(), PermutationSpace.create("D10S1248", changed.getActiveReplicates(), changed.getDefense()).size());
+
+        final LikelihoodRatio expected = createModel(null).doAnalysis(new ConfigurationData(changed));
+
+        // Record half of the permutations of the first configuration, with a probability far from the actual one
+        final SplitDropThreadPool model = createModel(null);
+        final AnalysisCheckpoint checkpoint = AnalysisCheckpoint.open(_directory, model.getId(), config);
+        checkpoint.getMissingRanges(config.getDefense(), "D10S1248", space.size(), space.getFingerprint());
+        final LocusProbability probability = new LocusProbability(config.getDefense(), "D10S1248");
+        probability.setValue(1);
+        checkpoint.addRange(0, space.size() / 2, probability);
+        checkpoint.save();
+
+        assertSameRatios(expected, model.doAnalysis(new ConfigurationData(changed)), 1E-12);
+        assertEquals(0, _directory.listFiles().length);
+    }
+
+    /**
+     * Creates a configuration with a second non-contributor under the defense
+     * hypothesis, who has the profile of the suspect except for alleles 12 and
+     * the given allele at D10S1248. Neither allele is in the replicate.
+     */
+    private ConfigurationData createNonContributorConfig(final String allele) {
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.05, 0.1, 0, 0.2);
+        final Sample suspect = config.getDefense().getNonContributors().iterator().next().getSample();
+        final Sample nonContributor = new Sample("Other");
+        for (final Locus suspectLocus : suspect.getLoci()) {
+            final Locus locus = new Locus(suspectLocus.getName());
+            if (locus.getName().equals("D10S1248")) {
+                locus.addAllele(new Allele("12"));
+                locus.addAllele(new Allele(allele));
+            } else {
+                for (final Allele suspectAllele : suspectLocus.getAlleles()) {
+                    locus.addAllele(new Allele(suspectAllele.getAllele()));
+                }
+            }
+            nonContributor.addLocus(locus);
+        }
+        config.getDefense().addNonContributor(nonContributor, 0);
+        return config;
+    }
+
+    private static void assertRanges(final long[][] expected, final ArrayList<long[]> ranges) {
+        assertEquals(expected.length, ranges.size());
+        for (int idx = 0; idx < expected.length; idx++) {
+            assertArrayEquals(expected[idx], ranges.get(idx));
+        }
+    }
+
+    /**
+     * Counts the completed jobs, and optionally interrupts the analysis after
+     * a number of jobs.
+     */
+    private static class JobCounter implements AnalysisProgressListener {
+
+        private final AtomicInteger _count = new AtomicInteger();
+        private final Integer _interruptAfter;
+        private SplitDropThreadPool _model;
+
+        public JobCounter(final Integer interruptAfter) {
+            _interruptAfter = interruptAfter;
+        }
+
+        public void setModel(final SplitDropThreadPool model) {
+            _model = model;
+        }
+
+        public int getCount() {
+            return _count.get();
+        }
+
+        @Override
+        public void analysisStarted() {
+        }
+
+        @Override
+        public void analysisFinished(final LikelihoodRatio lr) {
+        }
+
+        @Override
+        public void analysisFinished(final Throwable e) {
+        }
+
+        @Override
+        public void hypothesisStarted(final Hypothesis hypothesis) {
+        }
+
+        @Override
+        public void hypothesisFinished(final Hypothesis hypothesis, final LocusProbabilities probability) {
+        }
+
+        @Override
+        public void locusStarted(final Hypothesis hypothesis, final String locusName, final long jobsize) {
+        }
+
+        @Override
+        public void locusFinished(final Hypothesis hypothesis, final String locusName, final Double locusProbability) {
+        }
+
+        @Override
+        public void intermediateResult(final LikelihoodRatioBounds bounds) {
+            if (_count.incrementAndGet() == (_interruptAfter == null ? -1 : _interruptAfter)) {
+                _model.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+
+/**
+ *
+ * @author dejong
+ */
+public class CaseSerializerTest extends ReferenceCaseTest {
+
+    private static final String RELATEDNESS_SAMPLE_FILENAME = "/testfiles/relatednessTestFiles/sample-relatedness.csv";
+    private static final String RELATEDNESS_SUSPECT_FILENAME = "/testfiles/relatednessTestFiles/heterozygote-suspect.csv";
+    private static final String RELATEDNESS_POPULATION_STATISTICS_FILENAME = "/testfiles/relatednessTestFiles/allele-frequencies-relatedness.csv";
+
+    public CaseSerializerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of write and read methods, of class CaseSerializer.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        System.out.println("roundTrip");
+        final PopulationStatistics popStats = readPopulationStatistics(RELATEDNESS_POPULATION_STATISTICS_FILENAME);
+        final Collection<Sample> replicates = readReplicates(RELATEDNESS_SAMPLE_FILENAME);
+        final Collection<Sample> suspectSamples = readProfiles(RELATEDNESS_SUSPECT_FILENAME);
+        final Hypothesis prosecution = new Hypothesis("Prosecution", 1, popStats, 0.05, 0.1, 0.1);
+        final Hypothesis defense = new Hypothesis("Defense", 2, popStats, 0.05, 0.2, 0.1);
+        for (final Sample s : suspectSamples) {
+            prosecution.addContributor(s, 0.1);
+            defense.addNonContributor(s, 0);
+            defense.getRelatedness().setRelative(s);
+        }
+        defense.getRelatedness().setRelation(Relation.SIBLING);
+
+        final ConfigurationData config = new ConfigurationData();
+        config.setDefense(defense);
+        config.setProsecution(prosecution);
+        config.addReplicates(replicates);
+        config.addProfiles(suspectSamples);
+        config.setStatistics(popStats);
+        config.setRareAlleleFrequency(0.0025);
+        config.setCaseNumber("round-trip");
+        config.setThreadCount(4);
+
+        final ConfigurationData copy = CaseSerializer.read(CaseSerializer.write(config));
+        assertEquals("round-trip", copy.getCaseNumber());
+        assertEquals(0.0025, copy.getRareAlleleFrequency(), 0);
+        assertEquals("0.0025", copy.getStatistics().getRareAlleleFrequency());
+        assertEquals(replicates.size(), copy.getActiveReplicates().size());
+        assertEquals(suspectSamples.size(), copy.getAllProfiles().size());
+        assertEquals(2, copy.getDefense().getUnknownCount());
+        assertEquals(0.2, copy.getDefense().getUnknownDropoutProbability(), 0);
+        assertEquals(Relation.SIBLING, copy.getDefense().getRelatedness().getRelation());
+        assertSame(copy.getDefense().getNonContributors().iterator().next().getSample(), copy.getDefense().getRelatedness().getRelative());
+        assertSame(copy.getStatistics(), copy.getProsecution().getPopulationStatistics());
+        assertEquals(config.getEnabledLoci(), copy.getEnabledLoci());
+
+        final LikelihoodRatio expected = new SplitDropThreadPool().doAnalysis(config);
+        copy.setThreadCount(4);
+        final LikelihoodRatio result = new SplitDropThreadPool().doAnalysis(copy);
+        assertEquals(config.getEnabledLoci().size(), expected.getRatios().size());
+        assertSameRatios(expected, result, 1E-12);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Contributor;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.DefaultAnalysisProgressListenerImpl;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+
+/**
+ *
+ * @author dejong
+ */
+public class DropoutPolynomialAnalysisTest extends ReferenceCaseTest {
+
+    private static final String RELATEDNESS_SAMPLE_FILENAME = "/testfiles/relatednessTestFiles/sample-relatedness.csv";
+    private static final String RELATEDNESS_SUSPECT_FILENAME = "/testfiles/relatednessTestFiles/heterozygote-suspect.csv";
+    private static final String RELATEDNESS_POPULATION_STATISTICS_FILENAME = "/testfiles/relatednessTestFiles/allele-frequencies-relatedness.csv";
+    private static final double[] DROPOUTS = {0, 0.01, 0.2, 0.5, 0.85, 1};
+
+    public DropoutPolynomialAnalysisTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private void assertSameResults(final ConfigurationData config, final Collection<Sample> variedProfiles, final boolean varyProsecutionUnknowns, final boolean varyDefenseUnknowns) throws Exception {
+        final DropoutPolynomialAnalysis analysis = new DropoutPolynomialAnalysis(new ConfigurationData(config), variedProfiles, varyProsecutionUnknowns, varyDefenseUnknowns);
+        assertTrue(analysis.calculate(new DefaultAnalysisProgressListenerImpl()));
+
+        for (final double dropout : DROPOUTS) {
+            final ConfigurationData copy = new ConfigurationData(config);
+            setDropout(copy.getProsecution(), variedProfiles, varyProsecutionUnknowns, dropout);
+            setDropout(copy.getDefense(), variedProfiles, varyDefenseUnknowns, dropout);
+            final LikelihoodRatio expected = new SplitDropThreadPool().doAnalysis(copy);
+            final LikelihoodRatio result = analysis.evaluate(dropout);
+            assertEquals(config.getEnabledLoci().size(), expected.getRatios().size());
+            assertSameRatios(" at dropout " + dropout, expected, result, 1E-9);
+        }
+    }
+
+    private void setDropout(final Hypothesis hypothesis, final Collection<Sample> variedProfiles, final boolean varyUnknowns, final double dropout) {
+        for (final Sample sample : variedProfiles) {
+            final Contributor contributor = hypothesis.getContributor(sample);
+            if (contributor != null) {
+                contributor.setDropoutProbability(dropout);
+            }
+        }
+        if (varyUnknowns) {
+            hypothesis.setUnknownDropoutProbability(dropout);
+        }
+    }
+
+    /**
+     * Test of calculate and evaluate methods, of class
+     * DropoutPolynomialAnalysis, varying the dropout of the suspect only.
+     */
+    @Test
+    public void testEvaluateSuspect() throws Exception {
+        System.out.println("evaluateSuspect");
+        final Collection<Sample> suspectSamples = readProfiles(CASE5_SUSPECT_FILENAME);
+        assertSameResults(createCase5Configuration(1, 2, 0.1, 0.2, 0.01, 0.3), suspectSamples, false, false);
+    }
+
+    /**
+     * Test of calculate and evaluate methods, of class
+     * DropoutPolynomialAnalysis, varying the dropout of the suspect and all
+     * unknowns.
+     */
+    @Test
+    public void testEvaluateSuspectAndUnknowns() throws Exception {
+        System.out.println("evaluateSuspectAndUnknowns");
+        final Collection<Sample> suspectSamples = readProfiles(CASE5_SUSPECT_FILENAME);
+        assertSameResults(createCase5Configuration(1, 2, 0.1, 0.2, 0, 0.3), suspectSamples, true, true);
+    }
+
+    /**
+     * Test of calculate and evaluate methods, of class
+     * DropoutPolynomialAnalysis, varying the dropout of the defense unknowns
+     * only.
+     */
+    @Test
+    public void testEvaluateDefenseUnknowns() throws Exception {
+        System.out.println("evaluateDefenseUnknowns");
+        assertSameResults(createCase5Configuration(1, 2, 0.1, 0.2, 0.03, 0.3), Collections.<Sample>emptyList(), false, true);
+    }
+
+    /**
+     * Test of calculate and evaluate methods, of class
+     * DropoutPolynomialAnalysis, with a related unknown under the defense
+     * hypothesis.
+     */
+    @Test
+    public void testEvaluateRelatedness() throws Exception {
+        System.out.println("evaluateRelatedness");
+        final PopulationStatistics popStats = readPopulationStatistics(RELATEDNESS_POPULATION_STATISTICS_FILENAME);
+        final Collection<Sample> replicates = readReplicates(RELATEDNESS_SAMPLE_FILENAME);
+        final Collection<Sample> suspectSamples = readProfiles(RELATEDNESS_SUSPECT_FILENAME);
+        final Hypothesis prosecution = new Hypothesis("Prosecution", 1, popStats, 0.05, 0.1, 0.01);
+        final Hypothesis defense = new Hypothesis("Defense", 2, popStats, 0.05, 0.1, 0.01);
+        for (final Sample s : suspectSamples) {
+            prosecution.addContributor(s, 0.1);
+            defense.addNonContributor(s, 0);
+            defense.getRelatedness().setRelative(s);
+        }
+        defense.getRelatedness().setRelation(Relation.SIBLING);
+
+        final ConfigurationData config = createConfiguration(prosecution, defense, replicates, suspectSamples, popStats);
+
+        assertSameResults(config, suspectSamples, true, true);
+    }
+
+    /**
+     * Test of evaluate method, of class DropoutPolynomial.
+     */
+    @Test
+    public void testPolynomialEvaluate() {
+        System.out.println("polynomialEvaluate");
+        final DropoutPolynomial polynomial = new DropoutPolynomial(new double[]{1, 2, 3});
+        assertEquals(2, polynomial.getDegree());
+        assertEquals(1, polynomial.evaluate(0), 0);
+        assertEquals(3, polynomial.evaluate(1), 0);
+        assertEquals(0.25 + 0.5 + 0.75, polynomial.evaluate(0.5), 1E-15);
+    }
+
+    /**
+     * Test of evaluateLog10 method, of class DropoutPolynomial.
+     */
+    @Test
+    public void testPolynomialEvaluateLog10() {
+        System.out.println("polynomialEvaluateLog10");
+        final DropoutPolynomial polynomial = new DropoutPolynomial(new double[]{1, 2, 3});
+        assertEquals(0, polynomial.evaluateLog10(0), 0);
+        assertEquals(Math.log10(3), polynomial.evaluateLog10(1), 1E-15);
+        assertEquals(Math.log10(1.5), polynomial.evaluateLog10(0.5), 1E-15);
+
+        // The value of this polynomial underflows at dropout 0.5
+        final double[] coefficients = new double[1201];
+        coefficients[600] = 1;
+        final DropoutPolynomial small = new DropoutPolynomial(coefficients);
+        assertEquals(0.0, small.evaluate(0.5), 0.0);
+        assertEquals(1200 * Math.log10(0.5), small.evaluateLog10(0.5), 1E-9);
+        assertEquals(Double.NEGATIVE_INFINITY, small.evaluateLog10(0), 0);
+    }
+
+    /**
+     * Test of evaluate method, of class DropoutPolynomial, for a dropout
+     * probability outside [0, 1].
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testPolynomialEvaluateOutOfRange() {
+        System.out.println("polynomialEvaluateOutOfRange");
+        new DropoutPolynomial(new double[]{1}).evaluate(1.5);
+    }
+}
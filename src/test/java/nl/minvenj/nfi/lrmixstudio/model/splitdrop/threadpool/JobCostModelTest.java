@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.gui.ApplicationSettings;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+
+/**
+ *
+ * @author dejong
+ */
+public class JobCostModelTest extends ReferenceCaseTest {
+
+    public JobCostModelTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of getCost method, of class JobCostModel.
+     */
+    @Test
+    public void testGetCost() {
+        System.out.println("getCost");
+        assertEquals(120, JobCostModel.getCost(20, 3, 2));
+        assertEquals(3, JobCostModel.getCost(1, 3, 0));
+    }
+
+    /**
+     * Test of getMakespan method, of class JobCostModel.
+     */
+    @Test
+    public void testGetMakespan() {
+        System.out.println("getMakespan");
+        assertEquals(0, JobCostModel.getMakespan(new long[0], 4));
+        assertEquals(18, JobCostModel.getMakespan(new long[]{3, 5, 3, 4, 3}, 1));
+        // Longest job first gives 5+3 and 4+3+3
+        assertEquals(10, JobCostModel.getMakespan(new long[]{3, 5, 3, 4, 3}, 2));
+        // A single large job determines the duration, however many workers there are
+        assertEquals(100, JobCostModel.getMakespan(new long[]{1, 100, 2, 3}, 8));
+    }
+
+    /**
+     * Test that an invalid worker count or time per unit is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetMakespanNoWorkers() {
+        System.out.println("getMakespanNoWorkers");
+        JobCostModel.getMakespan(new long[]{1}, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNanosPerUnit() {
+        System.out.println("invalidNanosPerUnit");
+        new JobCostModel(0);
+    }
+
+    /**
+     * Test of the calibration of class JobCostModel.
+     */
+    @Test
+    public void testCalibration() {
+        System.out.println("calibration");
+        final JobCostModel model = new JobCostModel(10);
+        assertEquals(10, model.getNanosPerUnit(), 0);
+        assertEquals(2, model.predictDuration(new long[]{100000, 100000}, 1));
+
+        // Measured jobs take over from the initial time per unit
+        model.record(100 * JobCostModel.PRIOR_UNITS, 100 * JobCostModel.PRIOR_UNITS * 30);
+        assertEquals(30, model.getNanosPerUnit(), 0.5);
+        model.record(0, 1000);
+        assertEquals(30, model.getNanosPerUnit(), 0.5);
+        assertEquals(60, model.predictDuration(new long[]{1000000, 1000000, 1000000, 1000000}, 2), 1);
+    }
+
+    /**
+     * Test of store and storeIfDue methods, of class JobCostModel.
+     */
+    @Test
+    public void testStore() {
+        System.out.println("store");
+        final JobCostModel model = new JobCostModel(10);
+        ApplicationSettings.setJobCost(1);
+
+        // Nothing measured, nothing written
+        model.store();
+        assertEquals(1, ApplicationSettings.getJobCost(), 0);
+
+        // Measured jobs are only written once the store interval has passed
+        model.record(100 * JobCostModel.PRIOR_UNITS, 100 * JobCostModel.PRIOR_UNITS * 30);
+        model.storeIfDue();
+        assertEquals(1, ApplicationSettings.getJobCost(), 0);
+
+        model.store();
+        assertEquals(model.getNanosPerUnit(), ApplicationSettings.getJobCost(), 0.001);
+    }
+
+    /**
+     * Test of predictDuration method, of class SplitDropThreadPool.
+     */
+    @Test
+    public void testPredictDuration() throws Exception {
+        System.out.println("predictDuration");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3);
+        final LocusProbabilityCache cache = new LocusProbabilityCache(100, null);
+        final SplitDropThreadPool model = new SplitDropThreadPool();
+        model.setLocusProbabilityCache(cache);
+        final long predicted = model.predictDuration(config);
+        assertTrue(predicted >= 0);
+
+        // Loci that are taken from the cache take no time
+        model.doAnalysis(new ConfigurationData(config));
+        assertEquals(0, model.predictDuration(config));
+    }
+}
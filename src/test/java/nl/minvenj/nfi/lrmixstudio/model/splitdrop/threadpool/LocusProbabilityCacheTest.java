@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.Ratio;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+
+/**
+ *
+ * @author dejong
+ */
+public class LocusProbabilityCacheTest extends ReferenceCaseTest {
+
+    public LocusProbabilityCacheTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private LocusProbabilityKey createKey(final ConfigurationData config, final String locusName) {
+        return LocusProbabilityKey.create("Test", locusName, config.getProsecution(), config.getActiveReplicates());
+    }
+
+    /**
+     * Test of create method, of class LocusProbabilityKey.
+     */
+    @Test
+    public void testCreateKey() throws Exception {
+        System.out.println("createKey");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3);
+        final String locusName = config.getEnabledLoci().iterator().next();
+        final LocusProbabilityKey key = createKey(config, locusName);
+
+        // Identical content in a different order gives the same key
+        final ArrayList<Sample> reversed = new ArrayList<>(config.getActiveReplicates());
+        Collections.reverse(reversed);
+        final LocusProbabilityKey reversedKey = LocusProbabilityKey.create("Test", locusName, createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3).getProsecution(), reversed);
+        assertEquals(key, reversedKey);
+        assertEquals(key.hashCode(), reversedKey.hashCode());
+        assertEquals(key.toHexString(), reversedKey.toHexString());
+
+        // Any change in the inputs gives a different key
+        assertNotEquals(key, LocusProbabilityKey.create("Other", locusName, config.getProsecution(), config.getActiveReplicates()));
+        assertNotEquals(key, createKey(createCase5Configuration(1, 2, 0.06, 0.2, 0.01, 0.3), locusName));
+        assertNotEquals(key, LocusProbabilityKey.create("Test", locusName, config.getDefense(), config.getActiveReplicates()));
+        assertNotEquals(key, LocusProbabilityKey.create("Test", locusName, config.getProsecution(), reversed.subList(1, reversed.size())));
+        final Hypothesis theta = config.getProsecution().copy();
+        theta.setThetaCorrection(0.02);
+        assertNotEquals(key, LocusProbabilityKey.create("Test", locusName, theta, config.getActiveReplicates()));
+    }
+
+    /**
+     * Test that inputs that do not affect the locus probability do not affect
+     * the key.
+     */
+    @Test
+    public void testCreateKeyIgnoresIrrelevantInputs() throws Exception {
+        System.out.println("createKeyIgnoresIrrelevantInputs");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3);
+        final String locusName = config.getEnabledLoci().iterator().next();
+        final Sample suspect = config.getProsecution().getContributors().iterator().next().getSample();
+
+        // Without unknowns, the unknown dropout, theta and non-contributors are not used
+        final Hypothesis noUnknowns = new Hypothesis("Prosecution", 0, config.getStatistics(), 0.05, 0.2, 0.01);
+        noUnknowns.addContributor(suspect, 0.3);
+        final Hypothesis otherParameters = new Hypothesis("Prosecution", 0, config.getStatistics(), 0.05, 0.4, 0.03);
+        otherParameters.addContributor(suspect, 0.3);
+        assertEquals(LocusProbabilityKey.create("Test", locusName, noUnknowns, config.getActiveReplicates()), LocusProbabilityKey.create("Test", locusName, otherParameters, config.getActiveReplicates()));
+
+        // Without theta correction, the non-contributors are not used
+        final Hypothesis withoutNonContributor = new Hypothesis("Defense", 2, config.getStatistics(), 0.05, 0.2, 0);
+        final Hypothesis withNonContributor = new Hypothesis("Defense", 2, config.getStatistics(), 0.05, 0.2, 0);
+        withNonContributor.addNonContributor(suspect, 0.3);
+        assertEquals(LocusProbabilityKey.create("Test", locusName, withoutNonContributor, config.getActiveReplicates()), LocusProbabilityKey.create("Test", locusName, withNonContributor, config.getActiveReplicates()));
+
+        // With theta correction, they are
+        withoutNonContributor.setThetaCorrection(0.01);
+        withNonContributor.setThetaCorrection(0.01);
+        assertNotEquals(LocusProbabilityKey.create("Test", locusName, withoutNonContributor, config.getActiveReplicates()), LocusProbabilityKey.create("Test", locusName, withNonContributor, config.getActiveReplicates()));
+    }
+
+    /**
+     * Test of get and put methods, of class LocusProbabilityCache.
+     */
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        System.out.println("leastRecentlyUsedEviction");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3);
+        final List<LocusProbabilityKey> keys = new ArrayList<>();
+        for (final String locusName : config.getEnabledLoci()) {
+            keys.add(createKey(config, locusName));
+        }
+        final LocusProbabilityCache cache = new LocusProbabilityCache(2, null);
+        cache.put(keys.get(0), 0.1, -1);
+        cache.put(keys.get(1), 0.01, -2);
+        assertNotNull(cache.get(keys.get(0)));
+        cache.put(keys.get(2), 0.001, -3);
+        assertEquals(2, cache.size());
+        assertEquals(0.1, cache.get(keys.get(0)).getValue(), 0);
+        assertNull(cache.get(keys.get(1)));
+        assertEquals(-3, cache.get(keys.get(2)).getLog10Value(), 0);
+    }
+
+    /**
+     * Test of the persistent storage of class LocusProbabilityCache.
+     */
+    @Test
+    public void testDirectory() throws Exception {
+        System.out.println("directory");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3);
+        final LocusProbabilityKey key = createKey(config, config.getEnabledLoci().iterator().next());
+        final File directory = Files.createTempDirectory("locuscache").toFile();
+        try {
+            new LocusProbabilityCache(10, directory).put(key, 1.5E-300, -299.82390874094434);
+            // The temporary file has replaced the entry file
+            assertEquals(1, directory.listFiles().length);
+            final LocusProbabilityCache cache = new LocusProbabilityCache(10, directory);
+            assertEquals(0, cache.size());
+            final LocusProbabilityCache.Entry entry = cache.get(key);
+            assertNotNull(entry);
+            assertEquals(1.5E-300, entry.getValue(), 0);
+            assertEquals(-299.82390874094434, entry.getLog10Value(), 0);
+            assertEquals(1, cache.size());
+        } finally {
+            for (final File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Test of the pruning of the directory, of class LocusProbabilityCache.
+     */
+    @Test
+    public void testPrune() throws Exception {
+        System.out.println("prune");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3);
+        final List<LocusProbabilityKey> keys = new ArrayList<>();
+        for (final String locusName : config.getEnabledLoci()) {
+            keys.add(createKey(config, locusName));
+        }
+        final File directory = Files.createTempDirectory("locuscache").toFile();
+        try {
+            final LocusProbabilityCache cache = new LocusProbabilityCache(10, directory, 3, 60000);
+            for (int idx = 0; idx < 5; idx++) {
+                cache.put(keys.get(idx), idx, idx);
+            }
+            // Mark the first entry as the oldest and the second as expired
+            final File[] files = directory.listFiles();
+            assertEquals(5, files.length);
+            for (final File file : files) {
+                file.setLastModified(System.currentTimeMillis() - 1000);
+            }
+            new File(directory, keys.get(0).toHexString() + ".locusprobability").setLastModified(System.currentTimeMillis() - 2000);
+            new File(directory, keys.get(1).toHexString() + ".locusprobability").setLastModified(System.currentTimeMillis() - 120000);
+            // A temporary file may still be written by another process, unless it was left behind long ago
+            final File written = File.createTempFile("written", ".tmp", directory);
+            final File abandoned = File.createTempFile("abandoned", ".tmp", directory);
+            abandoned.setLastModified(System.currentTimeMillis() - LocusProbabilityCache.TEMP_FILE_MAX_AGE - 1000);
+
+            final LocusProbabilityCache reopened = new LocusProbabilityCache(10, directory, 3, 60000);
+            assertEquals(4, directory.listFiles().length);
+            assertTrue(written.isFile());
+            assertFalse(abandoned.exists());
+            assertNull(reopened.get(keys.get(0)));
+            assertNull(reopened.get(keys.get(1)));
+            for (int idx = 2; idx < 5; idx++) {
+                assertEquals(idx, reopened.get(keys.get(idx)).getValue(), 0);
+            }
+        } finally {
+            for (final File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Test that analyses with background priority do not use the shared
+     * cache.
+     */
+    @Test
+    public void testBackgroundAnalysis() throws Exception {
+        System.out.println("backgroundAnalysis");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.09, 0.2, 0.01, 0.3);
+        final SplitDropThreadPool model = new SplitDropThreadPool();
+        model.setPriority(ComputeService.Priority.BACKGROUND);
+        model.doAnalysis(new ConfigurationData(config));
+        final LocusProbabilityCache cache = LocusProbabilityCache.getInstance();
+        assertNotNull(cache);
+        for (final String locusName : config.getEnabledLoci()) {
+            assertNull(cache.get(LocusProbabilityKey.create(model.getId(), locusName, config.getDefense(), config.getActiveReplicates())));
+        }
+    }
+
+    /**
+     * Test that a repeated analysis with the shared cache gives the same
+     * results as the original analysis.
+     */
+    @Test
+    public void testRepeatedAnalysis() throws Exception {
+        System.out.println("repeatedAnalysis");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.07, 0.2, 0.01, 0.3);
+        final LikelihoodRatio first = new SplitDropThreadPool().doAnalysis(new ConfigurationData(config));
+        final LocusProbabilityCache cache = LocusProbabilityCache.getInstance();
+        assertNotNull(cache);
+        for (final String locusName : config.getEnabledLoci()) {
+            assertNotNull(cache.get(LocusProbabilityKey.create(new SplitDropThreadPool().getId(), locusName, config.getDefense(), config.getActiveReplicates())));
+        }
+
+        final LikelihoodRatio second = new SplitDropThreadPool().doAnalysis(new ConfigurationData(config));
+        assertEquals(first.getRatios().size(), second.getRatios().size());
+        for (final Ratio ratio : first.getRatios()) {
+            final Ratio cached = second.getRatio(ratio.getLocusName());
+            assertEquals(ratio.getProsecutionProbability(), cached.getProsecutionProbability(), 0);
+            assertEquals(ratio.getDefenseProbability(), cached.getDefenseProbability(), 0);
+            assertEquals(ratio.getLog10Ratio(), cached.getLog10Ratio(), 0);
+        }
+        assertEquals(first.getOverallRatio().getRatio(), second.getOverallRatio().getRatio(), 0);
+    }
+
+    /**
+     * Test that a repeated analysis in which only the prosecution hypothesis
+     * changed only recalculates the prosecution hypothesis, and gives the same
+     * results as an analysis without reuse.
+     */
+    @Test
+    public void testIncrementalAnalysis() throws Exception {
+        System.out.println("incrementalAnalysis");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.08, 0.2, 0.01, 0.3);
+        final int locusCount = config.getEnabledLoci().size();
+        final LocusProbabilityCache cache = new LocusProbabilityCache(100, null);
+        SplitDropThreadPool model = new SplitDropThreadPool();
+        model.setLocusProbabilityCache(cache);
+        model.doAnalysis(new ConfigurationData(config));
+        assertEquals(2 * locusCount, cache.size());
+
+        // The suspect is a non-contributor under the defense hypothesis, so its dropout does not affect the defense
+        final Sample suspect = config.getProsecution().getContributors().iterator().next().getSample();
+        config.getProsecution().getContributor(suspect).setDropoutProbability(0.15);
+        config.getDefense().getContributor(suspect).setDropoutProbability(0.15);
+        model = new SplitDropThreadPool();
+        model.setLocusProbabilityCache(cache);
+        final LikelihoodRatio incremental = model.doAnalysis(new ConfigurationData(config));
+        assertEquals(3 * locusCount, cache.size());
+
+        model = new SplitDropThreadPool();
+        model.setLocusProbabilityCache(new LocusProbabilityCache(100, null));
+        final LikelihoodRatio expected = model.doAnalysis(new ConfigurationData(config));
+        assertSameRatios(expected, incremental, 1E-12);
+    }
+}
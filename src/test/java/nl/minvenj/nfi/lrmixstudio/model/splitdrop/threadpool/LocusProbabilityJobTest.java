@@ -17,6 +17,7 @@ import nl.minvenj.nfi.lrmixstudio.model.DefaultAnalysisProgressListenerImpl;
 import org.junit.After;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -190,4 +191,38 @@ public class LocusProbabilityJobTest {
         result = instance.calculateReplicateProbability(unknowns2);
         assertEquals(0.09395595, result, 0.0);
     }
+
+    /**
+     * Test that the job arrays do not grow with the number of registered
+     * alleles.
+     */
+    @Test
+    public void testAlleleIdLimit() throws Exception {
+        System.out.println("alleleIdLimit");
+        ArrayList<Sample> samples = new ArrayList<>();
+        Sample r1 = new Sample("R1");
+        Locus lr1 = new Locus("FGA");
+        lr1.addAllele(new Allele("11"));
+        lr1.addAllele(new Allele("12"));
+        r1.addLocus(lr1);
+        samples.add(r1);
+
+        Hypothesis prosecution = new Hypothesis("Prosecution", new PopulationStatistics("popStats"));
+        prosecution.addContributor(r1, 0.1);
+
+        final int limit = LocusProbabilityJob.getAlleleIdLimit("FGA", new LocusProbabilityJob("FGA", null, samples, prosecution).replicateLoci, prosecution);
+        assertTrue(limit > new Allele("12").getId());
+        assertTrue(limit > Allele.getId(LocusProbabilityJobGenerator.getCompoundAlleleName("FGA")));
+        for (int idx = 0; idx < 100; idx++) {
+            Allele.getId("alleleIdLimit" + idx);
+        }
+        final LocusProbabilityJob instance = new LocusProbabilityJob("FGA", null, samples, prosecution);
+        assertEquals(limit, instance._alleleCounts.length);
+        assertTrue(instance._alleleCounts.length < Allele.getRegisteredAlleleCount());
+        // The sets of a replicate are indexed locally and do not depend on allele ids at all
+        assertEquals(2, instance.presentBProbabilities.length);
+        assertEquals(2, instance.allAlleles.length);
+        instance.call();
+        assertEquals(0.81, instance.getProbability().getValue(), 0.0);
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author dejong
+ */
+public class LocusProbabilityTest {
+
+    public LocusProbabilityTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of addValue method, of class LocusProbability.
+     */
+    @Test
+    public void testAddValue() {
+        System.out.println("addValue");
+        final LocusProbability instance = new LocusProbability(null, "Locus");
+        instance.addValue(0.25);
+        instance.addValue(0.5);
+        assertEquals(0.75, instance.getValue(), 0.0);
+        assertEquals(Math.log10(0.75), instance.getLog10Value(), 1E-15);
+    }
+
+    /**
+     * Test of addValue method, of class LocusProbability, for values that are
+     * too small to be represented as a double.
+     */
+    @Test
+    public void testAddValueScaled() {
+        System.out.println("addValueScaled");
+        final LocusProbability instance = new LocusProbability(null, "Locus");
+        for (int idx = 0; idx < 1000; idx++) {
+            instance.addValue(0.5, -2000);
+        }
+        assertEquals(0.0, instance.getValue(), 0.0);
+        assertEquals(Math.log10(500) - 2000 * Math.log10(2), instance.getLog10Value(), 1E-9);
+    }
+
+    /**
+     * Test of add method, of class LocusProbability.
+     */
+    @Test
+    public void testAdd() {
+        System.out.println("add");
+        final LocusProbability first = new LocusProbability(null, "Locus");
+        first.addValue(1, -1500);
+        final LocusProbability second = new LocusProbability(null, "Locus");
+        second.addValue(3, -1500);
+        first.add(second);
+        assertEquals(Math.log10(4) - 1500 * Math.log10(2), first.getLog10Value(), 1E-9);
+    }
+}
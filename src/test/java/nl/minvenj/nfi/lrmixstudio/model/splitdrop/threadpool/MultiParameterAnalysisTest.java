@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.DefaultAnalysisProgressListenerImpl;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+
+/**
+ *
+ * @author dejong
+ */
+public class MultiParameterAnalysisTest extends ReferenceCaseTest {
+
+    private static final String RELATEDNESS_SAMPLE_FILENAME = "/testfiles/relatednessTestFiles/sample-relatedness.csv";
+    private static final String RELATEDNESS_SUSPECT_FILENAME = "/testfiles/relatednessTestFiles/heterozygote-suspect.csv";
+    private static final String RELATEDNESS_POPULATION_STATISTICS_FILENAME = "/testfiles/relatednessTestFiles/allele-frequencies-relatedness.csv";
+
+    public MultiParameterAnalysisTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private List<ParameterSet> createParameterSets() {
+        final ArrayList<ParameterSet> parameterSets = new ArrayList<>();
+        parameterSets.add(new ParameterSet(0.1, 0.05, 0));
+        parameterSets.add(new ParameterSet(0.3, 0.05, 0.01));
+        parameterSets.add(new ParameterSet(0.5, 0.2, 0.03));
+        parameterSets.add(new ParameterSet(0, 0.1, 0.01));
+        parameterSets.add(new ParameterSet(0.9, 0, 0));
+        return parameterSets;
+    }
+
+    private void assertSameResults(final ConfigurationData config) throws Exception {
+        final List<ParameterSet> parameterSets = createParameterSets();
+        final List<LikelihoodRatio> results = new MultiParameterAnalysis(new ConfigurationData(config), parameterSets).calculate(new DefaultAnalysisProgressListenerImpl());
+        assertEquals(parameterSets.size(), results.size());
+
+        for (int idx = 0; idx < parameterSets.size(); idx++) {
+            final ParameterSet parameterSet = parameterSets.get(idx);
+            final ConfigurationData copy = new ConfigurationData(config);
+            copy.setProsecution(parameterSet.apply(config.getProsecution()));
+            copy.setDefense(parameterSet.apply(config.getDefense()));
+            final LikelihoodRatio expected = new SplitDropThreadPool().doAnalysis(copy);
+            final LikelihoodRatio result = results.get(idx);
+            assertEquals(config.getEnabledLoci().size(), expected.getRatios().size());
+            assertSameRatios(" for " + parameterSet, expected, result, 1E-9);
+        }
+    }
+
+    /**
+     * Test of calculate method, of class MultiParameterAnalysis.
+     */
+    @Test
+    public void testCalculate() throws Exception {
+        System.out.println("calculate");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.1, 0.2, 0, 0.3);
+
+        assertSameResults(config);
+    }
+
+    /**
+     * Test of calculate method, of class MultiParameterAnalysis, with a related
+     * unknown under the defense hypothesis.
+     */
+    @Test
+    public void testCalculateRelatedness() throws Exception {
+        System.out.println("calculateRelatedness");
+        final PopulationStatistics popStats = readPopulationStatistics(RELATEDNESS_POPULATION_STATISTICS_FILENAME);
+        final Collection<Sample> replicates = readReplicates(RELATEDNESS_SAMPLE_FILENAME);
+        final Collection<Sample> suspectSamples = readProfiles(RELATEDNESS_SUSPECT_FILENAME);
+        final Hypothesis prosecution = new Hypothesis("Prosecution", 1, popStats, 0.05, 0.1, 0.01);
+        final Hypothesis defense = new Hypothesis("Defense", 2, popStats, 0.05, 0.1, 0.01);
+        for (final Sample s : suspectSamples) {
+            prosecution.addContributor(s, 0.1);
+            defense.addNonContributor(s, 0);
+            defense.getRelatedness().setRelative(s);
+        }
+        defense.getRelatedness().setRelation(Relation.PARENT_CHILD);
+
+        final ConfigurationData config = createConfiguration(prosecution, defense, replicates, suspectSamples, popStats);
+
+        assertSameResults(config);
+    }
+
+    /**
+     * Test of constructor, of class ParameterSet, for a parameter outside
+     * [0, 1].
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testParameterSetOutOfRange() {
+        System.out.println("parameterSetOutOfRange");
+        new ParameterSet(0.1, 1.5, 0);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.DefaultAnalysisProgressListenerImpl;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationCursor;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.PermutationIteratorFactory;
+
+/**
+ *
+ * @author dejong
+ */
+public class ReplicateKernelTest {
+
+    private static final String LOCUS_NAME = "FGA";
+
+    public ReplicateKernelTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private Sample createSample(final String id, final String... alleles) {
+        final Sample sample = new Sample(id);
+        final Locus locus = new Locus(LOCUS_NAME);
+        for (final String allele : alleles) {
+            locus.addAllele(new Allele(allele));
+        }
+        sample.addLocus(locus);
+        return sample;
+    }
+
+    /**
+     * Test of calculate method, of class ReplicateKernel. The kernel must give
+     * the same result as the allele-by-allele calculation for every
+     * permutation.
+     */
+    @Test
+    public void testCalculate() {
+        System.out.println("calculate");
+        final ArrayList<Sample> replicates = new ArrayList<>();
+        replicates.add(createSample("R1", "11", "12", "14"));
+        replicates.add(createSample("R2", "11", "12", "14"));
+        replicates.add(createSample("R3", "12", "15"));
+        replicates.add(createSample("R4", "16"));
+        replicates.add(new Sample("R5"));
+
+        final Hypothesis hypothesis = new Hypothesis("Defense", 3, new PopulationStatistics("popStats"), 0.05, 0.15, 0);
+        hypothesis.addContributor(createSample("P1", "11", "13"), 0.2);
+        hypothesis.addContributor(createSample("P2", "12", "12"), 0.3);
+        hypothesis.addNonContributor(createSample("P3", "14", "17"), 0.1);
+
+        final Collection<Locus> genotypes = LocusProbabilityJobGenerator.getPossibleAlleleCombinations(LOCUS_NAME, replicates, hypothesis);
+        final ReplicateKernel kernel = ReplicateKernel.compile(LOCUS_NAME, replicates, hypothesis, genotypes);
+        assertNotNull(kernel);
+
+        final PermutationCursor cursor = PermutationIteratorFactory.getPermutationCursor(hypothesis, genotypes, new int[0]);
+        final LocusProbabilityJob job = new LocusProbabilityJob(LOCUS_NAME, null, replicates, hypothesis, new DefaultAnalysisProgressListenerImpl());
+        final int[] indices = new int[hypothesis.getUnknownCount()];
+        final Locus[] loci = new Locus[indices.length];
+        final int[] dose = kernel.createDoseBuffer();
+        long count = 0;
+        while (cursor.next(indices) != 0) {
+            for (int idx = 0; idx < indices.length; idx++) {
+                loci[idx] = cursor.getGenotype(indices[idx]);
+            }
+            final double expected = job.calculateReplicateProbability(loci);
+            assertEquals("Permutation " + job.toLogString(loci), expected, kernel.calculate(indices, dose), expected * 1E-12);
+            count++;
+        }
+        assertEquals(cursor.size(), count);
+    }
+
+    /**
+     * Test of calculateScaled method, of class ReplicateKernel. For a large
+     * number of replicates the product underflows, but the scaled product must
+     * still equal the product of the individual replicate probabilities.
+     */
+    @Test
+    public void testCalculateScaled() {
+        System.out.println("calculateScaled");
+        final ArrayList<Sample> replicate = new ArrayList<>();
+        replicate.add(createSample("R1", "11", "12"));
+        final ArrayList<Sample> replicates = new ArrayList<>();
+        for (int idx = 0; idx < 600; idx++) {
+            replicates.add(createSample("R" + idx, "11", "12"));
+        }
+        final Hypothesis hypothesis = new Hypothesis("Defense", 1, new PopulationStatistics("popStats"), 0.05, 0.15, 0);
+
+        final Collection<Locus> genotypes = LocusProbabilityJobGenerator.getPossibleAlleleCombinations(LOCUS_NAME, replicate, hypothesis);
+        final ReplicateKernel single = ReplicateKernel.compile(LOCUS_NAME, replicate, hypothesis, genotypes);
+        final ReplicateKernel kernel = ReplicateKernel.compile(LOCUS_NAME, replicates, hypothesis, genotypes);
+        final int[] dose = kernel.createDoseBuffer();
+        final int[] exponent = new int[1];
+        for (int genotype = 0; genotype < genotypes.size(); genotype++) {
+            final int[] indices = new int[]{genotype};
+            final double expected = replicates.size() * Math.log(single.calculate(indices, dose)) / Math.log(2);
+            final double mantissa = kernel.calculateScaled(indices, dose, exponent);
+            assertEquals("Genotype " + genotype, expected, Math.log(mantissa) / Math.log(2) + exponent[0], Math.abs(expected) * 1E-12);
+        }
+    }
+
+    /**
+     * Test of compile method, of class ReplicateKernel, for a locus with more
+     * alleles than fit in a bit mask.
+     */
+    @Test
+    public void testCompileTooManyAlleles() {
+        System.out.println("compileTooManyAlleles");
+        final String[] alleles = new String[70];
+        for (int idx = 0; idx < alleles.length; idx++) {
+            alleles[idx] = "" + (idx + 1);
+        }
+        final ArrayList<Sample> replicates = new ArrayList<>();
+        replicates.add(createSample("R1", alleles));
+        final Hypothesis hypothesis = new Hypothesis("Defense", 1, new PopulationStatistics("popStats"), 0.05, 0.15, 0);
+
+        final Collection<Locus> genotypes = LocusProbabilityJobGenerator.getPossibleAlleleCombinations(LOCUS_NAME, replicates, hypothesis);
+        assertNull(ReplicateKernel.compile(LOCUS_NAME, replicates, hypothesis, genotypes));
+    }
+}
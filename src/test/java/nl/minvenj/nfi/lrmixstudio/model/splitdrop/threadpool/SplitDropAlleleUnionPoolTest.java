@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+
+/**
+ *
+ * @author dejong
+ */
+public class SplitDropAlleleUnionPoolTest extends ReferenceCaseTest {
+
+    private static final String RELATEDNESS_SAMPLE_FILENAME = "/testfiles/relatednessTestFiles/sample-relatedness.csv";
+    private static final String RELATEDNESS_SUSPECT_FILENAME = "/testfiles/relatednessTestFiles/heterozygote-suspect.csv";
+    private static final String RELATEDNESS_POPULATION_STATISTICS_FILENAME = "/testfiles/relatednessTestFiles/allele-frequencies-relatedness.csv";
+
+    public SplitDropAlleleUnionPoolTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private void assertSameResults(final ConfigurationData config) throws InterruptedException {
+        final LikelihoodRatio expected = new SplitDropThreadPool().doAnalysis(new ConfigurationData(config));
+        final LikelihoodRatio result = new SplitDropAlleleUnionPool().doAnalysis(new ConfigurationData(config));
+        assertEquals(config.getEnabledLoci().size(), expected.getRatios().size());
+        assertSameRatios(expected, result, 1E-9);
+    }
+
+    /**
+     * Test of doAnalysis method, of class SplitDropAlleleUnionPool, for unrelated
+     * unknowns.
+     */
+    @Test
+    public void testDoAnalysis() throws InterruptedException {
+        System.out.println("doAnalysis");
+        assertSameResultsUnrelated(0.05);
+    }
+
+    /**
+     * Test of doAnalysis method, of class SplitDropAlleleUnionPool, for unrelated
+     * unknowns without theta correction.
+     */
+    @Test
+    public void testDoAnalysisNoTheta() throws InterruptedException {
+        System.out.println("doAnalysisNoTheta");
+        assertSameResultsUnrelated(0);
+    }
+
+    private void assertSameResultsUnrelated(final double theta) throws InterruptedException {
+        final ConfigurationData config = createCase5Configuration(2, 3, 0.1, 0.1, theta, 0.5);
+
+        assertSameResults(config);
+    }
+
+    /**
+     * Test of doAnalysis method, of class SplitDropAlleleUnionPool, for a related
+     * unknown.
+     */
+    @Test
+    public void testDoAnalysisRelatedness() throws InterruptedException {
+        System.out.println("doAnalysisRelatedness");
+        assertSameResultsRelated(Relation.SIBLING, 0.1);
+    }
+
+    /**
+     * Test of doAnalysis method, of class SplitDropAlleleUnionPool, for a related
+     * unknown without theta correction.
+     */
+    @Test
+    public void testDoAnalysisRelatednessNoTheta() throws InterruptedException {
+        System.out.println("doAnalysisRelatednessNoTheta");
+        assertSameResultsRelated(Relation.PARENT_CHILD, 0);
+    }
+
+    private void assertSameResultsRelated(final Relation relation, final double theta) throws InterruptedException {
+        final PopulationStatistics popStats = readPopulationStatistics(RELATEDNESS_POPULATION_STATISTICS_FILENAME);
+        final Collection<Sample> replicates = readReplicates(RELATEDNESS_SAMPLE_FILENAME);
+        final Collection<Sample> suspectSamples = readProfiles(RELATEDNESS_SUSPECT_FILENAME);
+        final Hypothesis prosecution = new Hypothesis("Prosecution", 1, popStats, 0.05, 0.1, theta);
+        final Hypothesis defense = new Hypothesis("Defense", 3, popStats, 0.05, 0.1, theta);
+        for (final Sample s : suspectSamples) {
+            prosecution.addContributor(s, 0.1);
+            defense.addNonContributor(s, 0);
+            defense.getRelatedness().setRelative(s);
+        }
+        defense.getRelatedness().setRelation(relation);
+
+        final ConfigurationData config = createConfiguration(prosecution, defense, replicates, suspectSamples, popStats);
+
+        assertSameResults(config);
+    }
+
+    /**
+     * Test of getId method, of class SplitDropAlleleUnionPool.
+     */
+    @Test
+    public void testGetId() {
+        System.out.println("getId");
+        assertEquals("SplitDrop Allele Union Edition", new SplitDropAlleleUnionPool().getId());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Ratio;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.DefaultAnalysisProgressListenerImpl;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+
+/**
+ *
+ * @author dejong
+ */
+public class SplitDropBalancedChunksPoolTest extends ReferenceCaseTest {
+
+    private static final String RELATEDNESS_SAMPLE_FILENAME = "/testfiles/relatednessTestFiles/sample-relatedness.csv";
+    private static final String RELATEDNESS_SUSPECT_FILENAME = "/testfiles/relatednessTestFiles/heterozygote-suspect.csv";
+    private static final String RELATEDNESS_POPULATION_STATISTICS_FILENAME = "/testfiles/relatednessTestFiles/allele-frequencies-relatedness.csv";
+
+    public SplitDropBalancedChunksPoolTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private void assertSameResults(final ConfigurationData config) throws InterruptedException {
+        final LikelihoodRatio expected = new SplitDropThreadPool().doAnalysis(new ConfigurationData(config));
+        final LikelihoodRatio result = new SplitDropBalancedChunksPool().doAnalysis(new ConfigurationData(config));
+        assertEquals(config.getEnabledLoci().size(), expected.getRatios().size());
+        assertSameRatios(expected, result, 1E-12);
+    }
+
+    /**
+     * Test of doAnalysis method, of class SplitDropBalancedChunksPool, for
+     * unrelated unknowns.
+     */
+    @Test
+    public void testDoAnalysis() throws InterruptedException {
+        System.out.println("doAnalysis");
+        final ConfigurationData config = createCase5Configuration(2, 3, 0.1, 0.1, 0.05, 0.5);
+
+        assertSameResults(config);
+    }
+
+    /**
+     * Test of doAnalysis method, of class SplitDropBalancedChunksPool, for a
+     * related unknown.
+     */
+    @Test
+    public void testDoAnalysisRelatedness() throws InterruptedException {
+        System.out.println("doAnalysisRelatedness");
+        final PopulationStatistics popStats = readPopulationStatistics(RELATEDNESS_POPULATION_STATISTICS_FILENAME);
+        final Collection<Sample> replicates = readReplicates(RELATEDNESS_SAMPLE_FILENAME);
+        final Collection<Sample> suspectSamples = readProfiles(RELATEDNESS_SUSPECT_FILENAME);
+        final Hypothesis prosecution = new Hypothesis("Prosecution", 1, popStats, 0.05, 0.1, 0.1);
+        final Hypothesis defense = new Hypothesis("Defense", 3, popStats, 0.05, 0.1, 0.1);
+        for (final Sample s : suspectSamples) {
+            prosecution.addContributor(s, 0.1);
+            defense.addNonContributor(s, 0);
+            defense.getRelatedness().setRelative(s);
+        }
+        defense.getRelatedness().setRelation(Relation.SIBLING);
+
+        final ConfigurationData config = createConfiguration(prosecution, defense, replicates, suspectSamples, popStats);
+
+        assertSameResults(config);
+    }
+
+    /**
+     * Test of the intermediate results published by class
+     * SplitDropBalancedChunksPool. Every intermediate result must bound the
+     * final result, the bounds must narrow as jobs finish, and the last
+     * intermediate result must equal the final result.
+     */
+    @Test
+    public void testIntermediateResults() throws InterruptedException {
+        System.out.println("intermediateResults");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.1, 0.1, 0.05, 0.5);
+
+        final List<LikelihoodRatioBounds> intermediateResults = Collections.synchronizedList(new ArrayList<LikelihoodRatioBounds>());
+        final SplitDropBalancedChunksPool model = new SplitDropBalancedChunksPool();
+        model.setLocusProbabilityCache(new LocusProbabilityCache(100, null));
+        model.addProgressListener(new DefaultAnalysisProgressListenerImpl() {
+            @Override
+            public void intermediateResult(final LikelihoodRatioBounds bounds) {
+                intermediateResults.add(bounds);
+            }
+        });
+        final LikelihoodRatio lr = model.doAnalysis(config);
+        final double log10Ratio = lr.getOverallRatio().getLog10Ratio();
+
+        assertTrue(intermediateResults.size() > 2 * config.getEnabledLoci().size());
+        double previousWidth = Double.POSITIVE_INFINITY;
+        for (final LikelihoodRatioBounds bounds : intermediateResults) {
+            assertTrue(bounds.getLog10LowerBound() <= log10Ratio + 1E-9);
+            assertTrue(bounds.getLog10UpperBound() >= log10Ratio - 1E-9);
+            for (final Ratio ratio : lr.getRatios()) {
+                final String locus = ratio.getLocusName();
+                assertTrue(bounds.getProsecutionLowerBounds().getLocusProbability(locus) <= ratio.getProsecutionProbability() * (1 + 1E-12));
+                assertTrue(bounds.getProsecutionUpperBounds().getLocusProbability(locus) >= ratio.getProsecutionProbability() * (1 - 1E-12));
+                assertTrue(bounds.getDefenseLowerBounds().getLocusProbability(locus) <= ratio.getDefenseProbability() * (1 + 1E-12));
+                assertTrue(bounds.getDefenseUpperBounds().getLocusProbability(locus) >= ratio.getDefenseProbability() * (1 - 1E-12));
+            }
+            final double width = bounds.getLog10UpperBound() - bounds.getLog10LowerBound();
+            if (!Double.isNaN(width)) {
+                assertTrue(width <= previousWidth + 1E-9);
+                previousWidth = width;
+            }
+        }
+
+        final LikelihoodRatioBounds last = intermediateResults.get(intermediateResults.size() - 1);
+        assertEquals(log10Ratio, last.getLog10LowerBound(), 1E-9);
+        assertEquals(log10Ratio, last.getLog10UpperBound(), 1E-9);
+    }
+
+    /**
+     * Test of doAnalysis method, of class SplitDropBalancedChunksPool, for an
+     * instance that is reused for a second analysis. The second result must
+     * equal that of a new instance, and the report of the first analysis must
+     * not receive the result of the second.
+     */
+    @Test
+    public void testDoAnalysisReuse() throws Exception {
+        System.out.println("doAnalysisReuse");
+        final SplitDropBalancedChunksPool model = new SplitDropBalancedChunksPool();
+        final ArrayList<LikelihoodRatio> results = new ArrayList<>();
+        final ArrayList<ConfigurationData> configs = new ArrayList<>();
+        for (final double dropout : new double[]{0.1, 0.3}) {
+            final ConfigurationData config = createCase5Configuration(1, 2, dropout, 0.1, 0.05, dropout);
+            configs.add(config);
+            results.add(model.doAnalysis(config));
+        }
+
+        final LikelihoodRatio expected = new SplitDropThreadPool().doAnalysis(new ConfigurationData(configs.get(1)));
+        assertEquals(expected.getOverallRatio().getLog10Ratio(), results.get(1).getOverallRatio().getLog10Ratio(), 1E-9);
+        assertTrue(Math.abs(results.get(0).getOverallRatio().getLog10Ratio() - results.get(1).getOverallRatio().getLog10Ratio()) > 1E-3);
+
+        // The results are delivered to the reports on the event dispatch thread
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        assertSame(results.get(0), configs.get(0).getCurrentReport().getLikelihoodRatio());
+        assertSame(results.get(1), configs.get(1).getCurrentReport().getLikelihoodRatio());
+    }
+
+    /**
+     * Test of getId method, of class SplitDropBalancedChunksPool.
+     */
+    @Test
+    public void testGetId() {
+        System.out.println("getId");
+        assertEquals("SplitDrop Balanced Chunks Edition", new SplitDropBalancedChunksPool().getId());
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.cli.LRmixStudioCli;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.model.ComputeService;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+
+/**
+ *
+ * @author dejong
+ */
+public class SplitDropDistributedTest extends ReferenceCaseTest {
+
+    private static final String SECRET = "SplitDropDistributedTest";
+
+    private final List<Process> _processes = new ArrayList<>();
+    private final List<SplitDropWorker> _workers = new ArrayList<>();
+
+    public SplitDropDistributedTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+        for (final Process process : _processes) {
+            process.destroy();
+        }
+        for (final SplitDropWorker worker : _workers) {
+            worker.close();
+        }
+    }
+
+    /**
+     * Starts a worker in a separate JVM.
+     *
+     * @return The address of the worker
+     */
+    private InetSocketAddress startWorkerProcess() throws IOException {
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), LRmixStudioCli.class.getName(), "--worker", "0", "--threads", "2", "--secret", SECRET);
+        final File log = File.createTempFile("worker", ".log");
+        log.deleteOnExit();
+        builder.redirectError(log);
+        final Process process = builder.start();
+        _processes.add(process);
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        final String line = reader.readLine();
+        if (line == null || !line.startsWith("Listening on port ")) {
+            fail("Worker did not start: " + line);
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(line.substring("Listening on port ".length()).trim()));
+    }
+
+    private InetSocketAddress startWorker() throws IOException {
+        final SplitDropWorker worker = new SplitDropWorker(0, 2, SECRET);
+        worker.start();
+        _workers.add(worker);
+        return new InetSocketAddress(worker.getAddress(), worker.getPort());
+    }
+
+    /**
+     * Test of doAnalysis method, of class SplitDropDistributed, with two
+     * workers running in separate JVMs.
+     */
+    @Test
+    public void testDoAnalysisMultipleJvms() throws Exception {
+        System.out.println("doAnalysisMultipleJvms");
+        final ConfigurationData config = createCase5Configuration(2, 3, 0.1, 0.1, 0.05, 0.5);
+        final LikelihoodRatio expected = new SplitDropThreadPool().doAnalysis(new ConfigurationData(config));
+
+        final SplitDropDistributed model = new SplitDropDistributed(Arrays.asList(startWorkerProcess(), startWorkerProcess()), SECRET);
+        try {
+            // An empty cache, so that all probabilities are calculated by the workers
+            model.setLocusProbabilityCache(new LocusProbabilityCache(100, null));
+            assertSameRatios(expected, model.doAnalysis(new ConfigurationData(config)), 1E-12);
+            assertTrue(model.getWorkerThreadCount() >= 2);
+            // A second analysis reuses the connections
+            model.setLocusProbabilityCache(new LocusProbabilityCache(100, null));
+            assertSameRatios(expected, model.doAnalysis(new ConfigurationData(config)), 1E-12);
+        } finally {
+            model.close();
+        }
+    }
+
+    /**
+     * Test of doAnalysis method, of class SplitDropDistributed, with a worker
+     * that dies after receiving its first range. Its ranges must be
+     * reassigned to the remaining worker.
+     */
+    @Test
+    public void testWorkerDies() throws Exception {
+        System.out.println("workerDies");
+        final ConfigurationData config = createCase5Configuration(2, 3, 0.1, 0.1, 0.05, 0.5);
+        final LikelihoodRatio expected = new SplitDropThreadPool().doAnalysis(new ConfigurationData(config));
+
+        final AtomicInteger receivedRanges = new AtomicInteger();
+        final ServerSocket dyingWorker = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread dyingThread = new Thread() {
+            @Override
+            public void run() {
+                try (Socket socket = dyingWorker.accept()) {
+                    final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    out.writeByte(DistributedProtocol.HELLO);
+                    out.writeInt(DistributedProtocol.VERSION);
+                    out.write(new byte[DistributedProtocol.CHALLENGE_LENGTH]);
+                    out.flush();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    in.readByte();
+                    in.readFully(new byte[DistributedProtocol.CHALLENGE_LENGTH]);
+                    out.writeByte(DistributedProtocol.READY);
+                    out.writeInt(4);
+                    out.flush();
+                    while (receivedRanges.get() == 0) {
+                        final byte type = in.readByte();
+                        if (type == DistributedProtocol.CASE) {
+                            in.readLong();
+                            in.readFully(new byte[in.readInt()]);
+                        } else if (type == DistributedProtocol.RANGE) {
+                            in.readLong();
+                            in.readLong();
+                            in.readUTF();
+                            in.readUTF();
+                            in.readLong();
+                            in.readLong();
+                            in.readLong();
+                            in.readLong();
+                            receivedRanges.incrementAndGet();
+                        }
+                    }
+                } catch (final IOException e) {
+                    receivedRanges.set(-1);
+                }
+            }
+        };
+        dyingThread.start();
+
+        final SplitDropDistributed model = new SplitDropDistributed(Arrays.asList(new InetSocketAddress(InetAddress.getLoopbackAddress(), dyingWorker.getLocalPort()), startWorker()), SECRET);
+        try {
+            model.setLocusProbabilityCache(new LocusProbabilityCache(100, null));
+            assertSameRatios(expected, model.doAnalysis(new ConfigurationData(config)), 1E-12);
+            dyingThread.join();
+            assertEquals(1, receivedRanges.get());
+            assertEquals(Math.min(2, ComputeService.getInstance().getThreadCount()), model.getWorkerThreadCount());
+        } finally {
+            model.close();
+            dyingWorker.close();
+        }
+    }
+
+    /**
+     * Test of startAnalysis method, of class SplitDropDistributed, if no
+     * worker can be reached.
+     */
+    @Test
+    public void testNoWorkers() throws Exception {
+        System.out.println("noWorkers");
+        final ServerSocket closed = new ServerSocket(0);
+        final int port = closed.getLocalPort();
+        closed.close();
+        final SplitDropDistributed model = new SplitDropDistributed(Arrays.asList(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)), SECRET);
+        try {
+            model.startAnalysis(createCase5Configuration(2, 3, 0.1, 0.1, 0.05, 0.5));
+            fail("Analysis started without workers");
+        } catch (final IllegalStateException e) {
+            assertTrue(e.getMessage().contains("could be reached"));
+        }
+    }
+
+    /**
+     * Test of startAnalysis method, of class SplitDropDistributed, with a
+     * worker that has a different secret.
+     */
+    @Test
+    public void testWrongSecret() throws Exception {
+        System.out.println("wrongSecret");
+        final InetSocketAddress worker = startWorker();
+        final SplitDropDistributed model = new SplitDropDistributed(Arrays.asList(worker), "not the " + SECRET);
+        try {
+            model.startAnalysis(createCase5Configuration(2, 3, 0.1, 0.1, 0.05, 0.5));
+            fail("Analysis started without knowing the secret");
+        } catch (final IllegalStateException e) {
+            assertTrue(e.getMessage().contains("could be reached"));
+        }
+    }
+
+    /**
+     * Test of the worker, of class SplitDropWorker, receiving a case with an
+     * invalid length. The worker must close the connection.
+     */
+    @Test
+    public void testInvalidCaseLength() throws Exception {
+        System.out.println("invalidCaseLength");
+        final InetSocketAddress worker = startWorker();
+        try (Socket socket = new Socket(worker.getAddress(), worker.getPort())) {
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            assertEquals(DistributedProtocol.HELLO, in.readByte());
+            assertEquals(DistributedProtocol.VERSION, in.readInt());
+            final byte[] challenge = new byte[DistributedProtocol.CHALLENGE_LENGTH];
+            in.readFully(challenge);
+            out.writeByte(DistributedProtocol.AUTH);
+            out.write(DistributedProtocol.getResponse(SECRET, challenge));
+            out.flush();
+            assertEquals(DistributedProtocol.READY, in.readByte());
+            in.readInt();
+
+            out.writeByte(DistributedProtocol.CASE);
+            out.writeLong(1);
+            out.writeInt(-1);
+            out.flush();
+            try {
+                while (true) {
+                    // Skip any heartbeats sent before the connection was closed
+                    assertEquals(DistributedProtocol.HEARTBEAT, in.readByte());
+                }
+            } catch (final EOFException e) {
+                // The worker closed the connection
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@ import org.junit.Test;
 
 import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
 import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatioBounds;
 import nl.minvenj.nfi.lrmixstudio.domain.LocusProbabilities;
 import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
 import nl.minvenj.nfi.lrmixstudio.domain.Ratio;
@@ -262,5 +263,9 @@ public class SplitDropThreadPoolTest {
         public void locusFinished(final Hypothesis hypothesis, final String locusName, final Double locusProbability) {
             log.append("locusFinished ").append(locusName);
         }
+
+        @Override
+        public void intermediateResult(final LikelihoodRatioBounds bounds) {
+        }
     }
 }
@@ -16,7 +16,7 @@ import org.junit.runners.Suite;
  * @author dejong
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.LocusProbabilityJobGeneratorTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.LocusProbabilityJobTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropThreadPoolTest.class})
+@Suite.SuiteClasses({nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.LocusProbabilityJobGeneratorTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.LocusProbabilityJobTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropThreadPoolTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropBalancedChunksPoolTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.ReplicateKernelTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropAlleleUnionPoolTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.DropoutPolynomialAnalysisTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.MultiParameterAnalysisTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.LocusProbabilityTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.LocusProbabilityCacheTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.CaseSerializerTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.SplitDropDistributedTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.AnalysisCheckpointTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.JobCostModelTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.ValidationTraceTest.class, nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype.GenotypeProbabilityTableTest.class})
 public class ThreadpoolSuite {
 
     @BeforeClass
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.LikelihoodRatio;
+import nl.minvenj.nfi.lrmixstudio.model.ConfigurationData;
+import nl.minvenj.nfi.lrmixstudio.model.splitdrop.referencecases.ReferenceCaseTest;
+
+/**
+ *
+ * @author dejong
+ */
+public class ValidationTraceTest extends ReferenceCaseTest {
+
+    public ValidationTraceTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private LikelihoodRatio analyse(final ConfigurationData config, final File traceFile) throws Exception {
+        final SplitDropThreadPool model = new SplitDropThreadPool();
+        model.setLocusProbabilityCache(new LocusProbabilityCache(100, null));
+        model.setValidationTraceFile(traceFile);
+        return model.doAnalysis(new ConfigurationData(config));
+    }
+
+    private static String render(final byte[] trace) throws IOException {
+        final StringWriter writer = new StringWriter();
+        ValidationTrace.render(new ByteArrayInputStream(trace), new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    /**
+     * Test that a traced analysis gives the same results as an analysis
+     * without a trace, and that the trace renders to the validation log.
+     */
+    @Test
+    public void testTracedAnalysis() throws Exception {
+        System.out.println("tracedAnalysis");
+        final ConfigurationData config = createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3);
+        final int locusCount = config.getEnabledLoci().size();
+        final File traceFile = File.createTempFile("trace", ".bin");
+        try {
+            final LikelihoodRatio expected = analyse(config, null);
+            assertEquals(0, traceFile.length());
+            final LikelihoodRatio traced = analyse(config, traceFile);
+            assertSameRatios(expected, traced, 1E-12);
+
+            final String log = render(Files.readAllBytes(traceFile.toPath()));
+            assertTrue(log.startsWith("Analysis started "));
+            assertTrue(log.contains("replicate probability formula:"));
+            assertTrue(log.contains("Defense Locus "));
+            assertTrue(log.contains("pRep = "));
+            assertTrue(log.split("done, probability = ").length > 2 * locusCount);
+            assertFalse(log.contains("incomplete record"));
+
+            // A second analysis is appended to the same trace
+            final long length = traceFile.length();
+            analyse(config, traceFile);
+            assertEquals(2 * length, traceFile.length(), length / 10);
+            assertEquals(3, render(Files.readAllBytes(traceFile.toPath())).split("Analysis started ").length);
+        } finally {
+            traceFile.delete();
+        }
+    }
+
+    /**
+     * Test that a trace that ends in an incomplete record is rendered up to
+     * that record.
+     */
+    @Test
+    public void testTruncatedTrace() throws Exception {
+        System.out.println("truncatedTrace");
+        final File traceFile = File.createTempFile("trace", ".bin");
+        try {
+            analyse(createCase5Configuration(1, 2, 0.05, 0.2, 0.01, 0.3), traceFile);
+            final byte[] trace = Files.readAllBytes(traceFile.toPath());
+            final String log = render(Arrays.copyOf(trace, trace.length - 3));
+            assertTrue(log.contains("pRep = "));
+            assertTrue(log.endsWith("Validation trace ends in an incomplete record" + System.lineSeparator()));
+        } finally {
+            traceFile.delete();
+        }
+    }
+
+    /**
+     * Test that a file that is not a validation trace is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testNotATrace() throws Exception {
+        System.out.println("notATrace");
+        render("Prosecution Locus D3S1358".getBytes("UTF-8"));
+    }
+}
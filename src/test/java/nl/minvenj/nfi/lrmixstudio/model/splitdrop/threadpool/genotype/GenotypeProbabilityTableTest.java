@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014, Netherlands Forensic Institute
+ * All rights reserved.
+ */
+package nl.minvenj.nfi.lrmixstudio.model.splitdrop.threadpool.genotype;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.minvenj.nfi.lrmixstudio.domain.Allele;
+import nl.minvenj.nfi.lrmixstudio.domain.Hypothesis;
+import nl.minvenj.nfi.lrmixstudio.domain.Locus;
+import nl.minvenj.nfi.lrmixstudio.domain.PopulationStatistics;
+import nl.minvenj.nfi.lrmixstudio.domain.Relatedness.Relation;
+import nl.minvenj.nfi.lrmixstudio.domain.Sample;
+
+/**
+ *
+ * @author dejong
+ */
+public class GenotypeProbabilityTableTest {
+
+    private static final String LOCUS_NAME = "TH01";
+    private static final String[] ALLELES = {"6", "7", "8", "9.3", "10"};
+    private static final double[] FREQUENCIES = {0.2, 0.15, 0.1, 0.3, 0.25};
+
+    public GenotypeProbabilityTableTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private Sample createSample(final String id, final String allele1, final String allele2) {
+        final Sample sample = new Sample(id);
+        final Locus locus = new Locus(LOCUS_NAME);
+        locus.addAllele(new Allele(allele1));
+        locus.addAllele(new Allele(allele2));
+        sample.addLocus(locus);
+        return sample;
+    }
+
+    private Hypothesis createHypothesis(final Relation relation, final double theta) {
+        final PopulationStatistics popStats = new PopulationStatistics("popStats");
+        for (int idx = 0; idx < ALLELES.length; idx++) {
+            popStats.addStatistic(LOCUS_NAME, ALLELES[idx], new BigDecimal(FREQUENCIES[idx]));
+        }
+        final Hypothesis hypothesis = new Hypothesis("Defense", 3, popStats, 0.05, 0.1, theta);
+        hypothesis.addContributor(createSample("Victim", "7", "9.3"), 0.1);
+        final Sample suspect = createSample("Suspect", "6", "6");
+        hypothesis.addNonContributor(suspect, 0);
+        hypothesis.getRelatedness().setRelative(suspect);
+        hypothesis.getRelatedness().setRelation(relation);
+        return hypothesis;
+    }
+
+    private ArrayList<Locus> createGenotypes() {
+        final ArrayList<Locus> genotypes = new ArrayList<>();
+        for (int idx1 = 0; idx1 < ALLELES.length; idx1++) {
+            for (int idx2 = idx1; idx2 < ALLELES.length; idx2++) {
+                final Locus genotype = new Locus(LOCUS_NAME);
+                genotype.addAllele(new Allele(ALLELES[idx1]));
+                genotype.addAllele(new Allele(ALLELES[idx2]));
+                genotypes.add(genotype);
+            }
+        }
+        return genotypes;
+    }
+
+    /**
+     * Calculates the genotype probability of a combination in the same way as
+     * the LocusProbabilityJob.
+     */
+    private double calculateExpected(final Hypothesis hypothesis, final ArrayList<Locus> genotypes, final int[] indices) {
+        final int[] alleleCounts = new int[Allele.getRegisteredAlleleCount()];
+        int totalAlleleCount = 0;
+        for (final Sample sample : new Sample[]{hypothesis.getContributors().iterator().next().getSample(), hypothesis.getNonContributors().iterator().next().getSample()}) {
+            for (final Allele allele : sample.getLocus(LOCUS_NAME).getAlleles()) {
+                alleleCounts[allele.getId()]++;
+                totalAlleleCount++;
+            }
+        }
+
+        double denominator = 1;
+        for (int i = totalAlleleCount + (hypothesis.getRelatedness().getRelation() == Relation.NONE ? 0 : 2); i < totalAlleleCount + hypothesis.getUnknownCount() * 2; i++) {
+            denominator *= (1 + (i - 1) * hypothesis.getThetaCorrection());
+        }
+
+        double probability = GenotypeProbabilityCalculatorFactory.getRelatedGenotypeProbabilityCalculator(hypothesis).calculate(alleleCounts, genotypes.get(indices[0]));
+        final GenotypeProbabilityCalculator unrelated = GenotypeProbabilityCalculatorFactory.getUnrelatedGenotypeProbabilityCalculator(hypothesis);
+        for (int idx = 1; idx < indices.length; idx++) {
+            probability *= unrelated.calculate(alleleCounts, genotypes.get(indices[idx]));
+        }
+        return probability / denominator;
+    }
+
+    private void assertSameProbabilities(final Relation relation, final double theta) {
+        final Hypothesis hypothesis = createHypothesis(relation, theta);
+        final ArrayList<Locus> genotypes = createGenotypes();
+        final GenotypeProbabilityTable table = GenotypeProbabilityTable.create(LOCUS_NAME, hypothesis, genotypes);
+        assertEquals(genotypes.size(), table.getGenotypeCount());
+        assertEquals(ALLELES.length, table.getAlleleCount());
+
+        final int[] counts = table.createCountBuffer();
+        final int[] indices = new int[3];
+        for (indices[0] = 0; indices[0] < genotypes.size(); indices[0]++) {
+            for (indices[1] = 0; indices[1] < genotypes.size(); indices[1]++) {
+                for (indices[2] = 0; indices[2] < genotypes.size(); indices[2]++) {
+                    final double expected = calculateExpected(hypothesis, genotypes, indices);
+                    assertEquals(expected, table.calculate(indices, counts), expected * 1E-12);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of calculate method, of class GenotypeProbabilityTable, for
+     * unrelated unknowns.
+     */
+    @Test
+    public void testCalculate() {
+        System.out.println("calculate");
+        assertSameProbabilities(Relation.NONE, 0.03);
+        assertSameProbabilities(Relation.NONE, 0);
+    }
+
+    /**
+     * Test of calculate method, of class GenotypeProbabilityTable, for a
+     * related unknown.
+     */
+    @Test
+    public void testCalculateRelated() {
+        System.out.println("calculateRelated");
+        assertSameProbabilities(Relation.SIBLING, 0.03);
+        assertSameProbabilities(Relation.PARENT_CHILD, 0);
+    }
+}